@@ -25,6 +25,7 @@ import org.springframework.stereotype.Component;
 
 import it.infn.mw.iam.authn.util.Authorities;
 import it.infn.mw.iam.core.ExtendedAuthenticationToken;
+import it.infn.mw.iam.core.oauth.issuance.TokenIssuanceContext;
 import it.infn.mw.iam.persistence.model.IamAccount;
 import it.infn.mw.iam.persistence.model.IamAuthority;
 import it.infn.mw.iam.persistence.repository.IamAccountRepository;
@@ -99,7 +100,11 @@ public class AccountUtils {
       userAuthn = oauth.getUserAuthentication();
     }
 
-    return accountRepo.findByUsername(userAuthn.getName());
+    final String username = userAuthn.getName();
+
+    return TokenIssuanceContext.current()
+      .map(c -> c.getAccountByUsername(username, accountRepo::findByUsernameWithGroups))
+      .orElseGet(() -> accountRepo.findByUsername(username));
 
   }
 
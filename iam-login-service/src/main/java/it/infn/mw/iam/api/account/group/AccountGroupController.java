@@ -18,20 +18,29 @@ package it.infn.mw.iam.api.account.group;
 import static it.infn.mw.iam.api.account.group.ErrorSuppliers.noSuchAccount;
 import static it.infn.mw.iam.api.account.group.ErrorSuppliers.noSuchGroup;
 
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+
 import javax.servlet.http.HttpServletRequest;
 
 import org.springframework.http.HttpStatus;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.validation.BindingResult;
+import org.springframework.validation.FieldError;
+import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
 
 import it.infn.mw.iam.api.common.ErrorDTO;
 import it.infn.mw.iam.api.common.error.NoSuchAccountError;
 import it.infn.mw.iam.api.requests.service.GroupRequestsService;
+import it.infn.mw.iam.core.group.IamGroupMembershipService;
 import it.infn.mw.iam.core.group.IamGroupService;
 import it.infn.mw.iam.core.group.error.NoSuchGroupError;
 import it.infn.mw.iam.core.user.IamAccountService;
@@ -45,11 +54,23 @@ public class AccountGroupController {
   private final IamAccountService accountService;
   private final IamGroupService groupService;
   private final GroupRequestsService groupRequestsService;
+  private final IamGroupMembershipService membershipService;
 
-  public AccountGroupController(IamAccountService accountService, IamGroupService groupService, GroupRequestsService groupRequestsService) {
+  public AccountGroupController(IamAccountService accountService, IamGroupService groupService,
+      GroupRequestsService groupRequestsService, IamGroupMembershipService membershipService) {
     this.accountService = accountService;
     this.groupService = groupService;
     this.groupRequestsService = groupRequestsService;
+    this.membershipService = membershipService;
+  }
+
+  private void handleValidationError(BindingResult result) {
+    if (result.hasErrors()) {
+      throw new InvalidGroupMembersError(result.getFieldErrors()
+        .stream()
+        .map(FieldError::getDefaultMessage)
+        .collect(Collectors.joining(",")));
+    }
   }
 
   @PostMapping(value = "/iam/account/{accountUuid}/groups/{groupUuid}")
@@ -83,6 +104,38 @@ public class AccountGroupController {
     accountService.removeFromGroup(account, group);
   }
 
+  @PostMapping(value = "/iam/group/{groupUuid}/members")
+  @ResponseStatus(value = HttpStatus.CREATED)
+  @PreAuthorize("#iam.hasAdminOrGMDashboardRoleOfGroup(#groupUuid) or #iam.hasScope('iam:admin.write')")
+  public void addGroupMembers(@PathVariable String groupUuid,
+      @RequestBody @Validated GroupMembersDTO members, final BindingResult validationResult) {
+    handleValidationError(validationResult);
+
+    IamGroup group = groupService.findByUuid(groupUuid).orElseThrow(noSuchGroup(groupUuid));
+
+    membershipService.addMembers(group, members.getAccounts());
+
+    Set<String> accountUuids = new HashSet<>(members.getAccounts());
+
+    for (IamGroupRequest r : group.getGroupRequests()) {
+      if (accountUuids.contains(r.getAccount().getUuid())) {
+        groupRequestsService.deleteGroupRequest(r.getUuid());
+      }
+    }
+  }
+
+  @DeleteMapping(value = "/iam/group/{groupUuid}/members")
+  @ResponseStatus(value = HttpStatus.NO_CONTENT)
+  @PreAuthorize("#iam.hasAdminOrGMDashboardRoleOfGroup(#groupUuid) or #iam.hasScope('iam:admin.write')")
+  public void removeGroupMembers(@PathVariable String groupUuid,
+      @RequestBody @Validated GroupMembersDTO members, final BindingResult validationResult) {
+    handleValidationError(validationResult);
+
+    IamGroup group = groupService.findByUuid(groupUuid).orElseThrow(noSuchGroup(groupUuid));
+
+    membershipService.removeMembers(group, members.getAccounts());
+  }
+
   @ResponseStatus(value = HttpStatus.BAD_REQUEST)
   @ExceptionHandler(NoSuchAccountError.class)
   public ErrorDTO noSuchAccountError(HttpServletRequest req, Exception ex) {
@@ -101,6 +154,12 @@ public class AccountGroupController {
     return ErrorDTO.fromString(ex.getMessage());
   }
 
+  @ResponseStatus(value = HttpStatus.BAD_REQUEST)
+  @ExceptionHandler(InvalidGroupMembersError.class)
+  public ErrorDTO invalidGroupMembersError(HttpServletRequest req, Exception ex) {
+    return ErrorDTO.fromString(ex.getMessage());
+  }
+
   @ResponseStatus(value = HttpStatus.BAD_REQUEST)
   @ExceptionHandler(NotAMemberError.class)
   public ErrorDTO notAMemberError(HttpServletRequest req, Exception ex) {
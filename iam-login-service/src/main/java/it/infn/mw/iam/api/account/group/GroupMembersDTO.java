@@ -0,0 +1,50 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.api.account.group;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.Size;
+
+/**
+ * The uuids of the accounts to be added to, or removed from, a group
+ */
+public class GroupMembersDTO {
+
+  public static final int MAX_ACCOUNTS = 10000;
+
+  @NotEmpty(message = "No accounts given")
+  @Size(max = MAX_ACCOUNTS, message = "At most " + MAX_ACCOUNTS + " accounts can be given")
+  private List<String> accounts = new ArrayList<>();
+
+  public GroupMembersDTO() {
+    // empty constructor
+  }
+
+  public GroupMembersDTO(List<String> accounts) {
+    this.accounts = accounts;
+  }
+
+  public List<String> getAccounts() {
+    return accounts;
+  }
+
+  public void setAccounts(List<String> accounts) {
+    this.accounts = accounts;
+  }
+}
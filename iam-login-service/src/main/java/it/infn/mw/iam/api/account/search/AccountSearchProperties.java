@@ -0,0 +1,78 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.api.account.search;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "account-search")
+public class AccountSearchProperties {
+
+  /**
+   * When true, filtered account searches are narrowed down by the account search n-gram index
+   * instead of scanning the whole account table
+   */
+  private boolean indexed = false;
+
+  /**
+   * When true, the total results of a filtered indexed search are the number of accounts matching
+   * the index, without verifying each candidate against the filter
+   */
+  private boolean approximateCount = false;
+
+  /**
+   * Number of accounts indexed in each batch when the index is (re)built at startup
+   */
+  private int rebuildBatchSize = 500;
+
+  /**
+   * Period, in seconds, of the sweep that re-indexes the accounts updated since the previous one
+   */
+  private long sweepPeriodSecs = 300;
+
+  public boolean isIndexed() {
+    return indexed;
+  }
+
+  public void setIndexed(boolean indexed) {
+    this.indexed = indexed;
+  }
+
+  public boolean isApproximateCount() {
+    return approximateCount;
+  }
+
+  public void setApproximateCount(boolean approximateCount) {
+    this.approximateCount = approximateCount;
+  }
+
+  public int getRebuildBatchSize() {
+    return rebuildBatchSize;
+  }
+
+  public void setRebuildBatchSize(int rebuildBatchSize) {
+    this.rebuildBatchSize = rebuildBatchSize;
+  }
+
+  public long getSweepPeriodSecs() {
+    return sweepPeriodSecs;
+  }
+
+  public void setSweepPeriodSecs(long sweepPeriodSecs) {
+    this.sweepPeriodSecs = sweepPeriodSecs;
+  }
+}
@@ -0,0 +1,357 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.api.account.search.service;
+
+import static it.infn.mw.iam.api.scim.updater.UpdaterType.ACCOUNT_REPLACE_EMAIL;
+import static it.infn.mw.iam.api.scim.updater.UpdaterType.ACCOUNT_REPLACE_FAMILY_NAME;
+import static it.infn.mw.iam.api.scim.updater.UpdaterType.ACCOUNT_REPLACE_GIVEN_NAME;
+import static it.infn.mw.iam.api.scim.updater.UpdaterType.ACCOUNT_REPLACE_USERNAME;
+import static java.util.Objects.isNull;
+
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.google.common.base.Joiner;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.infn.mw.iam.api.account.search.AccountSearchProperties;
+import it.infn.mw.iam.api.scim.updater.UpdaterType;
+import it.infn.mw.iam.audit.events.account.AccountCreatedEvent;
+import it.infn.mw.iam.audit.events.account.AccountEvent;
+import it.infn.mw.iam.audit.events.account.AccountReplacedEvent;
+import it.infn.mw.iam.audit.events.account.AccountUpdatedEvent;
+
+/**
+ * Maintains the account search index, i.e. the set of lowercase n-grams of length
+ * {@value #NGRAM_LENGTH} extracted from the username, uuid, email and full name of each account.
+ * 
+ * An account is re-indexed when an {@link AccountEvent} that may have changed one of the indexed
+ * attributes (account creation or replacement, username, email or name updates) is committed.
+ * Accounts updated without such an event are re-indexed by a periodic sweep over the accounts
+ * whose last update time is more recent than the previous sweep; index entries of removed
+ * accounts are removed by the database. The last update time of each account is recorded when
+ * the account is indexed, so at startup the accounts missing from the index and those updated
+ * after they were indexed (e.g. while every node was down, or while the index was disabled) are
+ * indexed in the background, in batches selected by account id; until the rebuild completes,
+ * {@link #isReady()} returns false and searches must not rely on the index.
+ */
+@Service
+public class AccountSearchIndexService implements DisposableBean {
+
+  public static final Logger LOG = LoggerFactory.getLogger(AccountSearchIndexService.class);
+
+  public static final int NGRAM_LENGTH = 3;
+
+  public static final String INDEXED_ACCOUNTS_METRIC = "iam.account-search.indexed-accounts";
+
+  // Accounts updated by a transaction still running when a sweep starts are only visible to the
+  // next sweep, so consecutive sweeps overlap
+  public static final Duration SWEEP_OVERLAP = Duration.ofMinutes(1);
+
+  private static final Set<UpdaterType> INDEXED_ATTRIBUTE_UPDATES = EnumSet.of(
+      ACCOUNT_REPLACE_USERNAME, ACCOUNT_REPLACE_EMAIL, ACCOUNT_REPLACE_GIVEN_NAME,
+      ACCOUNT_REPLACE_FAMILY_NAME);
+
+  private static final Joiner NAME_JOINER = Joiner.on(' ').skipNulls();
+
+  private static final String SELECT_UPDATED_ACCOUNTS =
+      "SELECT a.ID FROM iam_account a WHERE a.lastupdatetime >= :since AND a.ID > :lastId "
+          + "ORDER BY a.ID LIMIT :limit";
+
+  private static final String SELECT_STALE_ACCOUNTS =
+      "SELECT a.ID FROM iam_account a LEFT JOIN iam_account_search_indexed i "
+          + "ON i.account_id = a.ID WHERE a.ID > :lastId "
+          + "AND (i.account_id IS NULL OR a.lastupdatetime > i.last_update_time) "
+          + "ORDER BY a.ID LIMIT :limit";
+
+  private static final String SELECT_SEARCHABLE_ATTRIBUTES =
+      "SELECT a.ID, a.USERNAME, a.UUID, ui.EMAIL, ui.GIVENNAME, ui.FAMILYNAME, a.LASTUPDATETIME "
+          + "FROM iam_account a LEFT JOIN iam_user_info ui ON a.user_info_id = ui.ID "
+          + "WHERE a.ID IN (:ids)";
+
+  private static final String DELETE_NGRAMS =
+      "DELETE FROM iam_account_search_ngram WHERE account_id IN (:ids)";
+
+  private static final String DELETE_INDEXED =
+      "DELETE FROM iam_account_search_indexed WHERE account_id IN (:ids)";
+
+  private static final String INSERT_INDEXED =
+      "INSERT INTO iam_account_search_indexed (account_id, last_update_time) "
+          + "VALUES (:accountId, :lastUpdateTime)";
+
+  private static final String INSERT_NGRAM =
+      "INSERT INTO iam_account_search_ngram (account_id, ngram) VALUES (:accountId, :ngram)";
+
+  private static final String COUNT_CANDIDATES =
+      "SELECT COUNT(*) FROM (SELECT account_id FROM iam_account_search_ngram "
+          + "WHERE ngram IN (:ngrams) GROUP BY account_id "
+          + "HAVING COUNT(DISTINCT ngram) = :ngramCount) c";
+
+  private final NamedParameterJdbcTemplate jdbcTemplate;
+  private final TransactionTemplate newTransaction;
+  private final AccountSearchProperties properties;
+  private final Clock clock;
+  private final Counter indexedAccounts;
+  private final AtomicBoolean ready = new AtomicBoolean(false);
+  private volatile Instant lastSweepTime;
+  private final ExecutorService rebuildExecutor = Executors.newSingleThreadExecutor(
+      new ThreadFactoryBuilder().setNameFormat("account-search-index-%d").setDaemon(true).build());
+
+  public AccountSearchIndexService(NamedParameterJdbcTemplate jdbcTemplate,
+      PlatformTransactionManager transactionManager, AccountSearchProperties properties,
+      Clock clock, MeterRegistry meterRegistry) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.newTransaction = new TransactionTemplate(transactionManager);
+    this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    this.properties = properties;
+    this.clock = clock;
+    this.indexedAccounts = meterRegistry.counter(INDEXED_ACCOUNTS_METRIC);
+  }
+
+  /**
+   * Returns the distinct lowercase n-grams of the given value, or an empty set if the value is
+   * shorter than {@value #NGRAM_LENGTH} characters
+   */
+  public static Set<String> ngrams(String value) {
+
+    Set<String> ngrams = new LinkedHashSet<>();
+
+    if (isNull(value)) {
+      return ngrams;
+    }
+
+    int[] codePoints = value.toLowerCase(Locale.ROOT).codePoints().toArray();
+
+    for (int i = 0; i + NGRAM_LENGTH <= codePoints.length; i++) {
+      ngrams.add(new String(codePoints, i, NGRAM_LENGTH));
+    }
+
+    return ngrams;
+  }
+
+  private static Set<String> accountNgrams(String username, String uuid, String email,
+      String givenName, String familyName) {
+
+    Set<String> ngrams = new LinkedHashSet<>();
+    ngrams.addAll(ngrams(username));
+    ngrams.addAll(ngrams(uuid));
+    ngrams.addAll(ngrams(email));
+    ngrams.addAll(ngrams(NAME_JOINER.join(givenName, familyName)));
+    return ngrams;
+  }
+
+  public boolean isReady() {
+    return ready.get();
+  }
+
+  /**
+   * Replaces the index entries of the given accounts with the n-grams of their current
+   * attributes, and records the last update time they were indexed at, in the transaction of the
+   * caller if any
+   */
+  public void indexAccounts(Collection<Long> accountIds) {
+
+    if (accountIds.isEmpty()) {
+      return;
+    }
+
+    MapSqlParameterSource ids = new MapSqlParameterSource("ids", accountIds);
+    List<SqlParameterSource> rows = new ArrayList<>();
+    List<SqlParameterSource> indexedRows = new ArrayList<>();
+
+    jdbcTemplate.query(SELECT_SEARCHABLE_ATTRIBUTES, ids, (RowCallbackHandler) rs -> {
+      long accountId = rs.getLong(1);
+      accountNgrams(rs.getString(2), rs.getString(3), rs.getString(4), rs.getString(5),
+          rs.getString(6)).forEach(ngram -> rows.add(
+              new MapSqlParameterSource("accountId", accountId).addValue("ngram", ngram)));
+      indexedRows.add(new MapSqlParameterSource("accountId", accountId)
+        .addValue("lastUpdateTime", rs.getTimestamp(7)));
+      indexedAccounts.increment();
+    });
+
+    jdbcTemplate.update(DELETE_NGRAMS, ids);
+    jdbcTemplate.update(DELETE_INDEXED, ids);
+
+    if (!rows.isEmpty()) {
+      jdbcTemplate.batchUpdate(INSERT_NGRAM, rows.toArray(new SqlParameterSource[0]));
+    }
+
+    if (!indexedRows.isEmpty()) {
+      jdbcTemplate.batchUpdate(INSERT_INDEXED, indexedRows.toArray(new SqlParameterSource[0]));
+    }
+  }
+
+  /**
+   * Indexes all the accounts that are missing from the index or were updated after they were
+   * indexed, and marks the index as ready
+   */
+  public void rebuild() {
+
+    Instant startTime = clock.instant();
+    long lastId = 0;
+    long indexed = 0;
+
+    while (true) {
+      MapSqlParameterSource params = new MapSqlParameterSource("lastId", lastId)
+        .addValue("limit", properties.getRebuildBatchSize());
+
+      List<Long> accountIds =
+          jdbcTemplate.queryForList(SELECT_STALE_ACCOUNTS, params, Long.class);
+
+      if (accountIds.isEmpty()) {
+        break;
+      }
+
+      indexAccounts(accountIds);
+      indexed += accountIds.size();
+      lastId = accountIds.get(accountIds.size() - 1);
+    }
+
+    lastSweepTime = startTime;
+    ready.set(true);
+    LOG.info("Account search index ready, {} accounts indexed at startup", indexed);
+  }
+
+  /**
+   * Re-indexes the accounts updated since the previous sweep (or the index rebuild), so that
+   * updates not notified by an {@link AccountEvent} are eventually picked up
+   */
+  public void reindexUpdatedAccounts() {
+
+    Instant startTime = clock.instant();
+    Timestamp since = Timestamp.from(lastSweepTime.minus(SWEEP_OVERLAP));
+    long lastId = 0;
+
+    while (true) {
+      MapSqlParameterSource params = new MapSqlParameterSource("since", since)
+        .addValue("lastId", lastId)
+        .addValue("limit", properties.getRebuildBatchSize());
+
+      List<Long> accountIds =
+          jdbcTemplate.queryForList(SELECT_UPDATED_ACCOUNTS, params, Long.class);
+
+      if (accountIds.isEmpty()) {
+        break;
+      }
+
+      newTransaction.executeWithoutResult(status -> indexAccounts(accountIds));
+      lastId = accountIds.get(accountIds.size() - 1);
+    }
+
+    lastSweepTime = startTime;
+  }
+
+  @Scheduled(fixedDelayString = "${account-search.sweep-period-secs:300}",
+      initialDelayString = "${account-search.sweep-period-secs:300}", timeUnit = TimeUnit.SECONDS)
+  public void sweep() {
+
+    if (!properties.isIndexed() || !isReady()) {
+      return;
+    }
+
+    try {
+      reindexUpdatedAccounts();
+    } catch (RuntimeException e) {
+      LOG.error("Error re-indexing updated accounts: {}", e.getMessage(), e);
+    }
+  }
+
+  private static boolean mayChangeIndexedAttributes(AccountEvent event) {
+
+    if (event instanceof AccountUpdatedEvent updatedEvent) {
+      return INDEXED_ATTRIBUTE_UPDATES.contains(updatedEvent.getUpdaterType());
+    }
+
+    return event instanceof AccountCreatedEvent || event instanceof AccountReplacedEvent;
+  }
+
+  /**
+   * Returns the number of accounts whose attributes contain all the given n-grams, which is an
+   * upper bound of the number of accounts matching the filter the n-grams were extracted from
+   */
+  public long countCandidates(Set<String> ngrams) {
+
+    MapSqlParameterSource params =
+        new MapSqlParameterSource("ngrams", ngrams).addValue("ngramCount", ngrams.size());
+
+    return jdbcTemplate.queryForObject(COUNT_CANDIDATES, params, Long.class);
+  }
+
+  @TransactionalEventListener(fallbackExecution = true)
+  public void handleAccountEvent(AccountEvent event) {
+
+    if (!properties.isIndexed() || isNull(event.getAccount().getId())
+        || !mayChangeIndexedAttributes(event)) {
+      return;
+    }
+
+    newTransaction
+      .executeWithoutResult(status -> indexAccounts(List.of(event.getAccount().getId())));
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void startRebuild() {
+
+    if (!properties.isIndexed()) {
+      return;
+    }
+
+    rebuildExecutor.execute(() -> {
+      try {
+        rebuild();
+      } catch (RuntimeException e) {
+        LOG.error("Account search index rebuild failed, searches will not use the index: {}",
+            e.getMessage(), e);
+      }
+    });
+  }
+
+  @Override
+  public void destroy() {
+    rebuildExecutor.shutdownNow();
+  }
+}
@@ -15,10 +15,16 @@
  */
 package it.infn.mw.iam.api.account.search.service;
 
+import java.util.Set;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
+
+import it.infn.mw.iam.api.account.search.AccountSearchProperties;
 import it.infn.mw.iam.api.common.PagedResourceService;
 import it.infn.mw.iam.persistence.model.IamAccount;
 import it.infn.mw.iam.persistence.repository.IamAccountRepository;
@@ -29,10 +35,16 @@ public class DefaultPagedAccountsService implements PagedResourceService<IamAcco
   @Autowired
   private IamAccountRepository accountRepository;
 
+  @Autowired
+  private AccountSearchIndexService searchIndex;
+
+  @Autowired
+  private AccountSearchProperties searchProperties;
+
   @Override
   public Page<IamAccount> getPage(Pageable op) {
 
-    return accountRepository.findAll(op);
+    return accountRepository.findAllWithDetails(op);
   }
 
   @Override
@@ -44,13 +56,39 @@ public class DefaultPagedAccountsService implements PagedResourceService<IamAcco
   @Override
   public Page<IamAccount> getPage(Pageable op, String filter) {
 
-    return accountRepository.findByFilter(filter, op);
+    Set<String> ngrams = AccountSearchIndexService.ngrams(filter);
+
+    if (!useSearchIndex(ngrams)) {
+      return accountRepository.findByFilter(filter, op);
+    }
+
+    if (searchProperties.isApproximateCount()) {
+      Slice<IamAccount> slice =
+          accountRepository.findSliceByIndexedFilter(filter, ngrams, ngrams.size(), op);
+      return new PageImpl<>(slice.getContent(), op, searchIndex.countCandidates(ngrams));
+    }
+
+    return accountRepository.findByIndexedFilter(filter, ngrams, ngrams.size(), op);
   }
 
   @Override
   public long count(String filter) {
 
-    return accountRepository.countByFilter(filter);
+    Set<String> ngrams = AccountSearchIndexService.ngrams(filter);
+
+    if (!useSearchIndex(ngrams)) {
+      return accountRepository.countByFilter(filter);
+    }
+
+    if (searchProperties.isApproximateCount()) {
+      return searchIndex.countCandidates(ngrams);
+    }
+
+    return accountRepository.countByIndexedFilter(filter, ngrams, ngrams.size());
+  }
+
+  private boolean useSearchIndex(Set<String> ngrams) {
+    return searchProperties.isIndexed() && searchIndex.isReady() && !ngrams.isEmpty();
   }
 
 }
@@ -49,14 +49,23 @@ public class DefaultProxyCertificateService implements ProxyCertificateService {
   final IamAccountRepository accountRepository;
   final ProxyCertificateProperties properties;
   final ProxyHelperService proxyHelper;
+  final ProxyCredentialCache credentialCache;
 
-  @Autowired
   public DefaultProxyCertificateService(Clock clock, IamAccountRepository accountRepository,
       ProxyCertificateProperties properties, ProxyHelperService proxyHelper) {
+    this(clock, accountRepository, properties, proxyHelper,
+        new ProxyCredentialCache(proxyHelper, 0));
+  }
+
+  @Autowired
+  public DefaultProxyCertificateService(Clock clock, IamAccountRepository accountRepository,
+      ProxyCertificateProperties properties, ProxyHelperService proxyHelper,
+      ProxyCredentialCache credentialCache) {
     this.clock = clock;
     this.accountRepository = accountRepository;
     this.properties = properties;
     this.proxyHelper = proxyHelper;
+    this.credentialCache = credentialCache;
   }
 
   private IamAccount findAccountByPrincipal(Principal principal) {
@@ -145,7 +154,7 @@ public class DefaultProxyCertificateService implements ProxyCertificateService {
 
     long proxyLifetime = computeProxyLifetime(request);
 
-    PEMCredential pemCredential = proxyHelper.credentialFromPemString(proxy.getChain());
+    PEMCredential pemCredential = credentialCache.credentialFor(proxy);
     ProxyCertificate proxyCert = proxyHelper.generateProxy(pemCredential, proxyLifetime);
 
 
@@ -24,9 +24,48 @@ import org.springframework.context.annotation.Configuration;
 @Configuration
 public class ProxyCertificateProperties {
 
+  public static class KeyPairPoolProperties {
+
+    /**
+     * The number of key pairs kept ready for proxy generation; 0 disables the pool
+     */
+    private int size = 8;
+
+    private String algorithm = "RSA";
+
+    private int refillThreads = 1;
+
+    public int getSize() {
+      return size;
+    }
+
+    public void setSize(int size) {
+      this.size = size;
+    }
+
+    public String getAlgorithm() {
+      return algorithm;
+    }
+
+    public void setAlgorithm(String algorithm) {
+      this.algorithm = algorithm;
+    }
+
+    public int getRefillThreads() {
+      return refillThreads;
+    }
+
+    public void setRefillThreads(int refillThreads) {
+      this.refillThreads = refillThreads;
+    }
+  }
+
   private boolean enabled = true;
   private int keySize = 2048;
   private long maxLifetimeSeconds = TimeUnit.HOURS.toSeconds(12);
+  private int credentialCacheSize = 100;
+
+  private KeyPairPoolProperties keyPairPool = new KeyPairPoolProperties();
 
   public long getMaxLifetimeSeconds() {
     return maxLifetimeSeconds;
@@ -51,4 +90,20 @@ public class ProxyCertificateProperties {
   public void setEnabled(boolean enabled) {
     this.enabled = enabled;
   }
+
+  public int getCredentialCacheSize() {
+    return credentialCacheSize;
+  }
+
+  public void setCredentialCacheSize(int credentialCacheSize) {
+    this.credentialCacheSize = credentialCacheSize;
+  }
+
+  public KeyPairPoolProperties getKeyPairPool() {
+    return keyPairPool;
+  }
+
+  public void setKeyPairPool(KeyPairPoolProperties keyPairPool) {
+    this.keyPairPool = keyPairPool;
+  }
 }
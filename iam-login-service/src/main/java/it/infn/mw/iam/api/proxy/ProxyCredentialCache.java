@@ -0,0 +1,95 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.api.proxy;
+
+import static java.util.Objects.isNull;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import eu.emi.security.authn.x509.impl.PEMCredential;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import it.infn.mw.iam.persistence.model.IamX509ProxyCertificate;
+import it.infn.mw.iam.rcauth.x509.ProxyHelperService;
+
+/**
+ * A cache of the credentials parsed from the stored proxy certificates, keyed by proxy id and
+ * expiration time.
+ * 
+ * Since a stored proxy is updated in place when a new proxy is uploaded, a cached credential is
+ * returned only if it was parsed from the same PEM chain as the stored proxy. Cache statistics are
+ * exposed as Micrometer metrics named {@value #CACHE_NAME}.
+ */
+@Component
+public class ProxyCredentialCache {
+
+  public static final String CACHE_NAME = "iam.proxycert.credentials";
+
+  private static class CachedCredential {
+    final String chain;
+    final PEMCredential credential;
+
+    CachedCredential(String chain, PEMCredential credential) {
+      this.chain = chain;
+      this.credential = credential;
+    }
+  }
+
+  private final ProxyHelperService proxyHelper;
+  private final Cache<String, CachedCredential> credentials;
+
+  public ProxyCredentialCache(ProxyHelperService proxyHelper, long maximumSize) {
+    this.proxyHelper = proxyHelper;
+    this.credentials = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats().build();
+  }
+
+  @Autowired
+  public ProxyCredentialCache(ProxyHelperService proxyHelper,
+      ProxyCertificateProperties properties, MeterRegistry meterRegistry) {
+    this(proxyHelper, properties.getCredentialCacheSize());
+    GuavaCacheMetrics.monitor(meterRegistry, credentials, CACHE_NAME);
+  }
+
+  private static String cacheKey(IamX509ProxyCertificate proxy) {
+    return proxy.getId() + ":" + proxy.getExpirationTime().getTime();
+  }
+
+  public PEMCredential credentialFor(IamX509ProxyCertificate proxy) {
+
+    if (isNull(proxy.getId())) {
+      return proxyHelper.credentialFromPemString(proxy.getChain());
+    }
+
+    String key = cacheKey(proxy);
+    CachedCredential cached = credentials.getIfPresent(key);
+
+    if (!isNull(cached) && cached.chain.equals(proxy.getChain())) {
+      return cached.credential;
+    }
+
+    PEMCredential credential = proxyHelper.credentialFromPemString(proxy.getChain());
+    credentials.put(key, new CachedCredential(proxy.getChain(), credential));
+    return credential;
+  }
+
+  public long getSize() {
+    return credentials.size();
+  }
+}
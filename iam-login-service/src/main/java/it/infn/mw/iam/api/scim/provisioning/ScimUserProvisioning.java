@@ -189,7 +189,7 @@ public class ScimUserProvisioning
 
       OffsetPageable op = new OffsetPageable(params.getStartIndex(), params.getCount());
 
-      Page<IamAccount> results = accountRepository.findAll(op);
+      Page<IamAccount> results = accountRepository.findAllWithDetails(op);
 
       List<ScimUser> resources = new ArrayList<>();
 
@@ -0,0 +1,175 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.audit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.infn.mw.iam.audit.AuditProperties.OverflowPolicy;
+
+/**
+ * Hands audit events over to a dedicated writer thread.
+ * 
+ * Events are serialized by the writer thread, so that the submitting thread only pays for the
+ * copy of the event metadata. Events are kept in a lock-free queue bounded by
+ * {@code audit.queue-capacity}; the writer thread drains it in batches of at most
+ * {@code audit.batch-size} events and passes each batch to the configured consumer. When the
+ * queue is full, events are either dropped or handled by the submitting thread, depending on
+ * {@code audit.overflow-policy}. Dropped events are counted by the
+ * {@value #DROPPED_EVENTS_METRIC} Micrometer counter, and reported in the log at most once every
+ * {@value #DROP_WARNING_INTERVAL_MSEC} msecs.
+ */
+public class AsyncAuditEventWriter {
+
+  public static final Logger LOG = LoggerFactory.getLogger(AsyncAuditEventWriter.class);
+
+  public static final String QUEUE_DEPTH_METRIC = "iam.audit.queue.depth";
+  public static final String DROPPED_EVENTS_METRIC = "iam.audit.events.dropped";
+  public static final long DROP_WARNING_INTERVAL_MSEC = 60000;
+
+  private final AuditProperties properties;
+  private final Consumer<List<SerializedAuditEvent>> batchConsumer;
+
+  private final Queue<SerializedAuditEvent> queue = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger depth = new AtomicInteger();
+  private final Counter droppedEvents;
+  private final AtomicLong lastDropWarningTime = new AtomicLong();
+  private final AtomicLong droppedSinceLastWarning = new AtomicLong();
+  private final Thread writerThread;
+
+  private volatile boolean running = true;
+
+  public AsyncAuditEventWriter(AuditProperties properties,
+      Consumer<List<SerializedAuditEvent>> batchConsumer, MeterRegistry meterRegistry) {
+    this.properties = properties;
+    this.batchConsumer = batchConsumer;
+    this.droppedEvents = meterRegistry.counter(DROPPED_EVENTS_METRIC);
+    meterRegistry.gauge(QUEUE_DEPTH_METRIC, depth);
+
+    writerThread = new Thread(this::writeLoop, "audit-writer");
+    writerThread.setDaemon(true);
+    writerThread.start();
+  }
+
+  public void submit(SerializedAuditEvent event) {
+
+    int currentDepth = depth.incrementAndGet();
+
+    if (!running || currentDepth > properties.getQueueCapacity()) {
+      depth.decrementAndGet();
+      handleOverflow(event);
+      return;
+    }
+
+    queue.offer(event);
+
+    if (currentDepth == 1) {
+      LockSupport.unpark(writerThread);
+    }
+  }
+
+  private void handleOverflow(SerializedAuditEvent event) {
+    if (running && OverflowPolicy.DROP.equals(properties.getOverflowPolicy())) {
+      droppedEvents.increment();
+      droppedSinceLastWarning.incrementAndGet();
+      warnAboutDroppedEvents();
+    } else {
+      batchConsumer.accept(List.of(event));
+    }
+  }
+
+  private void warnAboutDroppedEvents() {
+    long now = System.currentTimeMillis();
+    long lastWarningTime = lastDropWarningTime.get();
+
+    if (now - lastWarningTime >= DROP_WARNING_INTERVAL_MSEC
+        && lastDropWarningTime.compareAndSet(lastWarningTime, now)) {
+      LOG.warn("Audit event queue full, {} events dropped since last warning",
+          droppedSinceLastWarning.getAndSet(0));
+    }
+  }
+
+  private List<SerializedAuditEvent> drainBatch() {
+    List<SerializedAuditEvent> batch = new ArrayList<>();
+    SerializedAuditEvent event;
+
+    while (batch.size() < properties.getBatchSize() && (event = queue.poll()) != null) {
+      depth.decrementAndGet();
+      batch.add(event);
+    }
+
+    return batch;
+  }
+
+  private void writeLoop() {
+
+    while (running || !queue.isEmpty()) {
+      List<SerializedAuditEvent> batch = drainBatch();
+
+      if (batch.isEmpty()) {
+        LockSupport
+          .parkNanos(TimeUnit.MILLISECONDS.toNanos(properties.getFlushIntervalMillis()));
+        continue;
+      }
+
+      try {
+        batchConsumer.accept(batch);
+      } catch (RuntimeException e) {
+        LOG.error("Error writing {} audit events: {}", batch.size(), e.getMessage(), e);
+      }
+    }
+  }
+
+  public int getQueueDepth() {
+    return depth.get();
+  }
+
+  public double getDroppedEvents() {
+    return droppedEvents.count();
+  }
+
+  /**
+   * Stops accepting events and waits for the writer thread to drain the queue; events submitted
+   * afterwards are handled by the submitting thread.
+   */
+  public void shutdown() throws InterruptedException {
+    running = false;
+    LockSupport.unpark(writerThread);
+    writerThread.join(properties.getShutdownTimeoutMillis());
+
+    if (!writerThread.isAlive()) {
+      List<SerializedAuditEvent> batch;
+      while (!(batch = drainBatch()).isEmpty()) {
+        batchConsumer.accept(batch);
+      }
+    } else {
+      LOG.warn("Audit writer did not terminate in {} msecs, {} events not written",
+          properties.getShutdownTimeoutMillis(), depth.get());
+    }
+  }
+}
@@ -0,0 +1,115 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.audit;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "audit")
+public class AuditProperties {
+
+  public enum OverflowPolicy {
+    /**
+     * Events submitted while the queue is full are dropped
+     */
+    DROP,
+    /**
+     * Events submitted while the queue is full are serialized and written by the submitting thread
+     */
+    CALLER_RUNS
+  }
+
+  /**
+   * When true, audit events are serialized and written by a dedicated writer thread instead of
+   * the thread that raised them
+   */
+  private boolean async = false;
+
+  /**
+   * Maximum number of audit events waiting to be written
+   */
+  private int queueCapacity = 10000;
+
+  /**
+   * Maximum number of audit events written to the sinks in a single batch
+   */
+  private int batchSize = 100;
+
+  /**
+   * Maximum time, in milliseconds, the writer thread waits for new events before checking the
+   * queue again
+   */
+  private long flushIntervalMillis = 1000;
+
+  /**
+   * What to do with events submitted while the queue is full
+   */
+  private OverflowPolicy overflowPolicy = OverflowPolicy.CALLER_RUNS;
+
+  /**
+   * Maximum time, in milliseconds, given to the writer thread to drain the queue at shutdown
+   */
+  private long shutdownTimeoutMillis = 5000;
+
+  public boolean isAsync() {
+    return async;
+  }
+
+  public void setAsync(boolean async) {
+    this.async = async;
+  }
+
+  public int getQueueCapacity() {
+    return queueCapacity;
+  }
+
+  public void setQueueCapacity(int queueCapacity) {
+    this.queueCapacity = queueCapacity;
+  }
+
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  public void setBatchSize(int batchSize) {
+    this.batchSize = batchSize;
+  }
+
+  public long getFlushIntervalMillis() {
+    return flushIntervalMillis;
+  }
+
+  public void setFlushIntervalMillis(long flushIntervalMillis) {
+    this.flushIntervalMillis = flushIntervalMillis;
+  }
+
+  public OverflowPolicy getOverflowPolicy() {
+    return overflowPolicy;
+  }
+
+  public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+    this.overflowPolicy = overflowPolicy;
+  }
+
+  public long getShutdownTimeoutMillis() {
+    return shutdownTimeoutMillis;
+  }
+
+  public void setShutdownTimeoutMillis(long shutdownTimeoutMillis) {
+    this.shutdownTimeoutMillis = shutdownTimeoutMillis;
+  }
+}
@@ -15,44 +15,88 @@
  */
 package it.infn.mw.iam.audit;
 
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.Marker;
 import org.slf4j.MarkerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import it.infn.mw.iam.audit.events.IamAuditApplicationEvent;
 
 @Component
-public class IamAuditEventLogger implements AuditEventLogger {
+public class IamAuditEventLogger implements AuditEventLogger, DisposableBean {
   
   public static final String AUDIT_MARKER_STRING = "AUDIT";
   public static final Marker AUDIT_MARKER = MarkerFactory.getMarker(AUDIT_MARKER_STRING);
   
   public static final Logger LOG = LoggerFactory.getLogger(AUDIT_MARKER_STRING);
+  private static final Logger SINK_ERROR_LOG = LoggerFactory.getLogger(IamAuditEventLogger.class);
+
   final AuditDataSerializer serializer;
+  final List<AuditEventSink> sinks;
+  final AsyncAuditEventWriter writer;
   
-  private IamAuditApplicationEvent lastEvent;
+  private final AtomicReference<IamAuditApplicationEvent> lastEvent = new AtomicReference<>();
   
   @Autowired
-  public IamAuditEventLogger(AuditDataSerializer serializer) {
+  public IamAuditEventLogger(AuditDataSerializer serializer, ObjectProvider<AuditEventSink> sinks,
+      AuditProperties properties, MeterRegistry meterRegistry) {
     this.serializer = serializer;
+    this.sinks = sinks.orderedStream().collect(Collectors.toList());
+    this.writer = properties.isAsync()
+        ? new AsyncAuditEventWriter(properties, this::writeEvents, meterRegistry)
+        : null;
   }
 
   @Override
   public void logAuditEvent(IamAuditApplicationEvent event) {
-    lastEvent = event;
-    if (LOG.isInfoEnabled()){
-      final String serializedEvent = serializer.serialize(event);
-      LOG.info(AUDIT_MARKER, serializedEvent);
+    lastEvent.set(event);
+
+    if (sinks.stream().noneMatch(AuditEventSink::isEnabled)) {
+      return;
+    }
+
+    // Only the event metadata is copied here, the event is serialized by the writer thread
+    SerializedAuditEvent serializedEvent = new SerializedAuditEvent(event, serializer);
+
+    if (writer != null) {
+      writer.submit(serializedEvent);
+    } else {
+      writeEvents(List.of(serializedEvent));
+    }
+  }
+
+  private void writeEvents(List<SerializedAuditEvent> serializedEvents) {
+    for (AuditEventSink sink : sinks) {
+      if (!sink.isEnabled()) {
+        continue;
+      }
+
+      try {
+        sink.write(serializedEvents);
+      } catch (RuntimeException e) {
+        SINK_ERROR_LOG.error("Error writing audit events to {}: {}",
+            sink.getClass().getSimpleName(), e.getMessage(), e);
+      }
     }
   }
   
   public IamAuditApplicationEvent getLastEvent() {
-    IamAuditApplicationEvent e = lastEvent;
-    lastEvent = null;
-    return e;
+    return lastEvent.getAndSet(null);
   }
 
+  @Override
+  public void destroy() throws Exception {
+    if (writer != null) {
+      writer.shutdown();
+    }
+  }
 }
@@ -0,0 +1,140 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.audit;
+
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import it.infn.mw.iam.core.lock.TaskLockService;
+
+/**
+ * Stores audit events in the local {@code iam_audit_event} table, one batch insert per batch of
+ * events.
+ * 
+ * Events older than {@code audit.jdbc-sink.retention-days} are periodically removed, oldest
+ * first, in batches of at most {@code audit.jdbc-sink.cleanup-batch-size} events. A removal run
+ * is executed by one IAM instance at a time, guarded by a cluster-wide {@link TaskLockService}
+ * lock.
+ */
+@Component
+@ConditionalOnProperty(name = "audit.jdbc-sink.enabled", havingValue = "true")
+public class JdbcAuditEventSink implements AuditEventSink {
+
+  public static final String AUDIT_CLEANUP_LOCK = "audit-event-cleanup";
+
+  public static final String INSERT_EVENT_SQL =
+      "INSERT INTO iam_audit_event (event_time, category, event_type, principal, event_data) "
+          + "VALUES (?, ?, ?, ?, ?)";
+
+  public static final String SELECT_OLD_EVENTS_SQL =
+      "SELECT ID FROM iam_audit_event WHERE event_time < :before "
+          + "ORDER BY event_time LIMIT :limit";
+
+  public static final String DELETE_EVENTS_SQL = "DELETE FROM iam_audit_event WHERE ID IN (:ids)";
+
+  public static final Logger LOG = LoggerFactory.getLogger(JdbcAuditEventSink.class);
+
+  private final NamedParameterJdbcTemplate jdbcTemplate;
+  private final TaskLockService lockService;
+  private final Clock clock;
+  private final Duration retention;
+  private final int cleanupBatchSize;
+  private final int cleanupMaxBatchesPerRun;
+  private final Duration cleanupLockTimeout;
+
+  public JdbcAuditEventSink(NamedParameterJdbcTemplate jdbcTemplate, TaskLockService lockService,
+      Clock clock, @Value("${audit.jdbc-sink.retention-days:90}") long retentionDays,
+      @Value("${audit.jdbc-sink.cleanup-batch-size:1000}") int cleanupBatchSize,
+      @Value("${audit.jdbc-sink.cleanup-max-batches-per-run:1000}") int cleanupMaxBatchesPerRun,
+      @Value("${audit.jdbc-sink.cleanup-lock-timeout-secs:3600}") long cleanupLockTimeoutSecs) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.lockService = lockService;
+    this.clock = clock;
+    this.retention = Duration.ofDays(retentionDays);
+    this.cleanupBatchSize = cleanupBatchSize;
+    this.cleanupMaxBatchesPerRun = cleanupMaxBatchesPerRun;
+    this.cleanupLockTimeout = Duration.ofSeconds(cleanupLockTimeoutSecs);
+  }
+
+  @Override
+  public void write(List<SerializedAuditEvent> events) {
+    jdbcTemplate.getJdbcOperations()
+      .batchUpdate(INSERT_EVENT_SQL, events.stream()
+        .map(e -> new Object[] {new Timestamp(e.getTimestamp()), e.getCategory(), e.getType(),
+            e.getPrincipal(), e.getJson()})
+        .collect(Collectors.toList()));
+  }
+
+  @Scheduled(fixedDelayString = "${audit.jdbc-sink.cleanup-period-msec:3600000}",
+      initialDelayString = "${audit.jdbc-sink.cleanup-period-msec:3600000}")
+  public void deleteExpiredEvents() {
+    int deleted = deleteEventsOlderThan(clock.instant().minus(retention));
+
+    if (deleted > 0) {
+      LOG.info("Removed {} audit events older than {} days", deleted, retention.toDays());
+    }
+  }
+
+  /**
+   * Removes the events older than the given instant, unless another IAM instance is already
+   * removing events, and returns the number of removed events
+   */
+  public int deleteEventsOlderThan(Instant instant) {
+
+    if (!lockService.tryLock(AUDIT_CLEANUP_LOCK, cleanupLockTimeout)) {
+      LOG.debug("Audit event cleanup is running on another IAM instance, skipping");
+      return 0;
+    }
+
+    try {
+      MapSqlParameterSource params = new MapSqlParameterSource("before", Timestamp.from(instant))
+        .addValue("limit", cleanupBatchSize);
+      int deleted = 0;
+
+      for (int i = 0; i < cleanupMaxBatchesPerRun; i++) {
+        List<Long> eventIds = jdbcTemplate.queryForList(SELECT_OLD_EVENTS_SQL, params, Long.class);
+
+        if (eventIds.isEmpty()) {
+          break;
+        }
+
+        deleted +=
+            jdbcTemplate.update(DELETE_EVENTS_SQL, new MapSqlParameterSource("ids", eventIds));
+
+        if (eventIds.size() < cleanupBatchSize) {
+          break;
+        }
+      }
+
+      return deleted;
+    } finally {
+      lockService.unlock(AUDIT_CLEANUP_LOCK);
+    }
+  }
+}
@@ -0,0 +1,46 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.audit;
+
+import static it.infn.mw.iam.audit.IamAuditEventLogger.AUDIT_MARKER;
+import static it.infn.mw.iam.audit.IamAuditEventLogger.LOG;
+
+import java.util.List;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Writes audit events to the {@value IamAuditEventLogger#AUDIT_MARKER_STRING} logger, which can be
+ * routed to a dedicated rolling file appender by the logging configuration.
+ */
+@Component
+@ConditionalOnProperty(name = "audit.log-sink.enabled", havingValue = "true",
+    matchIfMissing = true)
+public class LoggingAuditEventSink implements AuditEventSink {
+
+  @Override
+  public boolean isEnabled() {
+    return LOG.isInfoEnabled();
+  }
+
+  @Override
+  public void write(List<SerializedAuditEvent> events) {
+    for (SerializedAuditEvent e : events) {
+      LOG.info(AUDIT_MARKER, e.getJson());
+    }
+  }
+}
@@ -0,0 +1,68 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.audit;
+
+import java.util.function.Supplier;
+
+import com.google.common.base.Suppliers;
+
+import it.infn.mw.iam.audit.events.IamAuditApplicationEvent;
+
+/**
+ * An audit event handed over to the audit sinks. The cheap, immutable fields of the event are
+ * copied by the thread that raised it, while the JSON representation is produced the first time
+ * it is requested, i.e. by the audit writer thread when events are written asynchronously.
+ */
+public class SerializedAuditEvent {
+
+  private final long timestamp;
+  private final String category;
+  private final String type;
+  private final String principal;
+  private final Supplier<String> json;
+
+  public SerializedAuditEvent(IamAuditApplicationEvent event, AuditDataSerializer serializer) {
+    this.timestamp = event.getTimestamp();
+    this.category = event.getCategory().name();
+    this.type = event.getClass().getSimpleName();
+    this.principal = event.getPrincipal();
+    this.json = Suppliers.memoize(() -> serializer.serialize(event));
+  }
+
+  public SerializedAuditEvent(IamAuditApplicationEvent event, String json) {
+    this(event, e -> json);
+  }
+
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  public String getCategory() {
+    return category;
+  }
+
+  public String getType() {
+    return type;
+  }
+
+  public String getPrincipal() {
+    return principal;
+  }
+
+  public String getJson() {
+    return json.get();
+  }
+}
@@ -0,0 +1,43 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.audit.events.group;
+
+import java.util.List;
+
+import it.infn.mw.iam.persistence.model.IamGroup;
+
+public abstract class GroupMembersEvent extends GroupEvent {
+
+  private static final long serialVersionUID = 1L;
+
+  private final List<String> accountUuids;
+  private final int membershipCount;
+
+  public GroupMembersEvent(Object source, IamGroup group, List<String> accountUuids,
+      int membershipCount, String message) {
+    super(source, group, message);
+    this.accountUuids = accountUuids;
+    this.membershipCount = membershipCount;
+  }
+
+  public List<String> getAccountUuids() {
+    return accountUuids;
+  }
+
+  public int getMembershipCount() {
+    return membershipCount;
+  }
+}
@@ -0,0 +1,36 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.audit.events.group;
+
+import static java.lang.String.format;
+
+import java.util.List;
+
+import it.infn.mw.iam.persistence.model.IamGroup;
+
+public class GroupMembersRemovedEvent extends GroupMembersEvent {
+
+  private static final long serialVersionUID = 1L;
+
+  public static final String MESSAGE =
+      "%d accounts removed from group '%s' and its subgroups (%d memberships)";
+
+  public GroupMembersRemovedEvent(Object source, IamGroup group, List<String> accountUuids,
+      int membershipCount) {
+    super(source, group, accountUuids, membershipCount,
+        format(MESSAGE, accountUuids.size(), group.getName(), membershipCount));
+  }
+}
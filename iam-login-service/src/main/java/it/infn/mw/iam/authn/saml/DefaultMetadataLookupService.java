@@ -20,19 +20,13 @@ import static com.google.common.base.Strings.isNullOrEmpty;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.function.Predicate;
-import java.util.stream.Collectors;
 
 import org.opensaml.common.xml.SAMLConstants;
 import org.opensaml.saml2.metadata.EntityDescriptor;
 import org.opensaml.saml2.metadata.IDPSSODescriptor;
-import org.opensaml.saml2.metadata.LocalizedString;
 import org.opensaml.saml2.metadata.provider.MetadataProvider;
 import org.opensaml.saml2.metadata.provider.MetadataProviderException;
 import org.opensaml.saml2.metadata.provider.ObservableMetadataProvider;
@@ -57,8 +51,7 @@ public class DefaultMetadataLookupService
   private static final int MAX_RESULTS = 20;
   private static final Logger LOG = LoggerFactory.getLogger(DefaultMetadataLookupService.class);
 
-  Set<IdpDescription> descriptions = new HashSet<>();
-  ReadWriteLock lock = new ReentrantReadWriteLock(true);
+  private volatile IdpSearchIndex searchIndex = IdpSearchIndex.EMPTY;
 
   MetadataManager metadataManager;
 
@@ -74,7 +67,7 @@ public class DefaultMetadataLookupService
     final Instant startTime = Instant.now();
     LOG.debug("Initializing IdP descriptor list from metadata");
 
-    Set<IdpDescription> newDescriptions = new HashSet<>();
+    List<IdpDescription> newDescriptions = new ArrayList<>();
 
     for (String idpName : metadataManager.getIDPEntityNames()) {
 
@@ -85,14 +78,10 @@ public class DefaultMetadataLookupService
       newDescriptions.add(idpDescription);
     }
 
-    try {
-      lock.writeLock().lock();
-      descriptions = newDescriptions;
-    } finally {
-      lock.writeLock().unlock();
-      final Duration d = Duration.between(startTime, Instant.now());
-      LOG.debug("Idp descriptor list initialization took {} msec", d.toMillis());
-    }
+    searchIndex = IdpSearchIndex.build(newDescriptions);
+
+    final Duration d = Duration.between(startTime, Instant.now());
+    LOG.debug("Idp descriptor list initialization took {} msec", d.toMillis());
 
   }
 
@@ -125,68 +114,18 @@ public class DefaultMetadataLookupService
   }
 
 
-  private Optional<List<IdpDescription>> lookupByEntityId(String text) {
-    // Try entityId match
-    try {
-
-      EntityDescriptor entityDescriptor = metadataManager.getEntityDescriptor(text);
-      if (entityDescriptor != null) {
-        return Optional.of(List.of(descriptionFromMetadata(entityDescriptor)));
-      }
-
-    } catch (MetadataProviderException e) {
-      throw new SamlMetadataError(e.getMessage(), e);
-    }
-
-    return Optional.empty();
-  }
-
   @Override
   public List<IdpDescription> lookupIdp(String text) {
 
-    List<IdpDescription> result = new ArrayList<>();
-    String textToFind = text.toLowerCase();
-
-    Predicate<IdpDescription> filterForDescriptions = description -> {
-      if (description.getDisplayNames() != null) {
-        return description.getDisplayNames()
-          .stream()
-          .anyMatch(name -> name.getLocalString().toLowerCase().contains(textToFind));
-      } else {
-        return description.getEntityId().toLowerCase().contains(textToFind);
-      }
-    };
+    IdpSearchIndex index = searchIndex;
 
-    lookupByEntityId(text).ifPresent(result::addAll);
+    Optional<IdpDescription> entityIdMatch = index.lookupByEntityId(text);
 
-    if (!result.isEmpty()) {
-      return result;
+    if (entityIdMatch.isPresent()) {
+      return List.of(entityIdMatch.get());
     }
 
-    try {
-      lock.readLock().lock();
-
-      return descriptions.stream()
-        .filter(filterForDescriptions)
-        .limit(MAX_RESULTS)
-        .map(description -> {
-          List<LocalizedString> displayNames = description.getDisplayNames();
-          if (displayNames != null) {
-            
-            for (LocalizedString displayName : displayNames) {
-              String localString = displayName.getLocalString();
-              if (localString.toLowerCase().contains(textToFind)) {
-                description.setOrganizationName(localString);
-                break;
-              }
-            }
-          }
-          return description;
-        })
-        .collect(Collectors.toList());
-    } finally {
-      lock.readLock().unlock();
-    }
+    return index.lookup(text, MAX_RESULTS);
   }
 
   @Override
@@ -22,6 +22,7 @@ import org.opensaml.saml2.metadata.provider.MetadataFilter;
 import org.opensaml.saml2.metadata.provider.MetadataFilterChain;
 import org.opensaml.saml2.metadata.provider.MetadataProvider;
 import org.opensaml.saml2.metadata.provider.MetadataProviderException;
+import org.opensaml.saml2.metadata.provider.ObservableMetadataProvider;
 import org.opensaml.saml2.metadata.provider.SignatureValidationFilter;
 import org.opensaml.xml.signature.SignatureTrustEngine;
 import org.slf4j.Logger;
@@ -38,6 +39,26 @@ public class IamCachingMetadataManager extends CachingMetadataManager {
     super(providers);
   }
 
+  /**
+   * Refreshes the metadata and, when a refresh was actually required, notifies the observers of
+   * this manager, so that they can rebuild whatever they derived from the set of known entities
+   */
+  @Override
+  public void refreshMetadata() {
+
+    boolean refreshRequired = isRefreshRequired();
+
+    super.refreshMetadata();
+
+    if (refreshRequired) {
+      for (ObservableMetadataProvider.Observer observer : new ArrayList<>(getObservers())) {
+        if (observer != null) {
+          observer.onEvent(this);
+        }
+      }
+    }
+  }
+
   @Override
   protected void initializeProviderFilters(ExtendedMetadataDelegate p)
       throws MetadataProviderException {
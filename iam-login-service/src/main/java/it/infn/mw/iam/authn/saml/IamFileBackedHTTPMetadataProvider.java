@@ -0,0 +1,98 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.authn.saml;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Timer;
+
+import org.apache.commons.httpclient.HttpClient;
+import org.joda.time.DateTime;
+import org.opensaml.saml2.metadata.provider.FileBackedHTTPMetadataProvider;
+import org.opensaml.saml2.metadata.provider.MetadataProviderException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link FileBackedHTTPMetadataProvider} that can be initialized from its backup file.
+ * 
+ * When background initialization is enabled and a non-empty backup file exists, the first
+ * metadata fetch reads the backup file instead of the remote URL, and the first refresh, which
+ * fetches and validates the remote metadata, is scheduled on the metadata fetch timer after the
+ * given delay. Backup metadata goes through the same signature and metadata filters as remote
+ * metadata.
+ */
+public class IamFileBackedHTTPMetadataProvider extends FileBackedHTTPMetadataProvider {
+
+  public static final Logger LOG = LoggerFactory.getLogger(IamFileBackedHTTPMetadataProvider.class);
+
+  private final String metadataUrl;
+  private final File backupFile;
+  private final boolean backgroundInitialization;
+  private final long backgroundRefreshDelayMsec;
+
+  private boolean firstFetch = true;
+  private boolean lastFetchFromBackup = false;
+
+  public IamFileBackedHTTPMetadataProvider(Timer backgroundTaskTimer, HttpClient client,
+      String metadataURL, String backupFilePath, boolean backgroundInitialization,
+      long backgroundRefreshDelayMsec) throws MetadataProviderException {
+    super(backgroundTaskTimer, client, metadataURL, backupFilePath);
+    this.metadataUrl = metadataURL;
+    this.backupFile = new File(backupFilePath);
+    this.backgroundInitialization = backgroundInitialization;
+    this.backgroundRefreshDelayMsec = backgroundRefreshDelayMsec;
+  }
+
+  @Override
+  protected byte[] fetchMetadata() throws MetadataProviderException {
+
+    boolean initialFetch = firstFetch;
+    firstFetch = false;
+    lastFetchFromBackup = false;
+
+    if (initialFetch && backgroundInitialization && backupFile.isFile()
+        && backupFile.length() > 0) {
+      try {
+        byte[] metadata = Files.readAllBytes(backupFile.toPath());
+        lastFetchFromBackup = true;
+        LOG.info("Metadata for {} loaded from backup file {}, remote metadata will be fetched "
+            + "in {} msec", metadataUrl, backupFile, backgroundRefreshDelayMsec);
+        return metadata;
+      } catch (IOException e) {
+        LOG.warn("Error reading metadata backup file {}, fetching metadata from {}: {}",
+            backupFile, metadataUrl, e.getMessage());
+      }
+    }
+
+    return super.fetchMetadata();
+  }
+
+  @Override
+  protected long computeNextRefreshDelay(DateTime expectedExpiration) {
+
+    if (lastFetchFromBackup) {
+      return backgroundRefreshDelayMsec;
+    }
+
+    return super.computeNextRefreshDelay(expectedExpiration);
+  }
+
+  public boolean isLastFetchFromBackup() {
+    return lastFetchFromBackup;
+  }
+}
@@ -0,0 +1,255 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.authn.saml;
+
+import static java.util.Objects.isNull;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+import org.opensaml.saml2.metadata.LocalizedString;
+
+import it.infn.mw.iam.authn.saml.model.IdpDescription;
+
+/**
+ * An immutable search index over the IdP descriptions extracted from SAML metadata.
+ * 
+ * Each IdP is searchable by its localized display names or, when it has none, by its entity id.
+ * Names are normalized (lowercased, diacritics removed) and every substring up to
+ * {@value #MAX_NGRAM_LENGTH} characters long is mapped to the IdPs whose names contain it. A
+ * lookup reads the postings of the query n-grams and verifies only the IdPs found there.
+ * 
+ * Results are ranked: exact name matches first, then prefix matches, then matches at the start of
+ * a word, then any other substring match; IdPs with the same rank are ordered by name.
+ */
+public final class IdpSearchIndex {
+
+  public static final int MAX_NGRAM_LENGTH = 3;
+
+  private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+
+  private static final int EXACT_MATCH = 0;
+  private static final int PREFIX_MATCH = 1;
+  private static final int WORD_PREFIX_MATCH = 2;
+  private static final int SUBSTRING_MATCH = 3;
+  private static final int NO_MATCH = 4;
+
+  public static final IdpSearchIndex EMPTY = build(Collections.emptyList());
+
+  private static final class Entry {
+
+    private final IdpDescription description;
+    private final List<String> names = new ArrayList<>();
+    private final List<String> normalizedNames = new ArrayList<>();
+
+    private Entry(IdpDescription description) {
+      this.description = description;
+
+      if (isNull(description.getDisplayNames())) {
+        addName(description.getEntityId());
+      } else {
+        for (LocalizedString name : description.getDisplayNames()) {
+          addName(name.getLocalString());
+        }
+      }
+    }
+
+    private void addName(String name) {
+      if (!isNull(name)) {
+        names.add(name);
+        normalizedNames.add(normalize(name));
+      }
+    }
+  }
+
+  private final List<Entry> entries;
+  private final Map<String, Entry> entriesByEntityId;
+  private final Map<String, int[]> postings;
+
+  private IdpSearchIndex(List<Entry> entries) {
+    this.entries = entries;
+    this.entriesByEntityId = new HashMap<>();
+
+    Map<String, List<Integer>> ngramEntries = new HashMap<>();
+
+    for (int i = 0; i < entries.size(); i++) {
+      Entry e = entries.get(i);
+      entriesByEntityId.put(e.description.getEntityId(), e);
+
+      for (String name : e.normalizedNames) {
+        for (int start = 0; start < name.length(); start++) {
+          int maxEnd = Math.min(name.length(), start + MAX_NGRAM_LENGTH);
+          for (int end = start + 1; end <= maxEnd; end++) {
+            List<Integer> ids =
+                ngramEntries.computeIfAbsent(name.substring(start, end), k -> new ArrayList<>());
+            if (ids.isEmpty() || ids.get(ids.size() - 1) != i) {
+              ids.add(i);
+            }
+          }
+        }
+      }
+    }
+
+    this.postings = new HashMap<>(ngramEntries.size());
+    ngramEntries.forEach(
+        (ngram, ids) -> postings.put(ngram, ids.stream().mapToInt(Integer::intValue).toArray()));
+  }
+
+  public static String normalize(String text) {
+    return DIACRITICS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD))
+      .replaceAll("")
+      .toLowerCase(Locale.ROOT);
+  }
+
+  public static IdpSearchIndex build(Collection<IdpDescription> descriptions) {
+
+    List<Entry> entries = new ArrayList<>(descriptions.size());
+    descriptions.forEach(d -> entries.add(new Entry(d)));
+
+    entries.sort(Comparator
+      .comparing((Entry e) -> normalize(String.valueOf(e.description.getOrganizationName())))
+      .thenComparing(e -> e.description.getEntityId()));
+
+    return new IdpSearchIndex(entries);
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  public Optional<IdpDescription> lookupByEntityId(String entityId) {
+    return Optional.ofNullable(entriesByEntityId.get(entityId))
+      .map(e -> copyOf(e.description, e.description.getOrganizationName()));
+  }
+
+  public List<IdpDescription> lookup(String text, int maxResults) {
+
+    String query = normalize(text);
+
+    List<List<IdpDescription>> rankedResults = new ArrayList<>(NO_MATCH);
+    for (int i = 0; i < NO_MATCH; i++) {
+      rankedResults.add(new ArrayList<>());
+    }
+
+    for (int i : candidates(query)) {
+      Entry e = entries.get(i);
+
+      int bestRank = NO_MATCH;
+      String bestName = null;
+
+      for (int n = 0; n < e.normalizedNames.size(); n++) {
+        int rank = rank(e.normalizedNames.get(n), query);
+        if (rank < bestRank) {
+          bestRank = rank;
+          bestName = e.names.get(n);
+        }
+      }
+
+      if (bestRank < NO_MATCH) {
+        String organizationName =
+            isNull(e.description.getDisplayNames()) ? e.description.getOrganizationName()
+                : bestName;
+        rankedResults.get(bestRank).add(copyOf(e.description, organizationName));
+
+        if (rankedResults.get(EXACT_MATCH).size() >= maxResults) {
+          break;
+        }
+      }
+    }
+
+    List<IdpDescription> results = new ArrayList<>(maxResults);
+    for (List<IdpDescription> r : rankedResults) {
+      for (IdpDescription d : r) {
+        if (results.size() >= maxResults) {
+          return results;
+        }
+        results.add(d);
+      }
+    }
+    return results;
+  }
+
+  private int[] candidates(String query) {
+
+    if (query.isEmpty()) {
+      int[] all = new int[entries.size()];
+      for (int i = 0; i < all.length; i++) {
+        all[i] = i;
+      }
+      return all;
+    }
+
+    if (query.length() <= MAX_NGRAM_LENGTH) {
+      return postings.getOrDefault(query, new int[0]);
+    }
+
+    int[] smallest = null;
+
+    for (int start = 0; start + MAX_NGRAM_LENGTH <= query.length(); start++) {
+      int[] p = postings.get(query.substring(start, start + MAX_NGRAM_LENGTH));
+
+      if (isNull(p)) {
+        return new int[0];
+      }
+
+      if (isNull(smallest) || p.length < smallest.length) {
+        smallest = p;
+      }
+    }
+
+    return smallest;
+  }
+
+  private static int rank(String name, String query) {
+
+    int index = name.indexOf(query);
+
+    if (index < 0) {
+      return NO_MATCH;
+    }
+
+    if (index == 0) {
+      return name.length() == query.length() ? EXACT_MATCH : PREFIX_MATCH;
+    }
+
+    while (index > 0) {
+      if (!Character.isLetterOrDigit(name.charAt(index - 1))) {
+        return WORD_PREFIX_MATCH;
+      }
+      index = name.indexOf(query, index + 1);
+    }
+
+    return SUBSTRING_MATCH;
+  }
+
+  private static IdpDescription copyOf(IdpDescription description, String organizationName) {
+    IdpDescription copy = new IdpDescription();
+    copy.setEntityId(description.getEntityId());
+    copy.setOrganizationName(organizationName);
+    copy.setImageUrl(description.getImageUrl());
+    copy.setDisplayNames(description.getDisplayNames());
+    return copy;
+  }
+}
@@ -57,6 +57,7 @@ import it.infn.mw.iam.api.account.AccountUtils;
 import it.infn.mw.iam.authn.ExternalAuthenticationInfoProcessor;
 import it.infn.mw.iam.core.oauth.IamIntrospectionResultAssembler;
 import it.infn.mw.iam.core.oauth.attributes.AttributeMapHelper;
+import it.infn.mw.iam.core.oauth.profile.CachingJWTProfileResolver;
 import it.infn.mw.iam.core.oauth.profile.IDTokenCustomizer;
 import it.infn.mw.iam.core.oauth.profile.IamTokenEnhancer;
 import it.infn.mw.iam.core.oauth.profile.IntrospectionResultHelper;
@@ -94,6 +95,7 @@ import it.infn.mw.iam.core.oauth.scope.matchers.DefaultScopeMatcherRegistry;
 import it.infn.mw.iam.core.oauth.scope.matchers.ScopeMatcherRegistry;
 import it.infn.mw.iam.core.oauth.scope.matchers.ScopeMatchersProperties;
 import it.infn.mw.iam.core.oauth.scope.matchers.ScopeMatchersPropertiesParser;
+import it.infn.mw.iam.core.oauth.scope.matchers.SystemScopeIndex;
 import it.infn.mw.iam.core.oauth.scope.pdp.ScopeFilter;
 import it.infn.mw.iam.core.web.aup.EnforceAupFilter;
 import it.infn.mw.iam.notification.NotificationProperties;
@@ -242,7 +244,7 @@ public class IamConfig {
   }
 
   @Bean
-  JWTProfileResolver jwtProfileResolver(@Qualifier("iamJwtProfile") JWTProfile iamProfile,
+  CachingJWTProfileResolver jwtProfileResolver(@Qualifier("iamJwtProfile") JWTProfile iamProfile,
       @Qualifier("wlcgJwtProfile") JWTProfile wlcgProfile,
       @Qualifier("aarcJwtProfile") JWTProfile aarcProfile,
       @Qualifier("kcJwtProfile") JWTProfile kcProfile, IamProperties properties,
@@ -272,7 +274,10 @@ public class IamConfig {
     profileMap.put(KC_PROFILE_ID, kcProfile);
 
     LOG.info("Default JWT profile: {}", defaultProfile.name());
-    return new ScopeAwareProfileResolver(defaultProfile, profileMap, clientDetailsService);
+    return new CachingJWTProfileResolver(
+        new ScopeAwareProfileResolver(defaultProfile, profileMap, clientDetailsService),
+        properties.getJwtProfile().getResolverCacheSize(),
+        properties.getJwtProfile().getResolverCacheTtlSecs());
   }
 
   @Bean
@@ -311,12 +316,17 @@ public class IamConfig {
     return frb;
   }
 
+  @Bean
+  SystemScopeIndex systemScopeIndex(SystemScopeRepository scopeRepo) {
+    return new SystemScopeIndex(scopeRepo);
+  }
+
   @Bean
   ScopeMatcherRegistry customScopeMatchersRegistry(ScopeMatchersProperties properties,
-      SystemScopeRepository scopeRepo) {
+      SystemScopeIndex systemScopeIndex) {
     ScopeMatchersPropertiesParser parser = new ScopeMatchersPropertiesParser();
     return new DefaultScopeMatcherRegistry(parser.parseScopeMatchersProperties(properties),
-        scopeRepo);
+        systemScopeIndex);
   }
 
   @Bean
@@ -18,6 +18,7 @@ package it.infn.mw.iam.config;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
@@ -332,6 +333,12 @@ public class IamProperties {
     String defaultJweDecryptKeyId = "rsa1";
     String defaultJweEncryptKeyId = "rsa1";
 
+    // Cache of the JWK sets fetched from clients and external identity providers
+    int remoteJwksCacheSize = 100;
+    long remoteJwksRefreshIntervalSecs = TimeUnit.HOURS.toSeconds(1);
+    long remoteJwksMaxStalenessSecs = TimeUnit.HOURS.toSeconds(24);
+    long remoteJwksMinForcedRefreshIntervalSecs = 60;
+
     public String getKeystoreLocation() {
       return keystoreLocation;
     }
@@ -379,6 +386,39 @@ public class IamProperties {
     public void setDefaultJweEncryptKeyId(String defaultJweEncryptKeyId) {
       this.defaultJweEncryptKeyId = defaultJweEncryptKeyId;
     }
+
+    public int getRemoteJwksCacheSize() {
+      return remoteJwksCacheSize;
+    }
+
+    public void setRemoteJwksCacheSize(int remoteJwksCacheSize) {
+      this.remoteJwksCacheSize = remoteJwksCacheSize;
+    }
+
+    public long getRemoteJwksRefreshIntervalSecs() {
+      return remoteJwksRefreshIntervalSecs;
+    }
+
+    public void setRemoteJwksRefreshIntervalSecs(long remoteJwksRefreshIntervalSecs) {
+      this.remoteJwksRefreshIntervalSecs = remoteJwksRefreshIntervalSecs;
+    }
+
+    public long getRemoteJwksMaxStalenessSecs() {
+      return remoteJwksMaxStalenessSecs;
+    }
+
+    public void setRemoteJwksMaxStalenessSecs(long remoteJwksMaxStalenessSecs) {
+      this.remoteJwksMaxStalenessSecs = remoteJwksMaxStalenessSecs;
+    }
+
+    public long getRemoteJwksMinForcedRefreshIntervalSecs() {
+      return remoteJwksMinForcedRefreshIntervalSecs;
+    }
+
+    public void setRemoteJwksMinForcedRefreshIntervalSecs(
+        long remoteJwksMinForcedRefreshIntervalSecs) {
+      this.remoteJwksMinForcedRefreshIntervalSecs = remoteJwksMinForcedRefreshIntervalSecs;
+    }
   }
 
   public static class JWTProfile {
@@ -392,6 +432,10 @@ public class IamProperties {
 
     Profile defaultProfile = Profile.IAM;
 
+    long resolverCacheSize = 1000;
+
+    long resolverCacheTtlSecs = 300;
+
     public Profile getDefaultProfile() {
       return defaultProfile;
     }
@@ -399,6 +443,22 @@ public class IamProperties {
     public void setDefaultProfile(Profile defaultProfile) {
       this.defaultProfile = defaultProfile;
     }
+
+    public long getResolverCacheSize() {
+      return resolverCacheSize;
+    }
+
+    public void setResolverCacheSize(long resolverCacheSize) {
+      this.resolverCacheSize = resolverCacheSize;
+    }
+
+    public long getResolverCacheTtlSecs() {
+      return resolverCacheTtlSecs;
+    }
+
+    public void setResolverCacheTtlSecs(long resolverCacheTtlSecs) {
+      this.resolverCacheTtlSecs = resolverCacheTtlSecs;
+    }
   }
 
   public static class PrivacyPolicy {
@@ -468,6 +528,24 @@ public class IamProperties {
     boolean includeScope = false;
     boolean includeNbf = false;
 
+    // Clients whose client credentials access tokens are not persisted
+    List<String> statelessClientIds = Lists.newArrayList();
+
+    long statelessMaxLifetimeSecs = 600;
+
+    // Period of the refresh of the local copy of the revoked stateless access token ids
+    long denyListRefreshSecs = 5;
+
+    // Serve repeated introspections of the same access token from a local cache
+    boolean introspectionCacheEnabled = false;
+
+    long introspectionCacheSize = 10000;
+
+    long introspectionCacheTtlSecs = 60;
+
+    // Cached tokens are checked to be still in the token store at most once in this interval
+    long introspectionCacheRevalidationSecs = 5;
+
     public boolean isIncludeAuthnInfo() {
       return includeAuthnInfo;
     }
@@ -491,6 +569,62 @@ public class IamProperties {
     public void setIncludeNbf(boolean includeNbf) {
       this.includeNbf = includeNbf;
     }
+
+    public List<String> getStatelessClientIds() {
+      return statelessClientIds;
+    }
+
+    public void setStatelessClientIds(List<String> statelessClientIds) {
+      this.statelessClientIds = statelessClientIds;
+    }
+
+    public long getStatelessMaxLifetimeSecs() {
+      return statelessMaxLifetimeSecs;
+    }
+
+    public void setStatelessMaxLifetimeSecs(long statelessMaxLifetimeSecs) {
+      this.statelessMaxLifetimeSecs = statelessMaxLifetimeSecs;
+    }
+
+    public long getDenyListRefreshSecs() {
+      return denyListRefreshSecs;
+    }
+
+    public void setDenyListRefreshSecs(long denyListRefreshSecs) {
+      this.denyListRefreshSecs = denyListRefreshSecs;
+    }
+
+    public boolean isIntrospectionCacheEnabled() {
+      return introspectionCacheEnabled;
+    }
+
+    public void setIntrospectionCacheEnabled(boolean introspectionCacheEnabled) {
+      this.introspectionCacheEnabled = introspectionCacheEnabled;
+    }
+
+    public long getIntrospectionCacheSize() {
+      return introspectionCacheSize;
+    }
+
+    public void setIntrospectionCacheSize(long introspectionCacheSize) {
+      this.introspectionCacheSize = introspectionCacheSize;
+    }
+
+    public long getIntrospectionCacheTtlSecs() {
+      return introspectionCacheTtlSecs;
+    }
+
+    public void setIntrospectionCacheTtlSecs(long introspectionCacheTtlSecs) {
+      this.introspectionCacheTtlSecs = introspectionCacheTtlSecs;
+    }
+
+    public long getIntrospectionCacheRevalidationSecs() {
+      return introspectionCacheRevalidationSecs;
+    }
+
+    public void setIntrospectionCacheRevalidationSecs(long introspectionCacheRevalidationSecs) {
+      this.introspectionCacheRevalidationSecs = introspectionCacheRevalidationSecs;
+    }
   }
 
   public static class Organisation {
@@ -15,6 +15,7 @@
  */
 package it.infn.mw.iam.config;
 
+import java.time.Clock;
 import java.util.Locale;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
@@ -77,7 +78,9 @@ import org.springframework.security.web.authentication.Http403ForbiddenEntryPoin
 
 import com.google.common.collect.Sets;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import it.infn.mw.iam.authn.oidc.RestTemplateFactory;
+import it.infn.mw.iam.config.IamProperties.JWKProperties;
 import it.infn.mw.iam.core.client.ClientUserDetailsService;
 import it.infn.mw.iam.core.client.IAMClientUserDetailsService;
 import it.infn.mw.iam.core.jwk.IamJWKSetCacheService;
@@ -86,6 +89,7 @@ import it.infn.mw.iam.core.oauth.profile.JWTProfileResolver;
 import it.infn.mw.iam.core.oauth.scope.IamSystemScopeService;
 import it.infn.mw.iam.core.oauth.scope.matchers.ScopeMatcherOAuthRequestValidator;
 import it.infn.mw.iam.core.oauth.scope.matchers.ScopeMatcherRegistry;
+import it.infn.mw.iam.core.oauth.scope.matchers.SystemScopeIndex;
 import it.infn.mw.iam.core.oauth.scope.pdp.ScopeFilter;
 import it.infn.mw.iam.core.oidc.IamClientValidationService;
 import it.infn.mw.iam.core.userinfo.IamUserInfoInterceptor;
@@ -293,9 +297,14 @@ public class MitreServicesConfig {
   }
 
   @Bean
-  JWKSetCacheService defaultCacheService(RestTemplateFactory rtf) {
+  JWKSetCacheService defaultCacheService(RestTemplateFactory rtf, IamProperties properties,
+      MeterRegistry meterRegistry, Clock clock) {
 
-    return new IamJWKSetCacheService(rtf, 100, 1, TimeUnit.HOURS);
+    JWKProperties jwk = properties.getJwk();
+
+    return new IamJWKSetCacheService(rtf, jwk.getRemoteJwksCacheSize(),
+        jwk.getRemoteJwksRefreshIntervalSecs(), jwk.getRemoteJwksMaxStalenessSecs(),
+        jwk.getRemoteJwksMinForcedRefreshIntervalSecs(), TimeUnit.SECONDS, meterRegistry, clock);
   }
 
   @Bean
@@ -341,8 +350,9 @@ public class MitreServicesConfig {
   }
 
   @Bean
-  SystemScopeService defaultSystemScopeService(ScopeMatcherRegistry registry) {
-    return new IamSystemScopeService(registry);
+  SystemScopeService defaultSystemScopeService(ScopeMatcherRegistry registry,
+      SystemScopeIndex systemScopeIndex) {
+    return new IamSystemScopeService(registry, systemScopeIndex);
   }
 
   @Bean
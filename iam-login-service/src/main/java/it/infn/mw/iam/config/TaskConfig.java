@@ -15,6 +15,8 @@
  */
 package it.infn.mw.iam.config;
 
+import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 
@@ -25,6 +27,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.context.annotation.Configuration;
@@ -36,6 +39,14 @@ import org.springframework.scheduling.config.ScheduledTaskRegistrar;
 
 import it.infn.mw.iam.config.lifecycle.LifecycleProperties;
 import it.infn.mw.iam.core.lifecycle.ExpiredAccountsHandler;
+import it.infn.mw.iam.core.oauth.cleanup.BatchedTokenCleanupService;
+import it.infn.mw.iam.core.oauth.cleanup.TokenCleanupProperties;
+import it.infn.mw.iam.core.oauth.exchange.TokenExchangePdp;
+import it.infn.mw.iam.core.oauth.scope.matchers.DefaultScopeMatcherRegistry;
+import it.infn.mw.iam.core.oauth.scope.matchers.ScopeMatchersProperties;
+import it.infn.mw.iam.core.oauth.scope.matchers.SystemScopeIndex;
+import it.infn.mw.iam.core.oauth.scope.pdp.ScopePolicyPdpProperties;
+import it.infn.mw.iam.core.oauth.scope.pdp.ScopePolicySnapshotService;
 import it.infn.mw.iam.core.user.IamAccountService;
 import it.infn.mw.iam.core.web.aup.AupReminderTask;
 import it.infn.mw.iam.core.web.wellknown.IamWellKnownInfoProvider;
@@ -91,9 +102,33 @@ public class TaskConfig implements SchedulingConfigurer {
   @Autowired
   CacheManager cacheManager;
 
+  @Autowired
+  ScopePolicyPdpProperties scopePolicyPdpProperties;
+
+  @Autowired
+  ScopePolicySnapshotService scopePolicySnapshotService;
+
+  @Autowired
+  ScopeMatchersProperties scopeMatchersProperties;
+
+  @Autowired
+  SystemScopeIndex systemScopeIndex;
+
   @Autowired
   ExecutorService taskScheduler;
 
+  @Autowired
+  TokenCleanupProperties tokenCleanupProperties;
+
+  @Autowired
+  BatchedTokenCleanupService batchedTokenCleanupService;
+
+  @Autowired
+  TokenExchangePdp tokenExchangePdp;
+
+  @Value("${task.tokenExchangePolicyRefreshPeriodSecs:10}")
+  long tokenExchangePolicyRefreshPeriodSecs;
+
   @Value("${notification.disable}")
   boolean notificationDisabled;
 
@@ -110,14 +145,22 @@ public class TaskConfig implements SchedulingConfigurer {
   @Scheduled(fixedDelayString = "${task.tokenCleanupPeriodMsec}", initialDelay = TEN_MINUTES_MSEC)
   public void clearExpiredTokens() {
 
-    tokenEntityService.clearExpiredTokens();
+    if (tokenCleanupProperties.isBatched()) {
+      batchedTokenCleanupService.clearExpiredTokens();
+    } else {
+      tokenEntityService.clearExpiredTokens();
+    }
   }
 
   @Scheduled(fixedDelayString = "${task.approvalCleanupPeriodMsec}",
       initialDelay = TEN_MINUTES_MSEC)
   public void clearExpiredSites() {
 
-    approvedSiteService.clearExpiredSites();
+    if (tokenCleanupProperties.isBatched()) {
+      batchedTokenCleanupService.clearExpiredSites();
+    } else {
+      approvedSiteService.clearExpiredSites();
+    }
   }
 
   @Scheduled(fixedDelay = THIRTY_SECONDS_MSEC, initialDelay = TEN_MINUTES_MSEC)
@@ -162,11 +205,68 @@ public class TaskConfig implements SchedulingConfigurer {
     }
   }
 
+  public void scheduleScopePolicySnapshotRefresh(final ScheduledTaskRegistrar taskRegistrar) {
+    final long refreshPeriodSecs = scopePolicyPdpProperties.getSnapshotRefreshPeriodSecs();
+
+    if (!scopePolicyPdpProperties.isCompiledPolicies() || refreshPeriodSecs <= 0) {
+      LOG.info("Scope policy snapshot refresh task will NOT be scheduled");
+      return;
+    }
+
+    LOG.info("Scheduling scope policy snapshot refresh task to run every {} sec",
+        refreshPeriodSecs);
+
+    taskRegistrar.addFixedDelayTask(scopePolicySnapshotService::reloadSnapshot,
+        TimeUnit.SECONDS.toMillis(refreshPeriodSecs));
+  }
+
+  public void reloadSystemScopeIndex() {
+    Set<String> previous = systemScopeIndex.getSystemScopes();
+    Set<String> current = systemScopeIndex.reload();
+
+    if (!previous.equals(current)) {
+      LOG.debug("System scopes changed, evicting cached scope matchers");
+      Optional.ofNullable(cacheManager.getCache(DefaultScopeMatcherRegistry.SCOPE_CACHE_KEY))
+        .ifPresent(Cache::clear);
+    }
+  }
+
+  public void scheduleSystemScopeIndexRefresh(final ScheduledTaskRegistrar taskRegistrar) {
+    final long refreshPeriodSecs = scopeMatchersProperties.getSystemScopesRefreshPeriodSecs();
+
+    if (refreshPeriodSecs <= 0) {
+      LOG.info("System scope index refresh task will NOT be scheduled");
+      return;
+    }
+
+    LOG.info("Scheduling system scope index refresh task to run every {} sec", refreshPeriodSecs);
+
+    taskRegistrar.addFixedDelayTask(this::reloadSystemScopeIndex,
+        TimeUnit.SECONDS.toMillis(refreshPeriodSecs));
+  }
+
+  public void scheduleTokenExchangePolicyRefresh(final ScheduledTaskRegistrar taskRegistrar) {
+
+    if (tokenExchangePolicyRefreshPeriodSecs <= 0) {
+      LOG.info("Token exchange policy refresh task will NOT be scheduled");
+      return;
+    }
+
+    LOG.info("Scheduling token exchange policy refresh task to run every {} sec",
+        tokenExchangePolicyRefreshPeriodSecs);
+
+    taskRegistrar.addFixedDelayTask(tokenExchangePdp::reloadPoliciesIfChanged,
+        TimeUnit.SECONDS.toMillis(tokenExchangePolicyRefreshPeriodSecs));
+  }
+
   @Override
   public void configureTasks(final ScheduledTaskRegistrar taskRegistrar) {
     taskRegistrar.setScheduler(taskScheduler);
     schedulePendingNotificationsDelivery(taskRegistrar);
     scheduledExpiredAccountsTask(taskRegistrar);
+    scheduleScopePolicySnapshotRefresh(taskRegistrar);
+    scheduleSystemScopeIndexRefresh(taskRegistrar);
+    scheduleTokenExchangePolicyRefresh(taskRegistrar);
   }
 
 }
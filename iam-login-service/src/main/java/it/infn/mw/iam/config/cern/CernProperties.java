@@ -38,6 +38,9 @@ public class CernProperties {
     @Min(value = 5L)
     int pageSize = 50;
 
+    @Min(value = 1L)
+    int concurrency = 5;
+
     public boolean isEnabled() {
       return enabled;
     }
@@ -62,6 +65,14 @@ public class CernProperties {
       this.pageSize = pageSize;
     }
 
+    public int getConcurrency() {
+      return concurrency;
+    }
+
+    public void setConcurrency(int concurrency) {
+      this.concurrency = concurrency;
+    }
+
   }
 
   public static class HrDbApiProperties {
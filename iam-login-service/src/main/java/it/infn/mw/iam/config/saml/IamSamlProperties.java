@@ -213,6 +213,12 @@ public class IamSamlProperties {
 
   private long metadataRefreshPeriodSec = TimeUnit.HOURS.toSeconds(12);
 
+  private String metadataBackupDir;
+
+  private boolean metadataBackgroundInitialization = false;
+
+  private long metadataBackgroundRefreshDelaySec = 5;
+
   private String idpEntityIdWhilelist;
 
   private List<IamSamlIdpMetadataProperties> idpMetadata;
@@ -362,6 +368,30 @@ public class IamSamlProperties {
   public void setMetadataRefreshPeriodSec(long metadataRefreshPeriodSec) {
     this.metadataRefreshPeriodSec = metadataRefreshPeriodSec;
   }
+
+  public String getMetadataBackupDir() {
+    return metadataBackupDir;
+  }
+
+  public void setMetadataBackupDir(String metadataBackupDir) {
+    this.metadataBackupDir = metadataBackupDir;
+  }
+
+  public boolean isMetadataBackgroundInitialization() {
+    return metadataBackgroundInitialization;
+  }
+
+  public void setMetadataBackgroundInitialization(boolean metadataBackgroundInitialization) {
+    this.metadataBackgroundInitialization = metadataBackgroundInitialization;
+  }
+
+  public long getMetadataBackgroundRefreshDelaySec() {
+    return metadataBackgroundRefreshDelaySec;
+  }
+
+  public void setMetadataBackgroundRefreshDelaySec(long metadataBackgroundRefreshDelaySec) {
+    this.metadataBackgroundRefreshDelaySec = metadataBackgroundRefreshDelaySec;
+  }
   
   public LocalMetadata getLocalMetadata() {
     return localMetadata;
@@ -24,7 +24,12 @@ import static java.util.concurrent.TimeUnit.SECONDS;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -127,6 +132,7 @@ import org.springframework.security.web.firewall.HttpFirewall;
 import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
 
 import com.google.common.base.Strings;
+import com.google.common.hash.Hashing;
 
 import it.infn.mw.iam.authn.AuthenticationSuccessHandlerHelper;
 import it.infn.mw.iam.authn.ExternalAuthenticationFailureHandler;
@@ -138,6 +144,7 @@ import it.infn.mw.iam.authn.saml.DefaultMappingPropertiesResolver;
 import it.infn.mw.iam.authn.saml.DefaultSAMLUserDetailsService;
 import it.infn.mw.iam.authn.saml.IamCachingMetadataManager;
 import it.infn.mw.iam.authn.saml.IamExtendedMetadataDelegate;
+import it.infn.mw.iam.authn.saml.IamFileBackedHTTPMetadataProvider;
 import it.infn.mw.iam.authn.saml.IamSamlAuthenticationProvider;
 import it.infn.mw.iam.authn.saml.JustInTimeProvisioningSAMLUserDetailsService;
 import it.infn.mw.iam.authn.saml.MappingPropertiesResolver;
@@ -595,6 +602,31 @@ public class SamlConfig extends WebSecurityConfigurerAdapter
     }
   }
 
+  private File metadataBackupFile(String metadataUrl) throws IOException {
+
+    if (Strings.isNullOrEmpty(samlProperties.getMetadataBackupDir())) {
+
+      if (samlProperties.isMetadataBackgroundInitialization()) {
+        LOG.warn("saml.metadata-backup-dir is not set, metadata for {} will be fetched at startup",
+            metadataUrl);
+      }
+
+      File metadataBackupFile = Files.createTempFile("metadata", "xml").toFile();
+      metadataBackupFile.deleteOnExit();
+      return metadataBackupFile;
+    }
+
+    Path backupDir = Paths.get(samlProperties.getMetadataBackupDir().trim());
+    Files.createDirectories(backupDir);
+
+    String backupFileName =
+        Hashing.sha256().hashString(metadataUrl, StandardCharsets.UTF_8).toString() + ".xml";
+
+    File metadataBackupFile = backupDir.resolve(backupFileName).toFile();
+    LOG.info("Metadata backup file for {}: {}", metadataUrl, metadataBackupFile);
+    return metadataBackupFile;
+  }
+
   private List<MetadataProvider> metadataProviders(Timer metadataFetchTimer, ParserPool parserPool)
       throws MetadataProviderException, IOException, ResourceException {
 
@@ -643,11 +675,13 @@ public class SamlConfig extends WebSecurityConfigurerAdapter
 
         LOG.info("Adding HTTP metadata provider for URL: {}", trimmedMedataUrl);
 
-        File metadataBackupFile = Files.createTempFile("metadata", "xml").toFile();
-        metadataBackupFile.deleteOnExit();
+        File metadataBackupFile = metadataBackupFile(trimmedMedataUrl);
 
-        FileBackedHTTPMetadataProvider metadataProvider = new FileBackedHTTPMetadataProvider(
-            metadataFetchTimer, httpClient, trimmedMedataUrl, metadataBackupFile.getAbsolutePath());
+        FileBackedHTTPMetadataProvider metadataProvider =
+            new IamFileBackedHTTPMetadataProvider(metadataFetchTimer, httpClient, trimmedMedataUrl,
+                metadataBackupFile.getAbsolutePath(),
+                samlProperties.isMetadataBackgroundInitialization(),
+                SECONDS.toMillis(samlProperties.getMetadataBackgroundRefreshDelaySec()));
 
         metadataProvider.setParserPool(parserPool);
 
@@ -691,8 +725,19 @@ public class SamlConfig extends WebSecurityConfigurerAdapter
     CachingMetadataManager manager =
         new IamCachingMetadataManager(metadataProviders(metadataFetchTimer, parserPool));
     manager.setKeyManager(keyManager());
-    manager.setRefreshCheckInterval(-1);
+
+    if (samlProperties.isMetadataBackgroundInitialization()) {
+      // Pick up the metadata fetched in background after startup
+      manager.setRefreshCheckInterval(
+          SECONDS.toMillis(samlProperties.getMetadataBackgroundRefreshDelaySec()));
+    } else {
+      manager.setRefreshCheckInterval(-1);
+    }
+
+    final Instant startTime = Instant.now();
     manager.refreshMetadata();
+    LOG.info("SAML metadata initialization took {} msec",
+        Duration.between(startTime, Instant.now()).toMillis());
 
     return manager;
   }
@@ -15,6 +15,7 @@
  */
 package it.infn.mw.iam.core;
 
+import java.text.ParseException;
 import java.time.LocalDate;
 import java.util.Date;
 import java.util.Set;
@@ -24,20 +25,31 @@ import org.mitre.oauth2.model.ClientDetailsEntity;
 import org.mitre.oauth2.model.ClientLastUsedEntity;
 import org.mitre.oauth2.model.OAuth2AccessTokenEntity;
 import org.mitre.oauth2.model.OAuth2RefreshTokenEntity;
+import org.mitre.oauth2.repository.AuthenticationHolderRepository;
 import org.mitre.oauth2.service.impl.DefaultOAuth2ProviderTokenService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Primary;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
 import org.springframework.security.oauth2.provider.TokenRequest;
 import org.springframework.stereotype.Service;
 
 import com.google.common.collect.Sets;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import it.infn.mw.iam.audit.events.tokens.AccessTokenIssuedEvent;
 import it.infn.mw.iam.audit.events.tokens.RefreshTokenIssuedEvent;
 import it.infn.mw.iam.config.IamProperties;
+import it.infn.mw.iam.core.oauth.introspection.IntrospectionResponseCache;
+import it.infn.mw.iam.core.oauth.issuance.AccessTokenDenyList;
+import it.infn.mw.iam.core.oauth.issuance.StatelessAccessTokenPolicy;
+import it.infn.mw.iam.core.oauth.issuance.StatelessAccessTokenReader;
+import it.infn.mw.iam.core.oauth.issuance.TokenIssuanceContext;
 import it.infn.mw.iam.core.oauth.scope.pdp.ScopeFilter;
 import it.infn.mw.iam.persistence.repository.IamOAuthAccessTokenRepository;
 import it.infn.mw.iam.persistence.repository.IamOAuthRefreshTokenRepository;
@@ -49,21 +61,91 @@ public class IamTokenService extends DefaultOAuth2ProviderTokenService {
 
   public static final Logger LOG = LoggerFactory.getLogger(IamTokenService.class);
 
+  public static final String STATELESS_TOKENS_METRIC = "iam.tokens.access.stateless";
+  public static final String TOKEN_PERSISTENCE_METRIC = "iam.tokens.access.persistence";
+  public static final String PDP_EVALUATIONS_PER_TOKEN_METRIC =
+      "iam.tokens.access.scope-policy-evaluations";
+
   private final IamOAuthAccessTokenRepository accessTokenRepo;
   private final IamOAuthRefreshTokenRepository refreshTokenRepo;
+  private final AuthenticationHolderRepository authHolderRepo;
   private final ApplicationEventPublisher eventPublisher;
   private final IamProperties iamProperties;
   private final ScopeFilter scopeFilter;
+  private final StatelessAccessTokenPolicy statelessPolicy;
+  private final StatelessAccessTokenReader statelessTokenReader;
+  private final AccessTokenDenyList denyList;
+  private final IntrospectionResponseCache introspectionCache;
+  private final Counter statelessTokensCounter;
+  private final Timer tokenPersistenceTimer;
+  private final DistributionSummary pdpEvaluationsPerToken;
 
   public IamTokenService(IamOAuthAccessTokenRepository accessTokenRepo,
-      IamOAuthRefreshTokenRepository refreshTokenRepo, ApplicationEventPublisher eventPublisher,
-      IamProperties iamProperties, ScopeFilter scopeFilter) {
+      IamOAuthRefreshTokenRepository refreshTokenRepo,
+      AuthenticationHolderRepository authHolderRepo, ApplicationEventPublisher eventPublisher,
+      IamProperties iamProperties, ScopeFilter scopeFilter,
+      StatelessAccessTokenPolicy statelessPolicy, StatelessAccessTokenReader statelessTokenReader,
+      AccessTokenDenyList denyList, IntrospectionResponseCache introspectionCache,
+      MeterRegistry meterRegistry) {
 
     this.accessTokenRepo = accessTokenRepo;
     this.refreshTokenRepo = refreshTokenRepo;
+    this.authHolderRepo = authHolderRepo;
     this.eventPublisher = eventPublisher;
     this.iamProperties = iamProperties;
     this.scopeFilter = scopeFilter;
+    this.statelessPolicy = statelessPolicy;
+    this.statelessTokenReader = statelessTokenReader;
+    this.denyList = denyList;
+    this.introspectionCache = introspectionCache;
+    this.statelessTokensCounter = meterRegistry.counter(STATELESS_TOKENS_METRIC);
+    this.tokenPersistenceTimer = meterRegistry.timer(TOKEN_PERSISTENCE_METRIC);
+    this.pdpEvaluationsPerToken = meterRegistry.summary(PDP_EVALUATIONS_PER_TOKEN_METRIC);
+  }
+
+  @Override
+  public OAuth2AccessTokenEntity saveAccessToken(OAuth2AccessTokenEntity accessToken) {
+
+    if (statelessPolicy.isStateless(accessToken)) {
+      LOG.debug("Access token for client '{}' issued in stateless mode, not persisted",
+          accessToken.getClient().getClientId());
+
+      // The authentication holder has already been saved when the token was created, and
+      // would be left orphaned: remove it before the issuance transaction commits
+      AuthenticationHolderEntity authHolder = accessToken.getAuthenticationHolder();
+      if (authHolder.getId() != null) {
+        authHolderRepo.remove(authHolder);
+      }
+
+      statelessTokensCounter.increment();
+      return accessToken;
+    }
+
+    return tokenPersistenceTimer.record(() -> super.saveAccessToken(accessToken));
+  }
+
+  /**
+   * Reads an access token from the token store or, if not found there, out of its value if it is
+   * a valid stateless access token
+   */
+  @Override
+  public OAuth2AccessTokenEntity readAccessToken(String accessTokenValue) {
+    try {
+      return super.readAccessToken(accessTokenValue);
+    } catch (InvalidTokenException e) {
+      return statelessTokenReader.read(accessTokenValue).orElseThrow(() -> e);
+    }
+  }
+
+  @Override
+  public OAuth2Authentication loadAuthentication(String accessTokenValue) {
+    try {
+      return super.loadAuthentication(accessTokenValue);
+    } catch (InvalidTokenException e) {
+      return statelessTokenReader.read(accessTokenValue)
+        .map(token -> token.getAuthenticationHolder().getAuthentication())
+        .orElseThrow(() -> e);
+    }
   }
 
   @Override
@@ -84,7 +166,30 @@ public class IamTokenService extends DefaultOAuth2ProviderTokenService {
 
   @Override
   public void revokeAccessToken(OAuth2AccessTokenEntity accessToken) {
+
+    // Stateless access tokens are not in the token store
+    if (accessToken.getId() == null) {
+      denyStatelessAccessToken(accessToken);
+      return;
+    }
+
     accessTokenRepo.delete(accessToken);
+    introspectionCache.revoke(accessToken.getValue());
+  }
+
+  private void denyStatelessAccessToken(OAuth2AccessTokenEntity accessToken) {
+    try {
+      String jti = accessToken.getJwt().getJWTClaimsSet().getJWTID();
+
+      if (jti == null) {
+        LOG.warn("Stateless access token with no id cannot be revoked");
+        return;
+      }
+
+      denyList.deny(jti, accessToken.getExpiration());
+    } catch (ParseException e) {
+      LOG.warn("Error parsing stateless access token: {}", e.getMessage());
+    }
   }
 
   @Override
@@ -95,38 +200,60 @@ public class IamTokenService extends DefaultOAuth2ProviderTokenService {
   @Override
   public OAuth2AccessTokenEntity createAccessToken(OAuth2Authentication authentication) {
 
-    OAuth2AccessTokenEntity token = super.createAccessToken(scopeFilter.filterScopes(authentication));
+    TokenIssuanceContext context = TokenIssuanceContext.enter();
 
-    if (iamProperties.getClient().isTrackLastUsed()) {
-      updateClientLastUsed(token);
-    }
+    try {
+      OAuth2AccessTokenEntity token =
+          super.createAccessToken(scopeFilter.filterScopes(authentication));
 
-    eventPublisher.publishEvent(new AccessTokenIssuedEvent(this, token));
-    return token;
+      if (iamProperties.getClient().isTrackLastUsed()) {
+        updateClientLastUsed(token);
+      }
+
+      pdpEvaluationsPerToken.record(context.getScopePolicyEvaluations());
+      eventPublisher.publishEvent(new AccessTokenIssuedEvent(this, token));
+      return token;
+    } finally {
+      TokenIssuanceContext.exit();
+    }
   }
 
   @Override
   public OAuth2RefreshTokenEntity createRefreshToken(ClientDetailsEntity client,
       AuthenticationHolderEntity authHolder) {
 
-    OAuth2RefreshTokenEntity token = super.createRefreshToken(client, scopeFilter.filterScopes(authHolder));
+    TokenIssuanceContext.enter();
 
-    eventPublisher.publishEvent(new RefreshTokenIssuedEvent(this, token));
-    return token;
+    try {
+      OAuth2RefreshTokenEntity token =
+          super.createRefreshToken(client, scopeFilter.filterScopes(authHolder));
+
+      eventPublisher.publishEvent(new RefreshTokenIssuedEvent(this, token));
+      return token;
+    } finally {
+      TokenIssuanceContext.exit();
+    }
   }
 
   @Override
   public OAuth2AccessTokenEntity refreshAccessToken(String refreshTokenValue,
       TokenRequest authRequest) {
 
-    OAuth2AccessTokenEntity token = super.refreshAccessToken(refreshTokenValue, authRequest);
+    TokenIssuanceContext context = TokenIssuanceContext.enter();
 
-    if (iamProperties.getClient().isTrackLastUsed()) {
-      updateClientLastUsed(token);
-    }
+    try {
+      OAuth2AccessTokenEntity token = super.refreshAccessToken(refreshTokenValue, authRequest);
+
+      if (iamProperties.getClient().isTrackLastUsed()) {
+        updateClientLastUsed(token);
+      }
 
-    eventPublisher.publishEvent(new AccessTokenIssuedEvent(this, token));
-    return token;
+      pdpEvaluationsPerToken.record(context.getScopePolicyEvaluations());
+      eventPublisher.publishEvent(new AccessTokenIssuedEvent(this, token));
+      return token;
+    } finally {
+      TokenIssuanceContext.exit();
+    }
   }
 
   private void updateClientLastUsed(OAuth2AccessTokenEntity token) {
@@ -0,0 +1,257 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.core.group;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.Collections.emptySet;
+import static java.util.Objects.isNull;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.persistence.EntityManager;
+
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+
+import it.infn.mw.iam.api.common.error.NoSuchAccountError;
+import it.infn.mw.iam.audit.events.group.GroupMembersAddedEvent;
+import it.infn.mw.iam.audit.events.group.GroupMembersRemovedEvent;
+import it.infn.mw.iam.persistence.model.IamGroup;
+
+/**
+ * Changes the memberships of many accounts at once with set-based statements: the group hierarchy
+ * is read from the {@link GroupClosureService group closure}, the existing memberships are
+ * selected once per batch of {@value #BATCH_SIZE} accounts, the memberships are written in
+ * batches, each affected group and account is touched once and a single audit event is published
+ * per call.
+ * 
+ * Pending changes of the JPA persistence context are flushed before the memberships are read;
+ * entities loaded before the call do not reflect the memberships written by it.
+ */
+@Service
+@Transactional
+public class DefaultIamGroupMembershipService
+    implements IamGroupMembershipService, ApplicationEventPublisherAware {
+
+  public static final int BATCH_SIZE = 500;
+
+  private static final String SELECT_ACCOUNT_IDS =
+      "SELECT ID, UUID FROM iam_account WHERE UUID IN (:uuids)";
+
+  private static final String SELECT_MEMBERSHIPS =
+      "SELECT account_id, group_id FROM iam_account_group "
+          + "WHERE account_id IN (:accountIds) AND group_id IN (:groupIds)";
+
+  private static final String INSERT_MEMBERSHIP =
+      "INSERT INTO iam_account_group (account_id, group_id, creation_time) "
+          + "VALUES (:accountId, :groupId, :creationTime)";
+
+  private static final String DELETE_MEMBERSHIPS = "DELETE FROM iam_account_group "
+      + "WHERE account_id IN (:accountIds) AND group_id IN (:groupIds)";
+
+  private static final String TOUCH_GROUPS =
+      "UPDATE iam_group SET lastupdatetime = :now WHERE ID IN (:ids)";
+
+  private static final String TOUCH_ACCOUNTS =
+      "UPDATE iam_account SET lastupdatetime = :now WHERE ID IN (:ids)";
+
+  private final NamedParameterJdbcTemplate jdbcTemplate;
+  private final EntityManager entityManager;
+  private final GroupClosureService closureService;
+  private final Clock clock;
+
+  private ApplicationEventPublisher eventPublisher;
+
+  public DefaultIamGroupMembershipService(NamedParameterJdbcTemplate jdbcTemplate,
+      EntityManager entityManager, GroupClosureService closureService, Clock clock) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.entityManager = entityManager;
+    this.closureService = closureService;
+    this.clock = clock;
+  }
+
+  /**
+   * Returns the ids of the accounts with the given uuids, mapped to their uuid
+   */
+  private Map<Long, String> resolveAccounts(Collection<String> accountUuids) {
+
+    Set<String> uuids = new LinkedHashSet<>(accountUuids);
+    Map<String, Long> ids = new HashMap<>();
+
+    for (List<String> batch : Iterables.partition(uuids, BATCH_SIZE)) {
+      jdbcTemplate.query(SELECT_ACCOUNT_IDS, new MapSqlParameterSource("uuids", batch),
+          (RowCallbackHandler) rs -> ids.put(rs.getString(2), rs.getLong(1)));
+    }
+
+    Map<Long, String> accounts = new LinkedHashMap<>();
+
+    for (String uuid : uuids) {
+      Long id = ids.get(uuid);
+
+      if (isNull(id)) {
+        throw NoSuchAccountError.forUuid(uuid);
+      }
+
+      accounts.put(id, uuid);
+    }
+
+    return accounts;
+  }
+
+  /**
+   * Returns the ids of the groups, among the given ones, each account is a member of
+   */
+  private Map<Long, Set<Long>> findMemberships(Collection<Long> accountIds,
+      Collection<Long> groupIds) {
+
+    Map<Long, Set<Long>> memberships = new HashMap<>();
+
+    for (List<Long> batch : Iterables.partition(accountIds, BATCH_SIZE)) {
+      MapSqlParameterSource params =
+          new MapSqlParameterSource("accountIds", batch).addValue("groupIds", groupIds);
+
+      jdbcTemplate.query(SELECT_MEMBERSHIPS, params,
+          (RowCallbackHandler) rs -> memberships
+            .computeIfAbsent(rs.getLong(1), id -> new LinkedHashSet<>())
+            .add(rs.getLong(2)));
+    }
+
+    return memberships;
+  }
+
+  private void touch(String sql, Collection<Long> ids, Date now) {
+    for (List<Long> batch : Iterables.partition(ids, BATCH_SIZE)) {
+      jdbcTemplate.update(sql, new MapSqlParameterSource("ids", batch).addValue("now", now));
+    }
+  }
+
+  @Override
+  public int addMembers(IamGroup group, Collection<String> accountUuids) {
+    checkNotNull(group, "Cannot add members to a null group");
+
+    entityManager.flush();
+
+    Map<Long, String> accounts = resolveAccounts(accountUuids);
+    List<Long> groupIds = closureService.findAncestorIds(group.getId());
+    Map<Long, Set<Long>> existing = findMemberships(accounts.keySet(), groupIds);
+
+    Date now = Date.from(clock.instant());
+    List<SqlParameterSource> rows = new ArrayList<>();
+    Set<Long> touchedGroups = new LinkedHashSet<>();
+    Set<Long> touchedAccounts = new LinkedHashSet<>();
+
+    for (Long accountId : accounts.keySet()) {
+      Set<Long> memberOf = existing.getOrDefault(accountId, emptySet());
+
+      for (Long groupId : groupIds) {
+        if (!memberOf.contains(groupId)) {
+          rows.add(new MapSqlParameterSource("accountId", accountId).addValue("groupId", groupId)
+            .addValue("creationTime", now));
+          touchedGroups.add(groupId);
+          touchedAccounts.add(accountId);
+        }
+      }
+    }
+
+    if (rows.isEmpty()) {
+      return 0;
+    }
+
+    for (List<SqlParameterSource> batch : Lists.partition(rows, BATCH_SIZE)) {
+      jdbcTemplate.batchUpdate(INSERT_MEMBERSHIP, batch.toArray(new SqlParameterSource[0]));
+    }
+
+    touch(TOUCH_GROUPS, touchedGroups, now);
+    touch(TOUCH_ACCOUNTS, touchedAccounts, now);
+
+    List<String> addedAccounts = new ArrayList<>();
+    touchedAccounts.forEach(id -> addedAccounts.add(accounts.get(id)));
+
+    eventPublisher
+      .publishEvent(new GroupMembersAddedEvent(this, group, addedAccounts, rows.size()));
+
+    return rows.size();
+  }
+
+  @Override
+  public int removeMembers(IamGroup group, Collection<String> accountUuids) {
+    checkNotNull(group, "Cannot remove members from a null group");
+
+    entityManager.flush();
+
+    Map<Long, String> accounts = resolveAccounts(accountUuids);
+    Set<Long> groupIds = closureService.findDescendantIds(group.getId());
+    Map<Long, Set<Long>> existing = findMemberships(accounts.keySet(), groupIds);
+
+    List<Long> removedAccounts = new ArrayList<>();
+    Set<Long> touchedGroups = new LinkedHashSet<>();
+    int removed = 0;
+
+    for (Long accountId : accounts.keySet()) {
+      Set<Long> memberOf = existing.getOrDefault(accountId, emptySet());
+
+      if (memberOf.contains(group.getId())) {
+        removedAccounts.add(accountId);
+        touchedGroups.addAll(memberOf);
+        removed += memberOf.size();
+      }
+    }
+
+    if (removedAccounts.isEmpty()) {
+      return 0;
+    }
+
+    for (List<Long> batch : Lists.partition(removedAccounts, BATCH_SIZE)) {
+      jdbcTemplate.update(DELETE_MEMBERSHIPS,
+          new MapSqlParameterSource("accountIds", batch).addValue("groupIds", groupIds));
+    }
+
+    Date now = Date.from(clock.instant());
+    touch(TOUCH_GROUPS, touchedGroups, now);
+    touch(TOUCH_ACCOUNTS, removedAccounts, now);
+
+    List<String> removedUuids = new ArrayList<>();
+    removedAccounts.forEach(id -> removedUuids.add(accounts.get(id)));
+
+    eventPublisher
+      .publishEvent(new GroupMembersRemovedEvent(this, group, removedUuids, removed));
+
+    return removed;
+  }
+
+  @Override
+  public void setApplicationEventPublisher(ApplicationEventPublisher applicationEventPublisher) {
+    this.eventPublisher = applicationEventPublisher;
+  }
+}
@@ -25,6 +25,8 @@ import java.util.Optional;
 import java.util.UUID;
 import java.util.function.Supplier;
 
+import javax.persistence.EntityManager;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.ApplicationEventPublisherAware;
@@ -57,16 +59,21 @@ public class DefaultIamGroupService implements IamGroupService, ApplicationEvent
   private final IamGroupRepository groupRepo;
   private final IamAuthoritiesRepository authorityRepo;
   private final IamAccountRepository accountRepo;
+  private final EntityManager entityManager;
+  private final GroupClosureService closureService;
   private final Clock clock;
 
   private ApplicationEventPublisher eventPublisher;
 
   @Autowired
   public DefaultIamGroupService(IamGroupRepository groupRepo, IamAuthoritiesRepository authRepo,
-      IamAccountRepository accountRepo, Clock clock) {
+      IamAccountRepository accountRepo, EntityManager entityManager,
+      GroupClosureService closureService, Clock clock) {
     this.groupRepo = groupRepo;
     this.authorityRepo = authRepo;
     this.accountRepo = accountRepo;
+    this.entityManager = entityManager;
+    this.closureService = closureService;
     this.clock = clock;
   }
 
@@ -91,6 +98,10 @@ public class DefaultIamGroupService implements IamGroupService, ApplicationEvent
       groupRepo.save(g.getParentGroup());
     }
 
+    entityManager.flush();
+    closureService.addGroup(g.getId(),
+        isNull(g.getParentGroup()) ? null : g.getParentGroup().getId());
+
     groupCreatedEvent(g);
     return g;
   }
@@ -0,0 +1,244 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.core.group;
+
+import static java.util.Objects.isNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.EmptySqlParameterSource;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Maintains the closure of the group hierarchy, i.e. one row for each (ancestor, descendant) pair
+ * of groups, each group being its own ancestor at depth 0.
+ * 
+ * The rows of a new group are added in the transaction that creates it, so that the closure is
+ * consistent with the group table on every node as soon as the group is committed; groups created
+ * before the closure existed are added at startup. Rows of deleted groups are removed by the
+ * database. Since the parent of a group cannot change after creation, the closure never needs to
+ * be rewritten. Lookups fall back to the parent links of the group table until the startup
+ * rebuild has completed.
+ */
+@Service
+public class GroupClosureService {
+
+  public static final Logger LOG = LoggerFactory.getLogger(GroupClosureService.class);
+
+  private static final String SELECT_ANCESTORS =
+      "SELECT ancestor_id FROM iam_group_closure WHERE descendant_id = :groupId ORDER BY depth";
+
+  private static final String SELECT_DESCENDANTS =
+      "SELECT descendant_id FROM iam_group_closure WHERE ancestor_id = :groupId ORDER BY depth";
+
+  private static final String SELECT_GROUP_PARENTS = "SELECT ID, parent_group_id FROM iam_group";
+
+  private static final String SELECT_INDEXED_GROUPS =
+      "SELECT descendant_id FROM iam_group_closure WHERE depth = 0";
+
+  private static final int MAX_REBUILD_ATTEMPTS = 3;
+
+  private static final String INSERT_CLOSURE_ROW =
+      "INSERT INTO iam_group_closure (ancestor_id, descendant_id, depth) "
+          + "VALUES (:ancestorId, :descendantId, :depth)";
+
+  private static final String INSERT_PARENT_ANCESTORS =
+      "INSERT INTO iam_group_closure (ancestor_id, descendant_id, depth) "
+          + "SELECT ancestor_id, :groupId, depth + 1 FROM iam_group_closure "
+          + "WHERE descendant_id = :parentId";
+
+  private final NamedParameterJdbcTemplate jdbcTemplate;
+  private final TransactionTemplate newTransaction;
+
+  private volatile boolean complete = false;
+
+  public GroupClosureService(NamedParameterJdbcTemplate jdbcTemplate,
+      PlatformTransactionManager transactionManager) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.newTransaction = new TransactionTemplate(transactionManager);
+    this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+  }
+
+  private Map<Long, Long> loadGroupParents() {
+    Map<Long, Long> parents = new HashMap<>();
+
+    jdbcTemplate.query(SELECT_GROUP_PARENTS, EmptySqlParameterSource.INSTANCE,
+        (RowCallbackHandler) rs -> {
+          long parentId = rs.getLong(2);
+          parents.put(rs.getLong(1), rs.wasNull() ? null : parentId);
+        });
+
+    return parents;
+  }
+
+  private static List<Long> ancestorsOf(Long groupId, Map<Long, Long> parents) {
+    List<Long> ancestors = new ArrayList<>();
+
+    for (Long id = groupId; !isNull(id) && !ancestors.contains(id); id = parents.get(id)) {
+      ancestors.add(id);
+    }
+
+    return ancestors;
+  }
+
+  private static Set<Long> descendantsOf(Long groupId, Map<Long, Long> parents) {
+    Set<Long> descendants = new LinkedHashSet<>();
+    descendants.add(groupId);
+
+    for (Long id : parents.keySet()) {
+      if (ancestorsOf(id, parents).contains(groupId)) {
+        descendants.add(id);
+      }
+    }
+
+    return descendants;
+  }
+
+  /**
+   * Returns the id of the given group followed by the ids of its ancestors, nearest first
+   */
+  public List<Long> findAncestorIds(Long groupId) {
+
+    List<Long> ancestors = jdbcTemplate.queryForList(SELECT_ANCESTORS,
+        new MapSqlParameterSource("groupId", groupId), Long.class);
+
+    if (ancestors.isEmpty()) {
+      return ancestorsOf(groupId, loadGroupParents());
+    }
+
+    return ancestors;
+  }
+
+  /**
+   * Returns the id of the given group followed by the ids of its descendants
+   */
+  public Set<Long> findDescendantIds(Long groupId) {
+
+    if (!complete) {
+      return descendantsOf(groupId, loadGroupParents());
+    }
+
+    return new LinkedHashSet<>(jdbcTemplate.queryForList(SELECT_DESCENDANTS,
+        new MapSqlParameterSource("groupId", groupId), Long.class));
+  }
+
+  /**
+   * Adds the rows of a newly created group, in the transaction of the caller. The group must
+   * already be flushed to the database.
+   */
+  public void addGroup(Long groupId, Long parentId) {
+
+    jdbcTemplate.update(INSERT_CLOSURE_ROW, new MapSqlParameterSource("ancestorId", groupId)
+      .addValue("descendantId", groupId)
+      .addValue("depth", 0));
+
+    if (isNull(parentId)) {
+      return;
+    }
+
+    int added = jdbcTemplate.update(INSERT_PARENT_ANCESTORS,
+        new MapSqlParameterSource("groupId", groupId).addValue("parentId", parentId));
+
+    if (added == 0) {
+      // The parent is not in the closure yet, i.e. the startup rebuild has not run
+      List<Long> ancestors = ancestorsOf(parentId, loadGroupParents());
+      List<SqlParameterSource> rows = new ArrayList<>();
+
+      for (int depth = 0; depth < ancestors.size(); depth++) {
+        rows.add(new MapSqlParameterSource("ancestorId", ancestors.get(depth))
+          .addValue("descendantId", groupId)
+          .addValue("depth", depth + 1));
+      }
+
+      jdbcTemplate.batchUpdate(INSERT_CLOSURE_ROW, rows.toArray(new SqlParameterSource[0]));
+    }
+  }
+
+  /**
+   * Adds the groups missing from the closure, in the transaction of the caller if any, and
+   * returns the number of groups added
+   */
+  public int rebuild() {
+
+    Set<Long> indexed = new HashSet<>(jdbcTemplate.queryForList(SELECT_INDEXED_GROUPS,
+        EmptySqlParameterSource.INSTANCE, Long.class));
+
+    Map<Long, Long> parents = loadGroupParents();
+    List<SqlParameterSource> rows = new ArrayList<>();
+    int added = 0;
+
+    for (Long groupId : parents.keySet()) {
+      if (indexed.contains(groupId)) {
+        continue;
+      }
+
+      List<Long> ancestors = ancestorsOf(groupId, parents);
+
+      for (int depth = 0; depth < ancestors.size(); depth++) {
+        rows.add(new MapSqlParameterSource("ancestorId", ancestors.get(depth))
+          .addValue("descendantId", groupId)
+          .addValue("depth", depth));
+      }
+
+      added++;
+    }
+
+    if (!rows.isEmpty()) {
+      jdbcTemplate.batchUpdate(INSERT_CLOSURE_ROW, rows.toArray(new SqlParameterSource[0]));
+    }
+
+    return added;
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void startRebuild() {
+
+    for (int attempt = 1;; attempt++) {
+      try {
+        int added = newTransaction.execute(status -> rebuild());
+        complete = true;
+        LOG.info("Group closure ready, {} groups added at startup", added);
+        return;
+      } catch (DataIntegrityViolationException e) {
+        // Another node added the same rows concurrently
+        if (attempt >= MAX_REBUILD_ATTEMPTS) {
+          LOG.warn("Group closure not rebuilt, lookups use the group parent links: {}",
+              e.getMessage());
+          return;
+        }
+        LOG.debug("Group closure rebuilt concurrently, retrying: {}", e.getMessage());
+      }
+    }
+  }
+}
@@ -0,0 +1,44 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.core.group;
+
+import java.util.Collection;
+
+import it.infn.mw.iam.persistence.model.IamGroup;
+
+public interface IamGroupMembershipService {
+
+  /**
+   * Adds the given accounts to a group and to all its ancestors, skipping the memberships that
+   * already exist
+   * 
+   * @param group the group
+   * @param accountUuids the uuids of the accounts to be added
+   * @return the number of memberships created
+   */
+  int addMembers(IamGroup group, Collection<String> accountUuids);
+
+  /**
+   * Removes the given accounts from a group and from all its descendants; accounts that are not
+   * members of the group are left untouched
+   * 
+   * @param group the group
+   * @param accountUuids the uuids of the accounts to be removed
+   * @return the number of memberships removed
+   */
+  int removeMembers(IamGroup group, Collection<String> accountUuids);
+
+}
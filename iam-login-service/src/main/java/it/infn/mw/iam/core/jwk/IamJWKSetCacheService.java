@@ -15,7 +15,13 @@
  */
 package it.infn.mw.iam.core.jwk;
 
+import java.time.Clock;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 import org.mitre.jose.keystore.JWKSetKeyStore;
@@ -24,45 +30,109 @@ import org.mitre.jwt.signer.service.JWTSigningAndValidationService;
 import org.mitre.jwt.signer.service.impl.JWKSetCacheService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.web.client.RestTemplate;
 
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.jwk.JWK;
 import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jwt.SignedJWT;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import it.infn.mw.iam.authn.oidc.RestTemplateFactory;
 
-public class IamJWKSetCacheService extends JWKSetCacheService {
+/**
+ * A refresh-ahead cache of the validators and encrypters built from remote JWK sets.
+ * 
+ * Once a JWK set has been fetched, it is reloaded in the background after the refresh interval,
+ * while the last good key set keeps being served; a failed reload leaves the last good key set in
+ * place until the maximum staleness is reached. Only the first fetch of a JWK set (or a fetch after
+ * the maximum staleness has passed) blocks the caller.
+ * 
+ * The validators returned by this service also trigger a synchronous reload of the JWK set when
+ * asked to validate a JWT signed with an unknown key id, as it happens when the remote party
+ * rotates its keys; these forced reloads are rate limited per JWK set URI.
+ */
+public class IamJWKSetCacheService extends JWKSetCacheService implements DisposableBean {
 
   public static final String KEY_MATERIAL_ERROR_TEMPLATE =
       "Could not retrieve key material from {}";
   public static final Logger LOG = LoggerFactory.getLogger(IamJWKSetCacheService.class);
 
-  private LoadingCache<String, JWTSigningAndValidationService> validators;
-  private LoadingCache<String, JWTEncryptionAndDecryptionService> encrypters;
+  public static final String FETCH_TIMER = "iam.jwks.fetch";
+  public static final String FETCH_FAILURES_COUNTER = "iam.jwks.fetch.failures";
+  public static final String FORCED_REFRESH_COUNTER = "iam.jwks.forced-refresh";
+
+  private final RestTemplateFactory rtf;
+  private final long minForcedRefreshIntervalMsec;
+  private final Clock clock;
+
+  private final ExecutorService reloadExecutor;
+  private final LoadingCache<String, JWTSigningAndValidationService> validators;
+  private final LoadingCache<String, JWTEncryptionAndDecryptionService> encrypters;
+  private final Map<String, Long> lastForcedRefresh = new ConcurrentHashMap<>();
+
+  private final Timer fetchTimer;
+  private final Counter fetchFailures;
+  private final Counter forcedRefreshes;
 
-  public IamJWKSetCacheService(RestTemplateFactory rtf, int maxCacheSize, int expirationTime,
-      TimeUnit timeUnit) {
+  public IamJWKSetCacheService(RestTemplateFactory rtf, int maxCacheSize, long refreshInterval,
+      long maxStaleness, long minForcedRefreshInterval, TimeUnit timeUnit,
+      MeterRegistry meterRegistry, Clock clock) {
+
+    this.rtf = rtf;
+    this.minForcedRefreshIntervalMsec = timeUnit.toMillis(minForcedRefreshInterval);
+    this.clock = clock;
+
+    this.fetchTimer = meterRegistry.timer(FETCH_TIMER);
+    this.fetchFailures = meterRegistry.counter(FETCH_FAILURES_COUNTER);
+    this.forcedRefreshes = meterRegistry.counter(FORCED_REFRESH_COUNTER);
+
+    this.reloadExecutor = Executors.newFixedThreadPool(2,
+        new ThreadFactoryBuilder().setNameFormat("jwks-reload-%d").setDaemon(true).build());
 
     this.validators = CacheBuilder.newBuilder()
-      .expireAfterWrite(expirationTime, timeUnit)
+      .refreshAfterWrite(refreshInterval, timeUnit)
+      .expireAfterWrite(maxStaleness, timeUnit)
       .maximumSize(maxCacheSize)
-      .build(new JWKSetVerifierFetcher(rtf));
+      .build(CacheLoader.asyncReloading(new JWKSetVerifierFetcher(this::fetchJwkSet),
+          reloadExecutor));
 
     this.encrypters = CacheBuilder.newBuilder()
-      .expireAfterWrite(expirationTime, timeUnit)
+      .refreshAfterWrite(refreshInterval, timeUnit)
+      .expireAfterWrite(maxStaleness, timeUnit)
       .maximumSize(maxCacheSize)
-      .build(new JWKSetEncryptorFetcher(rtf));
+      .build(CacheLoader.asyncReloading(new JWKSetEncryptorFetcher(this::fetchJwkSet),
+          reloadExecutor));
   }
 
+  protected JWKSet fetchJwkSet(String jwksUri) throws Exception {
+
+    try {
+      return fetchTimer.recordCallable(() -> {
+        RestTemplate rt = rtf.newRestTemplate();
+        String jsonString = rt.getForObject(jwksUri, String.class);
+        return JWKSet.parse(jsonString);
+      });
+    } catch (Exception e) {
+      fetchFailures.increment();
+      LOG.warn("Error fetching JWK set from {}: {}", jwksUri, e.getMessage());
+      throw e;
+    }
+  }
 
   @Override
   public JWTSigningAndValidationService getValidator(String jwksUri) {
 
     try {
-      return validators.get(jwksUri);
+      return new RefreshingValidator(jwksUri, validators.get(jwksUri));
     } catch (UncheckedExecutionException | ExecutionException e) {
       LOG.error(KEY_MATERIAL_ERROR_TEMPLATE, jwksUri);
       if (LOG.isDebugEnabled()) {
@@ -85,24 +155,145 @@ public class IamJWKSetCacheService extends JWKSetCacheService {
     }
   }
 
+  private boolean forcedRefreshAllowed(String jwksUri) {
+
+    final long now = clock.millis();
+    final boolean[] allowed = {false};
+
+    lastForcedRefresh.compute(jwksUri, (k, last) -> {
+      if (last == null || now - last >= minForcedRefreshIntervalMsec) {
+        allowed[0] = true;
+        return now;
+      }
+      return last;
+    });
+
+    return allowed[0];
+  }
+
+  /**
+   * Synchronously reloads the JWK set for the given URI, if a forced reload has not been done too
+   * recently for the same URI.
+   * 
+   * @return the refreshed validator, or null if the reload was not allowed or failed
+   */
+  protected JWTSigningAndValidationService forceRefresh(String jwksUri) {
+
+    if (!forcedRefreshAllowed(jwksUri)) {
+      LOG.debug("Forced refresh of JWK set {} skipped: rate limited", jwksUri);
+      return null;
+    }
+
+    forcedRefreshes.increment();
+
+    try {
+      JWTSigningAndValidationService validator =
+          new IamJWTSigningService(new JWKSetKeyStore(fetchJwkSet(jwksUri)));
+      validators.put(jwksUri, validator);
+      return validator;
+    } catch (Exception e) {
+      LOG.error(KEY_MATERIAL_ERROR_TEMPLATE, jwksUri);
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Forced refresh of JWK set {} failed: {}", jwksUri, e.getMessage());
+      }
+      return null;
+    }
+  }
+
+  @Override
+  public void destroy() {
+    reloadExecutor.shutdownNow();
+  }
+
+  /**
+   * A validator that delegates to the currently cached key set for a JWK set URI, and that
+   * reloads the key set when a JWT is signed with a key id that is not found in it.
+   */
+  private class RefreshingValidator implements JWTSigningAndValidationService {
+
+    private final String jwksUri;
+    private final JWTSigningAndValidationService initialDelegate;
+
+    RefreshingValidator(String jwksUri, JWTSigningAndValidationService initialDelegate) {
+      this.jwksUri = jwksUri;
+      this.initialDelegate = initialDelegate;
+    }
+
+    private JWTSigningAndValidationService delegate() {
+      JWTSigningAndValidationService current = validators.getIfPresent(jwksUri);
+      return current == null ? initialDelegate : current;
+    }
+
+    @Override
+    public Map<String, JWK> getAllPublicKeys() {
+      return delegate().getAllPublicKeys();
+    }
+
+    @Override
+    public boolean validateSignature(SignedJWT signedJwt) {
+
+      JWTSigningAndValidationService delegate = delegate();
+
+      if (delegate.validateSignature(signedJwt)) {
+        return true;
+      }
+
+      String kid = signedJwt.getHeader().getKeyID();
+
+      if (kid == null || delegate.getAllPublicKeys().containsKey(kid)) {
+        return false;
+      }
+
+      LOG.debug("Key id '{}' not found in JWK set {}, reloading it", kid, jwksUri);
+      JWTSigningAndValidationService refreshed = forceRefresh(jwksUri);
+
+      return refreshed != null && refreshed.validateSignature(signedJwt);
+    }
+
+    @Override
+    public JWSAlgorithm getDefaultSigningAlgorithm() {
+      return delegate().getDefaultSigningAlgorithm();
+    }
+
+    @Override
+    public Collection<JWSAlgorithm> getAllSigningAlgsSupported() {
+      return delegate().getAllSigningAlgsSupported();
+    }
+
+    @Override
+    public void signJwt(SignedJWT jwt) {
+      delegate().signJwt(jwt);
+    }
+
+    @Override
+    public void signJwt(SignedJWT jwt, JWSAlgorithm alg) {
+      delegate().signJwt(jwt, alg);
+    }
+
+    @Override
+    public String getDefaultSignerKeyId() {
+      return delegate().getDefaultSignerKeyId();
+    }
+  }
+
+  @FunctionalInterface
+  public interface JWKSetFetcher {
+    JWKSet fetch(String jwksUri) throws Exception;
+  }
+
   public static class JWKSetEncryptorFetcher
       extends CacheLoader<String, JWTEncryptionAndDecryptionService> {
 
-    final RestTemplateFactory rtf;
+    final JWKSetFetcher fetcher;
 
-    public JWKSetEncryptorFetcher(RestTemplateFactory rtf) {
-      this.rtf = rtf;
+    public JWKSetEncryptorFetcher(JWKSetFetcher fetcher) {
+      this.fetcher = fetcher;
     }
 
     @Override
     public JWTEncryptionAndDecryptionService load(String key) throws Exception {
-      
-      RestTemplate rt = rtf.newRestTemplate();
-      
-      String jsonString = rt.getForObject(key, String.class);
-      JWKSet jwkSet = JWKSet.parse(jsonString);
 
-      JWKSetKeyStore keyStore = new JWKSetKeyStore(jwkSet);
+      JWKSetKeyStore keyStore = new JWKSetKeyStore(fetcher.fetch(key));
 
       return new IamJWTEncryptionService(keyStore);
     }
@@ -111,21 +302,16 @@ public class IamJWKSetCacheService extends JWKSetCacheService {
   public static class JWKSetVerifierFetcher
       extends CacheLoader<String, JWTSigningAndValidationService> {
 
-    final RestTemplateFactory rtf;
+    final JWKSetFetcher fetcher;
 
-    public JWKSetVerifierFetcher(RestTemplateFactory rtf) {
-      this.rtf = rtf;
+    public JWKSetVerifierFetcher(JWKSetFetcher fetcher) {
+      this.fetcher = fetcher;
     }
 
     @Override
     public JWTSigningAndValidationService load(String key) throws Exception {
-      
-      RestTemplate rt = rtf.newRestTemplate();
-      
-      String jsonString = rt.getForObject(key, String.class);
-      JWKSet jwkSet = JWKSet.parse(jsonString);
 
-      JWKSetKeyStore keyStore = new JWKSetKeyStore(jwkSet);
+      JWKSetKeyStore keyStore = new JWKSetKeyStore(fetcher.fetch(key));
 
       return new IamJWTSigningService(keyStore);
     }
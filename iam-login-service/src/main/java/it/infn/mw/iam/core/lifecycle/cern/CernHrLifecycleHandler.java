@@ -24,8 +24,17 @@ import static it.infn.mw.iam.core.lifecycle.cern.CernHrLifecycleUtils.LABEL_SKIP
 import static java.lang.String.format;
 
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -39,6 +48,11 @@ import org.springframework.stereotype.Component;
 import org.springframework.util.Assert;
 
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 
 import it.infn.mw.iam.api.registration.cern.CernHrDBApiService;
 import it.infn.mw.iam.api.registration.cern.CernHrDbApiError;
@@ -51,6 +65,15 @@ import it.infn.mw.iam.persistence.model.IamAccount;
 import it.infn.mw.iam.persistence.model.IamLabel;
 import it.infn.mw.iam.persistence.repository.IamAccountRepository;
 
+/**
+ * Synchronizes the accounts linked to a CERN person id with the HR database.
+ * 
+ * Accounts are processed one page at a time: the HR records of the accounts in a page are
+ * fetched concurrently, with at most {@code cern.task.concurrency} requests in flight, and the
+ * accounts are then updated in order. Unchanged attributes and labels are not written. The outcome
+ * of each account, the number of updated accounts and the duration of each run are exposed as
+ * Micrometer metrics.
+ */
 @Component
 @Profile("cern")
 public class CernHrLifecycleHandler implements Runnable, SchedulingConfigurer {
@@ -69,6 +92,10 @@ public class CernHrLifecycleHandler implements Runnable, SchedulingConfigurer {
 
   public static final int DEFAULT_PAGE_SIZE = 50;
 
+  public static final String SYNC_ACCOUNTS_METRIC = "iam.cern-hr.sync.accounts";
+  public static final String SYNC_UPDATED_ACCOUNTS_METRIC = "iam.cern-hr.sync.updated-accounts";
+  public static final String SYNC_RUN_METRIC = "iam.cern-hr.sync.run";
+
   protected static final List<String> SUSPENDED_STATUSES =
       Lists.newArrayList(SUSPENDED.name(), PENDING_REMOVAL.name());
 
@@ -78,16 +105,39 @@ public class CernHrLifecycleHandler implements Runnable, SchedulingConfigurer {
   private final IamAccountRepository accountRepo;
   private final IamAccountService accountService;
   private final CernHrDBApiService hrDb;
+  private final MeterRegistry meterRegistry;
+  private final Counter updatedAccounts;
+  private final Timer runTimer;
 
   public CernHrLifecycleHandler(CernProperties cernProperties, IamAccountRepository accountRepo,
-      IamAccountService accountService, CernHrDBApiService hrDb) {
+      IamAccountService accountService, CernHrDBApiService hrDb, MeterRegistry meterRegistry) {
     this.cernProperties = cernProperties;
     this.accountRepo = accountRepo;
     this.accountService = accountService;
     this.hrDb = hrDb;
+    this.meterRegistry = meterRegistry;
+    this.updatedAccounts = meterRegistry.counter(SYNC_UPDATED_ACCOUNTS_METRIC);
+    this.runTimer = meterRegistry.timer(SYNC_RUN_METRIC);
   }
 
   public void handleAccount(String cernPersonId, String experiment, IamAccount a) {
+    handleAccount(cernPersonId, experiment, a, () -> hrDb.getHrDbPersonRecord(cernPersonId));
+  }
+
+  private void handleAccount(String cernPersonId, String experiment, IamAccount a,
+      Supplier<Optional<VOPersonDTO>> hrDbRecord) {
+
+    Date lastUpdateTime = a.getLastUpdateTime();
+
+    synchronizeAccount(cernPersonId, experiment, a, hrDbRecord);
+
+    if (!Objects.equals(lastUpdateTime, a.getLastUpdateTime())) {
+      updatedAccounts.increment();
+    }
+  }
+
+  private void synchronizeAccount(String cernPersonId, String experiment, IamAccount a,
+      Supplier<Optional<VOPersonDTO>> hrDbRecord) {
 
     LOG.debug("Handling IAM account (username: {} , uuid: {})", a.getUsername(), a.getUuid());
     LOG.debug("Synchronize with CERN person id {} ({})", cernPersonId, experiment);
@@ -101,7 +151,7 @@ public class CernHrLifecycleHandler implements Runnable, SchedulingConfigurer {
 
     Optional<VOPersonDTO> voPerson = Optional.empty();
     try {
-      voPerson = hrDb.getHrDbPersonRecord(cernPersonId);
+      voPerson = hrDbRecord.get();
     } catch (CernHrDbApiError e) {
       LOG.error("Error contacting HR DB api: {}", e.getMessage(), e);
       setCernStatusLabel(a, CernStatus.ERROR, format(HR_DB_API_ERROR));
@@ -138,35 +188,80 @@ public class CernHrLifecycleHandler implements Runnable, SchedulingConfigurer {
 
   @Override
   public void run() {
+    runTimer.record(this::synchronizeAccounts);
+  }
+
+  private void synchronizeAccounts() {
 
     LOG.info("CERN HR Lyfecycle handler ... [START]");
 
     Pageable pageRequest = PageRequest.of(0, cernProperties.getTask().getPageSize());
 
-    while (true) {
-      Page<IamAccount> accountsPage = accountRepo.findByLabelPrefixAndName(LABEL_CERN_PREFIX,
-          cernProperties.getPersonIdClaim(), pageRequest);
+    ExecutorService lookupExecutor =
+        Executors.newFixedThreadPool(cernProperties.getTask().getConcurrency(),
+            new ThreadFactoryBuilder().setNameFormat("cern-hr-sync-%d").setDaemon(true).build());
+
+    try {
+      while (true) {
+        Page<IamAccount> accountsPage = accountRepo.findByLabelPrefixAndName(LABEL_CERN_PREFIX,
+            cernProperties.getPersonIdClaim(), pageRequest);
 
-      LOG.debug("accountsPage: {}", accountsPage);
+        LOG.debug("accountsPage: {}", accountsPage);
 
-      if (accountsPage.hasContent()) {
-        for (IamAccount a : accountsPage.getContent()) {
-          try {
-            handleAccount(getCernPersonId(a), cernProperties.getExperimentName(), a);
-          } catch (RuntimeException e) {
-            LOG.error("Error during CERN HR lifecycle handler on account {}: {}", a, e.getMessage());
-          }
+        if (accountsPage.hasContent()) {
+          handlePage(accountsPage.getContent(), lookupExecutor);
         }
+
+        if (!accountsPage.hasNext()) {
+          break;
+        }
+
+        pageRequest = accountsPage.nextPageable();
       }
+    } finally {
+      lookupExecutor.shutdownNow();
+    }
+
+    LOG.info("CERN HR Lyfecycle handler ... [END]");
+  }
+
+  private void handlePage(List<IamAccount> accounts, ExecutorService lookupExecutor) {
+
+    Map<String, Future<Optional<VOPersonDTO>>> lookups = new HashMap<>();
 
-      if (!accountsPage.hasNext()) {
-        break;
+    for (IamAccount a : accounts) {
+      if (CernHrLifecycleUtils.isAccountIgnored(a)) {
+        continue;
       }
+      a.getLabelByPrefixAndName(LABEL_CERN_PREFIX, cernProperties.getPersonIdClaim())
+        .map(IamLabel::getValue)
+        .ifPresent(id -> lookups.computeIfAbsent(id, i -> CompletableFuture
+          .supplyAsync(() -> hrDb.getHrDbPersonRecord(i), lookupExecutor)));
+    }
 
-      pageRequest = accountsPage.nextPageable();
+    for (IamAccount a : accounts) {
+      try {
+        String cernPersonId = getCernPersonId(a);
+        handleAccount(cernPersonId, cernProperties.getExperimentName(), a,
+            () -> awaitHrDbRecord(lookups.get(cernPersonId)));
+      } catch (RuntimeException e) {
+        LOG.error("Error during CERN HR lifecycle handler on account {}: {}", a, e.getMessage());
+      }
     }
+  }
 
-    LOG.info("CERN HR Lyfecycle handler ... [END]");
+  private Optional<VOPersonDTO> awaitHrDbRecord(Future<Optional<VOPersonDTO>> lookup) {
+    try {
+      return lookup.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CernHrDbApiError("Interrupted while waiting for HR DB api", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new CernHrDbApiError(e.getCause().getMessage(), e.getCause());
+    }
   }
 
   @Override
@@ -222,8 +317,8 @@ public class CernHrLifecycleHandler implements Runnable, SchedulingConfigurer {
   private void setCernStatusLabel(IamAccount a, CernStatus status, String message) {
     IamLabel statusLabel = CernHrLifecycleUtils.buildCernStatusLabel(status);
     IamLabel messageLabel = CernHrLifecycleUtils.buildCernMessageLabel(message);
-    accountService.addLabel(a, statusLabel);
-    accountService.addLabel(a, messageLabel);
+    accountService.addLabels(a, List.of(statusLabel, messageLabel));
+    meterRegistry.counter(SYNC_ACCOUNTS_METRIC, "status", status.name()).increment();
   }
 
   private void restoreAccount(IamAccount a) {
@@ -0,0 +1,99 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.core.lock;
+
+import java.lang.management.ManagementFactory;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+
+/**
+ * A {@link TaskLockService} backed by the iam_task_lock table, shared by all the IAM instances
+ * connected to the same database.
+ * 
+ * A lock is acquired by atomically moving forward the locked_until timestamp of its row, if it
+ * lies in the past; the row is created the first time the lock is requested. Lock expiration
+ * relies on the clocks of the IAM instances being reasonably in sync.
+ */
+@Service
+public class JdbcTaskLockService implements TaskLockService {
+
+  public static final Logger LOG = LoggerFactory.getLogger(JdbcTaskLockService.class);
+
+  private static final String UPDATE_LOCK =
+      "UPDATE iam_task_lock SET locked_until = :until, locked_at = :now, locked_by = :owner "
+          + "WHERE name = :name AND locked_until <= :now";
+
+  private static final String INSERT_LOCK =
+      "INSERT INTO iam_task_lock (name, locked_until, locked_at, locked_by) "
+          + "VALUES (:name, :until, :now, :owner)";
+
+  private static final String RELEASE_LOCK = "UPDATE iam_task_lock SET locked_until = :now "
+      + "WHERE name = :name AND locked_by = :owner";
+
+  private final NamedParameterJdbcTemplate jdbcTemplate;
+  private final Clock clock;
+  private final String owner;
+
+  public JdbcTaskLockService(NamedParameterJdbcTemplate jdbcTemplate, Clock clock) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.clock = clock;
+    this.owner = ManagementFactory.getRuntimeMXBean().getName();
+  }
+
+  private MapSqlParameterSource lockParams(String name, Instant now, Instant until) {
+    return new MapSqlParameterSource().addValue("name", name)
+      .addValue("now", Date.from(now))
+      .addValue("until", Date.from(until))
+      .addValue("owner", owner);
+  }
+
+  @Override
+  public boolean tryLock(String name, Duration lockAtMostFor) {
+
+    Instant now = clock.instant();
+    MapSqlParameterSource params = lockParams(name, now, now.plus(lockAtMostFor));
+
+    if (jdbcTemplate.update(UPDATE_LOCK, params) > 0) {
+      LOG.debug("Lock '{}' acquired by {}", name, owner);
+      return true;
+    }
+
+    try {
+      jdbcTemplate.update(INSERT_LOCK, params);
+      LOG.debug("Lock '{}' created and acquired by {}", name, owner);
+      return true;
+    } catch (DataIntegrityViolationException e) {
+      LOG.debug("Lock '{}' is held by another node", name);
+      return false;
+    }
+  }
+
+  @Override
+  public void unlock(String name) {
+    Instant now = clock.instant();
+    jdbcTemplate.update(RELEASE_LOCK, lockParams(name, now, now));
+    LOG.debug("Lock '{}' released by {}", name, owner);
+  }
+}
@@ -0,0 +1,37 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.core.lock;
+
+import java.time.Duration;
+
+public interface TaskLockService {
+
+  /**
+   * Tries to acquire the named cluster-wide lock, without waiting.
+   * 
+   * @param name the lock name
+   * @param lockAtMostFor the time after which the lock is considered released even if its owner
+   *        did not release it, e.g. because the owner node crashed
+   * @return true if the lock has been acquired by this node, false otherwise
+   */
+  boolean tryLock(String name, Duration lockAtMostFor);
+
+  /**
+   * Releases the named lock, if held by this node.
+   */
+  void unlock(String name);
+
+}
@@ -0,0 +1,345 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.core.oauth.cleanup;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import it.infn.mw.iam.core.lock.TaskLockService;
+
+/**
+ * Removes expired access and refresh tokens, the authentication holders and saved user
+ * authentications they leave orphaned, and expired approved sites.
+ * 
+ * Rows are selected by expiration index and removed with set-based statements in bounded
+ * batches, each one committed on its own, with a configurable pause between batches. A run is
+ * executed by one IAM instance at a time, guarded by a cluster-wide {@link TaskLockService} lock.
+ * The number of removed rows is exposed as the {@value #DELETED_ROWS_METRIC} Micrometer counter,
+ * tagged by table.
+ */
+@Service
+public class BatchedTokenCleanupService {
+
+  public static final Logger LOG = LoggerFactory.getLogger(BatchedTokenCleanupService.class);
+
+  public static final String TOKEN_CLEANUP_LOCK = "token-cleanup";
+  public static final String APPROVED_SITE_CLEANUP_LOCK = "approved-site-cleanup";
+
+  public static final String DELETED_ROWS_METRIC = "iam.token-cleanup.deleted";
+  public static final String TOKEN_CLEANUP_RUN_METRIC = "iam.token-cleanup.tokens.run";
+  public static final String SITE_CLEANUP_RUN_METRIC = "iam.token-cleanup.approved-sites.run";
+
+  public static final String ACCESS_TOKEN = "access_token";
+  public static final String REFRESH_TOKEN = "refresh_token";
+  public static final String AUTHENTICATION_HOLDER = "authentication_holder";
+  public static final String SAVED_USER_AUTH = "saved_user_auth";
+  public static final String APPROVED_SITE = "approved_site";
+
+  private static final String SELECT_EXPIRED_ACCESS_TOKENS =
+      "SELECT id, auth_holder_id FROM access_token WHERE expiration < :now "
+          + "ORDER BY expiration LIMIT :limit";
+
+  private static final String SELECT_EXPIRED_REFRESH_TOKENS =
+      "SELECT id, auth_holder_id FROM refresh_token WHERE expiration < :now "
+          + "ORDER BY expiration LIMIT :limit";
+
+  private static final String DELETE_ACCESS_TOKENS = "DELETE FROM access_token WHERE id IN (:ids)";
+
+  private static final String DELETE_REFRESH_TOKENS =
+      "DELETE FROM refresh_token WHERE id IN (:ids)";
+
+  private static final String HOLDER_NOT_REFERENCED =
+      "NOT EXISTS (SELECT 1 FROM access_token a WHERE a.auth_holder_id = h.id) "
+          + "AND NOT EXISTS (SELECT 1 FROM refresh_token r WHERE r.auth_holder_id = h.id) "
+          + "AND NOT EXISTS (SELECT 1 FROM authorization_code c WHERE c.auth_holder_id = h.id) "
+          + "AND NOT EXISTS (SELECT 1 FROM device_code d WHERE d.auth_holder_id = h.id)";
+
+  private static final String SELECT_ORPHAN_HOLDERS =
+      "SELECT h.id, h.user_auth_id FROM authentication_holder h WHERE h.id IN (:ids) AND "
+          + HOLDER_NOT_REFERENCED;
+
+  private static final String SELECT_ORPHAN_HOLDERS_IN_RANGE =
+      "SELECT h.id, h.user_auth_id FROM authentication_holder h "
+          + "WHERE h.id > :from AND h.id <= :to AND " + HOLDER_NOT_REFERENCED;
+
+  private static final String SELECT_MAX_HOLDER_ID = "SELECT MAX(id) FROM authentication_holder";
+
+  private static final String DELETE_HOLDERS =
+      "DELETE FROM authentication_holder WHERE id IN (:ids)";
+
+  private static final String SELECT_ORPHAN_USER_AUTHS =
+      "SELECT s.id FROM saved_user_auth s WHERE s.id IN (:ids) "
+          + "AND NOT EXISTS (SELECT 1 FROM authentication_holder h WHERE h.user_auth_id = s.id)";
+
+  private static final String DELETE_USER_AUTH_AUTHORITIES =
+      "DELETE FROM saved_user_auth_authority WHERE owner_id IN (:ids)";
+
+  private static final String DELETE_USER_AUTH_INFO =
+      "DELETE FROM saved_user_auth_info WHERE owner_id IN (:ids)";
+
+  private static final String DELETE_USER_AUTHS = "DELETE FROM saved_user_auth WHERE id IN (:ids)";
+
+  private static final String SELECT_EXPIRED_SITES =
+      "SELECT id FROM approved_site WHERE timeout_date < :now "
+          + "ORDER BY timeout_date LIMIT :limit";
+
+  private static final String DELETE_SITE_REFRESH_TOKENS =
+      "DELETE FROM refresh_token WHERE id IN "
+          + "(SELECT refresh_token_id FROM access_token WHERE approved_site_id IN (:ids))";
+
+  private static final String DELETE_SITE_ACCESS_TOKENS =
+      "DELETE FROM access_token WHERE approved_site_id IN (:ids)";
+
+  private static final String DELETE_SITES = "DELETE FROM approved_site WHERE id IN (:ids)";
+
+  private final NamedParameterJdbcTemplate jdbcTemplate;
+  private final TaskLockService lockService;
+  private final TokenCleanupProperties properties;
+  private final Clock clock;
+  private final MeterRegistry meterRegistry;
+  private final Timer tokenCleanupTimer;
+  private final Timer siteCleanupTimer;
+
+  private final AtomicLong holderSweepCursor = new AtomicLong(0);
+
+  public BatchedTokenCleanupService(NamedParameterJdbcTemplate jdbcTemplate,
+      TaskLockService lockService, TokenCleanupProperties properties, Clock clock,
+      MeterRegistry meterRegistry) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.lockService = lockService;
+    this.properties = properties;
+    this.clock = clock;
+    this.meterRegistry = meterRegistry;
+    this.tokenCleanupTimer = meterRegistry.timer(TOKEN_CLEANUP_RUN_METRIC);
+    this.siteCleanupTimer = meterRegistry.timer(SITE_CLEANUP_RUN_METRIC);
+  }
+
+  private static MapSqlParameterSource ids(Collection<Long> ids) {
+    return new MapSqlParameterSource("ids", ids);
+  }
+
+  private MapSqlParameterSource expiredBefore(Date now) {
+    return new MapSqlParameterSource("now", now).addValue("limit", properties.getBatchSize());
+  }
+
+  private int countDeleted(String table, int deleted) {
+    if (deleted > 0) {
+      meterRegistry.counter(DELETED_ROWS_METRIC, "table", table).increment(deleted);
+    }
+    return deleted;
+  }
+
+  private boolean pause() {
+    if (properties.getBatchPauseMsec() <= 0) {
+      return true;
+    }
+
+    try {
+      Thread.sleep(properties.getBatchPauseMsec());
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  private void runLocked(String lockName, Timer timer, Runnable cleanup) {
+
+    if (!lockService.tryLock(lockName, Duration.ofSeconds(properties.getLockTimeoutSecs()))) {
+      LOG.debug("Cleanup '{}' is running on another IAM instance, skipping", lockName);
+      return;
+    }
+
+    try {
+      timer.record(cleanup);
+    } finally {
+      lockService.unlock(lockName);
+    }
+  }
+
+  private int deleteHolders(List<Long> holderIds, Set<Long> userAuthIds) {
+
+    if (holderIds.isEmpty()) {
+      return 0;
+    }
+
+    int deleted = countDeleted(AUTHENTICATION_HOLDER,
+        jdbcTemplate.update(DELETE_HOLDERS, ids(holderIds)));
+
+    if (!userAuthIds.isEmpty()) {
+      List<Long> orphanUserAuths =
+          jdbcTemplate.queryForList(SELECT_ORPHAN_USER_AUTHS, ids(userAuthIds), Long.class);
+
+      if (!orphanUserAuths.isEmpty()) {
+        jdbcTemplate.update(DELETE_USER_AUTH_AUTHORITIES, ids(orphanUserAuths));
+        jdbcTemplate.update(DELETE_USER_AUTH_INFO, ids(orphanUserAuths));
+        countDeleted(SAVED_USER_AUTH, jdbcTemplate.update(DELETE_USER_AUTHS, ids(orphanUserAuths)));
+      }
+    }
+
+    return deleted;
+  }
+
+  private int deleteOrphanHolders(String selectSql, MapSqlParameterSource params) {
+
+    List<Long> holderIds = new ArrayList<>();
+    Set<Long> userAuthIds = new HashSet<>();
+
+    jdbcTemplate.query(selectSql, params, (RowCallbackHandler) rs -> {
+      holderIds.add(rs.getLong("id"));
+      long userAuthId = rs.getLong("user_auth_id");
+      if (!rs.wasNull()) {
+        userAuthIds.add(userAuthId);
+      }
+    });
+
+    return deleteHolders(holderIds, userAuthIds);
+  }
+
+  private long deleteExpiredTokens(String selectSql, String deleteSql, String table, Date now) {
+
+    long total = 0;
+
+    for (int i = 0; i < properties.getMaxBatchesPerRun(); i++) {
+
+      List<Long> tokenIds = new ArrayList<>();
+      Set<Long> holderIds = new HashSet<>();
+
+      jdbcTemplate.query(selectSql, expiredBefore(now), (RowCallbackHandler) rs -> {
+        tokenIds.add(rs.getLong("id"));
+        long holderId = rs.getLong("auth_holder_id");
+        if (!rs.wasNull()) {
+          holderIds.add(holderId);
+        }
+      });
+
+      if (tokenIds.isEmpty()) {
+        break;
+      }
+
+      total += countDeleted(table, jdbcTemplate.update(deleteSql, ids(tokenIds)));
+
+      if (!holderIds.isEmpty()) {
+        deleteOrphanHolders(SELECT_ORPHAN_HOLDERS, ids(holderIds));
+      }
+
+      if (tokenIds.size() < properties.getBatchSize() || !pause()) {
+        break;
+      }
+    }
+
+    return total;
+  }
+
+  private long sweepOrphanHolders() {
+
+    Long maxHolderId =
+        jdbcTemplate.queryForObject(SELECT_MAX_HOLDER_ID, new MapSqlParameterSource(), Long.class);
+
+    if (maxHolderId == null) {
+      return 0;
+    }
+
+    long total = 0;
+
+    for (int i = 0; i < properties.getOrphanSweepBatchesPerRun(); i++) {
+
+      long from = holderSweepCursor.get();
+
+      if (from >= maxHolderId) {
+        holderSweepCursor.set(0);
+        break;
+      }
+
+      long to = Math.min(from + properties.getBatchSize(), maxHolderId);
+
+      total += deleteOrphanHolders(SELECT_ORPHAN_HOLDERS_IN_RANGE,
+          new MapSqlParameterSource("from", from).addValue("to", to));
+
+      holderSweepCursor.set(to);
+
+      if (!pause()) {
+        break;
+      }
+    }
+
+    return total;
+  }
+
+  public void clearExpiredTokens() {
+
+    runLocked(TOKEN_CLEANUP_LOCK, tokenCleanupTimer, () -> {
+      Date now = Date.from(clock.instant());
+
+      long accessTokens = deleteExpiredTokens(SELECT_EXPIRED_ACCESS_TOKENS,
+          DELETE_ACCESS_TOKENS, ACCESS_TOKEN, now);
+      long refreshTokens = deleteExpiredTokens(SELECT_EXPIRED_REFRESH_TOKENS,
+          DELETE_REFRESH_TOKENS, REFRESH_TOKEN, now);
+      long orphanHolders = sweepOrphanHolders();
+
+      LOG.info(
+          "Removed {} expired access tokens, {} expired refresh tokens, "
+              + "{} orphaned authentication holders found by sweep",
+          accessTokens, refreshTokens, orphanHolders);
+    });
+  }
+
+  public void clearExpiredSites() {
+
+    runLocked(APPROVED_SITE_CLEANUP_LOCK, siteCleanupTimer, () -> {
+      Date now = Date.from(clock.instant());
+      long total = 0;
+
+      for (int i = 0; i < properties.getMaxBatchesPerRun(); i++) {
+
+        List<Long> siteIds =
+            jdbcTemplate.queryForList(SELECT_EXPIRED_SITES, expiredBefore(now), Long.class);
+
+        if (siteIds.isEmpty()) {
+          break;
+        }
+
+        // tokens issued on the basis of an expired approval are revoked with it
+        countDeleted(REFRESH_TOKEN,
+            jdbcTemplate.update(DELETE_SITE_REFRESH_TOKENS, ids(siteIds)));
+        countDeleted(ACCESS_TOKEN, jdbcTemplate.update(DELETE_SITE_ACCESS_TOKENS, ids(siteIds)));
+        total += countDeleted(APPROVED_SITE, jdbcTemplate.update(DELETE_SITES, ids(siteIds)));
+
+        if (siteIds.size() < properties.getBatchSize() || !pause()) {
+          break;
+        }
+      }
+
+      LOG.info("Removed {} expired approved sites", total);
+    });
+  }
+}
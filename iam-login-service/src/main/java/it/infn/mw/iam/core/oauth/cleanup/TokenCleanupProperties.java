@@ -0,0 +1,107 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.core.oauth.cleanup;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "task.token-cleanup")
+public class TokenCleanupProperties {
+
+  /**
+   * When true, expired tokens and approved sites are removed by the IAM batched cleanup engine,
+   * otherwise by the MITREid token and approved site services. The engine deletes rows with plain
+   * SQL statements, and relies on the foreign keys of the token and holder dependent tables to
+   * cascade the removal
+   */
+  private boolean batched = true;
+
+  /**
+   * Number of rows removed by each delete statement
+   */
+  private int batchSize = 500;
+
+  /**
+   * Pause between two consecutive batches, to leave room to token issuance on the database
+   */
+  private long batchPauseMsec = 100;
+
+  /**
+   * Maximum number of batches executed for each kind of row in a single cleanup run
+   */
+  private int maxBatchesPerRun = 2000;
+
+  /**
+   * Number of batches used, in each run, to sweep authentication holders left orphaned by tokens
+   * removed outside of the cleanup engine (e.g. revoked tokens)
+   */
+  private int orphanSweepBatchesPerRun = 20;
+
+  /**
+   * Time after which the cluster-wide cleanup lock is released even if the node holding it did
+   * not complete the run
+   */
+  private long lockTimeoutSecs = 3600;
+
+  public boolean isBatched() {
+    return batched;
+  }
+
+  public void setBatched(boolean batched) {
+    this.batched = batched;
+  }
+
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  public void setBatchSize(int batchSize) {
+    this.batchSize = batchSize;
+  }
+
+  public long getBatchPauseMsec() {
+    return batchPauseMsec;
+  }
+
+  public void setBatchPauseMsec(long batchPauseMsec) {
+    this.batchPauseMsec = batchPauseMsec;
+  }
+
+  public int getMaxBatchesPerRun() {
+    return maxBatchesPerRun;
+  }
+
+  public void setMaxBatchesPerRun(int maxBatchesPerRun) {
+    this.maxBatchesPerRun = maxBatchesPerRun;
+  }
+
+  public int getOrphanSweepBatchesPerRun() {
+    return orphanSweepBatchesPerRun;
+  }
+
+  public void setOrphanSweepBatchesPerRun(int orphanSweepBatchesPerRun) {
+    this.orphanSweepBatchesPerRun = orphanSweepBatchesPerRun;
+  }
+
+  public long getLockTimeoutSecs() {
+    return lockTimeoutSecs;
+  }
+
+  public void setLockTimeoutSecs(long lockTimeoutSecs) {
+    this.lockTimeoutSecs = lockTimeoutSecs;
+  }
+}
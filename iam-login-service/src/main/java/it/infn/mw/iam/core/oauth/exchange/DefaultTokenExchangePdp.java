@@ -18,12 +18,10 @@ package it.infn.mw.iam.core.oauth.exchange;
 import static it.infn.mw.iam.core.oauth.exchange.TokenExchangePdpResult.fromPolicy;
 import static it.infn.mw.iam.core.oauth.exchange.TokenExchangePdpResult.invalidScope;
 import static it.infn.mw.iam.core.oauth.exchange.TokenExchangePdpResult.notApplicable;
-import static java.util.Comparator.comparing;
 
 import java.util.List;
+import java.util.Objects;
 import java.util.Set;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -39,6 +37,7 @@ import it.infn.mw.iam.core.oauth.scope.matchers.ScopeMatcher;
 import it.infn.mw.iam.core.oauth.scope.matchers.ScopeMatcherRegistry;
 import it.infn.mw.iam.persistence.model.IamTokenExchangePolicyEntity;
 import it.infn.mw.iam.persistence.repository.IamTokenExchangePolicyRepository;
+import it.infn.mw.iam.persistence.repository.IamTokenExchangePolicyVersionProjection;
 
 @SuppressWarnings("deprecation")
 @Service
@@ -53,11 +52,10 @@ public class DefaultTokenExchangePdp implements TokenExchangePdp, InitializingBe
 
   private final ScopeMatcherRegistry scopeMatcherRegistry;
 
-  private List<TokenExchangePolicy> policies = Lists.newArrayList();
+  // Replaced as a whole on reload, so that decisions never need to lock
+  private volatile TokenExchangePolicyIndex policies = TokenExchangePolicyIndex.EMPTY;
 
-  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
-  private final ReentrantReadWriteLock.ReadLock readLock = lock.readLock();
-  private final ReentrantReadWriteLock.WriteLock writeLock = lock.writeLock();
+  private volatile String policiesVersion;
 
   @Autowired
   public DefaultTokenExchangePdp(IamTokenExchangePolicyRepository repo,
@@ -66,10 +64,15 @@ public class DefaultTokenExchangePdp implements TokenExchangePdp, InitializingBe
     this.scopeMatcherRegistry = scopeMatcherRegistry;
   }
 
-  Set<TokenExchangePolicy> applicablePolicies(ClientDetails origin, ClientDetails destination) {
-    return policies.stream()
-      .filter(p -> p.appicableFor(origin, destination))
-      .collect(Collectors.toSet());
+  private String loadPoliciesVersion() {
+    IamTokenExchangePolicyVersionProjection v = repo.findPoliciesVersion();
+
+    if (v == null) {
+      return null;
+    }
+
+    return String.format("%d:%d:%d", v.getPolicyCount(), v.getMaxId(),
+        v.getLastUpdateTime() == null ? null : v.getLastUpdateTime().getTime());
   }
 
   /**
@@ -127,32 +130,37 @@ public class DefaultTokenExchangePdp implements TokenExchangePdp, InitializingBe
   public TokenExchangePdpResult validateTokenExchange(TokenRequest request, ClientDetails origin,
       ClientDetails destination) {
 
-    try {
-      readLock.lock();
-      return applicablePolicies(origin, destination).stream()
-        .max(comparing(TokenExchangePolicy::rank).thenComparing(TokenExchangePolicy::getRule))
-        .map(p -> verifyScopes(p, request, origin, destination))
-        .orElse(notApplicable());
-    } finally {
-      readLock.unlock();
-    }
+    return policies.findApplicablePolicy(origin, destination)
+      .map(p -> verifyScopes(p, request, origin, destination))
+      .orElse(notApplicable());
   }
 
   @Override
-  public void reloadPolicies() {
+  public synchronized void reloadPolicies() {
 
-    try {
-      LOG.debug("Token exchange policy reload started");
-      writeLock.lock();
-      policies.clear();
+    LOG.debug("Token exchange policy reload started");
 
-      for (IamTokenExchangePolicyEntity p : repo.findAll()) {
-        policies.add(TokenExchangePolicy.builder().fromEntity(p).build());
-      }
+    // The version is read before the policies, so that a change that happens while loading
+    // triggers another reload at the next check
+    final String version = loadPoliciesVersion();
+    List<TokenExchangePolicy> loadedPolicies = Lists.newArrayList();
+
+    for (IamTokenExchangePolicyEntity p : repo.findAll()) {
+      loadedPolicies.add(TokenExchangePolicy.builder().fromEntity(p).build());
+    }
+
+    policies = new TokenExchangePolicyIndex(loadedPolicies);
+    policiesVersion = version;
+
+    LOG.debug("Token exchange policy reload done: {} policies loaded", loadedPolicies.size());
+  }
+
+  @Override
+  public void reloadPoliciesIfChanged() {
 
-    } finally {
-      writeLock.unlock();
-      LOG.debug("Token exchange policy reload done");
+    if (!Objects.equals(policiesVersion, loadPoliciesVersion())) {
+      LOG.info("Token exchange policies changed, reloading them");
+      reloadPolicies();
     }
   }
 
@@ -23,6 +23,12 @@ public interface TokenExchangePdp {
 
   public void reloadPolicies();
 
+  /**
+   * Reloads the policies only if they have been changed since they were last loaded, possibly by
+   * another IAM instance.
+   */
+  public void reloadPoliciesIfChanged();
+
   TokenExchangePdpResult validateTokenExchange(TokenRequest request, ClientDetails originClient,
       ClientDetails destinationClient);
 
@@ -0,0 +1,185 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.core.oauth.exchange;
+
+import static java.util.Comparator.comparing;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import org.springframework.security.oauth2.provider.ClientDetails;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * An immutable index of token exchange policies.
+ * 
+ * Policies are bucketed by origin client matcher (by client id, by client scope or any client)
+ * and, within each origin bucket, by destination client id, with an extra bucket holding the
+ * policies that match the destination client by scope or match any client. The policies in each
+ * bucket are sorted by decreasing precedence (rank first, then rule, so that DENY wins over PERMIT
+ * at the same rank), so the applicable policy with the highest precedence is found by looking only
+ * at the head of the buckets that can apply to the request.
+ */
+@SuppressWarnings("deprecation")
+class TokenExchangePolicyIndex {
+
+  static final Comparator<TokenExchangePolicy> PRECEDENCE =
+      comparing(TokenExchangePolicy::rank).thenComparing(TokenExchangePolicy::getRule);
+
+  static final TokenExchangePolicyIndex EMPTY =
+      new TokenExchangePolicyIndex(Collections.emptyList());
+
+  private final int size;
+  private final DestinationBucket anyOrigin;
+  private final Map<String, DestinationBucket> byOriginId;
+  private final Map<String, DestinationBucket> byOriginScope;
+
+  private static class DestinationBucket {
+
+    final Map<String, List<TokenExchangePolicy>> byDestinationId;
+    final List<TokenExchangePolicy> otherDestinations;
+
+    DestinationBucket(List<TokenExchangePolicy> policies) {
+      Map<String, List<TokenExchangePolicy>> byId = Maps.newHashMap();
+      List<TokenExchangePolicy> others = Lists.newArrayList();
+
+      for (TokenExchangePolicy p : policies) {
+        if (p.getDestinationMatcher() instanceof ByIdClientMatcher) {
+          byId.computeIfAbsent(((ByIdClientMatcher) p.getDestinationMatcher()).clientId,
+              k -> Lists.newArrayList()).add(p);
+        } else {
+          others.add(p);
+        }
+      }
+
+      this.byDestinationId = sortedCopy(byId);
+      this.otherDestinations = sortedCopy(others);
+    }
+
+    TokenExchangePolicy findFirst(ClientDetails origin, ClientDetails destination) {
+      TokenExchangePolicy best = firstApplicable(
+          byDestinationId.getOrDefault(destination.getClientId(), Collections.emptyList()),
+          origin, destination);
+
+      return higher(best, firstApplicable(otherDestinations, origin, destination));
+    }
+  }
+
+  TokenExchangePolicyIndex(Collection<TokenExchangePolicy> policies) {
+
+    List<TokenExchangePolicy> anyOriginPolicies = Lists.newArrayList();
+    Map<String, List<TokenExchangePolicy>> byOriginIdPolicies = Maps.newHashMap();
+    Map<String, List<TokenExchangePolicy>> byOriginScopePolicies = Maps.newHashMap();
+
+    for (TokenExchangePolicy p : policies) {
+      ClientMatcher originMatcher = p.getOriginMatcher();
+
+      if (originMatcher instanceof ByIdClientMatcher) {
+        byOriginIdPolicies
+          .computeIfAbsent(((ByIdClientMatcher) originMatcher).clientId, k -> Lists.newArrayList())
+          .add(p);
+      } else if (originMatcher instanceof ByScopeClientMatcher) {
+        byOriginScopePolicies
+          .computeIfAbsent(((ByScopeClientMatcher) originMatcher).scope, k -> Lists.newArrayList())
+          .add(p);
+      } else {
+        anyOriginPolicies.add(p);
+      }
+    }
+
+    this.size = policies.size();
+    this.anyOrigin = new DestinationBucket(anyOriginPolicies);
+    this.byOriginId = buckets(byOriginIdPolicies);
+    this.byOriginScope = buckets(byOriginScopePolicies);
+  }
+
+  private static Map<String, DestinationBucket> buckets(
+      Map<String, List<TokenExchangePolicy>> policies) {
+    ImmutableMap.Builder<String, DestinationBucket> result = ImmutableMap.builder();
+    policies.forEach((k, v) -> result.put(k, new DestinationBucket(v)));
+    return result.build();
+  }
+
+  private static List<TokenExchangePolicy> sortedCopy(List<TokenExchangePolicy> policies) {
+    return ImmutableList.sortedCopyOf(PRECEDENCE.reversed(), policies);
+  }
+
+  private static Map<String, List<TokenExchangePolicy>> sortedCopy(
+      Map<String, List<TokenExchangePolicy>> policies) {
+    ImmutableMap.Builder<String, List<TokenExchangePolicy>> result = ImmutableMap.builder();
+    policies.forEach((k, v) -> result.put(k, sortedCopy(v)));
+    return result.build();
+  }
+
+  private static TokenExchangePolicy firstApplicable(List<TokenExchangePolicy> policies,
+      ClientDetails origin, ClientDetails destination) {
+    for (TokenExchangePolicy p : policies) {
+      if (p.appicableFor(origin, destination)) {
+        return p;
+      }
+    }
+    return null;
+  }
+
+  private static TokenExchangePolicy higher(TokenExchangePolicy p1, TokenExchangePolicy p2) {
+    if (p1 == null) {
+      return p2;
+    }
+    if (p2 == null) {
+      return p1;
+    }
+    return PRECEDENCE.compare(p2, p1) > 0 ? p2 : p1;
+  }
+
+  /**
+   * Returns the applicable policy with the highest precedence for an exchange between the given
+   * clients, if any.
+   */
+  Optional<TokenExchangePolicy> findApplicablePolicy(ClientDetails origin,
+      ClientDetails destination) {
+
+    TokenExchangePolicy best = anyOrigin.findFirst(origin, destination);
+
+    DestinationBucket originIdBucket = byOriginId.get(origin.getClientId());
+    if (originIdBucket != null) {
+      best = higher(best, originIdBucket.findFirst(origin, destination));
+    }
+
+    if (!byOriginScope.isEmpty()) {
+      Set<String> originScopes = origin.getScope();
+      for (Map.Entry<String, DestinationBucket> e : byOriginScope.entrySet()) {
+        if (originScopes.contains(e.getKey())) {
+          best = higher(best, e.getValue().findFirst(origin, destination));
+        }
+      }
+    }
+
+    return Optional.ofNullable(best);
+  }
+
+  int size() {
+    return size;
+  }
+}
@@ -0,0 +1,207 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.core.oauth.introspection;
+
+import static org.mitre.oauth2.service.IntrospectionResultAssembler.ACTIVE;
+
+import java.text.ParseException;
+import java.time.Clock;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import org.mitre.jwt.signer.service.JWTSigningAndValidationService;
+import org.mitre.oauth2.model.ClientDetailsEntity;
+import org.mitre.oauth2.model.OAuth2AccessTokenEntity;
+import org.mitre.oauth2.model.OAuth2RefreshTokenEntity;
+import org.mitre.oauth2.service.ClientDetailsEntityService;
+import org.mitre.oauth2.service.IntrospectionResultAssembler;
+import org.mitre.oauth2.service.OAuth2TokenEntityService;
+import org.mitre.oauth2.web.AuthenticationUtilities;
+import org.mitre.openid.connect.model.UserInfo;
+import org.mitre.openid.connect.service.UserInfoService;
+import org.mitre.openid.connect.view.HttpCodeView;
+import org.mitre.openid.connect.view.JsonEntityView;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.stereotype.Controller;
+import org.springframework.ui.Model;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import com.nimbusds.jwt.JWT;
+import com.nimbusds.jwt.JWTParser;
+import com.nimbusds.jwt.SignedJWT;
+
+import it.infn.mw.iam.core.oauth.issuance.StatelessAccessTokenPolicy;
+
+/**
+ * The token introspection endpoint.
+ * 
+ * It replaces the MITREid one. Tokens that are expired, revoked on this instance or whose signature
+ * does not verify against the local JWK set are reported as inactive without hitting the token
+ * store. When the introspection cache is enabled, repeated introspections of the same access token
+ * by the same client are then served from an {@link IntrospectionResponseCache}; the requesting
+ * client is always checked to be allowed to introspect before the cache is consulted.
+ * 
+ * Access tokens issued in stateless mode (see {@link StatelessAccessTokenPolicy}) are not found in
+ * the token store: the token service reads them out of their claims once their signature has
+ * been verified and their id has been checked against the shared deny list of revoked tokens.
+ */
+@Controller
+public class IamIntrospectionEndpoint {
+
+  public static final String URL = "introspect";
+
+  public static final Logger LOG = LoggerFactory.getLogger(IamIntrospectionEndpoint.class);
+
+  private static final Map<String, Boolean> INACTIVE = ImmutableMap.of(ACTIVE, Boolean.FALSE);
+
+  private final ClientDetailsEntityService clientService;
+  private final OAuth2TokenEntityService tokenServices;
+  private final UserInfoService userInfoService;
+  private final IntrospectionResultAssembler introspectionResultAssembler;
+  private final JWTSigningAndValidationService jwtService;
+  private final IntrospectionResponseCache responseCache;
+  private final Clock clock;
+
+  public IamIntrospectionEndpoint(ClientDetailsEntityService clientService,
+      OAuth2TokenEntityService tokenServices, UserInfoService userInfoService,
+      IntrospectionResultAssembler introspectionResultAssembler,
+      JWTSigningAndValidationService jwtService, IntrospectionResponseCache responseCache,
+      Clock clock) {
+    this.clientService = clientService;
+    this.tokenServices = tokenServices;
+    this.userInfoService = userInfoService;
+    this.introspectionResultAssembler = introspectionResultAssembler;
+    this.jwtService = jwtService;
+    this.responseCache = responseCache;
+    this.clock = clock;
+  }
+
+  private String entity(Model model, Map<String, ?> entity) {
+    model.addAttribute(JsonEntityView.ENTITY, entity);
+    return JsonEntityView.VIEWNAME;
+  }
+
+  private boolean isLocallyInvalid(String tokenValue) {
+
+    if (responseCache.isRevoked(tokenValue)) {
+      return true;
+    }
+
+    try {
+      JWT jwt = JWTParser.parse(tokenValue);
+      Date expiration = jwt.getJWTClaimsSet().getExpirationTime();
+
+      if (expiration != null && !expiration.toInstant().isAfter(clock.instant())) {
+        return true;
+      }
+
+      // Refresh tokens are plain JWTs, and are looked up in the database
+      if (jwt instanceof SignedJWT) {
+        return !jwtService.validateSignature((SignedJWT) jwt);
+      }
+
+      return false;
+    } catch (ParseException e) {
+      return true;
+    }
+  }
+
+  @RequestMapping("/" + URL)
+  public String verify(@RequestParam("token") String tokenValue,
+      @RequestParam(value = "token_type_hint", required = false) String tokenType,
+      Authentication auth, Model model) {
+
+    String authClientId = auth.getName();
+    ClientDetailsEntity authClient = clientService.loadClientByClientId(authClientId);
+
+    if (authClient == null || !AuthenticationUtilities.hasRole(auth, "ROLE_CLIENT")
+        || !authClient.isAllowIntrospection()) {
+      LOG.error("Client {} is not allowed to call introspection endpoint", authClientId);
+      model.addAttribute(HttpCodeView.CODE, HttpStatus.FORBIDDEN);
+      return HttpCodeView.VIEWNAME;
+    }
+
+    if (Strings.isNullOrEmpty(tokenValue)) {
+      LOG.error("Verify failed; token value is null");
+      return entity(model, INACTIVE);
+    }
+
+    if (isLocallyInvalid(tokenValue)) {
+      LOG.debug("Token is expired, revoked or not signed by this server");
+      return entity(model, INACTIVE);
+    }
+
+    Optional<Map<String, Object>> cachedResponse =
+        responseCache.getResponse(tokenValue, authClientId);
+
+    if (cachedResponse.isPresent()) {
+      return entity(model, cachedResponse.get());
+    }
+
+    // directly authenticated clients get a subset of any scopes that they've registered for
+    Set<String> authScopes = new HashSet<>(authClient.getScope());
+
+    OAuth2AccessTokenEntity accessToken = null;
+    OAuth2RefreshTokenEntity refreshToken = null;
+    ClientDetailsEntity tokenClient;
+    UserInfo user;
+
+    try {
+      accessToken = tokenServices.readAccessToken(tokenValue);
+      tokenClient = accessToken.getClient();
+
+      String userName = accessToken.getAuthenticationHolder().getAuthentication().getName();
+      user = userInfoService.getByUsernameAndClientId(userName, tokenClient.getClientId());
+    } catch (InvalidTokenException e) {
+      LOG.info("Invalid access token. Checking refresh token.");
+
+      try {
+        refreshToken = tokenServices.getRefreshToken(tokenValue);
+        tokenClient = refreshToken.getClient();
+
+        String userName = refreshToken.getAuthenticationHolder().getAuthentication().getName();
+        user = userInfoService.getByUsernameAndClientId(userName, tokenClient.getClientId());
+      } catch (InvalidTokenException e2) {
+        LOG.error("Invalid refresh token");
+        return entity(model, INACTIVE);
+      }
+    }
+
+    if (accessToken != null) {
+      Map<String, Object> response =
+          introspectionResultAssembler.assembleFrom(accessToken, user, authScopes);
+
+      // Stateless access tokens are not in the token store, and are not worth caching
+      if (accessToken.getId() != null) {
+        responseCache.putResponse(tokenValue, accessToken.getExpiration(), authClientId,
+            response);
+      }
+      return entity(model, response);
+    }
+
+    return entity(model, introspectionResultAssembler.assembleFrom(refreshToken, user, authScopes));
+  }
+}
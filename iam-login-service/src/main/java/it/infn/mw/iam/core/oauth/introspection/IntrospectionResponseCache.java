@@ -0,0 +1,211 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.core.oauth.introspection;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.time.Clock;
+import java.util.Date;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import it.infn.mw.iam.audit.events.client.ClientEvent;
+import it.infn.mw.iam.config.IamProperties;
+import it.infn.mw.iam.persistence.repository.IamOAuthAccessTokenRepository;
+
+/**
+ * A cache of the introspection responses assembled for access tokens, keyed by the SHA-256 hash
+ * of the token value and by the id of the client that requested the introspection.
+ * 
+ * Cached responses are served until the token expires, or at most for the configured cache TTL,
+ * so that changes to the token owner done after the first introspection are eventually picked
+ * up. Cached tokens are re-validated against the token store (with a count on the indexed token
+ * value hash) at most once per configured re-validation interval, so that tokens removed by any
+ * path (revocation, cleanup, cascades on account or client removal) or by any IAM instance stop
+ * being reported as active within that interval, while repeated hits within the interval do not
+ * touch the database. Tokens revoked on this instance are dropped at once, and tracked in a
+ * revocation set whose entries are kept for the cache TTL, so that an introspection that is
+ * racing with the revocation cannot populate the cache again. Responses are dropped whenever a
+ * client is updated or removed.
+ * 
+ * Cache statistics are exposed as Micrometer metrics named {@value #CACHE_NAME}.
+ */
+@Component
+public class IntrospectionResponseCache {
+
+  public static final Logger LOG = LoggerFactory.getLogger(IntrospectionResponseCache.class);
+
+  public static final String CACHE_NAME = "iam.introspection.responses";
+
+  private final Clock clock;
+  private final IamOAuthAccessTokenRepository accessTokenRepo;
+  private final boolean enabled;
+  private final long revalidationMsec;
+  private final Cache<String, CachedIntrospection> responseCache;
+  private final Cache<String, Boolean> revokedTokens;
+
+  public IntrospectionResponseCache(Clock clock, IamOAuthAccessTokenRepository accessTokenRepo,
+      IamProperties properties, MeterRegistry meterRegistry) {
+    this.clock = clock;
+    this.accessTokenRepo = accessTokenRepo;
+
+    IamProperties.AccessToken tokenProperties = properties.getAccessToken();
+    this.enabled = tokenProperties.isIntrospectionCacheEnabled();
+    this.revalidationMsec =
+        TimeUnit.SECONDS.toMillis(tokenProperties.getIntrospectionCacheRevalidationSecs());
+
+    this.responseCache = CacheBuilder.newBuilder()
+      .maximumSize(tokenProperties.getIntrospectionCacheSize())
+      .expireAfterWrite(tokenProperties.getIntrospectionCacheTtlSecs(), TimeUnit.SECONDS)
+      .recordStats()
+      .build();
+
+    this.revokedTokens = CacheBuilder.newBuilder()
+      .expireAfterWrite(tokenProperties.getIntrospectionCacheTtlSecs(), TimeUnit.SECONDS)
+      .build();
+
+    GuavaCacheMetrics.monitor(meterRegistry, responseCache, CACHE_NAME);
+  }
+
+  static class CachedIntrospection {
+
+    final Date expiration;
+    final ConcurrentMap<String, Map<String, Object>> responses = new ConcurrentHashMap<>();
+    volatile long validationTime;
+
+    CachedIntrospection(Date expiration, long validationTime) {
+      this.expiration = expiration;
+      this.validationTime = validationTime;
+    }
+  }
+
+  private static String tokenHash(String tokenValue) {
+    return Hashing.sha256().hashString(tokenValue, UTF_8).toString();
+  }
+
+  private boolean isExpired(Date expiration) {
+    return expiration != null && !expiration.toInstant().isAfter(clock.instant());
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public boolean isRevoked(String tokenValue) {
+    return revokedTokens.getIfPresent(tokenHash(tokenValue)) != null;
+  }
+
+  public Optional<Map<String, Object>> getResponse(String tokenValue, String clientId) {
+    if (!enabled) {
+      return Optional.empty();
+    }
+
+    String hash = tokenHash(tokenValue);
+    CachedIntrospection cached = responseCache.getIfPresent(hash);
+
+    if (cached == null) {
+      return Optional.empty();
+    }
+
+    if (isExpired(cached.expiration)) {
+      responseCache.invalidate(hash);
+      return Optional.empty();
+    }
+
+    Map<String, Object> response = cached.responses.get(clientId);
+
+    if (response == null) {
+      return Optional.empty();
+    }
+
+    long now = clock.instant().toEpochMilli();
+
+    if (now - cached.validationTime >= revalidationMsec) {
+      if (accessTokenRepo.countByTokenValue(hash) == 0) {
+        LOG.debug("Access token no longer in the token store, evicting cached responses");
+        responseCache.invalidate(hash);
+        return Optional.empty();
+      }
+
+      cached.validationTime = now;
+    }
+
+    return Optional.of(response);
+  }
+
+  public void putResponse(String tokenValue, Date expiration, String clientId,
+      Map<String, Object> response) {
+
+    if (!enabled || isExpired(expiration)) {
+      return;
+    }
+
+    String hash = tokenHash(tokenValue);
+
+    if (revokedTokens.getIfPresent(hash) != null) {
+      return;
+    }
+
+    try {
+      responseCache
+        .get(hash, () -> new CachedIntrospection(expiration, clock.instant().toEpochMilli()))
+        .responses.put(clientId, response);
+    } catch (ExecutionException e) {
+      LOG.warn("Error caching introspection response: {}", e.getMessage());
+    }
+  }
+
+  public void revoke(String tokenValue) {
+    if (!enabled || tokenValue == null) {
+      return;
+    }
+
+    String hash = tokenHash(tokenValue);
+    revokedTokens.put(hash, Boolean.TRUE);
+    responseCache.invalidate(hash);
+  }
+
+  public void invalidateAll() {
+    responseCache.invalidateAll();
+  }
+
+  public long getSize() {
+    return responseCache.size();
+  }
+
+  @TransactionalEventListener(fallbackExecution = true)
+  public void handleClientEvent(ClientEvent event) {
+    if (enabled) {
+      LOG.debug("Client updated, evicting cached introspection responses");
+      invalidateAll();
+    }
+  }
+}
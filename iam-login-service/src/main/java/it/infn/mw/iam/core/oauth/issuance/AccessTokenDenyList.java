@@ -0,0 +1,142 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.core.oauth.issuance;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import it.infn.mw.iam.core.lock.TaskLockService;
+
+/**
+ * The ids of the revoked access tokens that are not in the token store, i.e. of stateless access
+ * tokens (see {@link StatelessAccessTokenPolicy}).
+ * 
+ * Revoked token ids are stored, together with the token expiration, in the
+ * {@code iam_revoked_access_token} table shared by all the IAM instances, and are removed from it
+ * once the token has expired. Each instance keeps a copy of the unexpired entries in memory,
+ * refreshed from the table every {@code iam.access_token.deny_list_refresh_secs} seconds, so that
+ * tokens are checked against the deny list without a database round trip; a revocation is then
+ * seen by the other instances within the refresh interval. The table is only polled when
+ * stateless issuance is enabled.
+ */
+@Component
+public class AccessTokenDenyList {
+
+  public static final Logger LOG = LoggerFactory.getLogger(AccessTokenDenyList.class);
+
+  public static final String DENY_LIST_CLEANUP_LOCK = "access-token-deny-list-cleanup";
+
+  private static final Duration CLEANUP_LOCK_TIMEOUT = Duration.ofMinutes(10);
+
+  private static final String INSERT_TOKEN =
+      "INSERT INTO iam_revoked_access_token (jti, expiration) VALUES (:jti, :expiration)";
+
+  private static final String SELECT_UNEXPIRED_TOKENS =
+      "SELECT jti, expiration FROM iam_revoked_access_token WHERE expiration > :now";
+
+  // Entries live as long as the (short-lived) stateless tokens, so the table stays small
+  private static final String DELETE_EXPIRED_TOKENS =
+      "DELETE FROM iam_revoked_access_token WHERE expiration <= :now";
+
+  private final NamedParameterJdbcTemplate jdbcTemplate;
+  private final TaskLockService lockService;
+  private final StatelessAccessTokenPolicy statelessPolicy;
+  private final Clock clock;
+  private final ConcurrentMap<String, Instant> deniedTokenIds = new ConcurrentHashMap<>();
+
+  public AccessTokenDenyList(NamedParameterJdbcTemplate jdbcTemplate, TaskLockService lockService,
+      StatelessAccessTokenPolicy statelessPolicy, Clock clock) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.lockService = lockService;
+    this.statelessPolicy = statelessPolicy;
+    this.clock = clock;
+  }
+
+  /**
+   * Adds the given token id to the deny list, until the given token expiration
+   */
+  public void deny(String jti, Date expiration) {
+
+    try {
+      jdbcTemplate.update(INSERT_TOKEN,
+          new MapSqlParameterSource("jti", jti).addValue("expiration", expiration));
+    } catch (DataIntegrityViolationException e) {
+      LOG.debug("Access token {} already in the deny list", jti);
+    }
+
+    deniedTokenIds.put(jti, expiration.toInstant());
+  }
+
+  public boolean isDenied(String jti) {
+    Instant expiration = deniedTokenIds.get(jti);
+    return expiration != null && expiration.isAfter(clock.instant());
+  }
+
+  public int getSize() {
+    return deniedTokenIds.size();
+  }
+
+  @Scheduled(fixedDelayString = "${iam.access_token.deny_list_refresh_secs:5}",
+      timeUnit = TimeUnit.SECONDS)
+  public void refresh() {
+
+    if (!statelessPolicy.isEnabled()) {
+      return;
+    }
+
+    Instant now = clock.instant();
+
+    MapSqlParameterSource params = new MapSqlParameterSource("now", Date.from(now));
+
+    jdbcTemplate.query(SELECT_UNEXPIRED_TOKENS, params, (RowCallbackHandler) rs -> deniedTokenIds
+      .put(rs.getString("jti"), rs.getTimestamp("expiration").toInstant()));
+
+    // Entries are never dropped before expiration, as a local revocation may not be committed yet
+    deniedTokenIds.values().removeIf(expiration -> !expiration.isAfter(now));
+  }
+
+  @Scheduled(fixedDelayString = "${task.tokenCleanupPeriodMsec:300000}",
+      initialDelayString = "${task.tokenCleanupPeriodMsec:300000}")
+  public void removeExpired() {
+
+    if (!statelessPolicy.isEnabled()
+        || !lockService.tryLock(DENY_LIST_CLEANUP_LOCK, CLEANUP_LOCK_TIMEOUT)) {
+      return;
+    }
+
+    try {
+      int deleted = jdbcTemplate.update(DELETE_EXPIRED_TOKENS,
+          new MapSqlParameterSource("now", Date.from(clock.instant())));
+      LOG.debug("Removed {} expired entries from the access token deny list", deleted);
+    } finally {
+      lockService.unlock(DENY_LIST_CLEANUP_LOCK);
+    }
+  }
+}
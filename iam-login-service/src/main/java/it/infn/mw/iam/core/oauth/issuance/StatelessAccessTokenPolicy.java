@@ -0,0 +1,146 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.core.oauth.issuance;
+
+import static it.infn.mw.iam.core.oauth.profile.common.BaseAccessTokenBuilder.CLIENT_ID_CLAIM_NAME;
+import static it.infn.mw.iam.core.oauth.profile.common.BaseAccessTokenBuilder.SCOPE_CLAIM_NAME;
+import static java.util.Objects.isNull;
+
+import java.text.ParseException;
+import java.time.Clock;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Set;
+
+import org.mitre.oauth2.model.AuthenticationHolderEntity;
+import org.mitre.oauth2.model.ClientDetailsEntity;
+import org.mitre.oauth2.model.OAuth2AccessTokenEntity;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.stereotype.Component;
+
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.common.collect.Sets;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+
+import it.infn.mw.iam.config.IamProperties;
+
+/**
+ * Decides whether an access token can be issued without being persisted.
+ * 
+ * Only client credentials tokens (i.e., with no user authentication and no refresh token) issued
+ * to clients explicitly configured for stateless issuance, and whose lifetime does not exceed the
+ * configured maximum, are eligible. Such tokens are never found in the token store: they are
+ * meant for resource servers that validate JWTs locally, and the token service rebuilds them out
+ * of their (locally verified) claims (see {@link StatelessAccessTokenReader}).
+ * 
+ * Revoked stateless tokens are tracked by id in the {@link AccessTokenDenyList} until they expire,
+ * and are rejected by introspection and by the IAM resource server endpoints. Resource servers
+ * that only validate the JWTs locally see the revocation when the (capped) token lifetime ends.
+ */
+@Component
+@SuppressWarnings("deprecation")
+public class StatelessAccessTokenPolicy {
+
+  private static final Splitter SCOPE_SPLITTER = Splitter.on(' ').omitEmptyStrings();
+
+  private final Clock clock;
+  private final Set<String> statelessClientIds;
+  private final long maxLifetimeMsec;
+
+  public StatelessAccessTokenPolicy(Clock clock, IamProperties properties) {
+    this.clock = clock;
+    this.statelessClientIds =
+        Sets.newHashSet(properties.getAccessToken().getStatelessClientIds());
+    this.maxLifetimeMsec = properties.getAccessToken().getStatelessMaxLifetimeSecs() * 1000L;
+  }
+
+  public boolean isEnabled() {
+    return !statelessClientIds.isEmpty();
+  }
+
+  public boolean isStateless(OAuth2AccessTokenEntity token) {
+
+    if (!isEnabled() || isNull(token.getClient())
+        || !statelessClientIds.contains(token.getClient().getClientId())) {
+      return false;
+    }
+
+    if (!isNull(token.getRefreshToken()) || isNull(token.getExpiration())
+        || isNull(token.getAuthenticationHolder())
+        || !isNull(token.getAuthenticationHolder().getUserAuth())) {
+      return false;
+    }
+
+    return token.getExpiration().getTime() - clock.millis() <= maxLifetimeMsec;
+  }
+
+  /**
+   * Checks whether the claims of a JWT access token not found in the token store describe a
+   * stateless access token, i.e. a non-expired client credentials token issued to a stateless
+   * client with a lifetime within the configured maximum. The JWT signature is not checked here.
+   */
+  public boolean isStateless(JWTClaimsSet claims) throws ParseException {
+
+    if (!isEnabled()) {
+      return false;
+    }
+
+    String clientId = claims.getStringClaim(CLIENT_ID_CLAIM_NAME);
+
+    if (isNull(clientId) || !statelessClientIds.contains(clientId)
+        || !clientId.equals(claims.getSubject())) {
+      return false;
+    }
+
+    Date issueTime = claims.getIssueTime();
+    Date expiration = claims.getExpirationTime();
+
+    if (isNull(issueTime) || isNull(expiration) || expiration.getTime() <= clock.millis()) {
+      return false;
+    }
+
+    return expiration.getTime() - issueTime.getTime() <= maxLifetimeMsec;
+  }
+
+  /**
+   * Rebuilds the transient access token entity for a stateless access token, as it was before
+   * issuance, so that it can be handed to the introspection result assembler.
+   */
+  public OAuth2AccessTokenEntity restore(SignedJWT jwt, ClientDetailsEntity client)
+      throws ParseException {
+
+    JWTClaimsSet claims = jwt.getJWTClaimsSet();
+    String scopeClaim = Strings.nullToEmpty(claims.getStringClaim(SCOPE_CLAIM_NAME));
+    Set<String> scope = Sets.newHashSet(SCOPE_SPLITTER.split(scopeClaim));
+
+    OAuth2Request request = new OAuth2Request(Collections.emptyMap(), client.getClientId(),
+        client.getAuthorities(), true, scope, null, null, null, null);
+
+    AuthenticationHolderEntity authHolder = new AuthenticationHolderEntity();
+    authHolder.setAuthentication(new OAuth2Authentication(request, null));
+
+    OAuth2AccessTokenEntity token = new OAuth2AccessTokenEntity();
+    token.setJwt(jwt);
+    token.setClient(client);
+    token.setScope(scope);
+    token.setExpiration(claims.getExpirationTime());
+    token.setAuthenticationHolder(authHolder);
+    return token;
+  }
+}
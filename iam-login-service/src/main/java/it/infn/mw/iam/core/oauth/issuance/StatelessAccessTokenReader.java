@@ -0,0 +1,100 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.core.oauth.issuance;
+
+import static it.infn.mw.iam.core.oauth.profile.common.BaseAccessTokenBuilder.CLIENT_ID_CLAIM_NAME;
+
+import java.text.ParseException;
+import java.util.Optional;
+
+import org.mitre.jwt.signer.service.JWTSigningAndValidationService;
+import org.mitre.oauth2.model.ClientDetailsEntity;
+import org.mitre.oauth2.model.OAuth2AccessTokenEntity;
+import org.mitre.oauth2.service.ClientDetailsEntityService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.security.oauth2.common.exceptions.OAuth2Exception;
+import org.springframework.stereotype.Component;
+
+import com.nimbusds.jwt.JWT;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.JWTParser;
+import com.nimbusds.jwt.SignedJWT;
+
+/**
+ * Reads stateless access tokens, which are not found in the token store, out of their value.
+ * 
+ * A token is accepted when its claims describe a stateless access token (see
+ * {@link StatelessAccessTokenPolicy}), its signature verifies against the local JWK set, its id
+ * is not in the {@link AccessTokenDenyList} and the client it was issued to still exists.
+ */
+@Component
+@SuppressWarnings("deprecation")
+public class StatelessAccessTokenReader {
+
+  public static final Logger LOG = LoggerFactory.getLogger(StatelessAccessTokenReader.class);
+
+  private final StatelessAccessTokenPolicy statelessPolicy;
+  private final AccessTokenDenyList denyList;
+  private final JWTSigningAndValidationService jwtService;
+
+  // Looked up lazily, as the client service depends on the token service which depends on this
+  private final ObjectProvider<ClientDetailsEntityService> clientService;
+
+  public StatelessAccessTokenReader(StatelessAccessTokenPolicy statelessPolicy,
+      AccessTokenDenyList denyList, JWTSigningAndValidationService jwtService,
+      ObjectProvider<ClientDetailsEntityService> clientService) {
+    this.statelessPolicy = statelessPolicy;
+    this.denyList = denyList;
+    this.jwtService = jwtService;
+    this.clientService = clientService;
+  }
+
+  public Optional<OAuth2AccessTokenEntity> read(String tokenValue) {
+
+    if (!statelessPolicy.isEnabled()) {
+      return Optional.empty();
+    }
+
+    try {
+      JWT jwt = JWTParser.parse(tokenValue);
+      JWTClaimsSet claims = jwt.getJWTClaimsSet();
+
+      if (!(jwt instanceof SignedJWT signedJwt) || !statelessPolicy.isStateless(claims)
+          || !jwtService.validateSignature(signedJwt)) {
+        return Optional.empty();
+      }
+
+      if (claims.getJWTID() != null && denyList.isDenied(claims.getJWTID())) {
+        LOG.debug("Stateless access token {} has been revoked", claims.getJWTID());
+        return Optional.empty();
+      }
+
+      String clientId = claims.getStringClaim(CLIENT_ID_CLAIM_NAME);
+      ClientDetailsEntity tokenClient = clientService.getObject().loadClientByClientId(clientId);
+
+      if (tokenClient == null) {
+        return Optional.empty();
+      }
+
+      return Optional.of(statelessPolicy.restore(signedJwt, tokenClient));
+    } catch (ParseException | OAuth2Exception e) {
+      LOG.debug("Token is not a valid stateless access token: {}", e.getMessage());
+      return Optional.empty();
+    }
+  }
+}
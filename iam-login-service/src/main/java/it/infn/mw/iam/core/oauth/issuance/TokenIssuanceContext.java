@@ -0,0 +1,129 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.core.oauth.issuance;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+import com.google.common.collect.Maps;
+
+import it.infn.mw.iam.persistence.model.IamAccount;
+
+/**
+ * A thread-bound context that lives for the duration of a token issuance (access token, refresh
+ * token or refresh flow), and that is used to load the account involved in the issuance once,
+ * so that the scope filter, the access token builders, the ID token customizers and the
+ * userinfo lookup all share the same account instance.
+ * 
+ * The context also memoizes the scope policy decisions taken for an account and client, so that
+ * the scope filter evaluates each requested scope at most once per issuance.
+ * 
+ * Contexts can be nested: only the outermost {@link #exit()} clears the context.
+ */
+public class TokenIssuanceContext {
+
+  private static final ThreadLocal<TokenIssuanceContext> CURRENT = new ThreadLocal<>();
+
+  private final Map<String, Optional<IamAccount>> accountsByUsername = Maps.newHashMap();
+  private final Map<String, Optional<IamAccount>> accountsByUuid = Maps.newHashMap();
+  private final Map<List<String>, Map<String, Boolean>> scopeDecisions = Maps.newHashMap();
+
+  private int depth = 0;
+  private int scopePolicyEvaluations = 0;
+
+  private TokenIssuanceContext() {
+    // use enter()
+  }
+
+  public static TokenIssuanceContext enter() {
+    TokenIssuanceContext context = CURRENT.get();
+
+    if (context == null) {
+      context = new TokenIssuanceContext();
+      CURRENT.set(context);
+    }
+
+    context.depth++;
+    return context;
+  }
+
+  public static void exit() {
+    TokenIssuanceContext context = CURRENT.get();
+
+    if (context != null && --context.depth <= 0) {
+      CURRENT.remove();
+    }
+  }
+
+  public static Optional<TokenIssuanceContext> current() {
+    return Optional.ofNullable(CURRENT.get());
+  }
+
+  private void index(Optional<IamAccount> account) {
+    account.ifPresent(a -> {
+      accountsByUsername.put(a.getUsername(), account);
+      accountsByUuid.put(a.getUuid(), account);
+    });
+  }
+
+  public Optional<IamAccount> getAccountByUsername(String username,
+      Function<String, Optional<IamAccount>> loader) {
+
+    Optional<IamAccount> account = accountsByUsername.get(username);
+
+    if (account == null) {
+      account = loader.apply(username);
+      accountsByUsername.put(username, account);
+      index(account);
+    }
+
+    return account;
+  }
+
+  public Optional<IamAccount> getAccountByUuid(String uuid,
+      Function<String, Optional<IamAccount>> loader) {
+
+    Optional<IamAccount> account = accountsByUuid.get(uuid);
+
+    if (account == null) {
+      account = loader.apply(uuid);
+      accountsByUuid.put(uuid, account);
+      index(account);
+    }
+
+    return account;
+  }
+
+  /**
+   * Returns the (mutable) scope policy decisions taken so far in this context for the given
+   * account and client; the client id may be null.
+   */
+  public Map<String, Boolean> getScopeDecisions(String accountUuid, String clientId) {
+    return scopeDecisions.computeIfAbsent(Arrays.asList(accountUuid, clientId),
+        k -> Maps.newHashMap());
+  }
+
+  public void scopePolicyEvaluated() {
+    scopePolicyEvaluations++;
+  }
+
+  public int getScopePolicyEvaluations() {
+    return scopePolicyEvaluations;
+  }
+}
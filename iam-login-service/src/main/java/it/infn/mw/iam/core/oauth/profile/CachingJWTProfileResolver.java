@@ -0,0 +1,81 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.core.oauth.profile;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Strings.isNullOrEmpty;
+
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import it.infn.mw.iam.audit.events.client.ClientEvent;
+
+/**
+ * A {@link JWTProfileResolver} that caches, per client id, the profile resolved by a delegate
+ * resolver.
+ * 
+ * Cached entries are evicted when a client is updated or removed through the client management
+ * or registration APIs, and in any case expire after a configurable time, so that changes done
+ * on other IAM instances are eventually picked up.
+ */
+public class CachingJWTProfileResolver implements JWTProfileResolver {
+
+  public static final Logger LOG = LoggerFactory.getLogger(CachingJWTProfileResolver.class);
+
+  private final JWTProfileResolver delegate;
+  private final Cache<String, JWTProfile> profileCache;
+
+  public CachingJWTProfileResolver(JWTProfileResolver delegate, long cacheSize,
+      long cacheTtlSecs) {
+    this.delegate = delegate;
+    this.profileCache = CacheBuilder.newBuilder()
+      .maximumSize(cacheSize)
+      .expireAfterWrite(cacheTtlSecs, TimeUnit.SECONDS)
+      .build();
+  }
+
+  @Override
+  public JWTProfile resolveProfile(String clientId) {
+    checkArgument(!isNullOrEmpty(clientId), "non-null clientId required");
+
+    JWTProfile profile = profileCache.getIfPresent(clientId);
+
+    if (profile == null) {
+      profile = delegate.resolveProfile(clientId);
+      profileCache.put(clientId, profile);
+    }
+
+    return profile;
+  }
+
+  public void evictProfile(String clientId) {
+    profileCache.invalidate(clientId);
+  }
+
+  @TransactionalEventListener(fallbackExecution = true)
+  public void handleClientEvent(ClientEvent event) {
+    if (event.getClient() != null && event.getClient().getClientId() != null) {
+      LOG.debug("Evicting cached JWT profile for client '{}'", event.getClient().getClientId());
+      evictProfile(event.getClient().getClientId());
+    }
+  }
+}
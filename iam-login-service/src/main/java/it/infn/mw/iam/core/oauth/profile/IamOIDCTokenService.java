@@ -64,6 +64,7 @@ import com.nimbusds.jwt.SignedJWT;
 
 import it.infn.mw.iam.api.common.error.NoSuchAccountError;
 import it.infn.mw.iam.authn.util.Authorities;
+import it.infn.mw.iam.core.oauth.issuance.TokenIssuanceContext;
 import it.infn.mw.iam.persistence.model.IamAccount;
 import it.infn.mw.iam.persistence.repository.IamAccountRepository;
 
@@ -105,8 +106,10 @@ public class IamOIDCTokenService implements OIDCTokenService {
   protected void addCustomIdTokenClaims(Builder idClaims, ClientDetailsEntity client,
       OAuth2Request request, String sub, OAuth2AccessTokenEntity accessToken) {
 
-    IamAccount account =
-        accountRepository.findByUuid(sub).orElseThrow(() -> NoSuchAccountError.forUuid(sub));
+    IamAccount account = TokenIssuanceContext.current()
+      .map(c -> c.getAccountByUuid(sub, accountRepository::findByUuidWithGroups))
+      .orElseGet(() -> accountRepository.findByUuid(sub))
+      .orElseThrow(() -> NoSuchAccountError.forUuid(sub));
 
     JWTProfile profile = profileResolver.resolveProfile(client.getClientId());
 
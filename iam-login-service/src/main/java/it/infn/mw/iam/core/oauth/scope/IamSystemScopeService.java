@@ -19,28 +19,71 @@ import static java.util.stream.Collectors.toSet;
 
 import java.util.Set;
 
+import org.mitre.oauth2.model.SystemScope;
 import org.mitre.oauth2.service.impl.DefaultSystemScopeService;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
-import it.infn.mw.iam.core.oauth.scope.matchers.ScopeMatcher;
+import it.infn.mw.iam.core.oauth.scope.matchers.DefaultScopeMatcherRegistry;
+import it.infn.mw.iam.core.oauth.scope.matchers.ScopeMatcherIndex;
 import it.infn.mw.iam.core.oauth.scope.matchers.ScopeMatcherRegistry;
+import it.infn.mw.iam.core.oauth.scope.matchers.SystemScopeIndex;
 
 public class IamSystemScopeService extends DefaultSystemScopeService {
 
   final ScopeMatcherRegistry scopeMatcherRegistry;
+  final SystemScopeIndex systemScopeIndex;
 
-  public IamSystemScopeService(ScopeMatcherRegistry matcherRegistry) {
+  public IamSystemScopeService(ScopeMatcherRegistry matcherRegistry,
+      SystemScopeIndex systemScopeIndex) {
     this.scopeMatcherRegistry = matcherRegistry;
+    this.systemScopeIndex = systemScopeIndex;
   }
 
+  private void invalidateSystemScopeIndex() {
+    systemScopeIndex.invalidate();
+
+    // Invalidate again at the end of the enclosing transaction, if any, so that a snapshot loaded
+    // in the meantime does not outlive a rollback
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCompletion(int status) {
+          systemScopeIndex.invalidate();
+        }
+      });
+    }
+  }
+
+  @Override
+  @CacheEvict(cacheNames = DefaultScopeMatcherRegistry.SCOPE_CACHE_KEY, allEntries = true)
+  public SystemScope save(SystemScope scope) {
+    try {
+      return super.save(scope);
+    } finally {
+      invalidateSystemScopeIndex();
+    }
+  }
+
+  @Override
+  @CacheEvict(cacheNames = DefaultScopeMatcherRegistry.SCOPE_CACHE_KEY, allEntries = true)
+  public void remove(SystemScope scope) {
+    try {
+      super.remove(scope);
+    } finally {
+      invalidateSystemScopeIndex();
+    }
+  }
 
   @Override
   public boolean scopesMatch(Set<String> allowedScopes, Set<String> requestedScopes) {
 
-    Set<ScopeMatcher> allowedScopeMatchers =
-        allowedScopes.stream().map(scopeMatcherRegistry::findMatcherForScope).collect(toSet());
+    ScopeMatcherIndex allowedScopeMatchers = ScopeMatcherIndex.of(
+        allowedScopes.stream().map(scopeMatcherRegistry::findMatcherForScope).collect(toSet()));
 
     for (String rs : requestedScopes) {
-      if (allowedScopeMatchers.stream().noneMatch(m -> m.matches(rs))) {
+      if (!allowedScopeMatchers.matches(rs)) {
         return false;
       }
     }
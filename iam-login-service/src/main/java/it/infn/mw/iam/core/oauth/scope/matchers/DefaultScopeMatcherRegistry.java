@@ -17,11 +17,12 @@ package it.infn.mw.iam.core.oauth.scope.matchers;
 
 import java.util.Set;
 
-import org.mitre.oauth2.model.SystemScope;
 import org.mitre.oauth2.repository.SystemScopeRepository;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.security.oauth2.provider.ClientDetails;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Sets;
 
 @SuppressWarnings("deprecation")
@@ -29,35 +30,75 @@ public class DefaultScopeMatcherRegistry implements ScopeMatcherRegistry {
 
   public static final String SCOPE_CACHE_KEY = "scope-matcher";
 
+  private static final long INDEX_CACHE_SIZE = 10000;
+
+  private static class ClientMatcherIndex {
+    final Set<ScopeMatcher> matchers;
+    final ScopeMatcherIndex index;
+
+    ClientMatcherIndex(Set<ScopeMatcher> matchers) {
+      this.matchers = Set.copyOf(matchers);
+      this.index = ScopeMatcherIndex.of(this.matchers);
+    }
+  }
+
   private final Set<ScopeMatcher> customMatchers;
 
-  private final SystemScopeRepository scopeRepo;
+  private final SystemScopeIndex systemScopeIndex;
+
+  // Indexes are kept on each node, whatever the scope matcher cache, and are rebuilt when the
+  // matchers found for the client change
+  private final Cache<String, ClientMatcherIndex> indexCache;
 
   public DefaultScopeMatcherRegistry(Set<ScopeMatcher> customMatchers, SystemScopeRepository scopeRepo) {
+    this(customMatchers, new SystemScopeIndex(scopeRepo));
+  }
+
+  public DefaultScopeMatcherRegistry(Set<ScopeMatcher> customMatchers,
+      SystemScopeIndex systemScopeIndex) {
     this.customMatchers = customMatchers;
-    this.scopeRepo = scopeRepo;
+    this.systemScopeIndex = systemScopeIndex;
+    this.indexCache = CacheBuilder.newBuilder().maximumSize(INDEX_CACHE_SIZE).build();
   }
 
   @Override
   @Cacheable(value = SCOPE_CACHE_KEY, key = "{#client?.id}")
   public Set<ScopeMatcher> findMatchersForClient(ClientDetails client) {
-    Set<ScopeMatcher> result = Sets.newHashSet();
+    Set<String> systemScopes = systemScopeIndex.getSystemScopes();
+    Set<ScopeMatcher> result = Sets.newHashSetWithExpectedSize(client.getScope().size());
 
     for (String s : client.getScope()) {
-      result.add(findMatcherForScope(s));
-
+      result.add(findMatcherForScope(s, systemScopes));
     }
 
     return result;
   }
 
+  @Override
+  public ScopeMatcherIndex findMatcherIndexForClient(ClientDetails client,
+      Set<ScopeMatcher> matchers) {
+    ClientMatcherIndex cached = indexCache.getIfPresent(client.getClientId());
+
+    if (cached == null || !cached.matchers.equals(matchers)) {
+      cached = new ClientMatcherIndex(matchers);
+      indexCache.put(client.getClientId(), cached);
+    }
+
+    return cached.index;
+  }
+
   @Override
   public ScopeMatcher findMatcherForScope(String scope) {
+    return findMatcherForScope(scope, systemScopeIndex.getSystemScopes());
+  }
 
-    Set<SystemScope> systemScopes = scopeRepo.getAll();
+  private ScopeMatcher findMatcherForScope(String scope, Set<String> systemScopes) {
+
+    if (!systemScopes.contains(scope)) {
+      return StringEqualsScopeMatcher.stringEqualsMatcher(scope);
+    }
 
     return customMatchers.stream()
-      .filter(s -> systemScopes.toString().contains(scope))
       .filter(m -> m.matches(scope))
       .findFirst()
       .orElse(StringEqualsScopeMatcher.stringEqualsMatcher(scope));
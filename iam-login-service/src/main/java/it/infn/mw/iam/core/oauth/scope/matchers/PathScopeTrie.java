@@ -0,0 +1,91 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.core.oauth.scope.matchers;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BinaryOperator;
+import java.util.function.Predicate;
+
+/**
+ * A character trie over structured scopes (i.e., scopes in the <code>prefix:path</code> form),
+ * with one trie per scope prefix.
+ * 
+ * A structured scope is matched by every entry with the same prefix whose path is a prefix of the
+ * scope path, which is the semantic implemented by {@link StructuredPathScopeMatcher}. All the
+ * matching entries are found with a single walk of the scope path, whatever the number of entries
+ * in the trie.
+ *
+ * @param <T> the type of the values attached to the entries
+ */
+public class PathScopeTrie<T> {
+
+  private static class Node<T> {
+    final Map<Character, Node<T>> children = new HashMap<>(4);
+    T value;
+  }
+
+  private final Map<String, Node<T>> roots = new HashMap<>();
+
+  /**
+   * Adds an entry to the trie. If an entry with the same prefix and path exists, the new value is
+   * combined with the existing one using the given merge function.
+   */
+  public void put(String prefix, String path, T value, BinaryOperator<T> merge) {
+    Node<T> node = roots.computeIfAbsent(prefix, p -> new Node<>());
+
+    for (int i = 0; i < path.length(); i++) {
+      node = node.children.computeIfAbsent(path.charAt(i), c -> new Node<>());
+    }
+
+    node.value = node.value == null ? value : merge.apply(node.value, value);
+  }
+
+  public boolean isEmpty() {
+    return roots.isEmpty();
+  }
+
+  /**
+   * Visits the values of the entries that match the given scope, from the shortest to the longest
+   * path, until the visitor returns <code>false</code>.
+   * 
+   * @return <code>true</code> if the visit has been stopped by the visitor, <code>false</code>
+   *         otherwise
+   */
+  public boolean visitMatches(String scope, Predicate<T> visitor) {
+    final int sepIndex = scope.indexOf(StructuredPathScopeMatcher.SEP);
+
+    if (sepIndex < 0) {
+      return false;
+    }
+
+    Node<T> node = roots.get(scope.substring(0, sepIndex));
+
+    for (int i = sepIndex + 1; node != null; i++) {
+      if (node.value != null && !visitor.test(node.value)) {
+        return true;
+      }
+
+      if (i == scope.length()) {
+        break;
+      }
+
+      node = node.children.get(scope.charAt(i));
+    }
+
+    return false;
+  }
+}
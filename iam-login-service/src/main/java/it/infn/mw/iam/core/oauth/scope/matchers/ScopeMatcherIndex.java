@@ -0,0 +1,104 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.core.oauth.scope.matchers;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.nonNull;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * An index over a set of scope matchers, that tells which of the matchers admit a scope without
+ * evaluating the matchers one by one.
+ * 
+ * String equals matchers are looked up in a hash map, structured path matchers in a
+ * {@link PathScopeTrie} and only the other matchers (e.g., regexp matchers) are evaluated in turn.
+ */
+public class ScopeMatcherIndex {
+
+  private final Map<String, ScopeMatcher> equalsMatchers;
+  private final PathScopeTrie<List<ScopeMatcher>> pathMatchers;
+  private final List<ScopeMatcher> otherMatchers;
+
+  private ScopeMatcherIndex(Collection<? extends ScopeMatcher> matchers) {
+    equalsMatchers = Maps.newHashMap();
+    pathMatchers = new PathScopeTrie<>();
+    otherMatchers = Lists.newArrayList();
+
+    for (ScopeMatcher m : matchers) {
+      if (m instanceof StringEqualsScopeMatcher) {
+        equalsMatchers.put(((StringEqualsScopeMatcher) m).expectedValue, m);
+      } else if (m instanceof StructuredPathScopeMatcher) {
+        StructuredPathScopeMatcher pm = (StructuredPathScopeMatcher) m;
+        pathMatchers.put(pm.getPrefix(), pm.getPath(), Lists.newArrayList(pm), (l1, l2) -> {
+          l1.addAll(l2);
+          return l1;
+        });
+      } else {
+        otherMatchers.add(m);
+      }
+    }
+  }
+
+  public static ScopeMatcherIndex of(Collection<? extends ScopeMatcher> matchers) {
+    return new ScopeMatcherIndex(matchers);
+  }
+
+  private void checkScope(String scope) {
+    checkArgument(nonNull(scope), "scope must be non-null");
+
+    if (!pathMatchers.isEmpty()) {
+      StructuredPathScopeMatcher.checkNoRelativePath(scope);
+    }
+  }
+
+  /**
+   * Returns true if at least one of the indexed matchers admits the given scope.
+   */
+  public boolean matches(String scope) {
+    checkScope(scope);
+
+    return equalsMatchers.containsKey(scope) || pathMatchers.visitMatches(scope, l -> false)
+        || otherMatchers.stream().anyMatch(m -> m.matches(scope));
+  }
+
+  /**
+   * Returns all the indexed matchers that admit the given scope.
+   */
+  public List<ScopeMatcher> findMatchers(String scope) {
+    checkScope(scope);
+
+    List<ScopeMatcher> result = Lists.newArrayList();
+
+    ScopeMatcher m = equalsMatchers.get(scope);
+    if (m != null) {
+      result.add(m);
+    }
+
+    pathMatchers.visitMatches(scope, l -> {
+      result.addAll(l);
+      return true;
+    });
+
+    otherMatchers.stream().filter(o -> o.matches(scope)).forEach(result::add);
+    return result;
+  }
+}
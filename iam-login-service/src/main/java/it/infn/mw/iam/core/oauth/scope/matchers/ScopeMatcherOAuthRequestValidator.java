@@ -38,8 +38,10 @@ public class ScopeMatcherOAuthRequestValidator implements OAuth2RequestValidator
   private void validateScope(Set<String> requestedScopes, ClientDetails client) {
 
     Set<ScopeMatcher> scopeMatchers = registry.findMatchersForClient(client);
+    ScopeMatcherIndex index = registry.findMatcherIndexForClient(client, scopeMatchers);
+
     for (String s : requestedScopes) {
-      if (scopeMatchers.stream().noneMatch(m -> m.matches(s))) {
+      if (!index.matches(s)) {
         throw new InvalidScopeException(String.format(ERROR_MSG_FMT, s, client.getClientId()));
       }
     }
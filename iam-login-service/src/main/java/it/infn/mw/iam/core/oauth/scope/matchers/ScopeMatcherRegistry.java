@@ -23,4 +23,10 @@ import org.springframework.security.oauth2.provider.ClientDetails;
 public interface ScopeMatcherRegistry {
   Set<ScopeMatcher> findMatchersForClient(ClientDetails client);
   ScopeMatcher findMatcherForScope(String scope);
+
+  /**
+   * Returns an index over the given matchers of a client. The index built for a client is reused
+   * as long as the matchers found for the client do not change.
+   */
+  ScopeMatcherIndex findMatcherIndexForClient(ClientDetails client, Set<ScopeMatcher> matchers);
 }
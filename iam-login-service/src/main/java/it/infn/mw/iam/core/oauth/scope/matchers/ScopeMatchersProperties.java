@@ -92,6 +92,12 @@ public class ScopeMatchersProperties {
   @Valid
   List<MatcherProperties> matchers = Lists.newArrayList();
 
+  /**
+   * Period of the system scope index reload, used to pick up system scopes changed on other IAM
+   * instances. A non-positive value disables the periodic reload.
+   */
+  long systemScopesRefreshPeriodSecs = 60;
+
   public List<MatcherProperties> getMatchers() {
     return matchers;
   }
@@ -100,4 +106,12 @@ public class ScopeMatchersProperties {
     this.matchers = matchers;
   }
 
+  public long getSystemScopesRefreshPeriodSecs() {
+    return systemScopesRefreshPeriodSecs;
+  }
+
+  public void setSystemScopesRefreshPeriodSecs(long systemScopesRefreshPeriodSecs) {
+    this.systemScopesRefreshPeriodSecs = systemScopesRefreshPeriodSecs;
+  }
+
 }
@@ -19,9 +19,6 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Strings.isNullOrEmpty;
 import static java.util.Objects.nonNull;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
 import javax.annotation.Generated;
 
 import org.slf4j.Logger;
@@ -33,45 +30,34 @@ public class StructuredPathScopeMatcher implements ScopeMatcher {
 
   public static final Logger LOG = LoggerFactory.getLogger(StructuredPathScopeMatcher.class);
 
-  private static final Pattern POINT_DIR_MATCHER = Pattern.compile("\\.\\./?");
+  static final String RELATIVE_PATH = "..";
   
-  private static final Character SEP = ':';
-  private static final String SEP_STR = SEP.toString();
+  static final char SEP = ':';
+  private static final String SEP_STR = String.valueOf(SEP);
 
   private final String prefix;
   private final String path;
 
-  private final Pattern prefixMatchPattern;
-  private final Pattern pathMatchPattern;
-
   private StructuredPathScopeMatcher(String prefix, String path) {
-
     this.prefix = prefix;
     this.path = path;
+  }
 
-    final String prefixMatchRegexp = String.format("^%s%c", prefix, SEP);
-    prefixMatchPattern = Pattern.compile(prefixMatchRegexp);
-    pathMatchPattern = Pattern.compile(path + ".*");
+  static void checkNoRelativePath(String scope) {
+    if (scope.contains(RELATIVE_PATH)) {
+      throw new IllegalArgumentException("Scope contains relative path references");
+    }
   }
 
   @Override
   public boolean matches(String scope) {
     checkArgument(nonNull(scope), "scope must be non-null");
+    checkNoRelativePath(scope);
 
-    if (POINT_DIR_MATCHER.matcher(scope).find()) {
-      throw new IllegalArgumentException("Scope contains relative path references");
-    }
+    final int pathOffset = prefix.length() + 1;
 
-    Matcher prefixMatcher = prefixMatchPattern.matcher(scope);
-    
-    boolean prefixMatches = prefixMatcher.find();
-    
-    if (prefixMatches) {
-      final String scopePath = scope.substring(prefix.length() + 1);
-      return pathMatchPattern.matcher(scopePath).matches(); 
-    } else {
-      return false;
-    }
+    return scope.length() >= pathOffset && scope.charAt(prefix.length()) == SEP
+        && scope.startsWith(prefix) && scope.startsWith(path, pathOffset);
   }
   
   public static StructuredPathScopeMatcher fromString(String scope) {
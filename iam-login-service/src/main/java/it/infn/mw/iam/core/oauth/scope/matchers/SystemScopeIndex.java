@@ -0,0 +1,103 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.core.oauth.scope.matchers;
+
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.mitre.oauth2.model.SystemScope;
+import org.mitre.oauth2.repository.SystemScopeRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * An in-memory snapshot of the names of the system scopes, used to tell system scopes apart
+ * without querying the database.
+ * 
+ * The snapshot is loaded lazily, invalidated whenever a system scope is saved or removed on this
+ * instance and periodically reloaded to pick up changes done on other IAM instances.
+ */
+public class SystemScopeIndex {
+
+  public static final Logger LOG = LoggerFactory.getLogger(SystemScopeIndex.class);
+
+  private final SystemScopeRepository scopeRepo;
+
+  private final AtomicReference<Set<String>> snapshot = new AtomicReference<>();
+  private final AtomicLong generation = new AtomicLong();
+
+  public SystemScopeIndex(SystemScopeRepository scopeRepo) {
+    this.scopeRepo = scopeRepo;
+  }
+
+  private Set<String> loadSnapshot() {
+    ImmutableSet.Builder<String> builder = ImmutableSet.builder();
+
+    for (SystemScope s : scopeRepo.getAll()) {
+      if (s.getValue() != null) {
+        builder.add(s.getValue());
+      }
+    }
+
+    Set<String> result = builder.build();
+    LOG.debug("Loaded {} system scopes", result.size());
+    return result;
+  }
+
+  /**
+   * Returns the names of the system scopes, loading them from the database if the snapshot has
+   * been invalidated since it was last loaded.
+   */
+  public Set<String> getSystemScopes() {
+    Set<String> current = snapshot.get();
+
+    if (current == null) {
+      current = reload();
+    }
+
+    return current;
+  }
+
+  /**
+   * Loads a fresh snapshot from the database and makes it the current one.
+   * 
+   * @return the loaded system scope names
+   */
+  public Set<String> reload() {
+    final long currentGeneration = generation.get();
+
+    Set<String> loaded = loadSnapshot();
+    snapshot.set(loaded);
+
+    // An invalidation happened while loading, so what we have just loaded might be stale
+    if (generation.get() != currentGeneration) {
+      snapshot.compareAndSet(loaded, null);
+    }
+
+    return loaded;
+  }
+
+  /**
+   * Marks the current snapshot as stale, so that it will be reloaded on next access.
+   */
+  public void invalidate() {
+    generation.incrementAndGet();
+    snapshot.set(null);
+  }
+}
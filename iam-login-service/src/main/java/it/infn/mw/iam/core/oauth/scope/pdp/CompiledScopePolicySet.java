@@ -0,0 +1,229 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.core.oauth.scope.pdp;
+
+import static java.lang.String.format;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.springframework.security.oauth2.common.exceptions.InvalidScopeException;
+
+import com.google.common.collect.Lists;
+
+import it.infn.mw.iam.api.scim.exception.IllegalArgumentException;
+import it.infn.mw.iam.core.oauth.scope.matchers.PathScopeTrie;
+import it.infn.mw.iam.core.oauth.scope.pdp.DecisionContext.ScopeStatus;
+import it.infn.mw.iam.persistence.model.IamScopePolicy.MatchingPolicy;
+
+/**
+ * The compiled form of a set of scope policies that are evaluated together (i.e., the policies of
+ * an account, of a group or the default policies).
+ * 
+ * The decision for a scope is computed with the same deny-overrides semantic implemented by
+ * {@link DecisionContext}, but looking up EQ policies in a hash map, PATH policies in a
+ * {@link PathScopeTrie} and evaluating only REGEXP policies one by one.
+ */
+@SuppressWarnings("deprecation")
+public class CompiledScopePolicySet {
+
+  public static final CompiledScopePolicySet EMPTY = new Builder().build();
+
+  private static final char SEP = ':';
+  private static final String RELATIVE_PATH = "..";
+
+  private final ScopeStatus matchAllStatus;
+  private final Map<String, ScopeStatus> eqPolicies;
+  private final PathScopeTrie<ScopeStatus> pathPolicies;
+  private final List<CompiledRegexp> regexpPolicies;
+  private final String firstPathScope;
+  private final String misspelledPathScope;
+  private final String invalidRegexpMessage;
+
+  private CompiledScopePolicySet(Builder builder) {
+    this.matchAllStatus = builder.matchAllStatus;
+    this.eqPolicies = builder.eqPolicies;
+    this.pathPolicies = builder.pathPolicies;
+    this.regexpPolicies = builder.regexpPolicies;
+    this.firstPathScope = builder.firstPathScope;
+    this.misspelledPathScope = builder.misspelledPathScope;
+    this.invalidRegexpMessage = builder.invalidRegexpMessage;
+  }
+
+  static ScopeStatus combine(ScopeStatus current, ScopeStatus other) {
+    if (other == null || ScopeStatus.UNPROCESSED.equals(other)) {
+      return current;
+    }
+    if (ScopeStatus.DENY.equals(current) || ScopeStatus.DENY.equals(other)) {
+      return ScopeStatus.DENY;
+    }
+    return ScopeStatus.PERMIT;
+  }
+
+  public boolean isEmpty() {
+    return ScopeStatus.UNPROCESSED.equals(matchAllStatus) && eqPolicies.isEmpty()
+        && pathPolicies.isEmpty() && firstPathScope == null && regexpPolicies.isEmpty()
+        && invalidRegexpMessage == null;
+  }
+
+  ScopeStatus decide(String scope) {
+
+    if (invalidRegexpMessage != null) {
+      throw new IllegalArgumentException(invalidRegexpMessage);
+    }
+
+    checkPathScope(scope);
+
+    ScopeStatus status = combine(matchAllStatus, eqPolicies.get(scope));
+
+    if (ScopeStatus.DENY.equals(status)) {
+      return status;
+    }
+
+    status = combine(status, decidePath(scope));
+
+    for (CompiledRegexp r : regexpPolicies) {
+      if (ScopeStatus.DENY.equals(status)) {
+        break;
+      }
+      if (r.pattern.matcher(scope).matches()) {
+        status = combine(status, r.status);
+      }
+    }
+
+    return status;
+  }
+
+  /**
+   * Rejects the scope if the set contains PATH policies that cannot be evaluated against it; this
+   * check runs before any policy is evaluated, so that invalid scopes are never reported as denied
+   */
+  private void checkPathScope(String scope) {
+    if (firstPathScope == null) {
+      return;
+    }
+
+    if (misspelledPathScope != null) {
+      throw new InvalidScopeException(
+          format("Misspelled %s scope in the scope policy", misspelledPathScope));
+    }
+
+    if (scope.contains(RELATIVE_PATH)) {
+      throw new InvalidScopeException(
+          format("Misspelled %s scope in the scope policy", firstPathScope));
+    }
+  }
+
+  private ScopeStatus decidePath(String scope) {
+    if (firstPathScope == null) {
+      return ScopeStatus.UNPROCESSED;
+    }
+
+    final ScopeStatus[] result = {ScopeStatus.UNPROCESSED};
+
+    pathPolicies.visitMatches(scope, status -> {
+      result[0] = combine(result[0], status);
+      return !ScopeStatus.DENY.equals(result[0]);
+    });
+
+    return result[0];
+  }
+
+  static class CompiledRegexp {
+    final Pattern pattern;
+    final ScopeStatus status;
+
+    CompiledRegexp(Pattern pattern, ScopeStatus status) {
+      this.pattern = pattern;
+      this.status = status;
+    }
+  }
+
+  public static class Builder {
+
+    private ScopeStatus matchAllStatus = ScopeStatus.UNPROCESSED;
+    private final Map<String, ScopeStatus> eqPolicies = new HashMap<>();
+    private final PathScopeTrie<ScopeStatus> pathPolicies = new PathScopeTrie<>();
+    private final List<CompiledRegexp> regexpPolicies = Lists.newArrayList();
+    private String firstPathScope;
+    private String misspelledPathScope;
+    private String invalidRegexpMessage;
+
+    public Builder addPolicy(boolean permit, MatchingPolicy matchingPolicy,
+        Iterable<String> scopes) {
+
+      final ScopeStatus status = permit ? ScopeStatus.PERMIT : ScopeStatus.DENY;
+
+      if (!scopes.iterator().hasNext()) {
+        matchAllStatus = combine(matchAllStatus, status);
+        return this;
+      }
+
+      for (String s : scopes) {
+        switch (matchingPolicy) {
+          case EQ:
+            eqPolicies.merge(s, status, CompiledScopePolicySet::combine);
+            break;
+          case REGEXP:
+            addRegexp(s, status);
+            break;
+          case PATH:
+            addPath(s, status);
+            break;
+          default:
+            throw new IllegalArgumentException(
+                "Unknown scope policy matching policy: " + matchingPolicy);
+        }
+      }
+      return this;
+    }
+
+    private void addRegexp(String regexp, ScopeStatus status) {
+      try {
+        regexpPolicies.add(new CompiledRegexp(Pattern.compile(regexp), status));
+      } catch (PatternSyntaxException e) {
+        if (invalidRegexpMessage == null) {
+          invalidRegexpMessage = e.getMessage();
+        }
+      }
+    }
+
+    private void addPath(String scope, ScopeStatus status) {
+      if (firstPathScope == null) {
+        firstPathScope = scope;
+      }
+
+      final int sepIndex = scope.indexOf(SEP);
+
+      if (sepIndex < 0) {
+        if (misspelledPathScope == null) {
+          misspelledPathScope = scope;
+        }
+        return;
+      }
+
+      pathPolicies.put(scope.substring(0, sepIndex), scope.substring(sepIndex + 1), status,
+          CompiledScopePolicySet::combine);
+    }
+
+    public CompiledScopePolicySet build() {
+      return new CompiledScopePolicySet(this);
+    }
+  }
+}
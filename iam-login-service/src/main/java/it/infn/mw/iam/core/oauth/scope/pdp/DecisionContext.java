@@ -15,7 +15,6 @@
  */
 package it.infn.mw.iam.core.oauth.scope.pdp;
 
-import static it.infn.mw.iam.core.oauth.scope.matchers.RegexpScopeMatcher.regexpMatcher;
 import static it.infn.mw.iam.persistence.model.IamScopePolicy.MatchingPolicy.EQ;
 import static it.infn.mw.iam.persistence.model.IamScopePolicy.MatchingPolicy.PATH;
 import static it.infn.mw.iam.persistence.model.IamScopePolicy.MatchingPolicy.REGEXP;
@@ -30,12 +29,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.security.oauth2.common.exceptions.InvalidScopeException;
 
-import com.google.common.cache.Cache;
 import com.google.common.collect.Maps;
 
 import it.infn.mw.iam.api.scim.exception.IllegalArgumentException;
 import it.infn.mw.iam.core.oauth.scope.matchers.ScopeMatcher;
-import it.infn.mw.iam.core.oauth.scope.matchers.StructuredPathScopeMatcher;
 import it.infn.mw.iam.persistence.model.IamAccount;
 import it.infn.mw.iam.persistence.model.IamScopePolicy;
 
@@ -51,9 +48,9 @@ public class DecisionContext {
   }
 
   private final Map<String, DecisionContext.ScopeStatus> scopeStatus = Maps.newHashMap();
-  private final Cache<String, ScopeMatcher> matchersCache;
+  private final ScopePolicyMatcherCache matchersCache;
 
-  public DecisionContext(Cache<String, ScopeMatcher> matchersCache, Set<String> requestedScopes) {
+  public DecisionContext(ScopePolicyMatcherCache matchersCache, Set<String> requestedScopes) {
     LOG.debug("Decision context created for scopes '{}'", requestedScopes);
     requestedScopes.forEach(s -> scopeStatus.put(s, ScopeStatus.UNPROCESSED));
     this.matchersCache = matchersCache;
@@ -90,7 +87,7 @@ public class DecisionContext {
       boolean foundMatch = false;
       for (String ps : p.getScopes()) {
         try {
-          ScopeMatcher m = matchersCache.get(ps, () -> regexpMatcher(ps));
+          ScopeMatcher m = matchersCache.regexpScopeMatcher(ps);
           if (m.matches(scope)) {
             foundMatch = true;
           }
@@ -105,7 +102,7 @@ public class DecisionContext {
       for (String ps : p.getScopes()) {
         ScopeMatcher m;
         try {
-          m = matchersCache.get(ps, () -> StructuredPathScopeMatcher.fromString(ps));
+          m = matchersCache.pathScopeMatcher(ps);
           if (m.matches(scope)) {
             foundMatch = true;
           }
@@ -17,6 +17,7 @@ package it.infn.mw.iam.core.oauth.scope.pdp;
 
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -29,13 +30,13 @@ import org.springframework.security.oauth2.provider.OAuth2Authentication;
 import org.springframework.security.oauth2.provider.OAuth2Request;
 import org.springframework.stereotype.Component;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Sets;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import it.infn.mw.iam.api.account.AccountUtils;
 import it.infn.mw.iam.config.IamProperties;
-import it.infn.mw.iam.core.oauth.scope.matchers.ScopeMatcher;
+import it.infn.mw.iam.core.oauth.issuance.TokenIssuanceContext;
 import it.infn.mw.iam.persistence.model.IamAccount;
 import it.infn.mw.iam.persistence.model.IamAccountGroupMembership;
 import it.infn.mw.iam.persistence.model.IamScopePolicy;
@@ -51,18 +52,30 @@ public class DefaultScopeFilter implements ScopeFilter {
 
   private static final Set<String> EXCLUDED_SCOPES = Set.of("openid");
 
-  private Cache<String, ScopeMatcher> matchersCache =
-      CacheBuilder.newBuilder().maximumSize(30).build();
+  public static final String PDP_EVALUATIONS_METRIC = "iam.scope-policy.pdp.evaluations";
+  public static final String PDP_MEMO_HITS_METRIC = "iam.scope-policy.pdp.memo-hits";
 
   private final IamProperties config;
   private final IamScopePolicyRepository policyRepo;
   private final AccountUtils accountUtils;
+  private final ScopePolicyPdpProperties pdpProperties;
+  private final ScopePolicySnapshotService snapshotService;
+  private final ScopePolicyMatcherCache matchersCache;
+  private final Counter pdpEvaluations;
+  private final Counter pdpMemoHits;
 
   public DefaultScopeFilter(IamProperties config, IamScopePolicyRepository policyRepo,
-      AccountUtils accountUtils) {
+      AccountUtils accountUtils, ScopePolicyPdpProperties pdpProperties,
+      ScopePolicySnapshotService snapshotService, ScopePolicyMatcherCache matchersCache,
+      MeterRegistry meterRegistry) {
     this.config = config;
     this.policyRepo = policyRepo;
     this.accountUtils = accountUtils;
+    this.pdpProperties = pdpProperties;
+    this.snapshotService = snapshotService;
+    this.matchersCache = matchersCache;
+    this.pdpEvaluations = meterRegistry.counter(PDP_EVALUATIONS_METRIC);
+    this.pdpMemoHits = meterRegistry.counter(PDP_MEMO_HITS_METRIC);
   }
 
   @Override
@@ -72,11 +85,55 @@ public class DefaultScopeFilter implements ScopeFilter {
     if (account.isEmpty()) {
       return requestedScopes;
     }
-    return filterScopes(requestedScopes, account.get());
+
+    String clientId = null;
+    if (authn instanceof OAuth2Authentication oauth) {
+      clientId = oauth.getOAuth2Request().getClientId();
+    }
+
+    return filterScopes(requestedScopes, account.get(), clientId);
   }
 
   @Override
   public Set<String> filterScopes(Set<String> requestedScopes, IamAccount account) {
+    return filterScopes(requestedScopes, account, null);
+  }
+
+  /**
+   * Within a token issuance, scope decisions are taken once per account, client and scope: since
+   * each scope is decided independently of the others, the scopes already decided in the current
+   * {@link TokenIssuanceContext} are not evaluated again.
+   */
+  private Set<String> filterScopes(Set<String> requestedScopes, IamAccount account,
+      String clientId) {
+
+    Optional<TokenIssuanceContext> context = TokenIssuanceContext.current();
+
+    if (context.isEmpty()) {
+      return evaluate(requestedScopes, account);
+    }
+
+    Map<String, Boolean> decisions =
+        context.get().getScopeDecisions(account.getUuid(), clientId);
+
+    Set<String> undecidedScopes = requestedScopes.stream()
+      .filter(s -> !decisions.containsKey(s))
+      .collect(Collectors.toSet());
+
+    if (undecidedScopes.isEmpty()) {
+      pdpMemoHits.increment();
+    } else {
+      context.get().scopePolicyEvaluated();
+      Set<String> allowedScopes = evaluate(undecidedScopes, account);
+      undecidedScopes.forEach(s -> decisions.put(s, allowedScopes.contains(s)));
+    }
+
+    return requestedScopes.stream().filter(decisions::get).collect(Collectors.toSet());
+  }
+
+  private Set<String> evaluate(Set<String> requestedScopes, IamAccount account) {
+
+    pdpEvaluations.increment();
 
     Set<String> filteredScopes = new HashSet<>();
     filteredScopes.addAll(requestedScopes);
@@ -125,8 +182,22 @@ public class DefaultScopeFilter implements ScopeFilter {
     return requestedScopes;
   }
 
+  private Set<String> compiledScopePolicies(Set<String> requestedScopes, IamAccount account) {
+
+    Set<Long> groupIds = account.getGroups()
+      .stream()
+      .map(m -> m.getGroup().getId())
+      .collect(Collectors.toSet());
+
+    return snapshotService.getSnapshot().allowedScopes(requestedScopes, account.getId(), groupIds);
+  }
+
   private Set<String> scopePolicies(Set<String> requestedScopes, IamAccount account) {
 
+    if (pdpProperties.isCompiledPolicies()) {
+      return compiledScopePolicies(requestedScopes, account);
+    }
+
     DecisionContext dc = new DecisionContext(matchersCache, requestedScopes);
 
     // Apply user policies
@@ -0,0 +1,171 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.core.oauth.scope.pdp;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import it.infn.mw.iam.audit.events.scope_policy.ScopePolicyEvent;
+import it.infn.mw.iam.persistence.model.IamScopePolicy.MatchingPolicy;
+import it.infn.mw.iam.persistence.model.PolicyRule;
+import it.infn.mw.iam.persistence.repository.IamScopePolicyRepository;
+import it.infn.mw.iam.persistence.repository.IamScopePolicyScopeProjection;
+
+/**
+ * Loads and publishes the {@link ScopePolicySnapshot}.
+ * 
+ * Snapshots are loaded by one thread at a time; callers that find no current snapshot wait for
+ * the in-flight load and then use its result instead of loading their own. A snapshot is current
+ * only if its version matches the invalidation generation, so a snapshot loaded while an
+ * invalidation was in progress is published but never served to later callers.
+ */
+@Service
+public class DefaultScopePolicySnapshotService implements ScopePolicySnapshotService {
+
+  public static final Logger LOG = LoggerFactory.getLogger(DefaultScopePolicySnapshotService.class);
+
+  private final IamScopePolicyRepository policyRepo;
+
+  private final AtomicReference<ScopePolicySnapshot> snapshot = new AtomicReference<>();
+  private final AtomicLong generation = new AtomicLong();
+  private final ReentrantLock loadLock = new ReentrantLock();
+
+  public DefaultScopePolicySnapshotService(IamScopePolicyRepository policyRepo) {
+    this.policyRepo = policyRepo;
+  }
+
+  private static class PolicyRow {
+    final boolean permit;
+    final MatchingPolicy matchingPolicy;
+    final Long accountId;
+    final Long groupId;
+    final List<String> scopes = Lists.newArrayList();
+
+    PolicyRow(IamScopePolicyScopeProjection p) {
+      this.permit = PolicyRule.PERMIT.equals(p.getRule());
+      this.matchingPolicy = p.getMatchingPolicy();
+      this.accountId = p.getAccountId();
+      this.groupId = p.getGroupId();
+    }
+  }
+
+  private static Map<Long, CompiledScopePolicySet> build(
+      Map<Long, CompiledScopePolicySet.Builder> builders) {
+    Map<Long, CompiledScopePolicySet> result = Maps.newHashMapWithExpectedSize(builders.size());
+    builders.forEach((k, v) -> result.put(k, v.build()));
+    return result;
+  }
+
+  private ScopePolicySnapshot loadSnapshot(long version) {
+
+    Map<Long, PolicyRow> rows = Maps.newHashMap();
+
+    for (IamScopePolicyScopeProjection p : policyRepo.findAllPolicyScopes()) {
+      PolicyRow row = rows.computeIfAbsent(p.getPolicyId(), id -> new PolicyRow(p));
+      if (p.getScope() != null) {
+        row.scopes.add(p.getScope());
+      }
+    }
+
+    CompiledScopePolicySet.Builder defaultPolicies = new CompiledScopePolicySet.Builder();
+    Map<Long, CompiledScopePolicySet.Builder> accountPolicies = Maps.newHashMap();
+    Map<Long, CompiledScopePolicySet.Builder> groupPolicies = Maps.newHashMap();
+
+    for (PolicyRow row : rows.values()) {
+      CompiledScopePolicySet.Builder builder = defaultPolicies;
+
+      if (row.groupId != null) {
+        builder =
+            groupPolicies.computeIfAbsent(row.groupId, id -> new CompiledScopePolicySet.Builder());
+      } else if (row.accountId != null) {
+        builder = accountPolicies.computeIfAbsent(row.accountId,
+            id -> new CompiledScopePolicySet.Builder());
+      }
+
+      builder.addPolicy(row.permit, row.matchingPolicy, row.scopes);
+    }
+
+    ScopePolicySnapshot result = new ScopePolicySnapshot(version, defaultPolicies.build(),
+        build(accountPolicies), build(groupPolicies));
+
+    LOG.debug("Loaded {} scope policies in {}", rows.size(), result);
+    return result;
+  }
+
+  private boolean isCurrent(ScopePolicySnapshot s) {
+    return s != null && s.getVersion() == generation.get();
+  }
+
+  private ScopePolicySnapshot loadAndPublish() {
+    ScopePolicySnapshot loaded = loadSnapshot(generation.get());
+    snapshot.set(loaded);
+    return loaded;
+  }
+
+  @Override
+  public ScopePolicySnapshot getSnapshot() {
+    ScopePolicySnapshot current = snapshot.get();
+
+    if (isCurrent(current)) {
+      return current;
+    }
+
+    loadLock.lock();
+    try {
+      current = snapshot.get();
+
+      if (isCurrent(current)) {
+        return current;
+      }
+
+      return loadAndPublish();
+    } finally {
+      loadLock.unlock();
+    }
+  }
+
+  @Override
+  public ScopePolicySnapshot reloadSnapshot() {
+    loadLock.lock();
+    try {
+      return loadAndPublish();
+    } finally {
+      loadLock.unlock();
+    }
+  }
+
+  @Override
+  public void invalidateSnapshot() {
+    generation.incrementAndGet();
+  }
+
+  @TransactionalEventListener(fallbackExecution = true)
+  public void handleScopePolicyEvent(ScopePolicyEvent event) {
+    LOG.debug("Invalidating scope policy snapshot after event: {}", event.getMessage());
+    invalidateSnapshot();
+  }
+}
@@ -0,0 +1,159 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.core.oauth.scope.pdp;
+
+import static it.infn.mw.iam.core.oauth.scope.matchers.RegexpScopeMatcher.regexpMatcher;
+import static it.infn.mw.iam.persistence.model.IamScopePolicy.MatchingPolicy.PATH;
+import static it.infn.mw.iam.persistence.model.IamScopePolicy.MatchingPolicy.REGEXP;
+
+import java.util.concurrent.ExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import it.infn.mw.iam.audit.events.scope_policy.ScopePolicyDeletedEvent;
+import it.infn.mw.iam.audit.events.scope_policy.ScopePolicyEvent;
+import it.infn.mw.iam.core.oauth.scope.matchers.ScopeMatcher;
+import it.infn.mw.iam.core.oauth.scope.matchers.StructuredPathScopeMatcher;
+import it.infn.mw.iam.persistence.model.IamScopePolicy;
+import it.infn.mw.iam.persistence.model.IamScopePolicy.MatchingPolicy;
+import it.infn.mw.iam.persistence.repository.IamScopePolicyRepository;
+import it.infn.mw.iam.persistence.repository.IamScopePolicyScopeProjection;
+
+/**
+ * A cache of the matchers compiled from REGEXP and PATH scope policies, shared by all the
+ * decisions taken by the scope policy PDP.
+ * 
+ * The cache is pre-warmed with the matchers of all the policies at startup; when a scope policy is
+ * created or updated, only the matchers of that policy are compiled. Matchers of deleted policies
+ * are left to the size-based eviction, since other policies may share their scopes. Cache
+ * statistics are exposed as Micrometer metrics named {@value #CACHE_NAME}.
+ */
+@Component
+public class ScopePolicyMatcherCache implements InitializingBean {
+
+  public static final Logger LOG = LoggerFactory.getLogger(ScopePolicyMatcherCache.class);
+
+  public static final String CACHE_NAME = "iam.scope-policy.matchers";
+
+  private final IamScopePolicyRepository policyRepo;
+  private final ScopePolicyPdpProperties properties;
+  private final Cache<String, ScopeMatcher> matchersCache;
+
+  public ScopePolicyMatcherCache(IamScopePolicyRepository policyRepo,
+      ScopePolicyPdpProperties properties, MeterRegistry meterRegistry) {
+    this.policyRepo = policyRepo;
+    this.properties = properties;
+    this.matchersCache = CacheBuilder.newBuilder()
+      .maximumSize(properties.getMatcherCacheSize())
+      .recordStats()
+      .build();
+
+    GuavaCacheMetrics.monitor(meterRegistry, matchersCache, CACHE_NAME);
+  }
+
+  private static String cacheKey(MatchingPolicy matchingPolicy, String scope) {
+    return matchingPolicy.name() + ":" + scope;
+  }
+
+  public ScopeMatcher regexpScopeMatcher(String scope) throws ExecutionException {
+    return matchersCache.get(cacheKey(REGEXP, scope), () -> regexpMatcher(scope));
+  }
+
+  public ScopeMatcher pathScopeMatcher(String scope) throws ExecutionException {
+    return matchersCache.get(cacheKey(PATH, scope),
+        () -> StructuredPathScopeMatcher.fromString(scope));
+  }
+
+  public void warmUp() {
+
+    if (!properties.isMatcherCacheWarmUp()) {
+      return;
+    }
+
+    long loaded = 0;
+
+    for (IamScopePolicyScopeProjection p : policyRepo.findAllPolicyScopes()) {
+      if (p.getScope() == null || loaded >= properties.getMatcherCacheSize()) {
+        continue;
+      }
+
+      if (compile(p.getPolicyId(), p.getMatchingPolicy(), p.getScope())) {
+        loaded++;
+      }
+    }
+
+    LOG.debug("Scope policy matchers cache warmed up with {} matchers", loaded);
+  }
+
+  /**
+   * Compiles the matcher of a REGEXP or PATH policy scope into the cache, and returns true if a
+   * matcher was compiled
+   */
+  private boolean compile(Long policyId, MatchingPolicy matchingPolicy, String scope) {
+    try {
+      if (REGEXP.equals(matchingPolicy)) {
+        regexpScopeMatcher(scope);
+        return true;
+      } else if (PATH.equals(matchingPolicy)) {
+        pathScopeMatcher(scope);
+        return true;
+      }
+    } catch (ExecutionException | RuntimeException e) {
+      LOG.warn("Invalid scope '{}' found in scope policy #{}: {}", scope, policyId,
+          e.getMessage());
+    }
+    return false;
+  }
+
+  public void warmUp(IamScopePolicy policy) {
+
+    if (!properties.isMatcherCacheWarmUp() || policy.getScopes() == null) {
+      return;
+    }
+
+    policy.getScopes().forEach(s -> compile(policy.getId(), policy.getMatchingPolicy(), s));
+  }
+
+  public CacheStats getStats() {
+    return matchersCache.stats();
+  }
+
+  public long getSize() {
+    return matchersCache.size();
+  }
+
+  @TransactionalEventListener(fallbackExecution = true)
+  public void handleScopePolicyEvent(ScopePolicyEvent event) {
+    if (!(event instanceof ScopePolicyDeletedEvent)) {
+      warmUp(event.getPolicy());
+    }
+  }
+
+  @Override
+  public void afterPropertiesSet() throws Exception {
+    warmUp();
+  }
+}
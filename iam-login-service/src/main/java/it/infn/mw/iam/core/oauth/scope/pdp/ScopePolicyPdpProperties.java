@@ -0,0 +1,79 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.core.oauth.scope.pdp;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "scope.pdp")
+public class ScopePolicyPdpProperties {
+
+  /**
+   * When true, scope policies are evaluated against an in-memory compiled snapshot of all the
+   * policies, instead of walking the account, group and default policies at each request
+   */
+  private boolean compiledPolicies = false;
+
+  /**
+   * Period of the snapshot reload, used to pick up changes done on other IAM instances. A
+   * non-positive value disables the periodic reload.
+   */
+  private long snapshotRefreshPeriodSecs = 60;
+
+  /**
+   * Maximum number of compiled REGEXP and PATH matchers kept in the shared matcher cache
+   */
+  private long matcherCacheSize = 1000;
+
+  /**
+   * When true, the matcher cache is populated from the scope policies at startup and after each
+   * scope policy change
+   */
+  private boolean matcherCacheWarmUp = true;
+
+  public boolean isCompiledPolicies() {
+    return compiledPolicies;
+  }
+
+  public void setCompiledPolicies(boolean compiledPolicies) {
+    this.compiledPolicies = compiledPolicies;
+  }
+
+  public long getSnapshotRefreshPeriodSecs() {
+    return snapshotRefreshPeriodSecs;
+  }
+
+  public void setSnapshotRefreshPeriodSecs(long snapshotRefreshPeriodSecs) {
+    this.snapshotRefreshPeriodSecs = snapshotRefreshPeriodSecs;
+  }
+
+  public long getMatcherCacheSize() {
+    return matcherCacheSize;
+  }
+
+  public void setMatcherCacheSize(long matcherCacheSize) {
+    this.matcherCacheSize = matcherCacheSize;
+  }
+
+  public boolean isMatcherCacheWarmUp() {
+    return matcherCacheWarmUp;
+  }
+
+  public void setMatcherCacheWarmUp(boolean matcherCacheWarmUp) {
+    this.matcherCacheWarmUp = matcherCacheWarmUp;
+  }
+}
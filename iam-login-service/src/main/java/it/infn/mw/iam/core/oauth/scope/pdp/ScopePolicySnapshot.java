@@ -0,0 +1,131 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.core.oauth.scope.pdp;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Sets;
+
+import it.infn.mw.iam.core.oauth.scope.pdp.DecisionContext.ScopeStatus;
+
+/**
+ * An immutable, versioned view of all the scope policies defined in IAM, compiled and indexed by
+ * the account or group they are linked to.
+ */
+public class ScopePolicySnapshot {
+
+  public static final Logger LOG = LoggerFactory.getLogger(ScopePolicySnapshot.class);
+
+  public static final ScopePolicySnapshot EMPTY = new ScopePolicySnapshot(0L,
+      CompiledScopePolicySet.EMPTY, Collections.emptyMap(), Collections.emptyMap());
+
+  private final long version;
+  private final CompiledScopePolicySet defaultPolicies;
+  private final Map<Long, CompiledScopePolicySet> accountPolicies;
+  private final Map<Long, CompiledScopePolicySet> groupPolicies;
+
+  public ScopePolicySnapshot(long version, CompiledScopePolicySet defaultPolicies,
+      Map<Long, CompiledScopePolicySet> accountPolicies,
+      Map<Long, CompiledScopePolicySet> groupPolicies) {
+    this.version = version;
+    this.defaultPolicies = defaultPolicies;
+    this.accountPolicies = accountPolicies;
+    this.groupPolicies = groupPolicies;
+  }
+
+  public long getVersion() {
+    return version;
+  }
+
+  public int getAccountPoliciesCount() {
+    return accountPolicies.size();
+  }
+
+  public int getGroupPoliciesCount() {
+    return groupPolicies.size();
+  }
+
+  /**
+   * Returns the subset of the requested scopes permitted by the policies. Account policies are
+   * evaluated first; group policies apply only to scopes not matched by account policies, and
+   * default policies only to scopes not matched by account nor group policies.
+   * 
+   * @param requestedScopes the requested scopes
+   * @param accountId the id of the account requesting the scopes
+   * @param groupIds the ids of the groups the account is member of
+   * @return the set of allowed scopes
+   */
+  public Set<String> allowedScopes(Set<String> requestedScopes, Long accountId,
+      Collection<Long> groupIds) {
+
+    CompiledScopePolicySet accountSet =
+        accountPolicies.getOrDefault(accountId, CompiledScopePolicySet.EMPTY);
+
+    Set<String> allowedScopes = Sets.newHashSet();
+
+    for (String scope : requestedScopes) {
+      ScopeStatus status = accountSet.decide(scope);
+
+      if (ScopeStatus.UNPROCESSED.equals(status)) {
+        status = decideOnGroups(scope, groupIds);
+      }
+
+      if (ScopeStatus.UNPROCESSED.equals(status)) {
+        status = defaultPolicies.decide(scope);
+      }
+
+      LOG.debug("Scope '{}' decision for account #{}: {} (snapshot v{})", scope, accountId, status,
+          version);
+
+      if (ScopeStatus.PERMIT.equals(status)) {
+        allowedScopes.add(scope);
+      }
+    }
+
+    return allowedScopes;
+  }
+
+  private ScopeStatus decideOnGroups(String scope, Collection<Long> groupIds) {
+    ScopeStatus status = ScopeStatus.UNPROCESSED;
+
+    // Group policies are naturally composed with the deny overrides behavior
+    for (Long groupId : groupIds) {
+      CompiledScopePolicySet groupSet = groupPolicies.get(groupId);
+
+      if (groupSet != null) {
+        status = CompiledScopePolicySet.combine(status, groupSet.decide(scope));
+      }
+
+      if (ScopeStatus.DENY.equals(status)) {
+        break;
+      }
+    }
+
+    return status;
+  }
+
+  @Override
+  public String toString() {
+    return "ScopePolicySnapshot [version=" + version + ", accountPolicies="
+        + accountPolicies.size() + ", groupPolicies=" + groupPolicies.size() + "]";
+  }
+}
@@ -0,0 +1,36 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.core.oauth.scope.pdp;
+
+public interface ScopePolicySnapshotService {
+
+  /**
+   * Returns the current scope policy snapshot, loading it from the database if it has been
+   * invalidated since it was last loaded.
+   */
+  ScopePolicySnapshot getSnapshot();
+
+  /**
+   * Loads a fresh snapshot from the database and makes it the current one.
+   */
+  ScopePolicySnapshot reloadSnapshot();
+
+  /**
+   * Marks the current snapshot as stale, so that it will be reloaded on next access.
+   */
+  void invalidateSnapshot();
+
+}
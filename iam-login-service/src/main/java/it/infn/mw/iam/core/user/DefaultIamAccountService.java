@@ -23,6 +23,7 @@ import static java.lang.String.format;
 import static java.util.Objects.isNull;
 
 import java.time.Clock;
+import java.util.Collection;
 import java.util.Date;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -30,6 +31,7 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.ObjectUtils;
 import org.mitre.oauth2.model.OAuth2AccessTokenEntity;
@@ -385,16 +387,28 @@ public class DefaultIamAccountService implements IamAccountService, ApplicationE
 
   @Override
   public IamAccount addLabel(IamAccount account, IamLabel label) {
+    return addLabels(account, List.of(label));
+  }
+
+  @Override
+  public IamAccount addLabels(IamAccount account, Collection<IamLabel> labels) {
 
-    if (account.hasLabelWithValue(label)) {
+    List<IamLabel> changedLabels = labels.stream()
+      .filter(l -> !account.hasLabelWithValue(l))
+      .collect(Collectors.toList());
+
+    if (changedLabels.isEmpty()) {
       return account;
     }
-    account.getLabels().remove(label);
-    account.getLabels().add(label);
+
+    for (IamLabel label : changedLabels) {
+      account.getLabels().remove(label);
+      account.getLabels().add(label);
+    }
 
     account.touch();
     accountRepo.save(account);
-    labelSetEvent(account, label);
+    changedLabels.forEach(label -> labelSetEvent(account, label));
 
     return account;
   }
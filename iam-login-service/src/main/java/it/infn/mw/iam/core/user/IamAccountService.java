@@ -15,6 +15,7 @@
  */
 package it.infn.mw.iam.core.user;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
@@ -87,6 +88,16 @@ public interface IamAccountService {
    */
   IamAccount addLabel(IamAccount account, IamLabel label);
 
+  /**
+   * Add labels for a given account or replace the values of existent ones, saving the account
+   * once and only if at least one label was added or changed
+   * 
+   * @param account
+   * @param labels
+   * @return the updated account
+   */
+  IamAccount addLabels(IamAccount account, Collection<IamLabel> labels);
+
   /**
    * Deletes a label for a given account
    * 
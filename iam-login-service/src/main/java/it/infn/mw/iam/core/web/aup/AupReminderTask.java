@@ -17,99 +17,168 @@ package it.infn.mw.iam.core.web.aup;
 
 import java.time.LocalDate;
 import java.time.ZoneId;
-import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
-
-import org.springframework.beans.factory.annotation.Autowired;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import it.infn.mw.iam.notification.NotificationFactory;
-import it.infn.mw.iam.persistence.model.IamAccount;
 import it.infn.mw.iam.persistence.model.IamAup;
-import it.infn.mw.iam.persistence.model.IamAupSignature;
-import it.infn.mw.iam.persistence.repository.IamAccountRepository;
 import it.infn.mw.iam.persistence.repository.IamAupRepository;
+import it.infn.mw.iam.persistence.repository.IamAupSignatureRecipientProjection;
 import it.infn.mw.iam.persistence.repository.IamAupSignatureRepository;
-import it.infn.mw.iam.persistence.repository.IamEmailNotificationRepository;
 
+/**
+ * Sends AUP signature reminders and expiration notices.
+ * 
+ * Recipients are selected page by page as flat (account, email, signature time) rows, skipping
+ * inactive accounts, service accounts and accounts that have already been notified; each page of
+ * notifications is enqueued in a single transaction. An account is notified at most once per run,
+ * even when it matches more than one reminder interval.
+ */
 @Component
 public class AupReminderTask {
 
-  @Autowired
-  IamAccountRepository accounts;
+  private static final Logger LOG = LoggerFactory.getLogger(AupReminderTask.class);
+
+  public static final String NOTIFICATIONS_METRIC = "iam.aup.notifications";
+  public static final String RUN_TIMER = "iam.aup.reminder-task.run";
+
+  private final IamAupRepository aupRepo;
+  private final IamAupSignatureRepository aupSignatureRepo;
+  private final NotificationFactory notification;
+  private final TransactionTemplate txTemplate;
+  private final int pageSize;
+
+  private final Counter remindersCounter;
+  private final Counter expirationsCounter;
+  private final Timer runTimer;
+
+  public AupReminderTask(IamAupRepository aupRepo, IamAupSignatureRepository aupSignatureRepo,
+      NotificationFactory notification, PlatformTransactionManager txManager,
+      MeterRegistry meterRegistry, @Value("${task.aupReminderPageSize:500}") int pageSize) {
+    this.aupRepo = aupRepo;
+    this.aupSignatureRepo = aupSignatureRepo;
+    this.notification = notification;
+    this.txTemplate = new TransactionTemplate(txManager);
+    this.pageSize = pageSize;
+
+    this.remindersCounter = Counter.builder(NOTIFICATIONS_METRIC)
+      .tag("type", "reminder")
+      .description("AUP signature reminders enqueued")
+      .register(meterRegistry);
+    this.expirationsCounter = Counter.builder(NOTIFICATIONS_METRIC)
+      .tag("type", "expiration")
+      .description("AUP signature expiration notices enqueued")
+      .register(meterRegistry);
+    this.runTimer = Timer.builder(RUN_TIMER)
+      .description("Duration of the AUP reminder task runs")
+      .register(meterRegistry);
+  }
 
-  @Autowired
-  IamAupRepository aupRepo;
+  public void sendAupReminders() {
+    aupRepo.findDefaultAup().ifPresent(aup -> {
+      if (aup.getSignatureValidityInDays() <= 0) {
+        return;
+      }
 
-  @Autowired
-  NotificationFactory notification;
+      final long startTime = System.nanoTime();
+      final Set<Long> notifiedAccounts = new HashSet<>();
 
-  @Autowired
-  IamAupSignatureRepository aupSignatureRepo;
+      LocalDate currentDate = LocalDate.now();
+      LocalDate expirationDate = currentDate.minusDays(aup.getSignatureValidityInDays());
+      Date tomorrowAsDate = toDate(currentDate.plusDays(1));
 
-  @Autowired
-  IamEmailNotificationRepository emailNotificationRepo;
+      long reminders = 0;
 
-  public void sendAupReminders() {
-    aupRepo.findDefaultAup().ifPresent(aup -> {
-      LocalDate currentDate = LocalDate.now();
-      if (aup.getSignatureValidityInDays() > 0) {
-        LocalDate expirationDate = currentDate.minusDays(aup.getSignatureValidityInDays());
-        Date expirationDateAsDate = toDate(expirationDate);
-        Date expirationDatePlusOneDayAsDate = toDate(expirationDate.plusDays(1));
-        List<Integer> reminderIntervals = parseReminderIntervals(aup.getAupRemindersInDays());
-
-        reminderIntervals.forEach(
-            interval -> processRemindersForInterval(aup, currentDate, interval, expirationDate));
-
-        List<IamAupSignature> expiredSignatures = aupSignatureRepo.findByAupAndSignatureTime(aup,
-            expirationDateAsDate, expirationDatePlusOneDayAsDate);
-
-        // check if an email of type AUP_EXPIRATION does not already exist, because it is never deleted
-        expiredSignatures.forEach(s -> {
-          if (isExpiredSignatureEmailNotAlreadySentFor(s.getAccount()) && !s.getAccount().isServiceAccount()) {
-            notification.createAupSignatureExpMessage(s.getAccount());
-          }
-        });
+      for (Integer interval : parseReminderIntervals(aup.getAupRemindersInDays())) {
+        LocalDate reminderDate = expirationDate.plusDays(interval);
+        Date from = toDate(reminderDate);
+        Date to = toDate(reminderDate.plusDays(1));
+
+        reminders += processPages(
+            (lastId, page) -> aupSignatureRepo.findAupReminderRecipients(aup, from, to,
+                tomorrowAsDate, lastId, page),
+            r -> notification.createAupReminderMessage(r, aup), notifiedAccounts);
       }
+
+      Date from = toDate(expirationDate);
+      Date to = toDate(expirationDate.plusDays(1));
+
+      long expirations = processPages(
+          (lastId, page) -> aupSignatureRepo.findAupExpirationRecipients(aup, from, to, lastId,
+              page),
+          notification::createAupSignatureExpMessage, notifiedAccounts);
+
+      long elapsed = System.nanoTime() - startTime;
+      runTimer.record(elapsed, TimeUnit.NANOSECONDS);
+      remindersCounter.increment(reminders);
+      expirationsCounter.increment(expirations);
+
+      LOG.info("AUP reminder task: {} reminders and {} expiration notices enqueued in {} msec",
+          reminders, expirations, TimeUnit.NANOSECONDS.toMillis(elapsed));
     });
   }
 
-  private void processRemindersForInterval(IamAup aup, LocalDate currentDate, Integer interval,
-      LocalDate expirationDate) {
-    LocalDate reminderDate = expirationDate.plusDays(interval);
-    Date reminderDateAsDate = toDate(reminderDate);
-    Date reminderDatePlusOneAsDate = toDate(reminderDate.plusDays(1));
-    Date tomorrowAsDate = toDate(currentDate.plusDays(1));
+  private long processPages(RecipientPageLoader loader,
+      Function<IamAupSignatureRecipientProjection, ?> sender, Set<Long> notifiedAccounts) {
 
-    List<IamAupSignature> signatures = aupSignatureRepo.findByAupAndSignatureTime(aup,
-        reminderDateAsDate, reminderDatePlusOneAsDate);
+    final Pageable page = PageRequest.of(0, pageSize);
+    long lastId = 0;
+    long sent = 0;
 
-    // check if an email of type AUP_REMINDER does not already exist, because it is never deleted
-    signatures.forEach(s -> {
-      if (isAupReminderEmailNotAlreadySentFor(s.getAccount(), tomorrowAsDate) && !s.getAccount().isServiceAccount()) {
-        notification.createAupReminderMessage(s.getAccount(), aup);
+    while (true) {
+      List<IamAupSignatureRecipientProjection> recipients = loader.load(lastId, page);
+
+      if (recipients.isEmpty()) {
+        break;
       }
-    });
-  }
 
-  public boolean isExpiredSignatureEmailNotAlreadySentFor(IamAccount account) {
-    return emailNotificationRepo
-      .countAupExpirationMessPerAccount(account.getUserInfo().getEmail()) == 0;
-  }
+      Integer pageSent = txTemplate.execute(status -> {
+        int count = 0;
+        for (IamAupSignatureRecipientProjection r : recipients) {
+          if (notifiedAccounts.add(r.getAccountId())) {
+            sender.apply(r);
+            count++;
+          }
+        }
+        return count;
+      });
 
-  public boolean isAupReminderEmailNotAlreadySentFor(IamAccount account, Date tomorrowAsDate) {
-    return emailNotificationRepo.countAupRemindersPerAccount(account.getUserInfo().getEmail(),
-        tomorrowAsDate) == 0;
+      sent += pageSent == null ? 0 : pageSent;
+
+      if (recipients.size() < pageSize) {
+        break;
+      }
+
+      lastId = recipients.get(recipients.size() - 1).getSignatureId();
+    }
+
+    return sent;
   }
 
   private Date toDate(LocalDate localDate) {
     return Date.from(localDate.atStartOfDay(ZoneId.systemDefault()).toInstant());
   }
 
-  private static List<Integer> parseReminderIntervals(String aupRemindersInDays) {
-    List<Integer> result = new ArrayList<>();
+  private static SortedSet<Integer> parseReminderIntervals(String aupRemindersInDays) {
+    SortedSet<Integer> result = new TreeSet<>();
     String[] parts = aupRemindersInDays.split("\\s*,\\s*");
     for (String part : parts) {
       result.add(Integer.parseInt(part.trim()));
@@ -117,4 +186,9 @@ public class AupReminderTask {
     return result;
   }
 
+  @FunctionalInterface
+  private interface RecipientPageLoader {
+    List<IamAupSignatureRecipientProjection> load(long lastId, Pageable page);
+  }
+
 }
@@ -0,0 +1,90 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.notification;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "notification.delivery")
+public class NotificationDeliveryProperties {
+
+  /**
+   * Maximum number of pending notifications claimed for delivery in a single batch
+   */
+  private int batchSize = 100;
+
+  /**
+   * Number of SMTP connections used concurrently to deliver a batch
+   */
+  private int concurrency = 4;
+
+  /**
+   * Maximum number of delivery attempts for each notification
+   */
+  private int maxAttempts = 3;
+
+  /**
+   * Time waited before the first retry of a failed delivery, doubled at each subsequent retry
+   */
+  private long retryBackoffMillis = 1000;
+
+  /**
+   * Notifications claimed for delivery and not updated for longer than this are considered
+   * pending again, e.g. after a crash of the instance that claimed them
+   */
+  private long claimTimeoutSecs = 600;
+
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  public void setBatchSize(int batchSize) {
+    this.batchSize = batchSize;
+  }
+
+  public int getConcurrency() {
+    return concurrency;
+  }
+
+  public void setConcurrency(int concurrency) {
+    this.concurrency = concurrency;
+  }
+
+  public int getMaxAttempts() {
+    return maxAttempts;
+  }
+
+  public void setMaxAttempts(int maxAttempts) {
+    this.maxAttempts = maxAttempts;
+  }
+
+  public long getRetryBackoffMillis() {
+    return retryBackoffMillis;
+  }
+
+  public void setRetryBackoffMillis(long retryBackoffMillis) {
+    this.retryBackoffMillis = retryBackoffMillis;
+  }
+
+  public long getClaimTimeoutSecs() {
+    return claimTimeoutSecs;
+  }
+
+  public void setClaimTimeoutSecs(long claimTimeoutSecs) {
+    this.claimTimeoutSecs = claimTimeoutSecs;
+  }
+}
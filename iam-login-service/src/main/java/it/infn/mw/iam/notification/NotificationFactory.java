@@ -25,6 +25,7 @@ import it.infn.mw.iam.persistence.model.IamAup;
 import it.infn.mw.iam.persistence.model.IamEmailNotification;
 import it.infn.mw.iam.persistence.model.IamGroupRequest;
 import it.infn.mw.iam.persistence.model.IamRegistrationRequest;
+import it.infn.mw.iam.persistence.repository.IamAupSignatureRecipientProjection;
 
 public interface NotificationFactory {
 
@@ -48,9 +49,10 @@ public interface NotificationFactory {
   IamEmailNotification createClientStatusChangedMessageFor(ClientDetailsEntity client,
       List<IamAccount> accounts);
 
-  IamEmailNotification createAupReminderMessage(IamAccount account, IamAup aup);
+  IamEmailNotification createAupReminderMessage(IamAupSignatureRecipientProjection recipient,
+      IamAup aup);
 
-  IamEmailNotification createAupSignatureExpMessage(IamAccount account);
+  IamEmailNotification createAupSignatureExpMessage(IamAupSignatureRecipientProjection recipient);
 
   IamEmailNotification createAupSignatureRequestMessage(IamAccount account);
 
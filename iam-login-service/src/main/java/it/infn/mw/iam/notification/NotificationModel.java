@@ -0,0 +1,112 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.notification;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import it.infn.mw.iam.notification.NotificationTemplate.Fields;
+
+/**
+ * The model rendered into a {@link NotificationTemplate}.
+ * 
+ * Models are built with a {@link Builder} bound to the template, and hence to the notification
+ * type, they are meant for: the fields shared by several templates have typed setters, and
+ * {@link Builder#build()} fails if any field required by the template is missing.
+ */
+public final class NotificationModel {
+
+  private final NotificationTemplate template;
+  private final Map<String, Object> fields;
+
+  private NotificationModel(NotificationTemplate template, Map<String, Object> fields) {
+    this.template = template;
+    this.fields = Collections.unmodifiableMap(fields);
+  }
+
+  public NotificationTemplate getTemplate() {
+    return template;
+  }
+
+  public Map<String, Object> getFields() {
+    return fields;
+  }
+
+  public static Builder forTemplate(NotificationTemplate template) {
+    return new Builder(template);
+  }
+
+  public static final class Builder {
+
+    private final NotificationTemplate template;
+    private final Map<String, Object> fields = new HashMap<>();
+
+    private Builder(NotificationTemplate template) {
+      this.template = template;
+    }
+
+    public Builder recipient(String recipient) {
+      return with(Fields.RECIPIENT, recipient);
+    }
+
+    public Builder organisationName(String organisationName) {
+      return with(Fields.ORGANISATION_NAME, organisationName);
+    }
+
+    public Builder username(String username) {
+      return with(Fields.USERNAME, username);
+    }
+
+    public Builder groupName(String groupName) {
+      return with(Fields.GROUP_NAME, groupName);
+    }
+
+    public Builder motivation(String motivation) {
+      return with(Fields.MOTIVATION, motivation);
+    }
+
+    public Builder aupUrl(String aupUrl) {
+      return with(Fields.AUP_URL, aupUrl);
+    }
+
+    public Builder dashboardUrl(String dashboardUrl) {
+      return with(Fields.DASHBOARD_URL, dashboardUrl);
+    }
+
+    public Builder with(String field, Object value) {
+      fields.put(field, value);
+      return this;
+    }
+
+    public NotificationModel build() {
+
+      Set<String> missingFields = template.getRequiredFields()
+        .stream()
+        .filter(f -> !fields.containsKey(f))
+        .collect(Collectors.toSet());
+
+      if (!missingFields.isEmpty()) {
+        throw new IllegalArgumentException(String.format("Missing fields %s for template %s",
+            missingFields, template.getTemplateName()));
+      }
+
+      return new NotificationModel(template, new HashMap<>(fields));
+    }
+  }
+}
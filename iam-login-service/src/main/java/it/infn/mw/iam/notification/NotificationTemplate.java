@@ -0,0 +1,103 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.notification;
+
+import static java.util.Arrays.asList;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import it.infn.mw.iam.core.IamNotificationType;
+
+/**
+ * The email templates used for notifications, with the notification type they produce and the
+ * model fields each of them requires.
+ */
+public enum NotificationTemplate {
+
+  CONFIRM_REGISTRATION("confirmRegistration.ftl", IamNotificationType.CONFIRMATION,
+      Fields.RECIPIENT, "confirmURL"),
+  ACCOUNT_ACTIVATED("accountActivated.ftl", IamNotificationType.ACTIVATED, Fields.RECIPIENT,
+      "resetPasswordUrl", Fields.USERNAME),
+  REQUEST_REJECTED("requestRejected.ftl", IamNotificationType.REJECTED, Fields.RECIPIENT),
+  ADMIN_HANDLE_REQUEST("adminHandleRequest.ftl", IamNotificationType.CONFIRMATION, "name",
+      Fields.USERNAME, "email", Fields.DASHBOARD_URL),
+  RESET_PASSWORD("resetPassword.ftl", IamNotificationType.RESETPASSWD, Fields.RECIPIENT,
+      "resetPasswordUrl", Fields.USERNAME),
+  ADMIN_HANDLE_GROUP_REQUEST("adminHandleGroupRequest.ftl", IamNotificationType.GROUP_MEMBERSHIP,
+      "name", Fields.USERNAME, Fields.GROUP_NAME, Fields.DASHBOARD_URL),
+  GROUP_MEMBERSHIP_APPROVED("groupMembershipApproved.ftl", IamNotificationType.GROUP_MEMBERSHIP,
+      Fields.RECIPIENT, Fields.GROUP_NAME, "status"),
+  GROUP_MEMBERSHIP_REJECTED("groupMembershipRejected.ftl", IamNotificationType.GROUP_MEMBERSHIP,
+      Fields.RECIPIENT, Fields.GROUP_NAME, "status"),
+  CLIENT_STATUS_CHANGED("clientStatusChanged.ftl", IamNotificationType.CLIENT_STATUS, "clientId",
+      "clientName", "isClientActive"),
+  AUP_REMINDER("signAupReminder.ftl", IamNotificationType.AUP_REMINDER, Fields.RECIPIENT,
+      Fields.AUP_URL, "missingDays"),
+  AUP_EXPIRATION("aupExpirationMessage.ftl", IamNotificationType.AUP_EXPIRATION,
+      Fields.RECIPIENT, Fields.AUP_URL),
+  AUP_SIGNATURE_REQUEST("aupSignatureRequest.ftl", IamNotificationType.AUP_SIGNATURE_REQUEST,
+      Fields.RECIPIENT, Fields.AUP_URL),
+  ACCOUNT_SUSPENDED("accountSuspended.ftl", IamNotificationType.ACCOUNT_SUSPENDED,
+      Fields.RECIPIENT),
+  ACCOUNT_RESTORED("accountRestored.ftl", IamNotificationType.ACCOUNT_RESTORED, Fields.RECIPIENT),
+  SET_SERVICE_ACCOUNT("accountSetAsServiceAccount.ftl", IamNotificationType.SET_SERVICE_ACCOUNT,
+      Fields.RECIPIENT),
+  REVOKE_SERVICE_ACCOUNT("accountRevokeServiceAccount.ftl",
+      IamNotificationType.REVOKE_SERVICE_ACCOUNT, Fields.RECIPIENT),
+  MFA_ENABLE("mfaEnable.ftl", IamNotificationType.MFA_ENABLE, Fields.RECIPIENT),
+  MFA_DISABLE("mfaDisable.ftl", IamNotificationType.MFA_DISABLE, Fields.RECIPIENT);
+
+  public static final class Fields {
+
+    public static final String RECIPIENT = "recipient";
+    public static final String ORGANISATION_NAME = "organisationName";
+    public static final String USERNAME = "username";
+    public static final String GROUP_NAME = "groupName";
+    public static final String MOTIVATION = "motivation";
+    public static final String AUP_URL = "aupUrl";
+    public static final String DASHBOARD_URL = "indigoDashboardUrl";
+
+    private Fields() {}
+  }
+
+  private final String templateName;
+  private final IamNotificationType notificationType;
+  private final Set<String> requiredFields;
+
+  NotificationTemplate(String templateName, IamNotificationType notificationType,
+      String... requiredFields) {
+    this.templateName = templateName;
+    this.notificationType = notificationType;
+
+    Set<String> fields = new LinkedHashSet<>(asList(requiredFields));
+    fields.add(Fields.ORGANISATION_NAME);
+    this.requiredFields = Collections.unmodifiableSet(fields);
+  }
+
+  public String getTemplateName() {
+    return templateName;
+  }
+
+  public IamNotificationType getNotificationType() {
+    return notificationType;
+  }
+
+  public Set<String> getRequiredFields() {
+    return requiredFields;
+  }
+}
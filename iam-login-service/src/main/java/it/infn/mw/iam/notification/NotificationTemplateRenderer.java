@@ -0,0 +1,96 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.notification;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.stereotype.Component;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+
+/**
+ * Renders notification bodies from templates parsed once, at startup.
+ * 
+ * All the {@link NotificationTemplate}s are loaded and parsed when the application starts, so that
+ * a missing or malformed template, e.g. in a custom template location, prevents the startup
+ * instead of surfacing when a notification is sent. Parsed templates are immutable and shared by
+ * all the rendering threads; each model is checked for the fields required by its template before
+ * rendering.
+ */
+@Component
+public class NotificationTemplateRenderer implements InitializingBean {
+
+  public static final Logger LOG = LoggerFactory.getLogger(NotificationTemplateRenderer.class);
+
+  private static final int INITIAL_BUFFER_SIZE = 2048;
+
+  private final Configuration freeMarkerConfiguration;
+  private final Map<NotificationTemplate, Template> templates =
+      new EnumMap<>(NotificationTemplate.class);
+
+  public NotificationTemplateRenderer(Configuration freeMarkerConfiguration) {
+    this.freeMarkerConfiguration = freeMarkerConfiguration;
+  }
+
+  public String render(NotificationModel model) throws IOException, TemplateException {
+    return render(model.getTemplate(), model.getFields());
+  }
+
+  public String render(NotificationTemplate template, Map<String, Object> model)
+      throws IOException, TemplateException {
+
+    Set<String> missingFields = template.getRequiredFields()
+      .stream()
+      .filter(f -> !model.containsKey(f))
+      .collect(Collectors.toSet());
+
+    if (!missingFields.isEmpty()) {
+      throw new IllegalArgumentException(String.format("Missing fields %s for template %s",
+          missingFields, template.getTemplateName()));
+    }
+
+    StringWriter body = new StringWriter(INITIAL_BUFFER_SIZE);
+    templates.get(template).process(model, body);
+    return body.toString();
+  }
+
+  @Override
+  public void afterPropertiesSet() {
+
+    for (NotificationTemplate t : NotificationTemplate.values()) {
+      try {
+        templates.put(t, freeMarkerConfiguration.getTemplate(t.getTemplateName()));
+      } catch (IOException e) {
+        throw new IllegalStateException(
+            String.format("Invalid notification template %s: %s", t.getTemplateName(),
+                e.getMessage()),
+            e);
+      }
+    }
+
+    LOG.debug("{} notification templates compiled", templates.size());
+  }
+}
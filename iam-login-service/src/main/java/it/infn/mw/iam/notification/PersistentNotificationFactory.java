@@ -16,13 +16,10 @@
 package it.infn.mw.iam.notification;
 
 import java.util.List;
-import java.util.Map;
 
-import freemarker.template.Configuration;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import it.infn.mw.iam.core.IamNotificationType;
 import it.infn.mw.iam.notification.service.resolver.AdminNotificationDeliveryStrategy;
 import it.infn.mw.iam.notification.service.resolver.GroupManagerNotificationDeliveryStrategy;
 import it.infn.mw.iam.persistence.model.IamEmailNotification;
@@ -34,19 +31,18 @@ public class PersistentNotificationFactory extends TransientNotificationFactory
   final IamEmailNotificationRepository repo;
 
   @Autowired
-  public PersistentNotificationFactory(Configuration fm, NotificationProperties np,
-                                       IamEmailNotificationRepository repo, AdminNotificationDeliveryStrategy ands,
-                                       GroupManagerNotificationDeliveryStrategy gmds) {
-    super(fm, np, ands, gmds);
+  public PersistentNotificationFactory(NotificationTemplateRenderer templateRenderer,
+      NotificationProperties np, IamEmailNotificationRepository repo,
+      AdminNotificationDeliveryStrategy ands, GroupManagerNotificationDeliveryStrategy gmds) {
+    super(templateRenderer, np, ands, gmds);
     this.repo = repo;
   }
 
   @Override
-  protected IamEmailNotification createMessage(String template, Map<String, Object> model,
-      IamNotificationType messageType, String subject, List<String> receiverAddresses) {
+  protected IamEmailNotification createMessage(NotificationModel model, String subject,
+      List<String> receiverAddresses) {
 
-    IamEmailNotification message =
-        super.createMessage(template, model, messageType, subject, receiverAddresses);
+    IamEmailNotification message = super.createMessage(model, subject, receiverAddresses);
 
     return repo.save(message);
   }
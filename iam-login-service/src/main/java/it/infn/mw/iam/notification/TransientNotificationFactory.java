@@ -15,6 +15,24 @@
  */
 package it.infn.mw.iam.notification;
 
+import static it.infn.mw.iam.notification.NotificationTemplate.ACCOUNT_ACTIVATED;
+import static it.infn.mw.iam.notification.NotificationTemplate.ACCOUNT_RESTORED;
+import static it.infn.mw.iam.notification.NotificationTemplate.ACCOUNT_SUSPENDED;
+import static it.infn.mw.iam.notification.NotificationTemplate.ADMIN_HANDLE_GROUP_REQUEST;
+import static it.infn.mw.iam.notification.NotificationTemplate.ADMIN_HANDLE_REQUEST;
+import static it.infn.mw.iam.notification.NotificationTemplate.AUP_EXPIRATION;
+import static it.infn.mw.iam.notification.NotificationTemplate.AUP_REMINDER;
+import static it.infn.mw.iam.notification.NotificationTemplate.AUP_SIGNATURE_REQUEST;
+import static it.infn.mw.iam.notification.NotificationTemplate.CLIENT_STATUS_CHANGED;
+import static it.infn.mw.iam.notification.NotificationTemplate.CONFIRM_REGISTRATION;
+import static it.infn.mw.iam.notification.NotificationTemplate.GROUP_MEMBERSHIP_APPROVED;
+import static it.infn.mw.iam.notification.NotificationTemplate.GROUP_MEMBERSHIP_REJECTED;
+import static it.infn.mw.iam.notification.NotificationTemplate.MFA_DISABLE;
+import static it.infn.mw.iam.notification.NotificationTemplate.MFA_ENABLE;
+import static it.infn.mw.iam.notification.NotificationTemplate.REQUEST_REJECTED;
+import static it.infn.mw.iam.notification.NotificationTemplate.RESET_PASSWORD;
+import static it.infn.mw.iam.notification.NotificationTemplate.REVOKE_SERVICE_ACCOUNT;
+import static it.infn.mw.iam.notification.NotificationTemplate.SET_SERVICE_ACCOUNT;
 import static java.util.Arrays.asList;
 
 import java.io.IOException;
@@ -22,9 +40,7 @@ import java.time.LocalDate;
 import java.time.ZoneId;
 import java.time.temporal.ChronoUnit;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
@@ -35,16 +51,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.ui.freemarker.FreeMarkerTemplateUtils;
 
 import com.google.common.collect.Lists;
 
-import freemarker.template.Configuration;
-import freemarker.template.Template;
 import freemarker.template.TemplateException;
 import it.infn.mw.iam.api.account.password_reset.PasswordResetController;
 import it.infn.mw.iam.core.IamDeliveryStatus;
-import it.infn.mw.iam.core.IamNotificationType;
+import it.infn.mw.iam.core.NameUtils;
 import it.infn.mw.iam.notification.service.resolver.AdminNotificationDeliveryStrategy;
 import it.infn.mw.iam.notification.service.resolver.GroupManagerNotificationDeliveryStrategy;
 import it.infn.mw.iam.persistence.model.IamAccount;
@@ -53,17 +66,12 @@ import it.infn.mw.iam.persistence.model.IamEmailNotification;
 import it.infn.mw.iam.persistence.model.IamGroupRequest;
 import it.infn.mw.iam.persistence.model.IamNotificationReceiver;
 import it.infn.mw.iam.persistence.model.IamRegistrationRequest;
+import it.infn.mw.iam.persistence.repository.IamAupSignatureRecipientProjection;
 
 public class TransientNotificationFactory implements NotificationFactory {
 
   private static final Logger LOG = LoggerFactory.getLogger(TransientNotificationFactory.class);
-  private static final String RECIPIENT_FIELD = "recipient";
-  private static final String ORGANISATION_NAME = "organisationName";
-  private static final String USERNAME_FIELD = "username";
-  private static final String GROUPNAME_FIELD = "groupName";
-  private static final String MOTIVATION_FIELD = "motivation";
   private static final String AUP_PATH = "%s/iam/aup/sign";
-  private static final String AUP_URL = "aupUrl";
 
   @Value("${iam.baseUrl}")
   private String baseUrl;
@@ -74,17 +82,22 @@ public class TransientNotificationFactory implements NotificationFactory {
   private final NotificationProperties properties;
   private final AdminNotificationDeliveryStrategy adminNotificationDeliveryStrategy;
   private final GroupManagerNotificationDeliveryStrategy groupManagerDeliveryStrategy;
-  private final Configuration freeMarkerConfiguration;
+  private final NotificationTemplateRenderer templateRenderer;
 
   @Autowired
-  public TransientNotificationFactory(Configuration fm, NotificationProperties np,
-      AdminNotificationDeliveryStrategy ands, GroupManagerNotificationDeliveryStrategy gmds) {
-    this.freeMarkerConfiguration = fm;
+  public TransientNotificationFactory(NotificationTemplateRenderer templateRenderer,
+      NotificationProperties np, AdminNotificationDeliveryStrategy ands,
+      GroupManagerNotificationDeliveryStrategy gmds) {
+    this.templateRenderer = templateRenderer;
     this.properties = np;
     this.adminNotificationDeliveryStrategy = ands;
     this.groupManagerDeliveryStrategy = gmds;
   }
 
+  private NotificationModel.Builder model(NotificationTemplate template) {
+    return NotificationModel.forTemplate(template).organisationName(organisationName);
+  }
+
   @Override
   public IamEmailNotification createConfirmationMessage(IamRegistrationRequest request) {
 
@@ -92,13 +105,12 @@ public class TransientNotificationFactory implements NotificationFactory {
     String confirmURL = String.format("%s/registration/verify/%s", baseUrl,
         request.getAccount().getConfirmationKey());
 
-    Map<String, Object> model = new HashMap<>();
-    model.put(RECIPIENT_FIELD, recipient);
-    model.put("confirmURL", confirmURL);
-    model.put(ORGANISATION_NAME, organisationName);
+    NotificationModel model = model(CONFIRM_REGISTRATION).recipient(recipient)
+      .with("confirmURL", confirmURL)
+      .build();
 
-    IamEmailNotification notification = createMessage("confirmRegistration.ftl", model,
-        IamNotificationType.CONFIRMATION, properties.getSubject().get("confirmation"),
+    IamEmailNotification notification = createMessage(model,
+        properties.getSubject().get("confirmation"),
         asList(request.getAccount().getUserInfo().getEmail()));
 
     LOG.debug("Created confirmation message for registration request {}. Confirmation URL: {}",
@@ -114,17 +126,13 @@ public class TransientNotificationFactory implements NotificationFactory {
     String resetPasswordUrl = String.format("%s%s/%s", baseUrl,
         PasswordResetController.BASE_TOKEN_URL, request.getAccount().getResetKey());
 
+    NotificationModel model = model(ACCOUNT_ACTIVATED).recipient(recipient)
+      .with("resetPasswordUrl", resetPasswordUrl)
+      .username(request.getAccount().getUsername())
+      .build();
 
-
-    Map<String, Object> model = new HashMap<>();
-    model.put(RECIPIENT_FIELD, recipient);
-
-    model.put("resetPasswordUrl", resetPasswordUrl);
-    model.put(ORGANISATION_NAME, organisationName);
-    model.put(USERNAME_FIELD, request.getAccount().getUsername());
-
-    IamEmailNotification notification = createMessage("accountActivated.ftl", model,
-        IamNotificationType.ACTIVATED, properties.getSubject().get("activated"),
+    IamEmailNotification notification = createMessage(model,
+        properties.getSubject().get("activated"),
         asList(request.getAccount().getUserInfo().getEmail()));
 
     LOG.debug(
@@ -139,16 +147,10 @@ public class TransientNotificationFactory implements NotificationFactory {
       Optional<String> motivation) {
     String recipient = request.getAccount().getUserInfo().getName();
 
-    Map<String, Object> model = new HashMap<>();
-    model.put(RECIPIENT_FIELD, recipient);
-    model.put(ORGANISATION_NAME, organisationName);
+    NotificationModel.Builder model = model(REQUEST_REJECTED).recipient(recipient);
+    motivation.ifPresent(model::motivation);
 
-    if (motivation.isPresent()) {
-      model.put(MOTIVATION_FIELD, motivation.get());
-    }
-
-    return createMessage("requestRejected.ftl", model, IamNotificationType.REJECTED,
-        properties.getSubject().get("rejected"),
+    return createMessage(model.build(), properties.getSubject().get("rejected"),
         asList(request.getAccount().getUserInfo().getEmail()));
   }
 
@@ -158,16 +160,14 @@ public class TransientNotificationFactory implements NotificationFactory {
     String username = request.getAccount().getUsername();
     String email = request.getAccount().getUserInfo().getEmail();
 
-    Map<String, Object> model = new HashMap<>();
-    model.put("name", name);
-    model.put(USERNAME_FIELD, username);
-    model.put("email", email);
-    model.put("indigoDashboardUrl", String.format("%s/dashboard#!/requests", baseUrl));
-    model.put(ORGANISATION_NAME, organisationName);
-    model.put("notes", request.getNotes());
+    NotificationModel model = model(ADMIN_HANDLE_REQUEST).with("name", name)
+      .username(username)
+      .with("email", email)
+      .dashboardUrl(String.format("%s/dashboard#!/requests", baseUrl))
+      .with("notes", request.getNotes())
+      .build();
 
-    return createMessage("adminHandleRequest.ftl", model, IamNotificationType.CONFIRMATION,
-        properties.getSubject().get("adminHandleRequest"),
+    return createMessage(model, properties.getSubject().get("adminHandleRequest"),
         adminNotificationDeliveryStrategy.resolveAdminEmailAddresses());
   }
 
@@ -178,15 +178,13 @@ public class TransientNotificationFactory implements NotificationFactory {
     String resetPasswordUrl = String.format("%s%s/%s", baseUrl,
         PasswordResetController.BASE_TOKEN_URL, account.getResetKey());
 
-    Map<String, Object> model = new HashMap<>();
-    model.put(RECIPIENT_FIELD, recipient);
-    model.put("resetPasswordUrl", resetPasswordUrl);
-    model.put(ORGANISATION_NAME, organisationName);
-    model.put(USERNAME_FIELD, account.getUsername());
+    NotificationModel model = model(RESET_PASSWORD).recipient(recipient)
+      .with("resetPasswordUrl", resetPasswordUrl)
+      .username(account.getUsername())
+      .build();
 
-    IamEmailNotification notification =
-        createMessage("resetPassword.ftl", model, IamNotificationType.RESETPASSWD,
-            properties.getSubject().get("resetPassword"), asList(account.getUserInfo().getEmail()));
+    IamEmailNotification notification = createMessage(model,
+        properties.getSubject().get("resetPassword"), asList(account.getUserInfo().getEmail()));
 
     LOG.debug("Created reset password message for account {}. Reset password URL: {}",
         account.getUsername(), resetPasswordUrl);
@@ -198,19 +196,18 @@ public class TransientNotificationFactory implements NotificationFactory {
   public IamEmailNotification createAdminHandleGroupRequestMessage(IamGroupRequest groupRequest) {
     String groupName = groupRequest.getGroup().getName();
 
-    Map<String, Object> model = new HashMap<>();
-    model.put("name", groupRequest.getAccount().getUserInfo().getName());
-    model.put(USERNAME_FIELD, groupRequest.getAccount().getUsername());
-    model.put(GROUPNAME_FIELD, groupName);
-    model.put("notes", groupRequest.getNotes());
-    model.put("indigoDashboardUrl", String.format("%s/dashboard#!/requests", baseUrl));
-    model.put(ORGANISATION_NAME, organisationName);
+    NotificationModel model = model(ADMIN_HANDLE_GROUP_REQUEST)
+      .with("name", groupRequest.getAccount().getUserInfo().getName())
+      .username(groupRequest.getAccount().getUsername())
+      .groupName(groupName)
+      .with("notes", groupRequest.getNotes())
+      .dashboardUrl(String.format("%s/dashboard#!/requests", baseUrl))
+      .build();
 
     String subject = String.format("New membership request for group %s", groupName);
 
     LOG.debug("Create group membership admin notification for request {}", groupRequest.getUuid());
-    return createMessage("adminHandleGroupRequest.ftl", model, IamNotificationType.GROUP_MEMBERSHIP,
-        subject,
+    return createMessage(model, subject,
         groupManagerDeliveryStrategy.resolveGroupManagersEmailAddresses(groupRequest.getGroup()));
   }
 
@@ -220,18 +217,16 @@ public class TransientNotificationFactory implements NotificationFactory {
     String groupName = groupRequest.getGroup().getName();
     String status = groupRequest.getStatus().name();
 
-    Map<String, Object> model = new HashMap<>();
-    model.put(RECIPIENT_FIELD, recipient);
-    model.put(GROUPNAME_FIELD, groupName);
-    model.put("status", status);
-    model.put(ORGANISATION_NAME, organisationName);
+    NotificationModel model = model(GROUP_MEMBERSHIP_APPROVED).recipient(recipient)
+      .groupName(groupName)
+      .with("status", status)
+      .build();
 
     String subject =
         String.format("Membership request for group %s has been %s", groupName, status);
 
     IamEmailNotification notification =
-        createMessage("groupMembershipApproved.ftl", model, IamNotificationType.GROUP_MEMBERSHIP,
-            subject, asList(groupRequest.getAccount().getUserInfo().getEmail()));
+        createMessage(model, subject, asList(groupRequest.getAccount().getUserInfo().getEmail()));
 
     LOG.debug("Create group membership approved message for request {}", groupRequest.getUuid());
     return notification;
@@ -243,19 +238,17 @@ public class TransientNotificationFactory implements NotificationFactory {
     String groupName = groupRequest.getGroup().getName();
     String status = groupRequest.getStatus().name();
 
-    Map<String, Object> model = new HashMap<>();
-    model.put(RECIPIENT_FIELD, recipient);
-    model.put(GROUPNAME_FIELD, groupName);
-    model.put("status", status);
-    model.put("motivation", groupRequest.getMotivation());
-    model.put(ORGANISATION_NAME, organisationName);
+    NotificationModel model = model(GROUP_MEMBERSHIP_REJECTED).recipient(recipient)
+      .groupName(groupName)
+      .with("status", status)
+      .motivation(groupRequest.getMotivation())
+      .build();
 
     String subject =
         String.format("Membership request for group %s has been %s", groupName, status);
 
     IamEmailNotification notification =
-        createMessage("groupMembershipRejected.ftl", model, IamNotificationType.GROUP_MEMBERSHIP,
-            subject, asList(groupRequest.getAccount().getUserInfo().getEmail()));
+        createMessage(model, subject, asList(groupRequest.getAccount().getUserInfo().getEmail()));
 
     LOG.debug("Create group membership approved message for request {}", groupRequest.getUuid());
     return notification;
@@ -266,11 +259,10 @@ public class TransientNotificationFactory implements NotificationFactory {
       List<IamAccount> accounts) {
     Set<String> recipients = client.getContacts();
 
-    Map<String, Object> model = new HashMap<>();
-    model.put("clientId", client.getClientId());
-    model.put("clientName", client.getClientName());
-    model.put("isClientActive", client.isActive());
-    model.put(ORGANISATION_NAME, organisationName);
+    NotificationModel model = model(CLIENT_STATUS_CHANGED).with("clientId", client.getClientId())
+      .with("clientName", client.getClientName())
+      .with("isClientActive", client.isActive())
+      .build();
 
     String subject = "Changed client status";
 
@@ -285,8 +277,7 @@ public class TransientNotificationFactory implements NotificationFactory {
       return null;
     }
 
-    IamEmailNotification notification = createMessage("clientStatusChanged.ftl", model,
-        IamNotificationType.CLIENT_STATUS, subject, emails);
+    IamEmailNotification notification = createMessage(model, subject, emails);
 
     LOG.debug("Updated client status. Client id {}, active {}", client.getClientId(),
         client.isActive());
@@ -294,74 +285,72 @@ public class TransientNotificationFactory implements NotificationFactory {
   }
 
   @Override
-  public IamEmailNotification createAupReminderMessage(IamAccount account, IamAup aup) {
-    String recipient = account.getUserInfo().getName();
+  public IamEmailNotification createAupReminderMessage(
+      IamAupSignatureRecipientProjection recipient, IamAup aup) {
     String aupUrl = String.format(AUP_PATH, baseUrl);
 
     LocalDate now = LocalDate.now();
     long signatureValidityInDays = aup.getSignatureValidityInDays();
-    LocalDate signatureTime = account.getAupSignature()
-      .getSignatureTime()
+    LocalDate signatureDate = recipient.getSignatureTime()
       .toInstant()
       .atZone(ZoneId.systemDefault())
       .toLocalDate();
-    LocalDate signatureValidTime = signatureTime.plusDays(signatureValidityInDays);
+    LocalDate signatureValidTime = signatureDate.plusDays(signatureValidityInDays);
     long missingDays = ChronoUnit.DAYS.between(now, signatureValidTime);
 
-    Map<String, Object> model = new HashMap<>();
-    model.put(RECIPIENT_FIELD, recipient);
-    model.put(AUP_URL, aupUrl);
-    model.put(ORGANISATION_NAME, organisationName);
-    model.put("missingDays", missingDays);
+    NotificationModel model = model(AUP_REMINDER).recipient(recipientName(recipient))
+      .aupUrl(aupUrl)
+      .with("missingDays", missingDays)
+      .build();
 
     String subject = "AUP signature reminder";
 
-    IamEmailNotification notification = createMessage("signAupReminder.ftl", model,
-        IamNotificationType.AUP_REMINDER, subject, asList(account.getUserInfo().getEmail()));
+    IamEmailNotification notification =
+        createMessage(model, subject, asList(recipient.getEmail()));
 
     LOG.debug("Created reminder message for signing the account {} AUP. Signing URL: {}",
-        account.getUuid(), aupUrl);
+        recipient.getAccountUuid(), aupUrl);
 
     return notification;
   }
 
   @Override
-  public IamEmailNotification createAupSignatureExpMessage(IamAccount account) {
-    String recipient = account.getUserInfo().getName();
+  public IamEmailNotification createAupSignatureExpMessage(
+      IamAupSignatureRecipientProjection recipient) {
     String aupUrl = String.format(AUP_PATH, baseUrl);
 
-    Map<String, Object> model = new HashMap<>();
-    model.put(RECIPIENT_FIELD, recipient);
-    model.put(AUP_URL, aupUrl);
-    model.put(ORGANISATION_NAME, organisationName);
+    NotificationModel model =
+        model(AUP_EXPIRATION).recipient(recipientName(recipient)).aupUrl(aupUrl).build();
 
     String subject = "AUP signature expiration";
 
-    IamEmailNotification notification = createMessage("aupExpirationMessage.ftl", model,
-        IamNotificationType.AUP_EXPIRATION, subject, asList(account.getUserInfo().getEmail()));
+    IamEmailNotification notification =
+        createMessage(model, subject, asList(recipient.getEmail()));
 
     LOG.debug("Created AUP expiration message for the account {}. AUP signing URL: {}",
-        account.getUuid(), aupUrl);
+        recipient.getAccountUuid(), aupUrl);
 
     return notification;
 
   }
 
+  private static String recipientName(IamAupSignatureRecipientProjection recipient) {
+    return NameUtils.getFormatted(recipient.getGivenName(), recipient.getMiddleName(),
+        recipient.getFamilyName());
+  }
+
   @Override
   public IamEmailNotification createAupSignatureRequestMessage(IamAccount account) {
     String recipient = account.getUserInfo().getName();
     String aupUrl = String.format(AUP_PATH, baseUrl);
 
-    Map<String, Object> model = new HashMap<>();
-    model.put(RECIPIENT_FIELD, recipient);
-    model.put(AUP_URL, aupUrl);
-    model.put(ORGANISATION_NAME, organisationName);
+    NotificationModel model =
+        model(AUP_SIGNATURE_REQUEST).recipient(recipient).aupUrl(aupUrl).build();
 
     String subject = "AUP signature request";
 
     IamEmailNotification notification =
-        createMessage("aupSignatureRequest.ftl", model, IamNotificationType.AUP_SIGNATURE_REQUEST,
-            subject, asList(account.getUserInfo().getEmail()));
+        createMessage(model, subject, asList(account.getUserInfo().getEmail()));
 
     LOG.debug("Created AUP signature request message for the account {}. AUP signing URL: {}",
         account.getUuid(), aupUrl);
@@ -373,14 +362,12 @@ public class TransientNotificationFactory implements NotificationFactory {
   public IamEmailNotification createAccountSuspendedMessage(IamAccount account) {
     String recipient = account.getUserInfo().getName();
 
-    Map<String, Object> model = new HashMap<>();
-    model.put(RECIPIENT_FIELD, recipient);
-    model.put(ORGANISATION_NAME, organisationName);
+    NotificationModel model = model(ACCOUNT_SUSPENDED).recipient(recipient).build();
 
     String subject = "Account suspended";
 
-    IamEmailNotification notification = createMessage("accountSuspended.ftl", model,
-        IamNotificationType.ACCOUNT_SUSPENDED, subject, asList(account.getUserInfo().getEmail()));
+    IamEmailNotification notification =
+        createMessage(model, subject, asList(account.getUserInfo().getEmail()));
 
     LOG.debug("Created suspension message for the account {}", account.getUuid());
 
@@ -391,14 +378,12 @@ public class TransientNotificationFactory implements NotificationFactory {
   public IamEmailNotification createAccountRestoredMessage(IamAccount account) {
     String recipient = account.getUserInfo().getName();
 
-    Map<String, Object> model = new HashMap<>();
-    model.put(RECIPIENT_FIELD, recipient);
-    model.put(ORGANISATION_NAME, organisationName);
+    NotificationModel model = model(ACCOUNT_RESTORED).recipient(recipient).build();
 
     String subject = "Account restored";
 
-    IamEmailNotification notification = createMessage("accountRestored.ftl", model,
-        IamNotificationType.ACCOUNT_RESTORED, subject, asList(account.getUserInfo().getEmail()));
+    IamEmailNotification notification =
+        createMessage(model, subject, asList(account.getUserInfo().getEmail()));
 
     LOG.debug("Created restoration message for the account {}", account.getUuid());
 
@@ -410,14 +395,12 @@ public class TransientNotificationFactory implements NotificationFactory {
   public IamEmailNotification createSetAsServiceAccountMessage(IamAccount account) {
     String recipient = account.getUserInfo().getName();
 
-    Map<String, Object> model = new HashMap<>();
-    model.put(RECIPIENT_FIELD, recipient);
-    model.put(ORGANISATION_NAME, organisationName);
+    NotificationModel model = model(SET_SERVICE_ACCOUNT).recipient(recipient).build();
 
     String subject = "Account set as service account";
 
-    IamEmailNotification notification = createMessage("accountSetAsServiceAccount.ftl", model,
-        IamNotificationType.SET_SERVICE_ACCOUNT, subject, asList(account.getUserInfo().getEmail()));
+    IamEmailNotification notification =
+        createMessage(model, subject, asList(account.getUserInfo().getEmail()));
 
     LOG.debug("Created set as service account message for the account {}", account.getUuid());
 
@@ -429,14 +412,12 @@ public class TransientNotificationFactory implements NotificationFactory {
   public IamEmailNotification createRevokeServiceAccountMessage(IamAccount account) {
     String recipient = account.getUserInfo().getName();
 
-    Map<String, Object> model = new HashMap<>();
-    model.put(RECIPIENT_FIELD, recipient);
-    model.put(ORGANISATION_NAME, organisationName);
+    NotificationModel model = model(REVOKE_SERVICE_ACCOUNT).recipient(recipient).build();
 
     String subject = "Account's service account status revoked";
 
-    IamEmailNotification notification = createMessage("accountRevokeServiceAccount.ftl", model,
-        IamNotificationType.REVOKE_SERVICE_ACCOUNT, subject, asList(account.getUserInfo().getEmail()));
+    IamEmailNotification notification =
+        createMessage(model, subject, asList(account.getUserInfo().getEmail()));
 
     LOG.debug("Created service account revoke message for the account {}", account.getUuid());
 
@@ -448,15 +429,12 @@ public class TransientNotificationFactory implements NotificationFactory {
   public IamEmailNotification createMfaEnableMessage(IamAccount account) {
     String recipient = account.getUserInfo().getName();
 
-    Map<String, Object> model = new HashMap<>();
-    model.put(RECIPIENT_FIELD, recipient);
-    model.put(ORGANISATION_NAME, organisationName);
+    NotificationModel model = model(MFA_ENABLE).recipient(recipient).build();
 
     String subject = "Multi-factor authentication (MFA) enabled";
 
     IamEmailNotification notification =
-        createMessage("mfaEnable.ftl", model, IamNotificationType.MFA_ENABLE,
-            subject, asList(account.getUserInfo().getEmail()));
+        createMessage(model, subject, asList(account.getUserInfo().getEmail()));
 
     LOG.debug("Created Multi-factor authentication (MFA) enabled message for the account {}", account.getUuid());
 
@@ -467,33 +445,29 @@ public class TransientNotificationFactory implements NotificationFactory {
   public IamEmailNotification createMfaDisableMessage(IamAccount account) {
     String recipient = account.getUserInfo().getName();
 
-    Map<String, Object> model = new HashMap<>();
-    model.put(RECIPIENT_FIELD, recipient);
-    model.put(ORGANISATION_NAME, organisationName);
+    NotificationModel model = model(MFA_DISABLE).recipient(recipient).build();
 
     String subject = "Multi-factor authentication (MFA) disabled";
 
     IamEmailNotification notification =
-        createMessage("mfaDisable.ftl", model, IamNotificationType.MFA_DISABLE,
-            subject, asList(account.getUserInfo().getEmail()));
+        createMessage(model, subject, asList(account.getUserInfo().getEmail()));
 
     LOG.debug("Created Multi-factor authentication (MFA) disabled message for the account {}", account.getUuid());
 
     return notification;
   }
 
-  protected IamEmailNotification createMessage(String templateName, Map<String, Object> model,
-      IamNotificationType messageType, String subject, List<String> receiverAddress) {
+  protected IamEmailNotification createMessage(NotificationModel model, String subject,
+      List<String> receiverAddress) {
 
     try {
       String formattedSubject = String.format("%s %s", properties.getSubjectPrefix(), subject);
-      Template template = freeMarkerConfiguration.getTemplate(templateName);
-      String body = FreeMarkerTemplateUtils.processTemplateIntoString(template, model);
+      String body = templateRenderer.render(model);
 
       IamEmailNotification message = new IamEmailNotification();
 
       message.setUuid(UUID.randomUUID().toString());
-      message.setType(messageType);
+      message.setType(model.getTemplate().getNotificationType());
       message.setSubject(formattedSubject);
       message.setBody(body);
       message.setCreationTime(new Date());
@@ -15,49 +15,115 @@
  */
 package it.infn.mw.iam.notification.service;
 
+import static java.util.Collections.emptyList;
+import static java.util.stream.Collectors.toList;
+
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
 import org.springframework.mail.SimpleMailMessage;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import it.infn.mw.iam.core.IamDeliveryStatus;
 import it.infn.mw.iam.core.time.TimeProvider;
 import it.infn.mw.iam.notification.NotificationDelivery;
+import it.infn.mw.iam.notification.NotificationDeliveryProperties;
 import it.infn.mw.iam.notification.NotificationProperties;
 import it.infn.mw.iam.persistence.model.IamEmailNotification;
 import it.infn.mw.iam.persistence.model.IamNotificationReceiver;
 import it.infn.mw.iam.persistence.repository.IamEmailNotificationRepository;
 
+/**
+ * Delivers pending notifications over SMTP.
+ * 
+ * Pending notifications are claimed in batches of at most {@code notification.delivery.batch-size}
+ * notifications, by moving them to the {@link IamDeliveryStatus#IN_PROGRESS} status in a short
+ * transaction. A claimed batch is then split among {@code notification.delivery.concurrency}
+ * workers, each sending its share of messages over a single SMTP connection, and failed messages
+ * are retried with an exponential backoff. The final delivery status of the batch is stored with
+ * one update per status, outside of the transaction used to claim it.
+ */
 @Service
 @ConditionalOnProperty(name = "notification.disable", havingValue = "false")
-public class JavaMailNotificationDelivery implements NotificationDelivery {
+public class JavaMailNotificationDelivery implements NotificationDelivery, DisposableBean {
 
   public static final Logger LOG = LoggerFactory.getLogger(JavaMailNotificationDelivery.class);
 
+  public static final String DELIVERED_METRIC = "iam.notification.delivered";
+  public static final String DELIVERY_ERRORS_METRIC = "iam.notification.delivery-errors";
+  public static final String DELIVERY_RETRIES_METRIC = "iam.notification.delivery-retries";
+  public static final String SMTP_SEND_METRIC = "iam.notification.smtp-send";
+
   final JavaMailSender mailSender;
 
   final IamEmailNotificationRepository repo;
   final NotificationProperties properties;
+  final NotificationDeliveryProperties deliveryProperties;
   final TimeProvider timeProvider;
+  final TransactionTemplate txTemplate;
+
+  private final ExecutorService deliveryExecutor;
+  private final Counter deliveredCounter;
+  private final Counter deliveryErrorsCounter;
+  private final Counter deliveryRetriesCounter;
+  private final Timer smtpSendTimer;
+
+  private static class PendingDelivery {
+
+    final IamEmailNotification notification;
+    final SimpleMailMessage message;
+    boolean delivered;
+    MailException error;
+
+    PendingDelivery(IamEmailNotification notification, SimpleMailMessage message) {
+      this.notification = notification;
+      this.message = message;
+    }
+  }
 
   @Autowired
   public JavaMailNotificationDelivery(JavaMailSender mailSender,
       IamEmailNotificationRepository repo, NotificationProperties properties,
-      TimeProvider timeProvider) {
+      NotificationDeliveryProperties deliveryProperties, TimeProvider timeProvider,
+      PlatformTransactionManager transactionManager, MeterRegistry meterRegistry) {
     this.mailSender = mailSender;
     this.repo = repo;
     this.properties = properties;
+    this.deliveryProperties = deliveryProperties;
     this.timeProvider = timeProvider;
+    this.txTemplate = new TransactionTemplate(transactionManager);
+    this.deliveryExecutor = Executors.newFixedThreadPool(deliveryProperties.getConcurrency(),
+        new ThreadFactoryBuilder().setNameFormat("notification-delivery-%d")
+          .setDaemon(true)
+          .build());
+    this.deliveredCounter = meterRegistry.counter(DELIVERED_METRIC);
+    this.deliveryErrorsCounter = meterRegistry.counter(DELIVERY_ERRORS_METRIC);
+    this.deliveryRetriesCounter = meterRegistry.counter(DELIVERY_RETRIES_METRIC);
+    this.smtpSendTimer = meterRegistry.timer(SMTP_SEND_METRIC);
   }
 
   protected SimpleMailMessage messageFromNotification(IamEmailNotification notification) {
@@ -77,41 +143,208 @@ public class JavaMailNotificationDelivery implements NotificationDelivery {
     return message;
   }
 
+  private Date now() {
+    return new Date(timeProvider.currentTimeMillis());
+  }
 
-  @Override
-  @Transactional
-  public void sendPendingNotifications() {
-    List<IamEmailNotification> pendingMessages =
-        repo.findByDeliveryStatus(IamDeliveryStatus.PENDING);
+  private void releaseStaleClaims() {
+    Date threshold = new Date(timeProvider.currentTimeMillis()
+        - TimeUnit.SECONDS.toMillis(deliveryProperties.getClaimTimeoutSecs()));
 
-    if (pendingMessages.isEmpty()) {
-      LOG.debug("No pending messages found in repository");
-      return;
+    txTemplate.executeWithoutResult(status -> {
+      int released = repo.updateDeliveryStatusWithUpdateTime(IamDeliveryStatus.IN_PROGRESS,
+          IamDeliveryStatus.PENDING, threshold);
+
+      if (released > 0) {
+        LOG.warn("{} notifications claimed for delivery before {} are pending again", released,
+            threshold);
+      }
+    });
+  }
+
+  private List<PendingDelivery> claimPendingNotifications() {
+    return txTemplate.execute(status -> {
+      List<IamEmailNotification> pendingMessages =
+          repo.findByDeliveryStatusOrderByCreationTimeAsc(IamDeliveryStatus.PENDING,
+              PageRequest.of(0, deliveryProperties.getBatchSize()));
+
+      if (pendingMessages.isEmpty()) {
+        return emptyList();
+      }
+
+      repo.updateDeliveryStatus(pendingMessages.stream().map(IamEmailNotification::getId)
+        .collect(toList()), IamDeliveryStatus.IN_PROGRESS, now());
+
+      return pendingMessages.stream()
+        .map(n -> new PendingDelivery(n, messageFromNotification(n)))
+        .collect(toList());
+    });
+  }
+
+  private List<PendingDelivery> send(List<PendingDelivery> deliveries) {
+
+    long startTime = System.nanoTime();
+
+    try {
+      if (deliveries.size() == 1) {
+        mailSender.send(deliveries.get(0).message);
+      } else {
+        mailSender.send(deliveries.stream().map(d -> d.message).toArray(SimpleMailMessage[]::new));
+      }
+      deliveries.forEach(d -> d.delivered = true);
+      return emptyList();
+
+    } catch (MailSendException e) {
+      Map<Object, Exception> failedMessages = e.getFailedMessages();
+      List<PendingDelivery> failed = new ArrayList<>();
+
+      for (PendingDelivery d : deliveries) {
+        if (failedMessages.isEmpty()
+            || failedMessages.keySet().stream().anyMatch(m -> m == d.message)) {
+          d.error = e;
+          failed.add(d);
+        } else {
+          d.delivered = true;
+        }
+      }
+      return failed;
+
+    } catch (MailException e) {
+      deliveries.forEach(d -> d.error = e);
+      return deliveries;
+
+    } finally {
+      smtpSendTimer.record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  private void sendWithRetry(List<PendingDelivery> deliveries) {
+
+    List<PendingDelivery> toBeSent = deliveries;
+
+    for (int attempt = 1;; attempt++) {
+      List<PendingDelivery> retriable = send(toBeSent).stream()
+        .filter(d -> d.error instanceof MailSendException)
+        .collect(toList());
+
+      if (retriable.isEmpty() || attempt >= deliveryProperties.getMaxAttempts()) {
+        return;
+      }
+
+      try {
+        Thread.sleep(deliveryProperties.getRetryBackoffMillis() << (attempt - 1));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+
+      deliveryRetriesCounter.increment(retriable.size());
+      toBeSent = retriable;
     }
+  }
+
+  private boolean deliver(List<PendingDelivery> batch) {
 
-    for (IamEmailNotification e : pendingMessages) {
-      SimpleMailMessage message = messageFromNotification(e);
+    int workers = Math.min(deliveryProperties.getConcurrency(), batch.size());
 
+    if (workers <= 1) {
+      sendWithRetry(batch);
+      return true;
+    }
+
+    List<Future<?>> results = new ArrayList<>();
+
+    for (List<PendingDelivery> share : Lists.partition(batch,
+        (batch.size() + workers - 1) / workers)) {
+      results.add(deliveryExecutor.submit(() -> sendWithRetry(share)));
+    }
+
+    for (Future<?> r : results) {
       try {
-        mailSender.send(message);
+        r.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      } catch (ExecutionException e) {
+        LOG.error("Email message delivery error: {}", e.getCause().getMessage(), e.getCause());
+      }
+    }
+
+    return true;
+  }
+
+  private void updateDeliveryStatus(List<PendingDelivery> batch) {
+
+    Date lastUpdate = now();
+    List<Long> delivered = new ArrayList<>();
+    List<Long> failed = new ArrayList<>();
+
+    for (PendingDelivery d : batch) {
+      IamEmailNotification e = d.notification;
+
+      if (d.delivered) {
         e.setDeliveryStatus(IamDeliveryStatus.DELIVERED);
+        delivered.add(e.getId());
+        deliveredCounter.increment();
 
         LOG.info(
             "Email message delivered. "
                 + "message_id:{} message_type:{} rcpt_to:{} subject:{}",
-            e.getUuid(), e.getType(), message.getTo(), message.getSubject());
-
+            e.getUuid(), e.getType(), d.message.getTo(), d.message.getSubject());
 
-      } catch (MailException ex) {
+      } else {
         e.setDeliveryStatus(IamDeliveryStatus.DELIVERY_ERROR);
+        failed.add(e.getId());
+        deliveryErrorsCounter.increment();
+
         LOG.error("Email message delivery error: message_id:{} reason:{}", e.getUuid(),
-            ex.getMessage(), ex);
+            d.error == null ? "message not sent" : d.error.getMessage(), d.error);
       }
 
-      e.setLastUpdate(new Date(timeProvider.currentTimeMillis()));
-      repo.save(e);
+      e.setLastUpdate(lastUpdate);
     }
 
+    txTemplate.executeWithoutResult(status -> {
+      if (!delivered.isEmpty()) {
+        repo.updateDeliveryStatus(delivered, IamDeliveryStatus.DELIVERED, lastUpdate);
+      }
+      if (!failed.isEmpty()) {
+        repo.updateDeliveryStatus(failed, IamDeliveryStatus.DELIVERY_ERROR, lastUpdate);
+      }
+    });
+  }
+
+  @Override
+  public void sendPendingNotifications() {
+
+    releaseStaleClaims();
+
+    List<PendingDelivery> batch = claimPendingNotifications();
+
+    if (batch.isEmpty()) {
+      LOG.debug("No pending messages found in repository");
+      return;
+    }
+
+    while (!batch.isEmpty()) {
+      if (!deliver(batch)) {
+        LOG.warn("Interrupted while delivering {} email messages, they will be pending again in {} "
+            + "seconds", batch.size(), deliveryProperties.getClaimTimeoutSecs());
+        return;
+      }
+
+      updateDeliveryStatus(batch);
+
+      if (batch.size() < deliveryProperties.getBatchSize()) {
+        break;
+      }
+
+      batch = claimPendingNotifications();
+    }
   }
 
+  @Override
+  public void destroy() {
+    deliveryExecutor.shutdownNow();
+  }
 }
@@ -23,6 +23,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import it.infn.mw.iam.core.IamDeliveryStatus;
 import it.infn.mw.iam.core.time.TimeProvider;
@@ -64,6 +65,7 @@ public class LoggingNotificationDelivery implements NotificationDelivery {
   }
 
   @Override
+  @Transactional
   public void sendPendingNotifications() {
     repo.findByDeliveryStatus(IamDeliveryStatus.PENDING)
       .forEach(this::logEmailNotificationAndSetDelivered);
@@ -21,6 +21,7 @@ import org.mitre.openid.connect.model.UserInfo;
 import org.mitre.openid.connect.repository.UserInfoRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import it.infn.mw.iam.core.oauth.issuance.TokenIssuanceContext;
 import it.infn.mw.iam.persistence.model.IamAccount;
 
 
@@ -32,7 +33,9 @@ public class IamUserinfoRepository implements UserInfoRepository {
   @Override
   public UserInfo getByUsername(String username) {
 
-    Optional<IamAccount> account = repo.findByUsername(username);
+    Optional<IamAccount> account = TokenIssuanceContext.current()
+      .map(c -> c.getAccountByUsername(username, repo::findByUsernameWithGroups))
+      .orElseGet(() -> repo.findByUsername(username));
 
     if (account.isPresent()) {
       return UserInfoAdapter.forIamUserInfo(account.get().getUserInfo());
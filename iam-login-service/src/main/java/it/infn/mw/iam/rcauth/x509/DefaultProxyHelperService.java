@@ -15,12 +15,14 @@
  */
 package it.infn.mw.iam.rcauth.x509;
 
+import static java.util.Objects.isNull;
 import static org.italiangrid.voms.util.CredentialsUtils.saveProxyCredentials;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.security.InvalidKeyException;
+import java.security.KeyPair;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
@@ -35,6 +37,7 @@ import java.time.Instant;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import eu.emi.security.authn.x509.helpers.proxy.ProxyCertificateImpl;
 import eu.emi.security.authn.x509.impl.PEMCredential;
 import eu.emi.security.authn.x509.proxy.ProxyCertificate;
 import eu.emi.security.authn.x509.proxy.ProxyCertificateOptions;
@@ -46,28 +49,50 @@ public class DefaultProxyHelperService implements ProxyHelperService {
   public static final int DEFAULT_KEY_SIZE = 2048;
 
   final Clock clock;
+  final ProxyKeyPairPool keyPairPool;
 
-  @Autowired
   public DefaultProxyHelperService(Clock clock) {
+    this(clock, null);
+  }
+
+  @Autowired
+  public DefaultProxyHelperService(Clock clock, ProxyKeyPairPool keyPairPool) {
     this.clock = clock;
+    this.keyPairPool = keyPairPool;
+  }
+
+  /**
+   * Signs the proxy with the issuer key; the proxy key pair is taken from the key pair pool when
+   * available, and generated by the proxy generator otherwise
+   */
+  private ProxyCertificate generate(ProxyCertificateOptions options, PrivateKey issuerKey) {
+
+    try {
+      if (isNull(keyPairPool)) {
+        options.setKeyLength(DEFAULT_KEY_SIZE);
+        return ProxyGenerator.generate(options, issuerKey);
+      }
+
+      KeyPair keyPair = keyPairPool.take();
+      options.setPublicKey(keyPair.getPublic());
+
+      ProxyCertificate proxy = ProxyGenerator.generate(options, issuerKey);
+      return new ProxyCertificateImpl(proxy.getCertificateChain(), keyPair.getPrivate());
+    } catch (InvalidKeyException | CertificateParsingException | SignatureException
+        | NoSuchAlgorithmException | KeyStoreException | IOException e) {
+      throw new ProxyGenerationError(e);
+    }
   }
 
   @Override
   public ProxyCertificate generateProxy(X509Certificate cert, PrivateKey key) {
 
     ProxyCertificateOptions options = new ProxyCertificateOptions(new X509Certificate[] {cert});
-    options.setKeyLength(DEFAULT_KEY_SIZE);
     options.setType(ProxyType.RFC3820);
 
     options.setValidityBounds(Date.from(clock.instant()), cert.getNotAfter());
 
-    try {
-      return ProxyGenerator.generate(options, key);
-    } catch (InvalidKeyException | CertificateParsingException | SignatureException
-        | NoSuchAlgorithmException | IOException e) {
-      throw new ProxyGenerationError(e);
-    }
-
+    return generate(options, key);
   }
 
   @Override
@@ -88,7 +113,6 @@ public class DefaultProxyHelperService implements ProxyHelperService {
     ProxyCertificateOptions options =
         new ProxyCertificateOptions(proxyCredential.getCertificateChain());
 
-    options.setKeyLength(DEFAULT_KEY_SIZE);
     options.setType(ProxyType.RFC3820);
 
     final Instant now = clock.instant();
@@ -96,12 +120,7 @@ public class DefaultProxyHelperService implements ProxyHelperService {
 
     options.setValidityBounds(Date.from(now), Date.from(eol));
 
-    try {
-      return ProxyGenerator.generate(options, proxyCredential.getKey());
-    } catch (InvalidKeyException | CertificateParsingException | SignatureException
-        | NoSuchAlgorithmException | IOException e) {
-      throw new ProxyGenerationError(e);
-    }
+    return generate(options, proxyCredential.getKey());
   }
 
   @Override
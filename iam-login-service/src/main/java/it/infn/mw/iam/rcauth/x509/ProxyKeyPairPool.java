@@ -0,0 +1,167 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.rcauth.x509;
+
+import static java.util.Objects.isNull;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.infn.mw.iam.api.proxy.ProxyCertificateProperties;
+import it.infn.mw.iam.api.proxy.ProxyCertificateProperties.KeyPairPoolProperties;
+
+/**
+ * A pool of key pairs generated ahead of time for proxy certificates, so that proxy requests do
+ * not pay for key generation.
+ * 
+ * The pool holds at most {@code proxycert.key-pair-pool.size} key pairs and is refilled in the
+ * background by {@code proxycert.key-pair-pool.refill-threads} threads whenever a key pair is
+ * taken. When the pool is empty, the key pair is generated by the requesting thread and a miss is
+ * recorded. Each key pair is handed out once.
+ */
+@Component
+public class ProxyKeyPairPool implements DisposableBean {
+
+  public static final Logger LOG = LoggerFactory.getLogger(ProxyKeyPairPool.class);
+
+  public static final String DEPTH_METRIC = "iam.proxycert.key-pair-pool.depth";
+  public static final String HITS_METRIC = "iam.proxycert.key-pair-pool.hits";
+  public static final String MISSES_METRIC = "iam.proxycert.key-pair-pool.misses";
+
+  private final String algorithm;
+  private final int keySize;
+  private final int size;
+
+  private final BlockingQueue<KeyPair> keyPairs;
+  private final AtomicInteger pendingRefills = new AtomicInteger();
+  private final ExecutorService refillExecutor;
+  private final Counter hits;
+  private final Counter misses;
+
+  public ProxyKeyPairPool(ProxyCertificateProperties properties, MeterRegistry meterRegistry) {
+    KeyPairPoolProperties poolProperties = properties.getKeyPairPool();
+
+    this.algorithm = poolProperties.getAlgorithm();
+    this.keySize = properties.getKeySize();
+    this.size = Math.max(0, poolProperties.getSize());
+    this.keyPairs = new LinkedBlockingQueue<>(Math.max(1, size));
+    this.refillExecutor = Executors.newFixedThreadPool(
+        Math.max(1, poolProperties.getRefillThreads()),
+        new ThreadFactoryBuilder().setNameFormat("proxy-key-pair-pool-%d").setDaemon(true).build());
+
+    this.hits = meterRegistry.counter(HITS_METRIC);
+    this.misses = meterRegistry.counter(MISSES_METRIC);
+    meterRegistry.gauge(DEPTH_METRIC, keyPairs, BlockingQueue::size);
+  }
+
+  public KeyPair generateKeyPair() {
+    try {
+      KeyPairGenerator generator = KeyPairGenerator.getInstance(algorithm);
+      generator.initialize(keySize);
+      return generator.generateKeyPair();
+    } catch (NoSuchAlgorithmException e) {
+      throw new ProxyGenerationError(e);
+    }
+  }
+
+  /**
+   * Returns a key pair from the pool, or a freshly generated one if the pool is empty, and
+   * schedules the refill of the pool
+   */
+  public KeyPair take() {
+
+    KeyPair keyPair = keyPairs.poll();
+    refill();
+
+    if (isNull(keyPair)) {
+      misses.increment();
+      return generateKeyPair();
+    }
+
+    hits.increment();
+    return keyPair;
+  }
+
+  /**
+   * Schedules the generation of as many key pairs as needed to fill the pool
+   */
+  public void refill() {
+
+    while (true) {
+      int pending = pendingRefills.get();
+
+      if (keyPairs.size() + pending >= size) {
+        return;
+      }
+
+      if (pendingRefills.compareAndSet(pending, pending + 1)) {
+        try {
+          refillExecutor.execute(this::addKeyPair);
+        } catch (RejectedExecutionException e) {
+          pendingRefills.decrementAndGet();
+          return;
+        }
+      }
+    }
+  }
+
+  private void addKeyPair() {
+    try {
+      keyPairs.offer(generateKeyPair());
+    } catch (RuntimeException e) {
+      LOG.warn("Error generating {} key pair for the proxy key pair pool: {}", algorithm,
+          e.getMessage());
+    } finally {
+      pendingRefills.decrementAndGet();
+    }
+  }
+
+  public int getDepth() {
+    return keyPairs.size();
+  }
+
+  public double getMisses() {
+    return misses.count();
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void fill() {
+    refill();
+  }
+
+  @Override
+  public void destroy() {
+    refillExecutor.shutdownNow();
+  }
+}
@@ -17,13 +17,16 @@ package it.infn.mw.iam.test.api.account.group;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.springframework.http.MediaType.APPLICATION_JSON;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import java.util.List;
 import java.util.UUID;
 import java.util.function.Supplier;
 
@@ -36,6 +39,10 @@ import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import it.infn.mw.iam.api.account.group.GroupMembersDTO;
+import it.infn.mw.iam.core.group.GroupClosureService;
 import it.infn.mw.iam.core.group.IamGroupService;
 import it.infn.mw.iam.core.user.IamAccountService;
 import it.infn.mw.iam.persistence.model.IamAccount;
@@ -58,6 +65,7 @@ public class GroupMembersIntegrationTests {
 
   private static final String ADMIN_USER = "admin";
   private static final String TEST_USER = "test";
+  private static final String TEST_100_USER = "test_100";
   private static final String TEST_001_GROUP = "Test-001";
   private static final String TEST_001_GROUP_ID = "c617d586-54e6-411d-8e38-649677980001";
 
@@ -69,6 +77,9 @@ public class GroupMembersIntegrationTests {
   @Autowired
   private IamGroupService groupService;
 
+  @Autowired
+  private GroupClosureService closureService;
+
   @Autowired
   private IamAccountRepository accountRepo;
 
@@ -78,6 +89,9 @@ public class GroupMembersIntegrationTests {
   @Autowired
   private MockMvc mvc;
 
+  @Autowired
+  private ObjectMapper mapper;
+
   @Autowired
   private MockOAuth2Filter mockOAuth2Filter;
 
@@ -99,6 +113,22 @@ public class GroupMembersIntegrationTests {
     accountService.addToGroup(account, group);
   }
 
+  private IamGroup createGroup(String name, IamGroup parent) {
+    IamGroup group = new IamGroup();
+    group.setName(name);
+    group.setParentGroup(parent);
+    return groupService.createGroup(group);
+  }
+
+  private boolean isMember(IamAccount account, IamGroup group) {
+    return groupRepo.findGroupByMemberAccountUuidAndGroupUuid(account.getUuid(), group.getUuid())
+      .isPresent();
+  }
+
+  private String groupMembers(String... accountUuids) throws Exception {
+    return mapper.writeValueAsString(new GroupMembersDTO(List.of(accountUuids)));
+  }
+
   @Test
   public void addGroupMemberRequiresAuthenticatedUser() throws Exception {
     IamAccount account =
@@ -525,5 +555,133 @@ public class GroupMembersIntegrationTests {
         is(true));
   }
 
+  @Test
+  @WithMockUser(username = TEST_USER, roles = "USER")
+  public void bulkGroupMembershipChangesRequirePrivileges() throws Exception {
+    IamAccount account =
+        accountRepo.findByUsername(TEST_USER).orElseThrow(assertionError(EXPECTED_USER_NOT_FOUND));
+
+    mvc
+      .perform(post("/iam/group/{group}/members", TEST_001_GROUP_ID).contentType(APPLICATION_JSON)
+        .content(groupMembers(account.getUuid())))
+      .andExpect(status().isForbidden());
+
+    mvc
+      .perform(delete("/iam/group/{group}/members", TEST_001_GROUP_ID)
+        .contentType(APPLICATION_JSON)
+        .content(groupMembers(account.getUuid())))
+      .andExpect(status().isForbidden());
+  }
+
+  @Test
+  @WithMockUser(username = ADMIN_USER, roles = {"USER", "ADMIN"})
+  public void bulkGroupMembershipChangesRejectInvalidRequests() throws Exception {
+    IamAccount account =
+        accountRepo.findByUsername(TEST_USER).orElseThrow(assertionError(EXPECTED_USER_NOT_FOUND));
 
+    IamGroup group =
+        groupRepo.findByName(TEST_001_GROUP).orElseThrow(assertionError(EXPECTED_GROUP_NOT_FOUND));
+
+    String randomUuid = UUID.randomUUID().toString();
+
+    mvc
+      .perform(post("/iam/group/{group}/members", group.getUuid()).contentType(APPLICATION_JSON)
+        .content(groupMembers()))
+      .andExpect(status().isBadRequest())
+      .andExpect(jsonPath("$.error", containsString("No accounts given")));
+
+    mvc
+      .perform(post("/iam/group/{group}/members", group.getUuid()).contentType(APPLICATION_JSON)
+        .content(groupMembers(account.getUuid(), randomUuid)))
+      .andExpect(status().isBadRequest())
+      .andExpect(jsonPath("$.error", containsString("Account not found")));
+
+    mvc
+      .perform(post("/iam/group/{group}/members", randomUuid).contentType(APPLICATION_JSON)
+        .content(groupMembers(account.getUuid())))
+      .andExpect(status().isBadRequest())
+      .andExpect(jsonPath("$.error", containsString("Group not found")));
+
+    assertThat(isMember(account, group), is(false));
+  }
+
+  @Test
+  @WithMockUser(username = ADMIN_USER, roles = {"USER", "ADMIN"})
+  public void bulkGroupMembershipChangesFollowGroupHierarchy() throws Exception {
+
+    IamGroup rootGroup = createGroup("root", null);
+    IamGroup subgroup = createGroup("root/subgroup", rootGroup);
+    IamGroup subsubgroup = createGroup("root/subgroup/subsubgroup", subgroup);
+    IamGroup sibling = createGroup("root/sibling", rootGroup);
+
+    IamAccount test =
+        accountRepo.findByUsername(TEST_USER).orElseThrow(assertionError(EXPECTED_USER_NOT_FOUND));
+
+    IamAccount test100 = accountRepo.findByUsername(TEST_100_USER)
+      .orElseThrow(assertionError(EXPECTED_USER_NOT_FOUND));
+
+    addAccountToGroup(test, sibling);
+
+    mvc
+      .perform(post("/iam/group/{group}/members", subsubgroup.getUuid())
+        .contentType(APPLICATION_JSON)
+        .content(groupMembers(test.getUuid(), test100.getUuid(), test.getUuid())))
+      .andExpect(status().isCreated());
+
+    for (IamAccount a : List.of(test, test100)) {
+      assertThat(isMember(a, subsubgroup), is(true));
+      assertThat(isMember(a, subgroup), is(true));
+      assertThat(isMember(a, rootGroup), is(true));
+    }
+
+    assertThat(isMember(test, sibling), is(true));
+    assertThat(isMember(test100, sibling), is(false));
+
+    // Adding the same members again is a no-op
+    mvc
+      .perform(post("/iam/group/{group}/members", subsubgroup.getUuid())
+        .contentType(APPLICATION_JSON)
+        .content(groupMembers(test.getUuid(), test100.getUuid())))
+      .andExpect(status().isCreated());
+
+    // Remove both users from /root/subgroup
+    mvc
+      .perform(delete("/iam/group/{group}/members", subgroup.getUuid())
+        .contentType(APPLICATION_JSON)
+        .content(groupMembers(test.getUuid(), test100.getUuid())))
+      .andExpect(status().isNoContent());
+
+    for (IamAccount a : List.of(test, test100)) {
+      assertThat(isMember(a, subsubgroup), is(false));
+      assertThat(isMember(a, subgroup), is(false));
+      assertThat(isMember(a, rootGroup), is(true));
+    }
+
+    assertThat(isMember(test, sibling), is(true));
+
+    // Remove both users from /root
+    mvc
+      .perform(delete("/iam/group/{group}/members", rootGroup.getUuid())
+        .contentType(APPLICATION_JSON)
+        .content(groupMembers(test.getUuid(), test100.getUuid())))
+      .andExpect(status().isNoContent());
+
+    for (IamAccount a : List.of(test, test100)) {
+      assertThat(isMember(a, rootGroup), is(false));
+      assertThat(isMember(a, sibling), is(false));
+    }
+  }
+
+  @Test
+  public void groupClosureIsUpdatedInTheCreatingTransaction() {
+
+    IamGroup rootGroup = createGroup("closure-root", null);
+    IamGroup subgroup = groupRepo.findByUuid(createGroup("closure-subgroup", rootGroup).getUuid())
+      .orElseThrow(assertionError(EXPECTED_GROUP_NOT_FOUND));
+
+    assertThat(closureService.findDescendantIds(rootGroup.getId()),
+        contains(rootGroup.getId(), subgroup.getId()));
+    assertThat(closureService.findAncestorIds(subgroup.getId()),
+        contains(subgroup.getId(), rootGroup.getId()));
+  }
 }
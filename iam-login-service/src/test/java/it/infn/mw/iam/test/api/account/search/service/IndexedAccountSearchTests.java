@@ -0,0 +1,179 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.test.api.account.search.service;
+
+import static it.infn.mw.iam.api.account.search.AccountSearchController.getSortByName;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import javax.persistence.EntityManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Sort;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import it.infn.mw.iam.api.account.search.AccountSearchProperties;
+import it.infn.mw.iam.api.account.search.service.AccountSearchIndexService;
+import it.infn.mw.iam.api.common.OffsetPageable;
+import it.infn.mw.iam.api.common.PagedResourceService;
+import it.infn.mw.iam.persistence.model.IamAccount;
+import it.infn.mw.iam.persistence.repository.IamAccountRepository;
+import it.infn.mw.iam.test.util.annotation.IamNoMvcTest;
+
+@RunWith(SpringRunner.class)
+@IamNoMvcTest
+public class IndexedAccountSearchTests {
+
+  private static final List<String> FILTERS =
+      List.of("Admin User", "admin", "test_1", "TEST_10", "example.org", "ab", "nomatch-at-all");
+
+  @Autowired
+  private PagedResourceService<IamAccount> accountService;
+
+  @Autowired
+  private AccountSearchIndexService searchIndex;
+
+  @Autowired
+  private AccountSearchProperties properties;
+
+  @Autowired
+  private IamAccountRepository accountRepo;
+
+  @Autowired
+  private EntityManager em;
+
+  @Before
+  public void setup() {
+    properties.setIndexed(true);
+    searchIndex.rebuild();
+  }
+
+  @After
+  public void teardown() {
+    properties.setIndexed(false);
+    properties.setApproximateCount(false);
+  }
+
+  private static OffsetPageable firstPage() {
+    return new OffsetPageable(0, 10, getSortByName(Sort.Direction.ASC));
+  }
+
+  private static List<String> usernames(Page<IamAccount> page) {
+    return page.getContent().stream().map(IamAccount::getUsername).collect(Collectors.toList());
+  }
+
+  @Test
+  public void testNgrams() {
+
+    assertThat(AccountSearchIndexService.ngrams("Admin"), contains("adm", "dmi", "min"));
+    assertThat(AccountSearchIndexService.ngrams("ab"), empty());
+    assertThat(AccountSearchIndexService.ngrams(null), empty());
+  }
+
+  @Test
+  public void testIndexedSearchMatchesFilterSearch() {
+
+    assertThat(searchIndex.isReady(), is(true));
+
+    for (String filter : FILTERS) {
+      Page<IamAccount> indexed = accountService.getPage(firstPage(), filter);
+      Page<IamAccount> scanned = accountRepo.findByFilter(filter, firstPage());
+
+      assertThat(usernames(indexed), equalTo(usernames(scanned)));
+      assertThat(indexed.getTotalElements(), equalTo(scanned.getTotalElements()));
+      assertThat(accountService.count(filter), equalTo(accountRepo.countByFilter(filter)));
+    }
+  }
+
+  @Test
+  public void testApproximateCountIsAnUpperBound() {
+
+    properties.setApproximateCount(true);
+
+    for (String filter : FILTERS) {
+      assertThat(accountService.count(filter),
+          greaterThanOrEqualTo(accountRepo.countByFilter(filter)));
+      assertThat(usernames(accountService.getPage(firstPage(), filter)),
+          equalTo(usernames(accountRepo.findByFilter(filter, firstPage()))));
+    }
+  }
+
+  @Test
+  public void testNameNgramsSkipMissingNames() {
+
+    IamAccount account = accountRepo.findByUsername("test").orElseThrow();
+    account.getUserInfo().setGivenName(null);
+    account.getUserInfo().setFamilyName("Lonelyname");
+    accountRepo.save(account);
+    em.flush();
+
+    searchIndex.indexAccounts(List.of(account.getId()));
+
+    assertThat(searchIndex.countCandidates(AccountSearchIndexService.ngrams("null")),
+        equalTo(0L));
+    assertThat(usernames(accountService.getPage(firstPage(), "lonelyname")), contains("test"));
+  }
+
+  @Test
+  public void testAccountUpdatedWithoutEventIsReindexedBySweep() {
+
+    IamAccount account = accountRepo.findByUsername("test").orElseThrow();
+    account.getUserInfo().setEmail("renamed.account@indexed.example");
+    account.touch();
+    accountRepo.save(account);
+    em.flush();
+
+    searchIndex.reindexUpdatedAccounts();
+
+    Page<IamAccount> page = accountService.getPage(firstPage(), "indexed.example");
+    assertThat(usernames(page), contains("test"));
+    assertThat(accountService.count("indexed.example"), equalTo(1L));
+  }
+
+  @Test
+  public void testAccountUpdatedWhileIndexDisabledIsReindexedByRebuild() {
+
+    properties.setIndexed(false);
+
+    IamAccount account = accountRepo.findByUsername("test").orElseThrow();
+    account.getUserInfo().setEmail("disabled.index@stale.example");
+    account.touch();
+    accountRepo.save(account);
+    em.flush();
+
+    properties.setIndexed(true);
+    assertThat(searchIndex.countCandidates(AccountSearchIndexService.ngrams("stale.example")),
+        equalTo(0L));
+
+    searchIndex.rebuild();
+
+    Page<IamAccount> page = accountService.getPage(firstPage(), "stale.example");
+    assertThat(usernames(page), contains("test"));
+    assertThat(accountService.count("stale.example"), equalTo(1L));
+  }
+}
@@ -15,6 +15,9 @@
  */
 package it.infn.mw.iam.test.api.aup;
 
+import static it.infn.mw.iam.core.IamNotificationType.AUP_EXPIRATION;
+import static it.infn.mw.iam.core.IamNotificationType.AUP_REMINDER;
+import static java.util.stream.Collectors.toList;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
@@ -22,7 +25,9 @@ import static org.hamcrest.Matchers.is;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.util.Date;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 import org.junit.After;
 import org.junit.Test;
@@ -30,11 +35,13 @@ import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.junit4.SpringRunner;
 
 import it.infn.mw.iam.IamLoginService;
+import it.infn.mw.iam.core.IamNotificationType;
 import it.infn.mw.iam.core.web.aup.AupReminderTask;
 import it.infn.mw.iam.persistence.model.IamAccount;
 import it.infn.mw.iam.persistence.model.IamAup;
@@ -55,7 +62,7 @@ import it.infn.mw.iam.test.util.notification.MockNotificationDelivery;
 @SpringBootTest(classes = {IamLoginService.class, CoreControllerTestSupport.class,
     NotificationTestConfig.class}, webEnvironment = WebEnvironment.MOCK)
 @WithAnonymousUser
-@TestPropertySource(properties = {"notification.disable=false"})
+@TestPropertySource(properties = {"notification.disable=false", "task.aupReminderPageSize=2"})
 public class AupReminderTaskTests extends AupTestSupport {
 
   @Autowired
@@ -98,6 +105,7 @@ public class AupReminderTaskTests extends AupTestSupport {
     Date now = new Date();
     mockTimeProvider.setTime(now.getTime());
     LocalDate today = LocalDate.now();
+    Date todayDate = Date.from(today.atStartOfDay(ZoneId.systemDefault()).toInstant());
     LocalDate tomorrow = today.plusDays(1);
     Date tomorrowDate = Date.from(tomorrow.atStartOfDay(ZoneId.systemDefault()).toInstant());
 
@@ -115,13 +123,13 @@ public class AupReminderTaskTests extends AupTestSupport {
 
     mockTimeProvider.setTime(now.getTime() + TimeUnit.MINUTES.toMillis(10));
 
-    assertThat(notificationRepo.countAupRemindersPerAccount(testAccount.getUserInfo().getEmail(),
-        tomorrowDate), equalTo(0));
+    assertThat(isReminderRecipient(aup, todayDate, tomorrowDate, testAccount), is(true));
+    assertThat(countNotifications(AUP_REMINDER, testAccount), equalTo(0L));
 
     aupReminderTask.sendAupReminders();
     notificationDelivery.sendPendingNotifications();
-    assertThat(notificationRepo.countAupRemindersPerAccount(testAccount.getUserInfo().getEmail(),
-        tomorrowDate), equalTo(1));
+    assertThat(isReminderRecipient(aup, todayDate, tomorrowDate, testAccount), is(false));
+    assertThat(countNotifications(AUP_REMINDER, testAccount), equalTo(1L));
 
   }
 
@@ -145,21 +153,17 @@ public class AupReminderTaskTests extends AupTestSupport {
 
     signatureRepo.createSignatureForAccount(aup, testAccount, date);
 
-    assertThat(
-        notificationRepo.countAupExpirationMessPerAccount(testAccount.getUserInfo().getEmail()),
-        equalTo(0));
+    assertThat(isExpirationRecipient(aup, date, testAccount), is(true));
+    assertThat(countNotifications(AUP_EXPIRATION, testAccount), equalTo(0L));
 
     aupReminderTask.sendAupReminders();
     notificationDelivery.sendPendingNotifications();
-    assertThat(
-        notificationRepo.countAupExpirationMessPerAccount(testAccount.getUserInfo().getEmail()),
-        equalTo(1));
+    assertThat(isExpirationRecipient(aup, date, testAccount), is(false));
+    assertThat(countNotifications(AUP_EXPIRATION, testAccount), equalTo(1L));
 
     aupReminderTask.sendAupReminders();
     notificationDelivery.sendPendingNotifications();
-    assertThat(
-        notificationRepo.countAupExpirationMessPerAccount(testAccount.getUserInfo().getEmail()),
-        equalTo(1));
+    assertThat(countNotifications(AUP_EXPIRATION, testAccount), equalTo(1L));
 
   }
 
@@ -183,18 +187,16 @@ public class AupReminderTaskTests extends AupTestSupport {
 
     signatureRepo.createSignatureForAccount(aup, testAccount, date);
 
-    assertThat(
-        notificationRepo.countAupExpirationMessPerAccount(testAccount.getUserInfo().getEmail()),
-        equalTo(0));
+    assertThat(isExpirationRecipient(aup, date, testAccount), is(true));
 
     testAccount.setActive(false);
     accountRepo.save(testAccount);
 
+    assertThat(isExpirationRecipient(aup, date, testAccount), is(false));
+
     aupReminderTask.sendAupReminders();
     notificationDelivery.sendPendingNotifications();
-    assertThat(
-        notificationRepo.countAupExpirationMessPerAccount(testAccount.getUserInfo().getEmail()),
-        equalTo(0));
+    assertThat(countNotifications(AUP_EXPIRATION, testAccount), equalTo(0L));
 
   }
 
@@ -219,9 +221,7 @@ public class AupReminderTaskTests extends AupTestSupport {
 
     aupReminderTask.sendAupReminders();
     notificationDelivery.sendPendingNotifications();
-    assertThat(
-        notificationRepo.countAupExpirationMessPerAccount(testAccount.getUserInfo().getEmail()),
-        equalTo(0));
+    assertThat(countNotifications(AUP_EXPIRATION, testAccount), equalTo(0L));
 
   }
 
@@ -247,15 +247,11 @@ public class AupReminderTaskTests extends AupTestSupport {
     testAccount.setServiceAccount(true);  
     accountRepo.save(testAccount);
 
-    assertThat(
-        notificationRepo.countAupExpirationMessPerAccount(testAccount.getUserInfo().getEmail()),
-        equalTo(0));
+    assertThat(isExpirationRecipient(aup, date, testAccount), is(false));
 
     aupReminderTask.sendAupReminders();
     notificationDelivery.sendPendingNotifications();
-    assertThat(
-        notificationRepo.countAupExpirationMessPerAccount(testAccount.getUserInfo().getEmail()),
-        equalTo(0));
+    assertThat(countNotifications(AUP_EXPIRATION, testAccount), equalTo(0L));
 
   }
 
@@ -269,6 +265,7 @@ public class AupReminderTaskTests extends AupTestSupport {
     Date now = new Date();
     mockTimeProvider.setTime(now.getTime());
     LocalDate today = LocalDate.now();
+    Date todayDate = Date.from(today.atStartOfDay(ZoneId.systemDefault()).toInstant());
     LocalDate tomorrow = today.plusDays(1);
     Date tomorrowDate = Date.from(tomorrow.atStartOfDay(ZoneId.systemDefault()).toInstant());
 
@@ -289,13 +286,74 @@ public class AupReminderTaskTests extends AupTestSupport {
 
     mockTimeProvider.setTime(now.getTime() + TimeUnit.MINUTES.toMillis(10));
 
-    assertThat(notificationRepo.countAupRemindersPerAccount(testAccount.getUserInfo().getEmail(),
-        tomorrowDate), equalTo(0));
+    assertThat(isReminderRecipient(aup, todayDate, tomorrowDate, testAccount), is(false));
+
+    aupReminderTask.sendAupReminders();
+    notificationDelivery.sendPendingNotifications();
+    assertThat(countNotifications(AUP_REMINDER, testAccount), equalTo(0L));
+
+  }
+
+  @Test
+  @WithMockUser(username = "admin", roles = {"ADMIN", "USER"})
+  public void aupExpirationEmailsAreEnqueuedAcrossPages() {
+    IamAup aup = buildDefaultAup();
+    aup.setSignatureValidityInDays(2L);
+
+    LocalDate today = LocalDate.now();
+    LocalDate twoDaysAgo = today.minusDays(2);
+
+    Date date = Date.from(twoDaysAgo.atStartOfDay(ZoneId.systemDefault()).toInstant());
+    aup.setCreationTime(date);
+    aup.setLastUpdateTime(date);
+    aupRepo.save(aup);
+
+    List<IamAccount> testAccounts = Stream.of("test", "test_199", "test_200")
+      .map(u -> accountRepo.findByUsername(u)
+        .orElseThrow(() -> new AssertionError("Expected test account not found")))
+      .collect(toList());
+
+    testAccounts.forEach(a -> signatureRepo.createSignatureForAccount(aup, a, date));
+
+    aupReminderTask.sendAupReminders();
+    notificationDelivery.sendPendingNotifications();
 
     aupReminderTask.sendAupReminders();
     notificationDelivery.sendPendingNotifications();
-    assertThat(notificationRepo.countAupRemindersPerAccount(testAccount.getUserInfo().getEmail(),
-        tomorrowDate), equalTo(0));
 
+    testAccounts.forEach(a -> {
+      assertThat(isExpirationRecipient(aup, date, a), is(false));
+      assertThat(countNotifications(AUP_EXPIRATION, a), equalTo(1L));
+    });
+  }
+
+  private boolean isReminderRecipient(IamAup aup, Date signatureDate, Date tomorrow,
+      IamAccount account) {
+    return signatureRepo
+      .findAupReminderRecipients(aup, signatureDate, plusOneDay(signatureDate), tomorrow, 0L,
+          PageRequest.of(0, 100))
+      .stream()
+      .anyMatch(r -> r.getAccountId().equals(account.getId()));
+  }
+
+  private boolean isExpirationRecipient(IamAup aup, Date signatureDate, IamAccount account) {
+    return signatureRepo
+      .findAupExpirationRecipients(aup, signatureDate, plusOneDay(signatureDate), 0L,
+          PageRequest.of(0, 100))
+      .stream()
+      .anyMatch(r -> r.getAccountId().equals(account.getId()));
+  }
+
+  private long countNotifications(IamNotificationType type, IamAccount account) {
+    return notificationRepo.findByNotificationType(type)
+      .stream()
+      .filter(n -> n.getReceivers()
+        .stream()
+        .anyMatch(r -> r.getEmailAddress().equals(account.getUserInfo().getEmail())))
+      .count();
+  }
+
+  private Date plusOneDay(Date date) {
+    return new Date(date.getTime() + TimeUnit.DAYS.toMillis(1));
   }
 }
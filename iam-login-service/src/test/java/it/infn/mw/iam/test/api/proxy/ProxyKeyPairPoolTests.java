@@ -0,0 +1,149 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.test.api.proxy;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+import java.security.KeyPair;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Date;
+import java.util.function.BooleanSupplier;
+
+import org.junit.After;
+import org.junit.Test;
+
+import eu.emi.security.authn.x509.impl.PEMCredential;
+import eu.emi.security.authn.x509.proxy.ProxyCertificate;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.infn.mw.iam.api.proxy.ProxyCertificateProperties;
+import it.infn.mw.iam.api.proxy.ProxyCredentialCache;
+import it.infn.mw.iam.persistence.model.IamX509ProxyCertificate;
+import it.infn.mw.iam.rcauth.x509.DefaultProxyHelperService;
+import it.infn.mw.iam.rcauth.x509.ProxyHelperService;
+import it.infn.mw.iam.rcauth.x509.ProxyKeyPairPool;
+
+public class ProxyKeyPairPoolTests extends ProxyCertificateTestSupport {
+
+  public static final int TEST_KEY_SIZE = 1024;
+
+  SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  ProxyKeyPairPool pool;
+
+  private ProxyKeyPairPool newPool(int size) {
+    ProxyCertificateProperties properties = new ProxyCertificateProperties();
+    properties.setKeySize(TEST_KEY_SIZE);
+    properties.getKeyPairPool().setSize(size);
+    pool = new ProxyKeyPairPool(properties, meterRegistry);
+    return pool;
+  }
+
+  private void waitFor(BooleanSupplier condition) throws InterruptedException {
+    for (int i = 0; i < 600 && !condition.getAsBoolean(); i++) {
+      Thread.sleep(50);
+    }
+    assertThat(condition.getAsBoolean(), is(true));
+  }
+
+  @After
+  public void shutdownPool() {
+    if (pool != null) {
+      pool.destroy();
+    }
+  }
+
+  @Test
+  public void emptyPoolGeneratesKeyPairsOnDemand() {
+    newPool(0);
+
+    KeyPair keyPair = pool.take();
+
+    assertThat(keyPair, notNullValue());
+    assertThat(keyPair.getPublic().getAlgorithm(), is("RSA"));
+    assertThat(pool.getMisses(), is(1.0));
+    assertThat(pool.getDepth(), is(0));
+  }
+
+  @Test
+  public void poolIsRefilledInTheBackground() throws InterruptedException {
+    newPool(2);
+
+    pool.fill();
+    waitFor(() -> pool.getDepth() == 2);
+
+    KeyPair first = pool.take();
+    KeyPair second = pool.take();
+
+    assertThat(first, not(sameInstance(second)));
+    assertThat(pool.getMisses(), is(0.0));
+    assertThat(meterRegistry.get(ProxyKeyPairPool.HITS_METRIC).counter().count(), is(2.0));
+
+    waitFor(() -> pool.getDepth() == 2);
+    assertThat(meterRegistry.get(ProxyKeyPairPool.DEPTH_METRIC).gauge().value(), is(2.0));
+  }
+
+  @Test
+  public void proxyIsGeneratedWithPooledKeyPair() throws InterruptedException {
+    newPool(1);
+
+    pool.fill();
+    waitFor(() -> pool.getDepth() == 1);
+
+    ProxyHelperService helper = new DefaultProxyHelperService(clock, pool);
+    ProxyCertificate proxy =
+        helper.generateProxy(TEST_0_PEM_CREDENTIAL, DEFAULT_PROXY_LIFETIME_SECONDS);
+
+    assertThat(pool.getMisses(), is(0.0));
+
+    RSAPublicKey publicKey = (RSAPublicKey) proxy.getCertificateChain()[0].getPublicKey();
+    RSAPrivateKey privateKey = (RSAPrivateKey) proxy.getPrivateKey();
+
+    assertThat(publicKey.getModulus().bitLength(), is(TEST_KEY_SIZE));
+    assertThat(privateKey.getModulus(), is(publicKey.getModulus()));
+
+    PEMCredential credential =
+        helper.credentialFromPemString(helper.proxyCertificateToPemString(proxy));
+    assertThat(credential.getCertificate(), is(proxy.getCertificateChain()[0]));
+  }
+
+  @Test
+  public void parsedCredentialsAreCachedUntilTheProxyChanges() throws Exception {
+    ProxyCredentialCache cache = new ProxyCredentialCache(proxyHelper, 10);
+
+    IamX509ProxyCertificate proxy = new IamX509ProxyCertificate();
+    proxy.setId(1L);
+    proxy.setExpirationTime(Date.from(ONE_YEAR_FROM_NOW));
+    proxy.setChain(generateTest0Proxy(A_WEEK_AGO, ONE_YEAR_FROM_NOW));
+
+    PEMCredential credential = cache.credentialFor(proxy);
+
+    assertThat(cache.credentialFor(proxy), sameInstance(credential));
+    assertThat(cache.getSize(), is(1L));
+
+    proxy.setChain(generateTest0Proxy(AN_HOUR_AGO, ONE_YEAR_FROM_NOW));
+
+    PEMCredential updatedCredential = cache.credentialFor(proxy);
+
+    assertThat(updatedCredential, not(sameInstance(credential)));
+    assertThat(updatedCredential.getCertificate(), not(credential.getCertificate()));
+    assertThat(cache.credentialFor(proxy), sameInstance(updatedCredential));
+  }
+}
@@ -0,0 +1,174 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.test.audit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.infn.mw.iam.audit.AsyncAuditEventWriter;
+import it.infn.mw.iam.audit.AuditProperties;
+import it.infn.mw.iam.audit.AuditProperties.OverflowPolicy;
+import it.infn.mw.iam.audit.SerializedAuditEvent;
+import it.infn.mw.iam.audit.events.IamAuditApplicationEvent;
+import it.infn.mw.iam.audit.events.IamEventCategory;
+
+public class AsyncAuditEventWriterTests {
+
+  public static class TestEvent extends IamAuditApplicationEvent {
+
+    private static final long serialVersionUID = 1L;
+
+    public TestEvent(String message) {
+      super(IamEventCategory.NONE, AsyncAuditEventWriterTests.class, message);
+    }
+  }
+
+  private AuditProperties properties;
+  private MeterRegistry meterRegistry;
+  private List<String> written;
+
+  @Before
+  public void setup() {
+    properties = new AuditProperties();
+    properties.setAsync(true);
+    properties.setFlushIntervalMillis(10);
+    meterRegistry = new SimpleMeterRegistry();
+    written = new CopyOnWriteArrayList<>();
+  }
+
+  private static SerializedAuditEvent event(String message) {
+    return new SerializedAuditEvent(new TestEvent(message), message);
+  }
+
+  private void record(List<SerializedAuditEvent> events) {
+    written.addAll(events.stream().map(SerializedAuditEvent::getJson).collect(Collectors.toList()));
+  }
+
+  @Test
+  public void testEventsAreWrittenInOrder() throws InterruptedException {
+    AsyncAuditEventWriter writer =
+        new AsyncAuditEventWriter(properties, this::record, meterRegistry);
+
+    writer.submit(event("first"));
+    writer.submit(event("second"));
+    writer.submit(event("third"));
+    writer.shutdown();
+
+    assertThat(written, contains("first", "second", "third"));
+    assertThat(writer.getQueueDepth(), is(0));
+  }
+
+  @Test
+  public void testEventsAreDroppedWhenQueueIsFull() throws InterruptedException {
+    properties.setQueueCapacity(1);
+    properties.setOverflowPolicy(OverflowPolicy.DROP);
+
+    CountDownLatch writing = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+
+    AsyncAuditEventWriter writer = new AsyncAuditEventWriter(properties, events -> {
+      writing.countDown();
+      await(release);
+      record(events);
+    }, meterRegistry);
+
+    writer.submit(event("first"));
+    assertThat(writing.await(5, TimeUnit.SECONDS), is(true));
+
+    writer.submit(event("second"));
+    writer.submit(event("third"));
+    release.countDown();
+    writer.shutdown();
+
+    assertThat(written, contains("first", "second"));
+    assertThat(writer.getDroppedEvents(), is(1.0));
+    assertThat(meterRegistry.get(AsyncAuditEventWriter.DROPPED_EVENTS_METRIC).counter().count(),
+        is(1.0));
+  }
+
+  @Test
+  public void testCallerWritesEventsWhenQueueIsFull() throws InterruptedException {
+    properties.setQueueCapacity(1);
+    properties.setOverflowPolicy(OverflowPolicy.CALLER_RUNS);
+
+    CountDownLatch writing = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    Thread testThread = Thread.currentThread();
+
+    AsyncAuditEventWriter writer = new AsyncAuditEventWriter(properties, events -> {
+      if (Thread.currentThread() != testThread) {
+        writing.countDown();
+        await(release);
+      }
+      record(events);
+    }, meterRegistry);
+
+    writer.submit(event("first"));
+    assertThat(writing.await(5, TimeUnit.SECONDS), is(true));
+
+    writer.submit(event("second"));
+    writer.submit(event("third"));
+
+    assertThat(written, contains("third"));
+
+    release.countDown();
+    writer.shutdown();
+
+    assertThat(written, contains("third", "first", "second"));
+    assertThat(writer.getDroppedEvents(), is(0.0));
+  }
+
+  @Test
+  public void testEventsAreSerializedByTheWriterThread() throws InterruptedException {
+    Thread testThread = Thread.currentThread();
+    List<Thread> serializingThreads = new CopyOnWriteArrayList<>();
+
+    AsyncAuditEventWriter writer =
+        new AsyncAuditEventWriter(properties, this::record, meterRegistry);
+
+    writer.submit(new SerializedAuditEvent(new TestEvent("first"), e -> {
+      serializingThreads.add(Thread.currentThread());
+      return e.getMessage();
+    }));
+    writer.shutdown();
+
+    assertThat(written, contains("first"));
+    assertThat(serializingThreads.size(), is(1));
+    assertThat(serializingThreads.get(0), not(sameInstance(testThread)));
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
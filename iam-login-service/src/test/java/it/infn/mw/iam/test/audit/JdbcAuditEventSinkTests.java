@@ -0,0 +1,94 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.test.audit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.commons.lang.time.DateUtils;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import it.infn.mw.iam.audit.JdbcAuditEventSink;
+import it.infn.mw.iam.audit.SerializedAuditEvent;
+import it.infn.mw.iam.audit.events.IamAuditApplicationEvent;
+import it.infn.mw.iam.audit.events.IamEventCategory;
+import it.infn.mw.iam.test.util.annotation.IamNoMvcTest;
+
+@RunWith(SpringRunner.class)
+@IamNoMvcTest
+@TestPropertySource(
+    properties = {"audit.jdbc-sink.enabled=true", "audit.jdbc-sink.cleanup-batch-size=1"})
+public class JdbcAuditEventSinkTests {
+
+  public static class TestEvent extends IamAuditApplicationEvent {
+
+    private static final long serialVersionUID = 1L;
+
+    public TestEvent(String message) {
+      super(IamEventCategory.NONE, JdbcAuditEventSinkTests.class, message);
+    }
+  }
+
+  @Autowired
+  private JdbcAuditEventSink sink;
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  private long countEvents() {
+    return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM iam_audit_event", Long.class);
+  }
+
+  @Test
+  public void eventsAreStoredAndRemovedAfterRetention() {
+    long initialCount = countEvents();
+
+    sink.write(List.of(new SerializedAuditEvent(new TestEvent("first"), "{}"),
+        new SerializedAuditEvent(new TestEvent("second"), "{}")));
+
+    assertThat(countEvents(), is(initialCount + 2));
+
+    sink.deleteEventsOlderThan(Instant.now().minus(1, ChronoUnit.DAYS));
+    assertThat(countEvents(), is(initialCount + 2));
+
+    sink.deleteEventsOlderThan(Instant.now().plus(1, ChronoUnit.DAYS));
+    assertThat(countEvents(), is(0L));
+  }
+
+  @Test
+  public void cleanupIsSkippedWhenLockIsHeld() {
+    sink.write(List.of(new SerializedAuditEvent(new TestEvent("first"), "{}")));
+    long count = countEvents();
+
+    jdbcTemplate.update(
+        "INSERT INTO iam_task_lock (name, locked_until, locked_at, locked_by) VALUES (?, ?, ?, ?)",
+        JdbcAuditEventSink.AUDIT_CLEANUP_LOCK, DateUtils.addHours(new Date(), 1), new Date(),
+        "another-node");
+
+    assertThat(sink.deleteEventsOlderThan(Instant.now().plus(1, ChronoUnit.DAYS)), is(0));
+    assertThat(countEvents(), is(count));
+  }
+}
@@ -0,0 +1,122 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.test.core.group;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.is;
+
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import it.infn.mw.iam.IamLoginService;
+import it.infn.mw.iam.core.group.GroupClosureService;
+import it.infn.mw.iam.core.group.IamGroupService;
+import it.infn.mw.iam.persistence.model.IamGroup;
+
+/**
+ * Runs outside of a test transaction, so that the closure is read back from committed rows.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = {IamLoginService.class}, webEnvironment = WebEnvironment.NONE)
+public class GroupClosureServiceTests {
+
+  private static final String SELECT_ROWS = "SELECT ancestor_id, depth FROM iam_group_closure "
+      + "WHERE descendant_id = :groupId ORDER BY depth";
+
+  private static final String DELETE_ROWS =
+      "DELETE FROM iam_group_closure WHERE descendant_id IN (:groupIds)";
+
+  @Autowired
+  private IamGroupService groupService;
+
+  @Autowired
+  private GroupClosureService closureService;
+
+  @Autowired
+  private NamedParameterJdbcTemplate jdbcTemplate;
+
+  private IamGroup root;
+  private IamGroup subgroup;
+  private IamGroup subsubgroup;
+
+  private IamGroup createGroup(String name, IamGroup parent) {
+    IamGroup group = new IamGroup();
+    group.setName(name);
+    group.setParentGroup(parent);
+    return groupService.createGroup(group);
+  }
+
+  private List<String> closureRows(IamGroup group) {
+    return jdbcTemplate.query(SELECT_ROWS, new MapSqlParameterSource("groupId", group.getId()),
+        (rs, i) -> rs.getLong(1) + ":" + rs.getInt(2));
+  }
+
+  private void assertClosureRows() {
+    assertThat(closureRows(root), contains(root.getId() + ":0"));
+    assertThat(closureRows(subgroup), contains(subgroup.getId() + ":0", root.getId() + ":1"));
+    assertThat(closureRows(subsubgroup), contains(subsubgroup.getId() + ":0",
+        subgroup.getId() + ":1", root.getId() + ":2"));
+  }
+
+  @Before
+  public void setup() {
+    root = createGroup("closure-test-root", null);
+    subgroup = createGroup("closure-test-subgroup", root);
+    subsubgroup = createGroup("closure-test-subsubgroup", subgroup);
+  }
+
+  @After
+  public void teardown() {
+    groupService.deleteGroupByUuid(subsubgroup.getUuid());
+    groupService.deleteGroupByUuid(subgroup.getUuid());
+    groupService.deleteGroupByUuid(root.getUuid());
+  }
+
+  @Test
+  public void testCreatedGroupsAreAddedToTheClosure() {
+    assertClosureRows();
+
+    assertThat(closureService.findDescendantIds(root.getId()),
+        containsInAnyOrder(root.getId(), subgroup.getId(), subsubgroup.getId()));
+    assertThat(closureService.findAncestorIds(subsubgroup.getId()),
+        contains(subsubgroup.getId(), subgroup.getId(), root.getId()));
+  }
+
+  @Test
+  public void testRebuildAddsMissingGroups() {
+    jdbcTemplate.update(DELETE_ROWS, new MapSqlParameterSource("groupIds",
+        List.of(root.getId(), subgroup.getId(), subsubgroup.getId())));
+
+    assertThat(closureRows(subsubgroup).isEmpty(), is(true));
+
+    assertThat(closureService.rebuild(), is(3));
+    assertClosureRows();
+
+    assertThat(closureService.rebuild(), is(0));
+  }
+}
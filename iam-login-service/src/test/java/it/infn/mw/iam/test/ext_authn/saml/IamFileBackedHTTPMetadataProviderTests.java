@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.test.ext_authn.saml;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Timer;
+
+import org.apache.commons.httpclient.HttpClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opensaml.DefaultBootstrap;
+import org.opensaml.saml2.metadata.provider.MetadataProviderException;
+import org.opensaml.xml.ConfigurationException;
+import org.opensaml.xml.parse.BasicParserPool;
+
+import it.infn.mw.iam.authn.saml.IamFileBackedHTTPMetadataProvider;
+
+public class IamFileBackedHTTPMetadataProviderTests {
+
+  public static final String UNREACHABLE_METADATA_URL = "http://localhost:1/metadata.xml";
+  public static final String BACKUP_ENTITY_ID = "urn:iam:iam-local-devel";
+  public static final long REFRESH_DELAY_MSEC = 60000;
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private Timer timer;
+  private File backupFile;
+  private IamFileBackedHTTPMetadataProvider provider;
+
+  @BeforeClass
+  public static void bootstrap() throws ConfigurationException {
+    DefaultBootstrap.bootstrap();
+  }
+
+  @Before
+  public void setup() throws IOException {
+    timer = new Timer(true);
+    backupFile = tempFolder.newFile("metadata.xml");
+
+    try (InputStream is = getClass().getResourceAsStream("/saml/metadata/iam-md.xml")) {
+      Files.copy(is, backupFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  @After
+  public void teardown() {
+    if (provider != null) {
+      provider.destroy();
+    }
+    timer.cancel();
+  }
+
+  private IamFileBackedHTTPMetadataProvider provider(boolean backgroundInitialization)
+      throws MetadataProviderException {
+    IamFileBackedHTTPMetadataProvider p =
+        new IamFileBackedHTTPMetadataProvider(timer, new HttpClient(), UNREACHABLE_METADATA_URL,
+            backupFile.getAbsolutePath(), backgroundInitialization, REFRESH_DELAY_MSEC);
+    p.setParserPool(new BasicParserPool());
+    return p;
+  }
+
+  @Test
+  public void testBackgroundInitializationLoadsBackupFile() throws MetadataProviderException {
+
+    provider = provider(true);
+    provider.initialize();
+
+    assertThat(provider.isLastFetchFromBackup(), is(true));
+    assertThat(provider.getEntityDescriptor(BACKUP_ENTITY_ID), notNullValue());
+  }
+
+  @Test
+  public void testDefaultInitializationFetchesRemoteMetadataFirst()
+      throws MetadataProviderException {
+
+    provider = provider(false);
+    provider.initialize();
+
+    assertThat(provider.isLastFetchFromBackup(), is(false));
+    assertThat(provider.getEntityDescriptor(BACKUP_ENTITY_ID), notNullValue());
+  }
+}
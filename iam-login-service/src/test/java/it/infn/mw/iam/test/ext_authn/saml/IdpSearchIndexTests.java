@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.test.ext_authn.saml;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+import org.opensaml.saml2.metadata.LocalizedString;
+
+import it.infn.mw.iam.authn.saml.IdpSearchIndex;
+import it.infn.mw.iam.authn.saml.model.IdpDescription;
+
+public class IdpSearchIndexTests {
+
+  private static IdpDescription idp(String entityId, String... displayNames) {
+    IdpDescription desc = new IdpDescription();
+    desc.setEntityId(entityId);
+
+    if (displayNames.length > 0) {
+      List<LocalizedString> names = new ArrayList<>();
+      for (String name : displayNames) {
+        names.add(new LocalizedString(name, "en"));
+      }
+      desc.setDisplayNames(names);
+      desc.setOrganizationName(displayNames[0]);
+    } else {
+      desc.setOrganizationName(entityId);
+    }
+    return desc;
+  }
+
+  private static List<String> organizationNames(List<IdpDescription> results) {
+    return results.stream()
+      .map(IdpDescription::getOrganizationName)
+      .collect(Collectors.toList());
+  }
+
+  private final IdpSearchIndex index = IdpSearchIndex.build(List.of(
+      idp("urn:test:bologna", "Università di Bologna", "University of Bologna"),
+      idp("urn:test:infn", "INFN"),
+      idp("urn:test:cnaf", "INFN CNAF"),
+      idp("urn:test:pinfn", "Pinfnet Organization"),
+      idp("urn:test:noname")));
+
+  @Test
+  public void testResultsAreRankedByMatchQuality() {
+
+    assertThat(organizationNames(index.lookup("infn", 10)),
+        contains("INFN", "INFN CNAF", "Pinfnet Organization"));
+  }
+
+  @Test
+  public void testLookupIgnoresCaseAndDiacritics() {
+
+    assertThat(organizationNames(index.lookup("universita", 10)),
+        contains("Università di Bologna"));
+    assertThat(organizationNames(index.lookup("UNIVERSITY", 10)),
+        contains("University of Bologna"));
+  }
+
+  @Test
+  public void testShortQueriesAndEntityIds() {
+
+    assertThat(index.lookup("cn", 10), hasSize(1));
+    assertThat(organizationNames(index.lookup("noname", 10)), contains("urn:test:noname"));
+    assertThat(index.lookup("bologna", 10).get(0).getEntityId(), is("urn:test:bologna"));
+    assertThat(index.lookup("inexistent", 10), empty());
+  }
+
+  @Test
+  public void testMaxResultsIsHonored() {
+
+    assertThat(index.lookup("", 2), hasSize(2));
+    assertThat(index.lookup("n", 3), hasSize(3));
+  }
+
+  @Test
+  public void testResultsAreCopies() {
+
+    index.lookup("university", 10).get(0).setOrganizationName("changed");
+
+    assertThat(organizationNames(index.lookup("bologna", 10)),
+        contains("Università di Bologna"));
+    assertThat(index.lookupByEntityId("urn:test:bologna").get().getOrganizationName(),
+        is("Università di Bologna"));
+  }
+}
@@ -42,14 +42,19 @@ import java.time.ZoneId;
 import java.time.temporal.ChronoUnit;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.List;
 import java.util.Optional;
 import java.util.Random;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.stubbing.Answer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.context.TestConfiguration;
@@ -157,6 +162,20 @@ public class CernAccountLifecycleTests extends TestSupport implements LifecycleT
     return repo.findByUuid(username).orElseThrow(assertionError(EXPECTED_ACCOUNT_NOT_FOUND));
   }
 
+  private IamAccount newCernAccount(String username, String cernPersonId) {
+    IamAccount account = IamAccount.newAccount();
+    account.setUsername(username);
+    account.setUuid(UUID.randomUUID().toString());
+    account.setActive(true);
+    account.getUserInfo().setEmail(username + "@example");
+    account.getUserInfo().setGivenName("cern");
+    account.getUserInfo().setFamilyName("user");
+    account.getUserInfo().setEmailVerified(true);
+    service.createAccount(account);
+    service.addLabel(account, cernPersonIdLabel(cernPersonId));
+    return account;
+  }
+
   @Test
   public void testUserSuspensionWorksAfterCernHrEndTimeUpdate() {
 
@@ -461,6 +480,56 @@ public class CernAccountLifecycleTests extends TestSupport implements LifecycleT
 
   }
 
+  @Test
+  public void testPageLookupsRunConcurrentlyAndHrDbErrorsAreIsolated() {
+
+    final String otherPersonId = "87654321";
+    final String failingPersonId = "11111111";
+
+    IamAccount otherUser = newCernAccount("cern-user-2", otherPersonId);
+    IamAccount failingUser = newCernAccount("cern-user-3", failingPersonId);
+
+    CountDownLatch lookupsInFlight = new CountDownLatch(2);
+    AtomicBoolean concurrentLookups = new AtomicBoolean(true);
+
+    Answer<Optional<VOPersonDTO>> concurrentLookup = invocation -> {
+      lookupsInFlight.countDown();
+      if (!lookupsInFlight.await(10, TimeUnit.SECONDS)) {
+        concurrentLookups.set(false);
+      }
+      return Optional.of(voPerson(invocation.getArgument(0)));
+    };
+
+    when(hrDb.getHrDbPersonRecord(CERN_PERSON_ID)).thenAnswer(concurrentLookup);
+    when(hrDb.getHrDbPersonRecord(otherPersonId)).thenAnswer(concurrentLookup);
+    when(hrDb.getHrDbPersonRecord(failingPersonId))
+      .thenThrow(new CernHrDbApiError("API is unreachable"));
+
+    cernHrLifecycleHandler.run();
+
+    assertThat(concurrentLookups.get(), is(true));
+
+    for (String uuid : List.of(CERN_USER_UUID, otherUser.getUuid())) {
+      Optional<IamLabel> statusLabel =
+          loadAccount(uuid).getLabelByPrefixAndName(LABEL_CERN_PREFIX, LABEL_STATUS);
+      assertThat(statusLabel.isPresent(), is(true));
+      assertThat(statusLabel.get().getValue(), is(CernStatus.VO_MEMBER.name()));
+    }
+
+    IamAccount testAccount = loadAccount(failingUser.getUuid());
+    assertThat(testAccount.isActive(), is(true));
+
+    Optional<IamLabel> statusLabel =
+        testAccount.getLabelByPrefixAndName(LABEL_CERN_PREFIX, LABEL_STATUS);
+    Optional<IamLabel> messageLabel =
+        testAccount.getLabelByPrefixAndName(LABEL_CERN_PREFIX, LABEL_MESSAGE);
+
+    assertThat(statusLabel.isPresent(), is(true));
+    assertThat(statusLabel.get().getValue(), is(CernStatus.ERROR.name()));
+    assertThat(messageLabel.isPresent(), is(true));
+    assertThat(messageLabel.get().getValue(), is(HR_DB_API_ERROR));
+  }
+
   @Test
   public void testApiReturnsNullVoPersonIsHandled() {
 
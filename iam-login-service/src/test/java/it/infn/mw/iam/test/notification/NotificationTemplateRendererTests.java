@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.test.notification;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import freemarker.template.Configuration;
+import freemarker.template.TemplateException;
+import it.infn.mw.iam.notification.NotificationModel;
+import it.infn.mw.iam.notification.NotificationTemplate;
+import it.infn.mw.iam.notification.NotificationTemplate.Fields;
+import it.infn.mw.iam.notification.NotificationTemplateRenderer;
+
+public class NotificationTemplateRendererTests {
+
+  private Configuration freeMarkerConfiguration;
+  private NotificationTemplateRenderer renderer;
+
+  @Before
+  public void setup() {
+    freeMarkerConfiguration = new Configuration(Configuration.VERSION_2_3_23);
+    freeMarkerConfiguration.setClassForTemplateLoading(getClass(), "/email-templates");
+    renderer = new NotificationTemplateRenderer(freeMarkerConfiguration);
+  }
+
+  @Test
+  public void testAllTemplatesAreCompiledAtStartup() {
+    renderer.afterPropertiesSet();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testMissingTemplateFailsStartup() {
+    freeMarkerConfiguration.setClassForTemplateLoading(getClass(), "/missing-templates");
+    renderer.afterPropertiesSet();
+  }
+
+  @Test
+  public void testTemplateIsRendered() throws IOException, TemplateException {
+    renderer.afterPropertiesSet();
+
+    Map<String, Object> model = new HashMap<>();
+    model.put(Fields.RECIPIENT, "Test User");
+    model.put(Fields.ORGANISATION_NAME, "indigo-dc");
+    model.put("confirmURL", "https://iam.example/registration/verify/key");
+
+    String body = renderer.render(NotificationTemplate.CONFIRM_REGISTRATION, model);
+
+    assertThat(body, containsString("Test User"));
+    assertThat(body, containsString("https://iam.example/registration/verify/key"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMissingRequiredFieldIsRejected() throws IOException, TemplateException {
+    renderer.afterPropertiesSet();
+
+    Map<String, Object> model = new HashMap<>();
+    model.put(Fields.RECIPIENT, "Test User");
+    model.put(Fields.ORGANISATION_NAME, "indigo-dc");
+
+    renderer.render(NotificationTemplate.CONFIRM_REGISTRATION, model);
+  }
+
+  @Test
+  public void testModelIsRendered() throws IOException, TemplateException {
+    renderer.afterPropertiesSet();
+
+    NotificationModel model = NotificationModel.forTemplate(NotificationTemplate.AUP_REMINDER)
+      .recipient("Test User")
+      .organisationName("indigo-dc")
+      .aupUrl("https://iam.example/iam/aup/sign")
+      .with("missingDays", 10L)
+      .build();
+
+    String body = renderer.render(model);
+
+    assertThat(body, containsString("Test User"));
+    assertThat(body, containsString("https://iam.example/iam/aup/sign"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testModelWithoutRequiredFieldIsNotBuilt() {
+    NotificationModel.forTemplate(NotificationTemplate.AUP_EXPIRATION)
+      .recipient("Test User")
+      .organisationName("indigo-dc")
+      .build();
+  }
+}
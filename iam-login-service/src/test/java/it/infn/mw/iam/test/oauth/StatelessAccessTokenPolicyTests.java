@@ -0,0 +1,161 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.test.oauth;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.text.ParseException;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mitre.oauth2.model.AuthenticationHolderEntity;
+import org.mitre.oauth2.model.ClientDetailsEntity;
+import org.mitre.oauth2.model.OAuth2AccessTokenEntity;
+import org.mitre.oauth2.model.OAuth2RefreshTokenEntity;
+import org.mitre.oauth2.model.SavedUserAuthentication;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+
+import it.infn.mw.iam.config.IamProperties;
+import it.infn.mw.iam.core.oauth.issuance.StatelessAccessTokenPolicy;
+
+public class StatelessAccessTokenPolicyTests {
+
+  public static final String STATELESS_CLIENT_ID = "stateless-client";
+  public static final Instant NOW = Instant.parse("2024-01-01T00:00:00.00Z");
+
+  Clock clock = Clock.fixed(NOW, ZoneId.systemDefault());
+
+  StatelessAccessTokenPolicy policy;
+
+  @Before
+  public void setup() {
+    IamProperties properties = new IamProperties();
+    properties.getAccessToken().setStatelessClientIds(List.of(STATELESS_CLIENT_ID));
+    properties.getAccessToken().setStatelessMaxLifetimeSecs(600);
+    policy = new StatelessAccessTokenPolicy(clock, properties);
+  }
+
+  private OAuth2AccessTokenEntity token(String clientId, long lifetimeSecs) {
+    ClientDetailsEntity client = new ClientDetailsEntity();
+    client.setClientId(clientId);
+
+    OAuth2AccessTokenEntity token = new OAuth2AccessTokenEntity();
+    token.setClient(client);
+    token.setAuthenticationHolder(new AuthenticationHolderEntity());
+    token.setExpiration(Date.from(NOW.plusSeconds(lifetimeSecs)));
+    return token;
+  }
+
+  @Test
+  public void clientCredentialsTokenForStatelessClientIsStateless() {
+    assertThat(policy.isStateless(token(STATELESS_CLIENT_ID, 300)), is(true));
+  }
+
+  @Test
+  public void otherClientsTokensAreNotStateless() {
+    assertThat(policy.isStateless(token("client", 300)), is(false));
+  }
+
+  @Test
+  public void longLivedTokensAreNotStateless() {
+    assertThat(policy.isStateless(token(STATELESS_CLIENT_ID, 3600)), is(false));
+  }
+
+  @Test
+  public void userTokensAreNotStateless() {
+    OAuth2AccessTokenEntity token = token(STATELESS_CLIENT_ID, 300);
+    token.getAuthenticationHolder().setUserAuth(new SavedUserAuthentication());
+    assertThat(policy.isStateless(token), is(false));
+  }
+
+  @Test
+  public void tokensWithRefreshTokenAreNotStateless() {
+    OAuth2AccessTokenEntity token = token(STATELESS_CLIENT_ID, 300);
+    token.setRefreshToken(new OAuth2RefreshTokenEntity());
+    assertThat(policy.isStateless(token), is(false));
+  }
+
+  @Test
+  public void statelessModeIsDisabledByDefault() {
+    StatelessAccessTokenPolicy defaultPolicy =
+        new StatelessAccessTokenPolicy(clock, new IamProperties());
+    assertThat(defaultPolicy.isEnabled(), is(false));
+    assertThat(defaultPolicy.isStateless(token(STATELESS_CLIENT_ID, 300)), is(false));
+  }
+
+  private JWTClaimsSet claims(String clientId, String subject, long lifetimeSecs) {
+    return new JWTClaimsSet.Builder().subject(subject)
+      .issueTime(Date.from(NOW))
+      .expirationTime(Date.from(NOW.plusSeconds(lifetimeSecs)))
+      .claim("client_id", clientId)
+      .claim("scope", "openid storage.read:/")
+      .build();
+  }
+
+  @Test
+  public void clientCredentialsClaimsForStatelessClientAreStateless() throws ParseException {
+    assertThat(policy.isStateless(claims(STATELESS_CLIENT_ID, STATELESS_CLIENT_ID, 300)),
+        is(true));
+  }
+
+  @Test
+  public void userClaimsAreNotStateless() throws ParseException {
+    assertThat(policy.isStateless(claims(STATELESS_CLIENT_ID, "user-uuid", 300)), is(false));
+  }
+
+  @Test
+  public void otherClientsClaimsAreNotStateless() throws ParseException {
+    assertThat(policy.isStateless(claims("client", "client", 300)), is(false));
+  }
+
+  @Test
+  public void expiredOrLongLivedClaimsAreNotStateless() throws ParseException {
+    assertThat(policy.isStateless(claims(STATELESS_CLIENT_ID, STATELESS_CLIENT_ID, 0)), is(false));
+    assertThat(policy.isStateless(claims(STATELESS_CLIENT_ID, STATELESS_CLIENT_ID, 3600)),
+        is(false));
+  }
+
+  @Test
+  public void statelessTokenIsRestoredFromItsClaims() throws ParseException {
+    ClientDetailsEntity client = new ClientDetailsEntity();
+    client.setClientId(STATELESS_CLIENT_ID);
+
+    SignedJWT jwt = new SignedJWT(new JWSHeader(JWSAlgorithm.RS256),
+        claims(STATELESS_CLIENT_ID, STATELESS_CLIENT_ID, 300));
+
+    OAuth2AccessTokenEntity token = policy.restore(jwt, client);
+
+    assertThat(token.getClient(), is(client));
+    assertThat(token.getScope(), containsInAnyOrder("openid", "storage.read:/"));
+    assertThat(token.getExpiration(), is(Date.from(NOW.plusSeconds(300))));
+    assertThat(token.getAuthenticationHolder().getClientId(), is(STATELESS_CLIENT_ID));
+    assertThat(token.getAuthenticationHolder().getUserAuth(), nullValue());
+    assertThat(token.getAuthenticationHolder().getAuthentication().getName(),
+        is(STATELESS_CLIENT_ID));
+  }
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.test.oauth;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.springframework.http.MediaType.APPLICATION_FORM_URLENCODED;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.httpBasic;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.Date;
+import java.util.UUID;
+
+import org.apache.commons.lang.time.DateUtils;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mitre.oauth2.service.OAuth2TokenEntityService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.nimbusds.jwt.JWTParser;
+
+import it.infn.mw.iam.IamLoginService;
+import it.infn.mw.iam.core.oauth.issuance.AccessTokenDenyList;
+import it.infn.mw.iam.test.util.annotation.IamMockMvcIntegrationTest;
+
+@SuppressWarnings("deprecation")
+@RunWith(SpringRunner.class)
+@IamMockMvcIntegrationTest
+@SpringBootTest(classes = {IamLoginService.class}, webEnvironment = WebEnvironment.MOCK)
+@TestPropertySource(properties = {"iam.access_token.stateless_client_ids=client-cred",
+    "iam.access_token.stateless_max_lifetime_secs=3600"})
+public class StatelessAccessTokenRevocationTests extends EndpointsTestUtils {
+
+  private static final String CLIENT_ID = "client-cred";
+  private static final String CLIENT_SECRET = "secret";
+
+  @Autowired
+  private OAuth2TokenEntityService tokenService;
+
+  @Autowired
+  private AccessTokenDenyList denyList;
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  private String getStatelessAccessToken() throws Exception {
+    return buildAccessTokenGetter().grantType("client_credentials")
+      .clientId(CLIENT_ID)
+      .clientSecret(CLIENT_SECRET)
+      .getAccessTokenValue();
+  }
+
+  private void introspect(String token, boolean active) throws Exception {
+    // @formatter:off
+    mvc.perform(post("/introspect")
+        .with(httpBasic(CLIENT_ID, CLIENT_SECRET))
+        .param("token", token))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.active", equalTo(active)));
+    // @formatter:on
+  }
+
+  @Test
+  public void revokedStatelessTokenIsRejected() throws Exception {
+    String accessToken = getStatelessAccessToken();
+    String jti = JWTParser.parse(accessToken).getJWTClaimsSet().getJWTID();
+
+    introspect(accessToken, true);
+    assertThat(tokenService.loadAuthentication(accessToken), notNullValue());
+
+    // @formatter:off
+    mvc.perform(post("/revoke")
+        .with(httpBasic(CLIENT_ID, CLIENT_SECRET))
+        .contentType(APPLICATION_FORM_URLENCODED)
+        .param("token", accessToken))
+      .andExpect(status().isOk());
+    // @formatter:on
+
+    assertThat(denyList.isDenied(jti), is(true));
+    assertThat(jdbcTemplate.queryForObject(
+        "SELECT COUNT(*) FROM iam_revoked_access_token WHERE jti = ?", Long.class, jti), is(1L));
+
+    introspect(accessToken, false);
+
+    try {
+      tokenService.loadAuthentication(accessToken);
+      throw new AssertionError("Revoked stateless token accepted");
+    } catch (InvalidTokenException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void tokensRevokedByOtherInstancesAreDeniedAfterRefresh() {
+    String jti = UUID.randomUUID().toString();
+
+    jdbcTemplate.update("INSERT INTO iam_revoked_access_token (jti, expiration) VALUES (?, ?)",
+        jti, DateUtils.addMinutes(new Date(), 10));
+    assertThat(denyList.isDenied(jti), is(false));
+
+    denyList.refresh();
+    assertThat(denyList.isDenied(jti), is(true));
+  }
+}
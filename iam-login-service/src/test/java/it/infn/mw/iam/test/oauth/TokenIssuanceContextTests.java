@@ -0,0 +1,96 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.test.oauth;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Optional;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import it.infn.mw.iam.core.oauth.issuance.TokenIssuanceContext;
+import it.infn.mw.iam.persistence.model.IamAccount;
+import it.infn.mw.iam.persistence.repository.IamAccountRepository;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TokenIssuanceContextTests {
+
+  public static final String USERNAME = "test";
+  public static final String UUID = "80e5fb8d-b7c8-451a-89ba-346ae278a66f";
+
+  @Mock
+  IamAccountRepository repo;
+
+  @After
+  public void cleanup() {
+    while (TokenIssuanceContext.current().isPresent()) {
+      TokenIssuanceContext.exit();
+    }
+  }
+
+  @Test
+  public void noContextOutsideIssuance() {
+    assertThat(TokenIssuanceContext.current().isPresent(), is(false));
+  }
+
+  @Test
+  public void accountIsLoadedOncePerContext() {
+    IamAccount account = IamAccount.newAccount();
+    account.setUsername(USERNAME);
+    account.setUuid(UUID);
+
+    when(repo.findByUsernameWithGroups(USERNAME)).thenReturn(Optional.of(account));
+
+    TokenIssuanceContext context = TokenIssuanceContext.enter();
+
+    Optional<IamAccount> first =
+        context.getAccountByUsername(USERNAME, repo::findByUsernameWithGroups);
+    Optional<IamAccount> second =
+        context.getAccountByUsername(USERNAME, repo::findByUsernameWithGroups);
+    Optional<IamAccount> byUuid = context.getAccountByUuid(UUID, repo::findByUuidWithGroups);
+
+    assertThat(first.get(), sameInstance(account));
+    assertThat(second.get(), sameInstance(account));
+    assertThat(byUuid.get(), sameInstance(account));
+
+    verify(repo, times(1)).findByUsernameWithGroups(USERNAME);
+    verify(repo, never()).findByUuidWithGroups(UUID);
+  }
+
+  @Test
+  public void nestedContextsAreClearedByOutermostExit() {
+    TokenIssuanceContext outer = TokenIssuanceContext.enter();
+    TokenIssuanceContext inner = TokenIssuanceContext.enter();
+
+    assertThat(inner, sameInstance(outer));
+
+    TokenIssuanceContext.exit();
+    assertThat(TokenIssuanceContext.current().isPresent(), is(true));
+
+    TokenIssuanceContext.exit();
+    assertThat(TokenIssuanceContext.current().isPresent(), is(false));
+  }
+}
@@ -25,6 +25,9 @@ import static java.util.Collections.emptyMap;
 import static java.util.stream.Collectors.toSet;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.util.Arrays;
@@ -48,6 +51,7 @@ import it.infn.mw.iam.core.oauth.scope.matchers.StringEqualsScopeMatcher;
 import it.infn.mw.iam.persistence.model.IamClientMatchingPolicy;
 import it.infn.mw.iam.persistence.model.IamTokenExchangePolicyEntity;
 import it.infn.mw.iam.persistence.repository.IamTokenExchangePolicyRepository;
+import it.infn.mw.iam.persistence.repository.IamTokenExchangePolicyVersionProjection;
 
 @SuppressWarnings("deprecation")
 @RunWith(MockitoJUnitRunner.class)
@@ -313,4 +317,64 @@ public class TokenExchangePdPTests extends TokenExchangePdpTestSupport {
     assertThat(result.message().isPresent(), is(true));
     assertThat(result.message().get(), is("scope exchange not allowed by policy"));
   }
+
+  @Test
+  public void indexedLookupSelectsHighestRankedApplicablePolicy() {
+    when(destinationClient.getClientId()).thenReturn(DESTINATION_CLIENT_ID);
+
+    IamTokenExchangePolicyEntity p1 = buildPermitExamplePolicy(1L, "Allow all exchanges");
+
+    IamTokenExchangePolicyEntity p2 = buildDenyExamplePolicy(2L, "Deny exchanges to another");
+    p2.setOriginClient(buildByIdClientMatcher(ORIGIN_CLIENT_ID));
+    p2.setDestinationClient(buildByIdClientMatcher("another"));
+
+    IamTokenExchangePolicyEntity p3 = buildDenyExamplePolicy(3L, "Deny exchanges from s9");
+    p3.setOriginClient(buildByScopeClientMatcher("s9"));
+    p3.setDestinationClient(buildByIdClientMatcher(DESTINATION_CLIENT_ID));
+
+    IamTokenExchangePolicyEntity p4 =
+        buildPermitExamplePolicy(4L, "Allow exchanges from s1 to destination");
+    p4.setOriginClient(buildByScopeClientMatcher("s1"));
+    p4.setDestinationClient(buildByIdClientMatcher(DESTINATION_CLIENT_ID));
+
+    when(repo.findAll()).thenReturn(asList(p1, p2, p3, p4));
+    pdp.reloadPolicies();
+
+    TokenExchangePdpResult result =
+        pdp.validateTokenExchange(request, originClient, destinationClient);
+
+    assertThat(result.decision(), is(Decision.PERMIT));
+    assertThat(result.policy().isPresent(), is(true));
+    assertThat(result.policy().get().getId(), is(4L));
+  }
+
+  @Test
+  public void policiesAreReloadedOnlyWhenChanged() {
+    IamTokenExchangePolicyVersionProjection v1 =
+        mock(IamTokenExchangePolicyVersionProjection.class);
+    when(v1.getPolicyCount()).thenReturn(0L);
+
+    IamTokenExchangePolicyVersionProjection v2 =
+        mock(IamTokenExchangePolicyVersionProjection.class);
+    when(v2.getPolicyCount()).thenReturn(1L);
+    when(v2.getMaxId()).thenReturn(1L);
+
+    when(repo.findPoliciesVersion()).thenReturn(v1);
+    pdp.reloadPolicies();
+
+    pdp.reloadPoliciesIfChanged();
+    verify(repo, times(2)).findAll();
+
+    IamTokenExchangePolicyEntity pe = buildPermitExamplePolicy(1L, "Allow all exchanges");
+    when(repo.findAll()).thenReturn(asList(pe));
+    when(repo.findPoliciesVersion()).thenReturn(v2);
+
+    pdp.reloadPoliciesIfChanged();
+    verify(repo, times(3)).findAll();
+
+    TokenExchangePdpResult result =
+        pdp.validateTokenExchange(request, originClient, destinationClient);
+
+    assertThat(result.decision(), is(Decision.PERMIT));
+  }
 }
@@ -0,0 +1,131 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.test.oauth.introspection;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.springframework.http.MediaType.APPLICATION_FORM_URLENCODED;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.httpBasic;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mitre.oauth2.service.OAuth2TokenEntityService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import it.infn.mw.iam.IamLoginService;
+import it.infn.mw.iam.core.oauth.introspection.IntrospectionResponseCache;
+import it.infn.mw.iam.persistence.repository.IamOAuthAccessTokenRepository;
+import it.infn.mw.iam.test.oauth.EndpointsTestUtils;
+import it.infn.mw.iam.test.util.annotation.IamMockMvcIntegrationTest;
+
+@RunWith(SpringRunner.class)
+@IamMockMvcIntegrationTest
+@SpringBootTest(classes = {IamLoginService.class}, webEnvironment = WebEnvironment.MOCK)
+@TestPropertySource(properties = {"iam.access_token.introspection_cache_enabled=true",
+    "iam.access_token.introspection_cache_revalidation_secs=0"})
+public class IntrospectionCacheTests extends EndpointsTestUtils {
+
+  private static final String ENDPOINT = "/introspect";
+  private static final String REVOKE_ENDPOINT = "/revoke";
+  private static final String CLIENT_ID = "password-grant";
+  private static final String CLIENT_SECRET = "secret";
+
+  @Autowired
+  private IntrospectionResponseCache responseCache;
+
+  @Autowired
+  private OAuth2TokenEntityService tokenService;
+
+  @Autowired
+  private IamOAuthAccessTokenRepository accessTokenRepo;
+
+  @Before
+  public void setup() {
+    responseCache.invalidateAll();
+  }
+
+  private void introspect(String token, boolean active) throws Exception {
+    // @formatter:off
+    mvc.perform(post(ENDPOINT)
+        .with(httpBasic(CLIENT_ID, CLIENT_SECRET))
+        .param("token", token))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.active", equalTo(active)));
+    // @formatter:on
+  }
+
+  @Test
+  public void introspectionResponseIsCached() throws Exception {
+    String accessToken = getPasswordAccessToken();
+
+    introspect(accessToken, true);
+    assertThat(responseCache.getSize(), greaterThan(0L));
+
+    // @formatter:off
+    mvc.perform(post(ENDPOINT)
+        .with(httpBasic(CLIENT_ID, CLIENT_SECRET))
+        .param("token", accessToken))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.active", equalTo(true)))
+      .andExpect(jsonPath("$.preferred_username", equalTo("test")));
+    // @formatter:on
+  }
+
+  @Test
+  public void revokedTokenIsInactive() throws Exception {
+    String accessToken = getPasswordAccessToken();
+
+    introspect(accessToken, true);
+
+    // @formatter:off
+    mvc.perform(post(REVOKE_ENDPOINT)
+        .with(httpBasic(CLIENT_ID, CLIENT_SECRET))
+        .contentType(APPLICATION_FORM_URLENCODED)
+        .param("token", accessToken))
+      .andExpect(status().isOk());
+    // @formatter:on
+
+    introspect(accessToken, false);
+  }
+
+  @Test
+  public void tokenRemovedFromTheStoreIsInactive() throws Exception {
+    String accessToken = getPasswordAccessToken();
+
+    introspect(accessToken, true);
+    assertThat(responseCache.getSize(), greaterThan(0L));
+
+    // Simulates a removal that does not go through the revocation endpoint, e.g. the token
+    // cleanup or a removal done by another IAM instance
+    accessTokenRepo.delete(tokenService.readAccessToken(accessToken));
+
+    introspect(accessToken, false);
+  }
+
+  @Test
+  public void malformedTokenIsInactive() throws Exception {
+    introspect("not-a-jwt", false);
+  }
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.test.oauth.introspection;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Date;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.infn.mw.iam.config.IamProperties;
+import it.infn.mw.iam.core.oauth.introspection.IntrospectionResponseCache;
+import it.infn.mw.iam.persistence.repository.IamOAuthAccessTokenRepository;
+
+public class IntrospectionResponseCacheTests {
+
+  public static final Instant NOW = Instant.parse("2024-01-01T00:00:00.00Z");
+  public static final String TOKEN = "token";
+  public static final String CLIENT_ID = "client";
+  public static final Map<String, Object> RESPONSE = Map.of("active", true);
+
+  Clock clock = mock(Clock.class);
+  IamOAuthAccessTokenRepository accessTokenRepo = mock(IamOAuthAccessTokenRepository.class);
+
+  IntrospectionResponseCache cache;
+
+  Instant now = NOW;
+
+  @Before
+  public void setup() {
+    IamProperties properties = new IamProperties();
+    properties.getAccessToken().setIntrospectionCacheEnabled(true);
+    properties.getAccessToken().setIntrospectionCacheRevalidationSecs(5);
+
+    when(clock.instant()).thenAnswer(i -> now);
+    cache = new IntrospectionResponseCache(clock, accessTokenRepo, properties,
+        new SimpleMeterRegistry());
+    cache.putResponse(TOKEN, Date.from(NOW.plusSeconds(3600)), CLIENT_ID, RESPONSE);
+  }
+
+  @Test
+  public void hitsWithinTheRevalidationIntervalDoNotQueryTheTokenStore() {
+
+    now = NOW.plusSeconds(4);
+    assertThat(cache.getResponse(TOKEN, CLIENT_ID).isPresent(), is(true));
+    assertThat(cache.getResponse(TOKEN, CLIENT_ID).isPresent(), is(true));
+
+    verify(accessTokenRepo, times(0)).countByTokenValue(anyString());
+  }
+
+  @Test
+  public void tokenIsRevalidatedOncePerInterval() {
+    when(accessTokenRepo.countByTokenValue(anyString())).thenReturn(1L);
+
+    now = NOW.plusSeconds(5);
+    assertThat(cache.getResponse(TOKEN, CLIENT_ID).isPresent(), is(true));
+    assertThat(cache.getResponse(TOKEN, CLIENT_ID).isPresent(), is(true));
+
+    now = NOW.plusSeconds(9);
+    assertThat(cache.getResponse(TOKEN, CLIENT_ID).isPresent(), is(true));
+
+    verify(accessTokenRepo, times(1)).countByTokenValue(anyString());
+  }
+
+  @Test
+  public void tokenRemovedFromTheStoreIsEvictedOnRevalidation() {
+    when(accessTokenRepo.countByTokenValue(anyString())).thenReturn(0L);
+
+    now = NOW.plusSeconds(5);
+    assertThat(cache.getResponse(TOKEN, CLIENT_ID).isPresent(), is(false));
+    assertThat(cache.getSize(), is(0L));
+  }
+
+  @Test
+  public void tokenRevokedOnThisInstanceIsEvictedAtOnce() {
+    cache.revoke(TOKEN);
+
+    assertThat(cache.getResponse(TOKEN, CLIENT_ID).isPresent(), is(false));
+    verify(accessTokenRepo, times(0)).countByTokenValue(anyString());
+  }
+}
@@ -0,0 +1,165 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.test.oauth.jwk;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.springframework.test.web.client.ExpectedCount.never;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mitre.jwt.signer.service.JWTSigningAndValidationService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.infn.mw.iam.core.jwk.IamJWKSetCacheService;
+import it.infn.mw.iam.test.util.oidc.MockRestTemplateFactory;
+
+public class IamJWKSetCacheServiceTests {
+
+  public static final String JWK_URL = "https://client.example/jwk";
+
+  MockRestTemplateFactory rtf = new MockRestTemplateFactory();
+  SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  Clock clock = Clock.fixed(Instant.parse("2023-01-01T00:00:00Z"), ZoneId.systemDefault());
+
+  IamJWKSetCacheService service;
+
+  RSAKey oldKey;
+  RSAKey newKey;
+
+  @Before
+  public void setup() throws JOSEException {
+    service = new IamJWKSetCacheService(rtf, 10, 3600, 86400, 60, TimeUnit.SECONDS,
+        meterRegistry, clock);
+
+    oldKey = new RSAKeyGenerator(2048).keyID("old").generate();
+    newKey = new RSAKeyGenerator(2048).keyID("new").generate();
+  }
+
+  @After
+  public void cleanup() {
+    service.destroy();
+  }
+
+  private void expectJwkSet(RSAKey... keys) {
+    rtf.getMockServer()
+      .expect(requestTo(JWK_URL))
+      .andRespond(withSuccess(new JWKSet(List.<JWK>of(keys)).toString(),
+          MediaType.APPLICATION_JSON));
+  }
+
+  private SignedJWT signedJwt(RSAKey key) throws JOSEException {
+    JWTClaimsSet claims = new JWTClaimsSet.Builder().subject("client")
+      .expirationTime(Date.from(clock.instant().plusSeconds(60)))
+      .build();
+
+    SignedJWT jwt =
+        new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(key.getKeyID()).build(),
+            claims);
+    jwt.sign(new RSASSASigner(key));
+    return jwt;
+  }
+
+  @Test
+  public void failedFetchIsCountedAndReturnsNull() {
+    rtf.getMockServer()
+      .expect(requestTo(JWK_URL))
+      .andRespond(withStatus(HttpStatus.INTERNAL_SERVER_ERROR));
+
+    assertThat(service.getValidator(JWK_URL), nullValue());
+    rtf.getMockServer().verify();
+
+    assertThat(meterRegistry.counter(IamJWKSetCacheService.FETCH_FAILURES_COUNTER).count(),
+        is(1.0));
+    assertThat(meterRegistry.timer(IamJWKSetCacheService.FETCH_TIMER).count(), is(1L));
+  }
+
+  @Test
+  public void keySetIsFetchedOnce() throws JOSEException {
+    expectJwkSet(oldKey);
+
+    assertThat(service.getValidator(JWK_URL), notNullValue());
+    assertThat(service.getValidator(JWK_URL).validateSignature(signedJwt(oldKey)), is(true));
+
+    rtf.getMockServer().verify();
+  }
+
+  @Test
+  public void unknownKeyIdTriggersRateLimitedRefresh() throws JOSEException {
+    expectJwkSet(oldKey);
+
+    JWTSigningAndValidationService validator = service.getValidator(JWK_URL);
+    rtf.getMockServer().verify();
+
+    rtf.resetTemplate();
+    expectJwkSet(oldKey, newKey);
+
+    assertThat(validator.validateSignature(signedJwt(newKey)), is(true));
+    rtf.getMockServer().verify();
+
+    assertThat(service.getValidator(JWK_URL).getAllPublicKeys().containsKey("new"), is(true));
+    assertThat(meterRegistry.counter(IamJWKSetCacheService.FORCED_REFRESH_COUNTER).count(),
+        is(1.0));
+
+    rtf.resetTemplate();
+    rtf.getMockServer().expect(never(), requestTo(JWK_URL));
+
+    RSAKey unknownKey = new RSAKeyGenerator(2048).keyID("unknown").generate();
+    assertThat(validator.validateSignature(signedJwt(unknownKey)), is(false));
+    rtf.getMockServer().verify();
+  }
+
+  @Test
+  public void invalidSignatureWithKnownKeyIdDoesNotTriggerRefresh() throws JOSEException {
+    expectJwkSet(oldKey);
+
+    JWTSigningAndValidationService validator = service.getValidator(JWK_URL);
+    rtf.getMockServer().verify();
+
+    rtf.resetTemplate();
+    rtf.getMockServer().expect(never(), requestTo(JWK_URL));
+
+    RSAKey forgedKey = new RSAKeyGenerator(2048).keyID("old").generate();
+    assertThat(validator.validateSignature(signedJwt(forgedKey)), is(false));
+    rtf.getMockServer().verify();
+  }
+}
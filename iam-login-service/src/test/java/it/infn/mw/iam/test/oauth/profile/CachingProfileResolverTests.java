@@ -0,0 +1,85 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.test.oauth.profile;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mitre.oauth2.model.ClientDetailsEntity;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import it.infn.mw.iam.audit.events.client.ClientUpdatedEvent;
+import it.infn.mw.iam.core.oauth.profile.CachingJWTProfileResolver;
+import it.infn.mw.iam.core.oauth.profile.JWTProfile;
+import it.infn.mw.iam.core.oauth.profile.JWTProfileResolver;
+
+@RunWith(MockitoJUnitRunner.class)
+public class CachingProfileResolverTests {
+
+  public static final String CLIENT_ID = "client";
+
+  @Mock
+  JWTProfileResolver delegate;
+
+  @Mock
+  JWTProfile iamProfile;
+
+  @Mock
+  JWTProfile wlcgProfile;
+
+  CachingJWTProfileResolver profileResolver;
+
+  @Before
+  public void setup() {
+    profileResolver = new CachingJWTProfileResolver(delegate, 10, 300);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void emptyClientIdThrowsException() {
+    profileResolver.resolveProfile("");
+  }
+
+  @Test
+  public void resolvedProfileIsCached() {
+    when(delegate.resolveProfile(CLIENT_ID)).thenReturn(iamProfile);
+
+    assertThat(profileResolver.resolveProfile(CLIENT_ID), is(iamProfile));
+    assertThat(profileResolver.resolveProfile(CLIENT_ID), is(iamProfile));
+
+    verify(delegate, times(1)).resolveProfile(CLIENT_ID);
+  }
+
+  @Test
+  public void clientEventEvictsCachedProfile() {
+    when(delegate.resolveProfile(CLIENT_ID)).thenReturn(iamProfile, wlcgProfile);
+
+    assertThat(profileResolver.resolveProfile(CLIENT_ID), is(iamProfile));
+
+    ClientDetailsEntity client = new ClientDetailsEntity();
+    client.setClientId(CLIENT_ID);
+    profileResolver.handleClientEvent(new ClientUpdatedEvent(this, client));
+
+    assertThat(profileResolver.resolveProfile(CLIENT_ID), is(wlcgProfile));
+    verify(delegate, times(2)).resolveProfile(CLIENT_ID);
+  }
+}
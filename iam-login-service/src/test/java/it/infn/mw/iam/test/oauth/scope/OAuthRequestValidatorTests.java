@@ -18,6 +18,8 @@ package it.infn.mw.iam.test.oauth.scope;
 import static com.google.common.collect.Sets.newHashSet;
 import static it.infn.mw.iam.core.oauth.scope.matchers.StringEqualsScopeMatcher.stringEqualsMatcher;
 import static it.infn.mw.iam.core.oauth.scope.matchers.StructuredPathScopeMatcher.structuredPathMatcher;
+import static org.mockito.ArgumentMatchers.anySet;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.when;
 
 import org.junit.Before;
@@ -33,6 +35,7 @@ import org.springframework.security.oauth2.provider.TokenRequest;
 
 import com.google.common.collect.Sets;
 
+import it.infn.mw.iam.core.oauth.scope.matchers.ScopeMatcherIndex;
 import it.infn.mw.iam.core.oauth.scope.matchers.ScopeMatcherOAuthRequestValidator;
 import it.infn.mw.iam.core.oauth.scope.matchers.ScopeMatcherRegistry;
 
@@ -62,6 +65,8 @@ public class OAuthRequestValidatorTests {
     authzRequest.setScope(Sets.newHashSet("openid"));
     when(registry.findMatchersForClient(client))
       .thenReturn(newHashSet(stringEqualsMatcher("openid"), stringEqualsMatcher("profile")));
+    when(registry.findMatcherIndexForClient(eq(client), anySet()))
+      .thenAnswer(invocation -> ScopeMatcherIndex.of(invocation.getArgument(1)));
     validator = new ScopeMatcherOAuthRequestValidator(registry);
   }
 
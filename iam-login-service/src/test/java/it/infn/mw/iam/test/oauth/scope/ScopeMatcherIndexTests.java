@@ -0,0 +1,75 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.test.oauth.scope;
+
+import static com.google.common.collect.Sets.newHashSet;
+import static it.infn.mw.iam.core.oauth.scope.matchers.RegexpScopeMatcher.regexpMatcher;
+import static it.infn.mw.iam.core.oauth.scope.matchers.StringEqualsScopeMatcher.stringEqualsMatcher;
+import static it.infn.mw.iam.core.oauth.scope.matchers.StructuredPathScopeMatcher.structuredPathMatcher;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+
+import java.util.Set;
+
+import org.junit.Test;
+
+import it.infn.mw.iam.core.oauth.scope.matchers.ScopeMatcher;
+import it.infn.mw.iam.core.oauth.scope.matchers.ScopeMatcherIndex;
+
+public class ScopeMatcherIndexTests {
+
+  private final Set<ScopeMatcher> matchers = newHashSet(stringEqualsMatcher("openid"),
+      structuredPathMatcher("storage.read", "/"), structuredPathMatcher("storage.read", "/home"),
+      structuredPathMatcher("storage.create", "/home/test"), regexpMatcher("^wlcg(:1.0)?$"));
+
+  private final ScopeMatcherIndex index = ScopeMatcherIndex.of(matchers);
+
+  @Test
+  public void testIndexAgreesWithMatchers() {
+
+    String[] scopes = {"openid", "profile", "wlcg", "wlcg:1.0", "storage.read", "storage.read:",
+        "storage.read:/", "storage.read:/home", "storage.read:/home/test", "storage.create:/",
+        "storage.create:/home", "storage.create:/home/test", "storage.create:/home/test/sub",
+        "storage.modify:/home/test", "storageXread:/home"};
+
+    for (String s : scopes) {
+      boolean expected = matchers.stream().anyMatch(m -> m.matches(s));
+      assertThat(s, index.matches(s), is(expected));
+    }
+  }
+
+  @Test
+  public void testFindMatchers() {
+
+    assertThat(index.findMatchers("storage.read:/home/test"), containsInAnyOrder(
+        structuredPathMatcher("storage.read", "/"), structuredPathMatcher("storage.read", "/home")));
+
+    assertThat(index.findMatchers("storage.create:/home/test/sub"),
+        containsInAnyOrder(structuredPathMatcher("storage.create", "/home/test")));
+
+    assertThat(index.findMatchers("openid"), containsInAnyOrder(stringEqualsMatcher("openid")));
+    assertThat(index.findMatchers("wlcg:1.0"), containsInAnyOrder(regexpMatcher("^wlcg(:1.0)?$")));
+    assertThat(index.findMatchers("storage.create:/home"), empty());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRelativePathsAreRejected() {
+    index.matches("storage.read:/home/../etc");
+  }
+
+}
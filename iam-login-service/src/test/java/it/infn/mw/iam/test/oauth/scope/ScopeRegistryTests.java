@@ -22,9 +22,13 @@ import static it.infn.mw.iam.core.oauth.scope.matchers.StructuredPathScopeMatche
 import static java.util.Collections.emptySet;
 import static org.hamcrest.CoreMatchers.hasItem;
 import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.util.Set;
@@ -42,6 +46,8 @@ import com.google.common.collect.Sets;
 
 import it.infn.mw.iam.core.oauth.scope.matchers.DefaultScopeMatcherRegistry;
 import it.infn.mw.iam.core.oauth.scope.matchers.ScopeMatcher;
+import it.infn.mw.iam.core.oauth.scope.matchers.ScopeMatcherIndex;
+import it.infn.mw.iam.core.oauth.scope.matchers.SystemScopeIndex;
 
 @SuppressWarnings("deprecation")
 @RunWith(MockitoJUnitRunner.class)
@@ -109,4 +115,64 @@ public class ScopeRegistryTests {
     assertThat(matchers, hasItem(stringEqualsMatcher("storage.create:/whatever")));
   }
 
+  @Test
+  public void testSystemScopesAreMatchedByExactName() {
+
+    DefaultScopeMatcherRegistry matcherRegistry =
+        new DefaultScopeMatcherRegistry(newHashSet(regexpMatcher("^test:/.*$")), scopeRepo);
+
+    when(client.getScope()).thenReturn(Sets.newHashSet("test:/what", "test:/whatever"));
+    Set<ScopeMatcher> matchers = matcherRegistry.findMatchersForClient(client);
+
+    assertThat(matchers, hasSize(2));
+    assertThat(matchers, hasItem(stringEqualsMatcher("test:/what")));
+    assertThat(matchers, hasItem(regexpMatcher("^test:/.*$")));
+  }
+
+  @Test
+  public void testSystemScopesAreLoadedOnceUntilInvalidated() {
+
+    SystemScopeIndex index = new SystemScopeIndex(scopeRepo);
+    DefaultScopeMatcherRegistry matcherRegistry =
+        new DefaultScopeMatcherRegistry(newHashSet(regexpMatcher("^test:/.*$")), index);
+
+    when(client.getScope()).thenReturn(Sets.newHashSet("openid", "profile", "test:/whatever"));
+    matcherRegistry.findMatchersForClient(client);
+    matcherRegistry.findMatchersForClient(client);
+    matcherRegistry.findMatcherForScope("test:/whatever");
+
+    verify(scopeRepo, times(1)).getAll();
+
+    index.invalidate();
+    matcherRegistry.findMatcherForScope("test:/whatever");
+
+    verify(scopeRepo, times(2)).getAll();
+  }
+
+  @Test
+  public void testClientMatcherIndexIsReusedUntilMatchersChange() {
+
+    DefaultScopeMatcherRegistry matcherRegistry =
+        new DefaultScopeMatcherRegistry(newHashSet(regexpMatcher("^test:/.*$")), scopeRepo);
+
+    when(client.getClientId()).thenReturn("client");
+    when(client.getScope()).thenReturn(Sets.newHashSet("openid", "test:/whatever"));
+
+    ScopeMatcherIndex index = matcherRegistry.findMatcherIndexForClient(client,
+        matcherRegistry.findMatchersForClient(client));
+
+    assertThat(index.matches("test:/other"), is(true));
+    assertThat(matcherRegistry.findMatcherIndexForClient(client,
+        matcherRegistry.findMatchersForClient(client)), sameInstance(index));
+
+    when(client.getScope()).thenReturn(Sets.newHashSet("openid"));
+
+    ScopeMatcherIndex updatedIndex = matcherRegistry.findMatcherIndexForClient(client,
+        matcherRegistry.findMatchersForClient(client));
+
+    assertThat(updatedIndex, not(sameInstance(index)));
+    assertThat(updatedIndex.matches("test:/other"), is(false));
+    assertThat(updatedIndex.matches("openid"), is(true));
+  }
+
 }
@@ -0,0 +1,166 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.test.oauth.scope.pdp;
+
+import static it.infn.mw.iam.persistence.model.IamScopePolicy.MatchingPolicy.EQ;
+import static it.infn.mw.iam.persistence.model.IamScopePolicy.MatchingPolicy.PATH;
+import static it.infn.mw.iam.persistence.model.IamScopePolicy.MatchingPolicy.REGEXP;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+import org.springframework.security.oauth2.common.exceptions.InvalidScopeException;
+
+import com.google.common.collect.Sets;
+
+import it.infn.mw.iam.core.oauth.scope.pdp.CompiledScopePolicySet;
+import it.infn.mw.iam.core.oauth.scope.pdp.ScopePolicySnapshot;
+
+@SuppressWarnings("deprecation")
+public class CompiledScopePolicyTests {
+
+  static final Long ACCOUNT_ID = 1L;
+  static final Long GROUP_ID = 10L;
+  static final Long OTHER_GROUP_ID = 11L;
+
+  static final Set<String> NO_SCOPES = Collections.emptySet();
+
+  private ScopePolicySnapshot snapshot(CompiledScopePolicySet defaultPolicies,
+      Map<Long, CompiledScopePolicySet> accountPolicies,
+      Map<Long, CompiledScopePolicySet> groupPolicies) {
+    return new ScopePolicySnapshot(1L, defaultPolicies, accountPolicies, groupPolicies);
+  }
+
+  private CompiledScopePolicySet.Builder policies() {
+    return new CompiledScopePolicySet.Builder();
+  }
+
+  @Test
+  public void testDefaultPermitAllPolicy() {
+    ScopePolicySnapshot s = snapshot(policies().addPolicy(true, EQ, NO_SCOPES).build(),
+        Collections.emptyMap(), Collections.emptyMap());
+
+    assertThat(s.allowedScopes(Sets.newHashSet("openid", "profile"), ACCOUNT_ID, List.of()),
+        containsInAnyOrder("openid", "profile"));
+  }
+
+  @Test
+  public void testDenyOverridesPermitInSamePolicySet() {
+    CompiledScopePolicySet defaults = policies().addPolicy(true, EQ, NO_SCOPES)
+      .addPolicy(false, EQ, Set.of("scim:write"))
+      .addPolicy(false, REGEXP, Set.of("^iam:admin\\..*$"))
+      .build();
+
+    ScopePolicySnapshot s = snapshot(defaults, Collections.emptyMap(), Collections.emptyMap());
+
+    assertThat(s.allowedScopes(Sets.newHashSet("openid", "scim:write", "iam:admin.read"),
+        ACCOUNT_ID, List.of()), containsInAnyOrder("openid"));
+  }
+
+  @Test
+  public void testAccountPoliciesOverrideGroupAndDefaultPolicies() {
+    CompiledScopePolicySet defaults =
+        policies().addPolicy(true, EQ, NO_SCOPES).addPolicy(false, EQ, Set.of("scim:read")).build();
+
+    CompiledScopePolicySet group = policies().addPolicy(false, EQ, Set.of("profile")).build();
+    CompiledScopePolicySet account =
+        policies().addPolicy(true, EQ, Set.of("scim:read", "profile")).build();
+
+    ScopePolicySnapshot s =
+        snapshot(defaults, Map.of(ACCOUNT_ID, account), Map.of(GROUP_ID, group));
+
+    Set<String> requested = Sets.newHashSet("openid", "profile", "scim:read");
+
+    assertThat(s.allowedScopes(requested, ACCOUNT_ID, List.of(GROUP_ID)),
+        containsInAnyOrder("openid", "profile", "scim:read"));
+
+    assertThat(s.allowedScopes(requested, 2L, List.of(GROUP_ID)), containsInAnyOrder("openid"));
+  }
+
+  @Test
+  public void testGroupPoliciesAreComposedWithDenyOverrides() {
+    CompiledScopePolicySet group = policies().addPolicy(true, EQ, Set.of("scim:read")).build();
+    CompiledScopePolicySet otherGroup =
+        policies().addPolicy(false, EQ, Set.of("scim:read")).build();
+
+    ScopePolicySnapshot s = snapshot(policies().addPolicy(true, EQ, NO_SCOPES).build(),
+        Collections.emptyMap(), Map.of(GROUP_ID, group, OTHER_GROUP_ID, otherGroup));
+
+    assertThat(s.allowedScopes(Sets.newHashSet("scim:read"), ACCOUNT_ID, List.of(GROUP_ID)),
+        containsInAnyOrder("scim:read"));
+
+    assertThat(s.allowedScopes(Sets.newHashSet("scim:read"), ACCOUNT_ID,
+        List.of(GROUP_ID, OTHER_GROUP_ID)), empty());
+  }
+
+  @Test
+  public void testPathPolicies() {
+    CompiledScopePolicySet defaults = policies().addPolicy(true, EQ, NO_SCOPES)
+      .addPolicy(false, PATH, Set.of("storage.read:/"))
+      .addPolicy(true, PATH, Set.of("storage.read:/public"))
+      .build();
+
+    CompiledScopePolicySet account =
+        policies().addPolicy(true, PATH, Set.of("storage.read:/home/test")).build();
+
+    ScopePolicySnapshot s =
+        snapshot(defaults, Map.of(ACCOUNT_ID, account), Collections.emptyMap());
+
+    Set<String> requested = Sets.newHashSet("openid", "storage.read:/", "storage.read:/public",
+        "storage.read:/home/test/data", "storage.read:/home/other", "storage.write:/");
+
+    assertThat(s.allowedScopes(requested, ACCOUNT_ID, List.of()),
+        containsInAnyOrder("openid", "storage.read:/home/test/data", "storage.write:/"));
+  }
+
+  @Test(expected = InvalidScopeException.class)
+  public void testPathPoliciesRejectRelativePaths() {
+    CompiledScopePolicySet defaults =
+        policies().addPolicy(true, PATH, Set.of("storage.read:/")).build();
+
+    ScopePolicySnapshot s = snapshot(defaults, Collections.emptyMap(), Collections.emptyMap());
+
+    s.allowedScopes(Sets.newHashSet("storage.read:/../etc"), ACCOUNT_ID, List.of());
+  }
+
+  @Test(expected = InvalidScopeException.class)
+  public void testRelativePathsAreRejectedEvenIfDenied() {
+    CompiledScopePolicySet defaults =
+        policies().addPolicy(false, EQ, Set.of("storage.read:/../etc"))
+          .addPolicy(true, PATH, Set.of("storage.read:/"))
+          .build();
+
+    ScopePolicySnapshot s = snapshot(defaults, Collections.emptyMap(), Collections.emptyMap());
+
+    s.allowedScopes(Sets.newHashSet("storage.read:/../etc"), ACCOUNT_ID, List.of());
+  }
+
+  @Test(expected = InvalidScopeException.class)
+  public void testMisspelledPathPolicy() {
+    CompiledScopePolicySet defaults =
+        policies().addPolicy(true, PATH, Set.of("storage.read")).build();
+
+    ScopePolicySnapshot s = snapshot(defaults, Collections.emptyMap(), Collections.emptyMap());
+
+    s.allowedScopes(Sets.newHashSet("openid"), ACCOUNT_ID, List.of());
+  }
+}
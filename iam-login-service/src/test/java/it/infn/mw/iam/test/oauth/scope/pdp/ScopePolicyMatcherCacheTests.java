@@ -0,0 +1,115 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.test.oauth.scope.pdp;
+
+import static it.infn.mw.iam.persistence.model.IamScopePolicy.MatchingPolicy.EQ;
+import static it.infn.mw.iam.persistence.model.IamScopePolicy.MatchingPolicy.PATH;
+import static it.infn.mw.iam.persistence.model.IamScopePolicy.MatchingPolicy.REGEXP;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.infn.mw.iam.audit.events.scope_policy.ScopePolicyCreatedEvent;
+import it.infn.mw.iam.core.oauth.scope.pdp.ScopePolicyMatcherCache;
+import it.infn.mw.iam.core.oauth.scope.pdp.ScopePolicyPdpProperties;
+import it.infn.mw.iam.persistence.model.IamScopePolicy;
+import it.infn.mw.iam.persistence.model.IamScopePolicy.MatchingPolicy;
+import it.infn.mw.iam.persistence.repository.IamScopePolicyRepository;
+import it.infn.mw.iam.persistence.repository.IamScopePolicyScopeProjection;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ScopePolicyMatcherCacheTests {
+
+  @Mock
+  IamScopePolicyRepository policyRepo;
+
+  ScopePolicyPdpProperties properties = new ScopePolicyPdpProperties();
+
+  SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  ScopePolicyMatcherCache cache;
+
+  private IamScopePolicyScopeProjection policyScope(MatchingPolicy type, String scope) {
+    IamScopePolicyScopeProjection p = mock(IamScopePolicyScopeProjection.class);
+    when(p.getMatchingPolicy()).thenReturn(type);
+    when(p.getScope()).thenReturn(scope);
+    return p;
+  }
+
+  @Before
+  public void setup() {
+    cache = new ScopePolicyMatcherCache(policyRepo, properties, meterRegistry);
+  }
+
+  @Test
+  public void testWarmUpLoadsRegexpAndPathMatchers() throws Exception {
+    when(policyRepo.findAllPolicyScopes()).thenReturn(List.of(policyScope(EQ, "openid"),
+        policyScope(REGEXP, "^storage\\..*$"), policyScope(PATH, "storage.read:/")));
+
+    cache.warmUp();
+
+    assertThat(cache.getSize(), is(2L));
+
+    assertThat(cache.regexpScopeMatcher("^storage\\..*$").matches("storage.read:/"), is(true));
+    assertThat(cache.pathScopeMatcher("storage.read:/").matches("storage.read:/data"), is(true));
+
+    assertThat(cache.getStats().hitCount(), is(2L));
+    assertThat(cache.getStats().missCount(), is(2L));
+  }
+
+  @Test
+  public void testPolicyEventCompilesOnlyThatPolicyScopes() throws Exception {
+    IamScopePolicy policy = new IamScopePolicy();
+    policy.setId(1L);
+    policy.setMatchingPolicy(PATH);
+    policy.setScopes(Set.of("storage.read:/", "storage.write:/home"));
+
+    cache.handleScopePolicyEvent(new ScopePolicyCreatedEvent(this, policy));
+
+    verifyNoInteractions(policyRepo);
+    assertThat(cache.getSize(), is(2L));
+    assertThat(cache.pathScopeMatcher("storage.write:/home").matches("storage.write:/home/test"),
+        is(true));
+    assertThat(cache.getStats().hitCount(), is(1L));
+  }
+
+  @Test
+  public void testMatchersOfDifferentTypesDoNotCollide() throws Exception {
+    assertThat(cache.regexpScopeMatcher("read:/").matches("read:/"), is(true));
+    assertThat(cache.pathScopeMatcher("read:/").matches("read:/data"), is(true));
+    assertThat(cache.getSize(), is(2L));
+  }
+
+  @Test
+  public void testCacheMetricsAreRegistered() {
+    assertThat(meterRegistry.find("cache.gets")
+      .tag("cache", ScopePolicyMatcherCache.CACHE_NAME)
+      .functionCounters()
+      .isEmpty(), is(false));
+  }
+}
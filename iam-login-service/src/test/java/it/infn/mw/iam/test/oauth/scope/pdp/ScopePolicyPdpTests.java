@@ -20,6 +20,7 @@ import static it.infn.mw.iam.persistence.model.IamScopePolicy.MatchingPolicy.PAT
 import static org.hamcrest.CoreMatchers.allOf;
 import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.hasItem;
+import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasItems;
@@ -42,6 +43,9 @@ import org.springframework.test.web.servlet.MockMvc;
 
 import com.google.common.collect.Sets;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import it.infn.mw.iam.core.oauth.issuance.TokenIssuanceContext;
+import it.infn.mw.iam.core.oauth.scope.pdp.DefaultScopeFilter;
 import it.infn.mw.iam.core.oauth.scope.pdp.ScopeFilter;
 import it.infn.mw.iam.persistence.model.IamAccount;
 import it.infn.mw.iam.persistence.model.IamAccountGroupMembership;
@@ -73,6 +77,9 @@ public class ScopePolicyPdpTests extends ScopePolicyTestUtils {
   @Autowired
   SystemScopeService scopeService;
 
+  @Autowired
+  MeterRegistry meterRegistry;
+
 
   IamAccount findTestAccount() {
     return accountRepo.findByUsername("test")
@@ -96,6 +103,47 @@ public class ScopePolicyPdpTests extends ScopePolicyTestUtils {
     assertThat(filteredScopes, hasItems("openid", "profile"));
   }
 
+  @Test
+  public void testDecisionsAreMemoizedWithinTokenIssuance() {
+
+    IamAccount testAccount = findTestAccount();
+
+    double evaluations = meterRegistry.counter(DefaultScopeFilter.PDP_EVALUATIONS_METRIC).count();
+    double hits = meterRegistry.counter(DefaultScopeFilter.PDP_MEMO_HITS_METRIC).count();
+
+    TokenIssuanceContext context = TokenIssuanceContext.enter();
+
+    try {
+      Set<String> filteredScopes =
+          pdp.filterScopes(Sets.newHashSet("openid", "profile", "scim:read"), testAccount);
+      assertThat(filteredScopes, hasSize(2));
+      assertThat(filteredScopes, hasItems("openid", "profile"));
+
+      IamScopePolicy up = initDenyScopePolicy();
+      up.linkAccount(testAccount);
+      up.getScopes().add(PROFILE);
+      policyScopeRepo.save(up);
+
+      filteredScopes = pdp.filterScopes(Sets.newHashSet("openid", "profile"), testAccount);
+      assertThat(filteredScopes, hasSize(2));
+      assertThat(filteredScopes, hasItems("openid", "profile"));
+
+      assertThat(context.getScopePolicyEvaluations(), is(1));
+    } finally {
+      TokenIssuanceContext.exit();
+    }
+
+    assertThat(meterRegistry.counter(DefaultScopeFilter.PDP_EVALUATIONS_METRIC).count(),
+        equalTo(evaluations + 1));
+    assertThat(meterRegistry.counter(DefaultScopeFilter.PDP_MEMO_HITS_METRIC).count(),
+        equalTo(hits + 1));
+
+    Set<String> filteredScopes =
+        pdp.filterScopes(Sets.newHashSet("openid", "profile"), testAccount);
+    assertThat(filteredScopes, hasSize(1));
+    assertThat(filteredScopes, hasItem("openid"));
+  }
+
   @Test
   public void testAccountPolicyIsEnforced() {
     IamAccount testAccount = findTestAccount();
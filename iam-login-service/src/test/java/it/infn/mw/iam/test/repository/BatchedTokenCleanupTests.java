@@ -0,0 +1,216 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.test.repository;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.persistence.EntityManager;
+
+import org.apache.commons.lang.time.DateUtils;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mitre.oauth2.model.ClientDetailsEntity;
+import org.mitre.oauth2.model.OAuth2AccessTokenEntity;
+import org.mitre.oauth2.service.ClientDetailsEntityService;
+import org.mitre.oauth2.service.impl.DefaultOAuth2ProviderTokenService;
+import org.mitre.openid.connect.model.ApprovedSite;
+import org.mitre.openid.connect.service.ApprovedSiteService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import it.infn.mw.iam.core.lock.TaskLockService;
+import it.infn.mw.iam.core.oauth.cleanup.BatchedTokenCleanupService;
+import it.infn.mw.iam.test.util.annotation.IamNoMvcTest;
+import it.infn.mw.iam.test.util.oauth.MockOAuth2Request;
+
+@SuppressWarnings("deprecation")
+@RunWith(SpringRunner.class)
+@IamNoMvcTest
+@TestPropertySource(
+    properties = {"task.token-cleanup.batch-size=2", "task.token-cleanup.batch-pause-msec=0"})
+public class BatchedTokenCleanupTests {
+
+  public static final String TEST_USER = "test_347";
+  public static final String TEST_CLIENT_ID = "token-lookup-client";
+  public static final String[] SCOPES = {"openid", "profile", "offline_access"};
+
+  @Autowired
+  private ClientDetailsEntityService clientDetailsService;
+
+  @Autowired
+  private DefaultOAuth2ProviderTokenService tokenService;
+
+  @Autowired
+  private ApprovedSiteService approvedSiteService;
+
+  @Autowired
+  private BatchedTokenCleanupService cleanupService;
+
+  @Autowired
+  private TaskLockService lockService;
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  @Autowired
+  private EntityManager em;
+
+  private OAuth2AccessTokenEntity buildAccessToken() {
+    ClientDetailsEntity client = clientDetailsService.loadClientByClientId(TEST_CLIENT_ID);
+
+    Map<String, String> requestParameters = new HashMap<>();
+    requestParameters.put("grant_type", "authorization_code");
+
+    MockOAuth2Request req = new MockOAuth2Request(client.getClientId(), SCOPES);
+    req.setRequestParameters(requestParameters);
+
+    return tokenService.createAccessToken(new OAuth2Authentication(req,
+        new UsernamePasswordAuthenticationToken(TEST_USER, "",
+            List.of(new SimpleGrantedAuthority("ROLE_USER")))));
+  }
+
+  private OAuth2AccessTokenEntity buildExpiredAccessToken() {
+    OAuth2AccessTokenEntity at = buildAccessToken();
+    Date yesterday = DateUtils.addDays(new Date(), -1);
+
+    at.setExpiration(yesterday);
+    at.getRefreshToken().setExpiration(yesterday);
+
+    tokenService.saveAccessToken(at);
+    tokenService.saveRefreshToken(at.getRefreshToken());
+    return at;
+  }
+
+  private long count(String table, String column, Long id) {
+    return jdbcTemplate.queryForObject(
+        "SELECT COUNT(*) FROM " + table + " WHERE " + column + " = ?", Long.class, id);
+  }
+
+  private boolean exists(String table, Long id) {
+    return count(table, "id", id) > 0;
+  }
+
+  private Long userAuthId(OAuth2AccessTokenEntity at) {
+    return at.getAuthenticationHolder().getUserAuth().getId();
+  }
+
+  private ApprovedSite buildApprovedSite(Date timeoutDate, OAuth2AccessTokenEntity at) {
+    ApprovedSite site = approvedSiteService.createApprovedSite(TEST_CLIENT_ID, TEST_USER,
+        timeoutDate, Set.of(SCOPES));
+
+    at.setApprovedSite(site);
+    tokenService.saveAccessToken(at);
+    return site;
+  }
+
+  @Test
+  public void expiredTokensAndOrphanedHoldersAreRemoved() {
+
+    OAuth2AccessTokenEntity expired1 = buildExpiredAccessToken();
+    OAuth2AccessTokenEntity expired2 = buildExpiredAccessToken();
+    OAuth2AccessTokenEntity expired3 = buildExpiredAccessToken();
+    OAuth2AccessTokenEntity valid = buildAccessToken();
+    em.flush();
+
+    for (OAuth2AccessTokenEntity at : List.of(expired1, expired2, expired3)) {
+      jdbcTemplate.update(
+          "INSERT INTO saved_user_auth_info (owner_id, info_key, info_val) VALUES (?, ?, ?)",
+          userAuthId(at), "key", "value");
+
+      assertThat(count("token_scope", "owner_id", at.getId()) > 0, is(true));
+      assertThat(count("saved_user_auth_authority", "owner_id", userAuthId(at)) > 0, is(true));
+    }
+
+    cleanupService.clearExpiredTokens();
+
+    for (OAuth2AccessTokenEntity at : List.of(expired1, expired2, expired3)) {
+      assertThat(exists("access_token", at.getId()), is(false));
+      assertThat(exists("refresh_token", at.getRefreshToken().getId()), is(false));
+      assertThat(exists("authentication_holder", at.getAuthenticationHolder().getId()), is(false));
+      assertThat(count("token_scope", "owner_id", at.getId()), is(0L));
+      assertThat(exists("saved_user_auth", userAuthId(at)), is(false));
+      assertThat(count("saved_user_auth_authority", "owner_id", userAuthId(at)), is(0L));
+      assertThat(count("saved_user_auth_info", "owner_id", userAuthId(at)), is(0L));
+    }
+
+    assertThat(exists("access_token", valid.getId()), is(true));
+    assertThat(exists("refresh_token", valid.getRefreshToken().getId()), is(true));
+    assertThat(exists("authentication_holder", valid.getAuthenticationHolder().getId()), is(true));
+    assertThat(count("token_scope", "owner_id", valid.getId()) > 0, is(true));
+    assertThat(exists("saved_user_auth", userAuthId(valid)), is(true));
+    assertThat(count("saved_user_auth_authority", "owner_id", userAuthId(valid)) > 0, is(true));
+  }
+
+  @Test
+  public void expiredApprovedSitesAndTheirTokensAreRemoved() {
+
+    OAuth2AccessTokenEntity expiredSiteToken = buildAccessToken();
+    OAuth2AccessTokenEntity validSiteToken = buildAccessToken();
+    ApprovedSite expiredSite =
+        buildApprovedSite(DateUtils.addDays(new Date(), -1), expiredSiteToken);
+    ApprovedSite validSite = buildApprovedSite(DateUtils.addDays(new Date(), 1), validSiteToken);
+    em.flush();
+
+    assertThat(count("approved_site_scope", "owner_id", expiredSite.getId()) > 0, is(true));
+
+    cleanupService.clearExpiredSites();
+
+    assertThat(exists("approved_site", expiredSite.getId()), is(false));
+    assertThat(count("approved_site_scope", "owner_id", expiredSite.getId()), is(0L));
+    assertThat(exists("access_token", expiredSiteToken.getId()), is(false));
+    assertThat(exists("refresh_token", expiredSiteToken.getRefreshToken().getId()), is(false));
+
+    assertThat(exists("approved_site", validSite.getId()), is(true));
+    assertThat(exists("access_token", validSiteToken.getId()), is(true));
+    assertThat(exists("refresh_token", validSiteToken.getRefreshToken().getId()), is(true));
+  }
+
+  @Test
+  public void cleanupIsSkippedWhenLockIsHeld() {
+
+    OAuth2AccessTokenEntity expired = buildExpiredAccessToken();
+    em.flush();
+
+    jdbcTemplate.update(
+        "INSERT INTO iam_task_lock (name, locked_until, locked_at, locked_by) VALUES (?, ?, ?, ?)",
+        BatchedTokenCleanupService.TOKEN_CLEANUP_LOCK, DateUtils.addHours(new Date(), 1),
+        new Date(), "another-node");
+
+    cleanupService.clearExpiredTokens();
+    assertThat(exists("access_token", expired.getId()), is(true));
+  }
+
+  @Test
+  public void lockCanBeAcquiredAgainAfterRelease() {
+    assertThat(lockService.tryLock("test-lock", Duration.ofMinutes(1)), is(true));
+    assertThat(lockService.tryLock("test-lock", Duration.ofMinutes(1)), is(false));
+    lockService.unlock("test-lock");
+    assertThat(lockService.tryLock("test-lock", Duration.ofMinutes(1)), is(true));
+  }
+}
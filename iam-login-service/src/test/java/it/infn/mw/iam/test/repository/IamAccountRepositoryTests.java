@@ -17,10 +17,14 @@ package it.infn.mw.iam.test.repository;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasItem;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.test.context.junit4.SpringRunner;
 
 import it.infn.mw.iam.authn.saml.util.Saml2Attribute;
@@ -49,4 +53,22 @@ public class IamAccountRepositoryTests {
     assertThat(testUserAccount.getUsername(), equalTo("test"));
   }
 
+  @Test
+  public void testPagedAccountsAreLoadedWithTheirDetails() {
+
+    Page<IamAccount> page =
+        repo.findAllWithDetails(PageRequest.of(0, (int) repo.count(), Sort.by("username")));
+
+    assertThat(page.getTotalElements(), equalTo(repo.count()));
+
+    IamAccount testUserAccount = page.getContent()
+      .stream()
+      .filter(a -> "test".equals(a.getUsername()))
+      .findFirst()
+      .orElseThrow(() -> new AssertionError("Test user not found in accounts page"));
+
+    assertThat(testUserAccount.getSamlIds(), hasItem(TEST_USER_ID));
+    assertThat(testUserAccount.getUserInfo().getEmail(), equalTo("test@iam.test"));
+  }
+
 }
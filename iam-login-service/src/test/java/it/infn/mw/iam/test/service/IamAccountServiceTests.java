@@ -76,6 +76,7 @@ import it.infn.mw.iam.notification.NotificationFactory;
 import it.infn.mw.iam.persistence.model.IamAccount;
 import it.infn.mw.iam.persistence.model.IamAccountGroupMembership;
 import it.infn.mw.iam.persistence.model.IamGroup;
+import it.infn.mw.iam.persistence.model.IamLabel;
 import it.infn.mw.iam.persistence.model.IamOidcId;
 import it.infn.mw.iam.persistence.model.IamSamlId;
 import it.infn.mw.iam.persistence.model.IamSshKey;
@@ -790,6 +791,30 @@ public class IamAccountServiceTests extends IamAccountServiceTestSupport {
     verify(eventPublisher, times(1)).publishEvent(any());
   }
 
+  @Test
+  public void testAddLabelsSavesAccountOnce() {
+    IamLabel statusLabel = IamLabel.builder().prefix("test").name("status").value("ok").build();
+    IamLabel messageLabel = IamLabel.builder().prefix("test").name("message").value("m").build();
+
+    accountService.addLabels(CICCIO_ACCOUNT, List.of(statusLabel, messageLabel));
+
+    assertTrue(CICCIO_ACCOUNT.hasLabelWithValue(statusLabel));
+    assertTrue(CICCIO_ACCOUNT.hasLabelWithValue(messageLabel));
+    verify(accountRepo, times(1)).save(CICCIO_ACCOUNT);
+    verify(eventPublisher, times(2)).publishEvent(any());
+  }
+
+  @Test
+  public void testAddLabelsSkipsUnchangedLabels() {
+    IamLabel statusLabel = IamLabel.builder().prefix("test").name("status").value("ok").build();
+    CICCIO_ACCOUNT.getLabels().add(statusLabel);
+
+    accountService.addLabels(CICCIO_ACCOUNT, List.of(statusLabel));
+
+    verify(accountRepo, times(0)).save(CICCIO_ACCOUNT);
+    verify(eventPublisher, times(0)).publishEvent(any());
+  }
+
   @Test(expected = NullPointerException.class)
   public void testDeleteInactiveProvisionedAccountFailsWithNullTimestamp() {
     try {
@@ -0,0 +1,187 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.test.service;
+
+import static java.util.Collections.emptyList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.subethamail.wiser.Wiser;
+import org.subethamail.wiser.WiserMessage;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.infn.mw.iam.core.IamDeliveryStatus;
+import it.infn.mw.iam.core.IamNotificationType;
+import it.infn.mw.iam.core.time.TimeProvider;
+import it.infn.mw.iam.notification.NotificationDeliveryProperties;
+import it.infn.mw.iam.notification.NotificationProperties;
+import it.infn.mw.iam.notification.service.JavaMailNotificationDelivery;
+import it.infn.mw.iam.persistence.model.IamEmailNotification;
+import it.infn.mw.iam.persistence.model.IamNotificationReceiver;
+import it.infn.mw.iam.persistence.repository.IamEmailNotificationRepository;
+import it.infn.mw.iam.test.util.MockSmtpServerUtils;
+
+@RunWith(MockitoJUnitRunner.class)
+public class JavamailNotificationDeliverySmtpTests {
+
+  public static final String SMTP_HOST = "localhost";
+  public static final String IAM_MAIL_FROM = "iam@test.example";
+  public static final int NUM_NOTIFICATIONS = 25;
+
+  @Mock
+  IamEmailNotificationRepository notificationRepo;
+
+  @Mock
+  TimeProvider timeProvider;
+
+  @Mock
+  NotificationProperties properties;
+
+  @Mock
+  PlatformTransactionManager transactionManager;
+
+  NotificationDeliveryProperties deliveryProperties = new NotificationDeliveryProperties();
+
+  SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  Wiser smtpServer;
+
+  JavaMailNotificationDelivery delivery;
+
+  private static int freePort() throws IOException {
+    try (ServerSocket s = new ServerSocket(0)) {
+      return s.getLocalPort();
+    }
+  }
+
+  @Before
+  public void setup() throws IOException {
+    int port = freePort();
+    smtpServer = MockSmtpServerUtils.startMockSmtpServer(SMTP_HOST, port);
+
+    JavaMailSenderImpl mailSender = new JavaMailSenderImpl();
+    mailSender.setHost(SMTP_HOST);
+    mailSender.setPort(port);
+
+    when(properties.getMailFrom()).thenReturn(IAM_MAIL_FROM);
+    when(timeProvider.currentTimeMillis()).thenReturn(0L);
+
+    deliveryProperties.setConcurrency(4);
+    deliveryProperties.setRetryBackoffMillis(0);
+
+    delivery = new JavaMailNotificationDelivery(mailSender, notificationRepo, properties,
+        deliveryProperties, timeProvider, transactionManager, meterRegistry);
+  }
+
+  @After
+  public void teardown() {
+    delivery.destroy();
+    MockSmtpServerUtils.stopMockSmtpServer(smtpServer);
+  }
+
+  private List<IamEmailNotification> pendingNotifications(int count) {
+    List<IamEmailNotification> notifications = new ArrayList<>();
+
+    for (long i = 0; i < count; i++) {
+      IamEmailNotification n = new IamEmailNotification();
+      n.setId(i);
+      n.setUuid(UUID.randomUUID().toString());
+      n.setType(IamNotificationType.CONFIRMATION);
+      n.setSubject("Subject " + i);
+      n.setBody("Body " + i);
+      n.setCreationTime(new Date());
+      n.setDeliveryStatus(IamDeliveryStatus.PENDING);
+      n.setReceivers(
+          List.of(IamNotificationReceiver.forAddress(n, String.format("test%d@test.example", i))));
+      notifications.add(n);
+    }
+
+    return notifications;
+  }
+
+  @Test
+  public void testBatchIsDeliveredConcurrently() {
+
+    List<IamEmailNotification> notifications = pendingNotifications(NUM_NOTIFICATIONS);
+    List<Long> ids =
+        notifications.stream().map(IamEmailNotification::getId).collect(Collectors.toList());
+
+    when(notificationRepo.findByDeliveryStatusOrderByCreationTimeAsc(eq(IamDeliveryStatus.PENDING),
+        any())).thenReturn(notifications, emptyList());
+
+    delivery.sendPendingNotifications();
+
+    List<WiserMessage> messages = smtpServer.getMessages();
+    assertThat(messages, hasSize(NUM_NOTIFICATIONS));
+
+    assertThat(notifications.stream()
+      .map(IamEmailNotification::getDeliveryStatus)
+      .collect(Collectors.toList()), everyItem(is(IamDeliveryStatus.DELIVERED)));
+
+    verify(notificationRepo).updateDeliveryStatus(ids, IamDeliveryStatus.IN_PROGRESS,
+        new Date(0L));
+    verify(notificationRepo).updateDeliveryStatus(ids, IamDeliveryStatus.DELIVERED, new Date(0L));
+
+    assertThat(meterRegistry.get(JavaMailNotificationDelivery.DELIVERED_METRIC).counter().count(),
+        is((double) NUM_NOTIFICATIONS));
+    assertThat(meterRegistry.get(JavaMailNotificationDelivery.SMTP_SEND_METRIC).timer().count(),
+        is(4L));
+  }
+
+  @Test
+  public void testUnreachableServerResultsInDeliveryError() {
+
+    MockSmtpServerUtils.stopMockSmtpServer(smtpServer);
+    smtpServer = null;
+
+    List<IamEmailNotification> notifications = pendingNotifications(2);
+
+    when(notificationRepo.findByDeliveryStatusOrderByCreationTimeAsc(eq(IamDeliveryStatus.PENDING),
+        any())).thenReturn(notifications);
+
+    delivery.sendPendingNotifications();
+
+    assertThat(notifications.stream()
+      .map(IamEmailNotification::getDeliveryStatus)
+      .collect(Collectors.toList()), everyItem(is(IamDeliveryStatus.DELIVERY_ERROR)));
+
+    assertThat(
+        meterRegistry.get(JavaMailNotificationDelivery.DELIVERY_RETRIES_METRIC).counter().count(),
+        is(2.0 * (deliveryProperties.getMaxAttempts() - 1)));
+  }
+}
@@ -22,27 +22,35 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.arrayWithSize;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasItemInArray;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
+import java.util.Date;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.springframework.mail.MailSendException;
 import org.springframework.mail.SimpleMailMessage;
 import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 
 import it.infn.mw.iam.core.IamDeliveryStatus;
 import it.infn.mw.iam.core.time.TimeProvider;
+import it.infn.mw.iam.notification.NotificationDeliveryProperties;
 import it.infn.mw.iam.notification.NotificationProperties;
 import it.infn.mw.iam.notification.service.JavaMailNotificationDelivery;
 import it.infn.mw.iam.persistence.model.IamEmailNotification;
@@ -72,7 +80,11 @@ public class JavamailNotificationDeliveryTests {
   @Mock
   NotificationProperties properties;
 
-  @InjectMocks
+  @Mock
+  PlatformTransactionManager transactionManager;
+
+  NotificationDeliveryProperties deliveryProperties = new NotificationDeliveryProperties();
+
   private JavaMailNotificationDelivery delivery;
 
   @Captor
@@ -86,12 +98,16 @@ public class JavamailNotificationDeliveryTests {
 
     when(properties.getMailFrom()).thenReturn(IAM_MAIL_FROM);
     // when(properties.getAdminAddress()).thenReturn(IAM_ADMIN_ADDRESS);
+    deliveryProperties.setRetryBackoffMillis(0);
+    delivery = new JavaMailNotificationDelivery(mailSender, notificationRepo, properties,
+        deliveryProperties, timeProvider, transactionManager, new SimpleMeterRegistry());
   }
 
 
   @Test
   public void testNoMessageDelivery() {
-    when(notificationRepo.findByDeliveryStatus(IamDeliveryStatus.PENDING)).thenReturn(emptyList());
+    when(notificationRepo.findByDeliveryStatusOrderByCreationTimeAsc(eq(IamDeliveryStatus.PENDING),
+        any())).thenReturn(emptyList());
 
     delivery.sendPendingNotifications();
     verifyNoInteractions(mailSender);
@@ -114,8 +130,8 @@ public class JavamailNotificationDeliveryTests {
 
     when(notification.getReceivers()).thenReturn(asList(receiver));
 
-    when(notificationRepo.findByDeliveryStatus(IamDeliveryStatus.PENDING))
-      .thenReturn(asList(notification));
+    when(notificationRepo.findByDeliveryStatusOrderByCreationTimeAsc(eq(IamDeliveryStatus.PENDING),
+        any())).thenReturn(asList(notification));
 
     delivery.sendPendingNotifications();
 
@@ -150,14 +166,17 @@ public class JavamailNotificationDeliveryTests {
 
     when(notification.getReceivers()).thenReturn(asList(receiver));
 
-    when(notificationRepo.findByDeliveryStatus(IamDeliveryStatus.PENDING))
-      .thenReturn(asList(notification));
+    when(notificationRepo.findByDeliveryStatusOrderByCreationTimeAsc(eq(IamDeliveryStatus.PENDING),
+        any())).thenReturn(asList(notification));
 
     delivery.sendPendingNotifications();
     verify(notification).setDeliveryStatus(statusArgumentCaptor.capture());
-    verify(mailSender).send(messageArgumentCaptor.capture());
+    verify(mailSender, times(deliveryProperties.getMaxAttempts()))
+      .send(messageArgumentCaptor.capture());
     
     assertThat(statusArgumentCaptor.getValue(), is(IamDeliveryStatus.DELIVERY_ERROR));
+    verify(notificationRepo).updateDeliveryStatus(asList(0L), IamDeliveryStatus.DELIVERY_ERROR,
+        new Date(0L));
   }
 
 }
@@ -16,5 +16,5 @@
 package it.infn.mw.iam.core;
 
 public enum IamDeliveryStatus {
-  PENDING, DELIVERED, DELIVERY_ERROR
+  PENDING, IN_PROGRESS, DELIVERED, DELIVERY_ERROR
 }
@@ -112,22 +112,18 @@ public class IamAccount implements Serializable {
   @JsonIgnore
   private Set<IamAccountGroupMembership> groups = new HashSet<>();
 
-  @OneToMany(mappedBy = "account", cascade = CascadeType.ALL, fetch = FetchType.EAGER,
-      orphanRemoval = true)
+  @OneToMany(mappedBy = "account", cascade = CascadeType.ALL, orphanRemoval = true)
   @JsonIgnore
   private Set<IamSamlId> samlIds = new HashSet<>();
 
-  @OneToMany(mappedBy = "account", cascade = CascadeType.ALL, fetch = FetchType.EAGER,
-      orphanRemoval = true)
+  @OneToMany(mappedBy = "account", cascade = CascadeType.ALL, orphanRemoval = true)
   @JsonIgnore
   private Set<IamOidcId> oidcIds = new HashSet<>();
 
-  @OneToMany(mappedBy = "account", cascade = CascadeType.ALL, fetch = FetchType.EAGER,
-      orphanRemoval = true)
+  @OneToMany(mappedBy = "account", cascade = CascadeType.ALL, orphanRemoval = true)
   private Set<IamSshKey> sshKeys = new LinkedHashSet<>();
 
-  @OneToMany(mappedBy = "account", cascade = CascadeType.ALL, fetch = FetchType.EAGER,
-      orphanRemoval = true)
+  @OneToMany(mappedBy = "account", cascade = CascadeType.ALL, orphanRemoval = true)
   @JsonIgnore
   private Set<IamX509Certificate> x509Certificates = new HashSet<>();
 
@@ -0,0 +1,53 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.persistence.repository;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import javax.persistence.QueryHint;
+
+import org.springframework.data.jpa.repository.QueryHints;
+
+/**
+ * Batch fetching hints for paged account queries whose results are converted to full SCIM
+ * representations: each relationship is loaded for the whole page with a single IN query,
+ * instead of a query per account. Ignored by JPA providers other than EclipseLink.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+@QueryHints(forCounting = false,
+    value = {@QueryHint(name = AccountDetailsBatchFetch.BATCH_FETCH_TYPE, value = "IN"),
+        @QueryHint(name = AccountDetailsBatchFetch.BATCH_FETCH, value = "a.userInfo"),
+        @QueryHint(name = AccountDetailsBatchFetch.BATCH_FETCH, value = "a.authorities"),
+        @QueryHint(name = AccountDetailsBatchFetch.BATCH_FETCH, value = "a.groups"),
+        @QueryHint(name = AccountDetailsBatchFetch.BATCH_FETCH, value = "a.groups.group"),
+        @QueryHint(name = AccountDetailsBatchFetch.BATCH_FETCH, value = "a.oidcIds"),
+        @QueryHint(name = AccountDetailsBatchFetch.BATCH_FETCH, value = "a.samlIds"),
+        @QueryHint(name = AccountDetailsBatchFetch.BATCH_FETCH, value = "a.sshKeys"),
+        @QueryHint(name = AccountDetailsBatchFetch.BATCH_FETCH, value = "a.x509Certificates"),
+        @QueryHint(name = AccountDetailsBatchFetch.BATCH_FETCH, value = "a.aupSignature"),
+        @QueryHint(name = AccountDetailsBatchFetch.BATCH_FETCH, value = "a.labels"),
+        @QueryHint(name = AccountDetailsBatchFetch.BATCH_FETCH, value = "a.attributes")})
+public @interface AccountDetailsBatchFetch {
+
+  String BATCH_FETCH = "eclipselink.batch";
+  String BATCH_FETCH_TYPE = "eclipselink.batch.type";
+}
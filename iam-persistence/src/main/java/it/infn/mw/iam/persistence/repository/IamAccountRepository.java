@@ -15,12 +15,14 @@
  */
 package it.infn.mw.iam.persistence.repository;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.PagingAndSortingRepository;
@@ -32,10 +34,38 @@ import it.infn.mw.iam.persistence.model.IamAccount;
 public interface IamAccountRepository
     extends PagingAndSortingRepository<IamAccount, Long>, IamAccountRepositoryCustom {
 
+  // Accounts matching a filter, among the candidates selected by the account search n-gram
+  // index, i.e. the accounts whose attributes contain all the n-grams of the filter
+  String INDEXED_FILTER_CONDITION = "a.id in (select n.accountId from IamAccountSearchNgram n "
+      + "where n.ngram in :ngrams group by n.accountId "
+      + "having count(distinct n.ngram) = :ngramCount) "
+      + "and (lower(ui.email) LIKE lower(concat('%', :filter, '%')) "
+      + "or lower(a.username) LIKE lower(concat('%', :filter, '%')) "
+      + "or lower(a.uuid) LIKE lower(concat('%', :filter, '%')) "
+      + "or lower(concat(ui.givenName, ' ', ui.familyName)) "
+      + "LIKE lower(concat('%', :filter, '%')))";
+
+  String SELECT_BY_INDEXED_FILTER =
+      "select a from IamAccount a join a.userInfo ui where " + INDEXED_FILTER_CONDITION;
+
+  String COUNT_BY_INDEXED_FILTER =
+      "select count(a) from IamAccount a join a.userInfo ui where " + INDEXED_FILTER_CONDITION;
+
   Optional<IamAccount> findByUuid(@Param("uuid") String uuid);
 
   Optional<IamAccount> findByUsername(@Param("username") String username);
 
+  @Query("select distinct a from IamAccount a left join fetch a.x509Certificates where a.id = :id")
+  Optional<IamAccount> findByIdWithCertificates(@Param("id") Long id);
+
+  @Query("select distinct a from IamAccount a left join fetch a.userInfo "
+      + "left join fetch a.groups m left join fetch m.group where a.username = :username")
+  Optional<IamAccount> findByUsernameWithGroups(@Param("username") String username);
+
+  @Query("select distinct a from IamAccount a left join fetch a.userInfo "
+      + "left join fetch a.groups m left join fetch m.group where a.uuid = :uuid")
+  Optional<IamAccount> findByUuidWithGroups(@Param("uuid") String uuid);
+
   @Query("select a from IamAccount a join a.samlIds si where si.idpId = :idpId "
       + "and si.attributeId = :attributeId and si.userId = :userId")
   Optional<IamAccount> findBySamlId(@Param("idpId") String idpId,
@@ -114,12 +144,31 @@ public interface IamAccountRepository
   List<IamAccount> findProvisionedAccountsWithLastLoginTimeBeforeTimestamp(
       @Param("timestamp") Date timestamp);
 
+  @Query(value = "select a from IamAccount a", countQuery = "select count(a) from IamAccount a")
+  @AccountDetailsBatchFetch
+  Page<IamAccount> findAllWithDetails(Pageable op);
+
   @Query("select a from IamAccount a join a.userInfo ui where lower(ui.email) LIKE lower(concat('%', :filter, '%')) or lower(a.username) LIKE lower(concat('%', :filter, '%')) or lower(a.uuid) LIKE lower(concat('%', :filter, '%')) or lower(concat(ui.givenName, ' ', ui.familyName)) LIKE lower(concat('%', :filter, '%'))")
+  @AccountDetailsBatchFetch
   Page<IamAccount> findByFilter(@Param("filter") String filter, Pageable op);
 
   @Query("select count(a) from IamAccount a join a.userInfo ui where lower(ui.email) LIKE lower(concat('%', :filter, '%')) or lower(a.username) LIKE lower(concat('%', :filter, '%')) or lower(a.uuid) LIKE lower(concat('%', :filter, '%')) or lower(concat(ui.givenName, ' ', ui.familyName)) LIKE lower(concat('%', :filter, '%'))")
   long countByFilter(@Param("filter") String filter);
 
+  @Query(value = SELECT_BY_INDEXED_FILTER, countQuery = COUNT_BY_INDEXED_FILTER)
+  @AccountDetailsBatchFetch
+  Page<IamAccount> findByIndexedFilter(@Param("filter") String filter,
+      @Param("ngrams") Collection<String> ngrams, @Param("ngramCount") long ngramCount, Pageable op);
+
+  @Query(SELECT_BY_INDEXED_FILTER)
+  @AccountDetailsBatchFetch
+  Slice<IamAccount> findSliceByIndexedFilter(@Param("filter") String filter,
+      @Param("ngrams") Collection<String> ngrams, @Param("ngramCount") long ngramCount, Pageable op);
+
+  @Query(COUNT_BY_INDEXED_FILTER)
+  long countByIndexedFilter(@Param("filter") String filter,
+      @Param("ngrams") Collection<String> ngrams, @Param("ngramCount") long ngramCount);
+
   @Query("select a from IamAccount a where a.endTime < :timestamp")
   Page<IamAccount> findExpiredAccountsAtTimestamp(@Param("timestamp") Date timestamp, Pageable op);
 
@@ -0,0 +1,42 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.iam.persistence.repository;
+
+import java.util.Date;
+
+/**
+ * A flat (signature, account) row holding just what is needed to notify an account about its AUP
+ * signature, without materializing the account entity.
+ */
+public interface IamAupSignatureRecipientProjection {
+
+  Long getSignatureId();
+
+  Long getAccountId();
+
+  String getAccountUuid();
+
+  String getGivenName();
+
+  String getMiddleName();
+
+  String getFamilyName();
+
+  String getEmail();
+
+  Date getSignatureTime();
+
+}
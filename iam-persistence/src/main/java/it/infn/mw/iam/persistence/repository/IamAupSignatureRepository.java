@@ -19,6 +19,7 @@ import java.util.Date;
 import java.util.List;
 import java.util.Optional;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.PagingAndSortingRepository;
 import org.springframework.data.repository.query.Param;
@@ -30,9 +31,34 @@ import it.infn.mw.iam.persistence.model.IamAupSignature;
 public interface IamAupSignatureRepository
     extends PagingAndSortingRepository<IamAupSignature, Long>, IamAupSignatureRepositoryCustom {
 
-  @Query("select ias from IamAupSignature ias join ias.account a where a.active = TRUE and ias.aup = :aup and :signatureTime <= ias.signatureTime and ias.signatureTime < :plusOne")
-  List<IamAupSignature> findByAupAndSignatureTime(@Param("aup") IamAup aup,
-      @Param("signatureTime") Date signatureTime, @Param("plusOne") Date plusOne);
+  String RECIPIENT_SELECT = "select s.id as signatureId, a.id as accountId, a.uuid as accountUuid,"
+      + " ui.givenName as givenName, ui.middleName as middleName, ui.familyName as familyName,"
+      + " ui.email as email, s.signatureTime as signatureTime"
+      + " from IamAupSignature s join s.account a join a.userInfo ui"
+      + " where a.active = TRUE and a.serviceAccount = FALSE and s.aup = :aup"
+      + " and :signatureTime <= s.signatureTime and s.signatureTime < :plusOne"
+      + " and s.id > :lastId";
+
+  @Query(RECIPIENT_SELECT
+      + " and not exists (select n from IamEmailNotification n join n.receivers r"
+      + " where n.notificationType = it.infn.mw.iam.core.IamNotificationType.AUP_REMINDER"
+      + " and CURRENT_DATE <= n.lastUpdate and n.lastUpdate < :tomorrow"
+      + " and n.deliveryStatus <> it.infn.mw.iam.core.IamDeliveryStatus.DELIVERY_ERROR"
+      + " and r.emailAddress = ui.email)"
+      + " order by s.id")
+  List<IamAupSignatureRecipientProjection> findAupReminderRecipients(@Param("aup") IamAup aup,
+      @Param("signatureTime") Date signatureTime, @Param("plusOne") Date plusOne,
+      @Param("tomorrow") Date tomorrow, @Param("lastId") Long lastId, Pageable page);
+
+  @Query(RECIPIENT_SELECT
+      + " and not exists (select n from IamEmailNotification n join n.receivers r"
+      + " where n.notificationType = it.infn.mw.iam.core.IamNotificationType.AUP_EXPIRATION"
+      + " and n.deliveryStatus <> it.infn.mw.iam.core.IamDeliveryStatus.DELIVERY_ERROR"
+      + " and r.emailAddress = ui.email)"
+      + " order by s.id")
+  List<IamAupSignatureRecipientProjection> findAupExpirationRecipients(@Param("aup") IamAup aup,
+      @Param("signatureTime") Date signatureTime, @Param("plusOne") Date plusOne,
+      @Param("lastId") Long lastId, Pageable page);
 
   Optional<IamAupSignature> findByAupAndAccount(IamAup aup, IamAccount account);
 
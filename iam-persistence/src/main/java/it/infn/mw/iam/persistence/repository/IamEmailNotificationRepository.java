@@ -15,12 +15,15 @@
  */
 package it.infn.mw.iam.persistence.repository;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 
 import javax.persistence.LockModeType;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.PagingAndSortingRepository;
 import org.springframework.data.repository.query.Param;
@@ -35,6 +38,22 @@ public interface IamEmailNotificationRepository
   @Lock(LockModeType.PESSIMISTIC_WRITE)
   List<IamEmailNotification> findByDeliveryStatus(IamDeliveryStatus deliveryStatus);
 
+  @Lock(LockModeType.PESSIMISTIC_WRITE)
+  List<IamEmailNotification> findByDeliveryStatusOrderByCreationTimeAsc(
+      IamDeliveryStatus deliveryStatus, Pageable pageable);
+
+  @Modifying
+  @Query("update IamEmailNotification n set n.deliveryStatus = :delivery_status, n.lastUpdate = :last_update where n.id in :ids")
+  int updateDeliveryStatus(@Param("ids") Collection<Long> ids,
+      @Param("delivery_status") IamDeliveryStatus deliveryStatus,
+      @Param("last_update") Date lastUpdate);
+
+  @Modifying
+  @Query("update IamEmailNotification n set n.deliveryStatus = :new_status where n.deliveryStatus = :delivery_status and n.lastUpdate < :last_update")
+  int updateDeliveryStatusWithUpdateTime(
+      @Param("delivery_status") IamDeliveryStatus deliveryStatus,
+      @Param("new_status") IamDeliveryStatus newStatus, @Param("last_update") Date lastUpdate);
+
   @Query("select n from IamEmailNotification n where n.deliveryStatus = :delivery_status and n.lastUpdate < :last_update")
   List<IamEmailNotification> findByStatusWithUpdateTime(
       @Param("delivery_status") IamDeliveryStatus deliveryStatus,
@@ -47,16 +66,4 @@ public interface IamEmailNotificationRepository
 
   List<IamEmailNotification> findByNotificationType(IamNotificationType notificationType);
 
-  @Query("select count(n) from IamEmailNotification n join n.receivers r where n.notificationType = it.infn.mw.iam.core.IamNotificationType.AUP_REMINDER"
-      + " and CURRENT_DATE <= n.lastUpdate and n.lastUpdate < :tomorrow"
-      + " and n.deliveryStatus <> it.infn.mw.iam.core.IamDeliveryStatus.DELIVERY_ERROR"
-      + " and r.emailAddress = :email_address")
-  Integer countAupRemindersPerAccount(@Param("email_address") String emailAddress,
-      @Param("tomorrow") Date tomorrow);
-
-  @Query("select count(n) from IamEmailNotification n join n.receivers r where n.notificationType = it.infn.mw.iam.core.IamNotificationType.AUP_EXPIRATION"
-      + " and n.deliveryStatus <> it.infn.mw.iam.core.IamDeliveryStatus.DELIVERY_ERROR"
-      + " and r.emailAddress = :email_address")
-  Integer countAupExpirationMessPerAccount(@Param("email_address") String emailAddress);
-
 }
@@ -39,6 +39,11 @@ public interface IamScopePolicyRepository
   @Query("select s from IamScopePolicy s join s.scopes ss where ss = :scope")
   List<IamScopePolicy> findByScope(@Param("scope") String scope);
 
+  @Query("select p.id as policyId, p.rule as rule, p.matchingPolicy as matchingPolicy, "
+      + "a.id as accountId, g.id as groupId, s as scope from IamScopePolicy p "
+      + "left join p.account a left join p.group g left join p.scopes s")
+  List<IamScopePolicyScopeProjection> findAllPolicyScopes();
+
   List<IamScopePolicy> findByGroup(IamGroup group);
 
   List<IamScopePolicy> findByGroupAndRule(IamGroup group, PolicyRule rule);
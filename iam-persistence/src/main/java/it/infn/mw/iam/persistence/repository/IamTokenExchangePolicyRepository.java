@@ -15,6 +15,7 @@
  */
 package it.infn.mw.iam.persistence.repository;
 
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.PagingAndSortingRepository;
 
 import it.infn.mw.iam.persistence.model.IamTokenExchangePolicyEntity;
@@ -22,4 +23,8 @@ import it.infn.mw.iam.persistence.model.IamTokenExchangePolicyEntity;
 public interface IamTokenExchangePolicyRepository
     extends PagingAndSortingRepository<IamTokenExchangePolicyEntity, Long> {
 
+  @Query("select count(p) as policyCount, max(p.id) as maxId, "
+      + "max(p.lastUpdateTime) as lastUpdateTime from IamTokenExchangePolicyEntity p")
+  IamTokenExchangePolicyVersionProjection findPoliciesVersion();
+
 }
@@ -33,4 +33,12 @@ public interface IamX509CertificateRepository
 
   public Optional<IamX509Certificate> findBySubjectDnAndIssuerDn(String subjectDn, String issuerDn);
 
+  // Also loads the certificates of the linked account, which are lazily fetched, for callers that
+  // read them after the persistence context is closed (e.g. the VOMS AA account cache)
+  @Query("select distinct c from IamX509Certificate c join fetch c.account a "
+      + "left join fetch a.x509Certificates "
+      + "where c.subjectDn = :subjectDn and c.issuerDn = :issuerDn")
+  Optional<IamX509Certificate> findBySubjectDnAndIssuerDnWithAccountCertificates(
+      @Param("subjectDn") String subjectDn, @Param("issuerDn") String issuerDn);
+
 }
\ No newline at end of file
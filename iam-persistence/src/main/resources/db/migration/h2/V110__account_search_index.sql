@@ -0,0 +1,10 @@
+CREATE TABLE iam_account_search_ngram (
+  ID BIGINT IDENTITY NOT NULL,
+  account_id BIGINT NOT NULL,
+  ngram VARCHAR(12) NOT NULL,
+  PRIMARY KEY (ID),
+  CONSTRAINT fk_iam_account_search_ngram_account FOREIGN KEY (account_id) REFERENCES iam_account (ID) ON DELETE CASCADE
+);
+
+CREATE INDEX iasn_ng_acc_idx ON iam_account_search_ngram(ngram, account_id);
+CREATE INDEX iasn_acc_idx ON iam_account_search_ngram(account_id);
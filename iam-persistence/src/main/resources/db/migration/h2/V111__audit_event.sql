@@ -0,0 +1,11 @@
+CREATE TABLE iam_audit_event (
+  ID BIGINT IDENTITY NOT NULL,
+  event_time TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  category VARCHAR(64) NOT NULL,
+  event_type VARCHAR(128) NOT NULL,
+  principal VARCHAR(512),
+  event_data CLOB,
+  PRIMARY KEY (ID)
+);
+
+CREATE INDEX iae_event_time_idx ON iam_audit_event(event_time);
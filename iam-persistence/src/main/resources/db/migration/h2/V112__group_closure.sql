@@ -0,0 +1,12 @@
+CREATE TABLE iam_group_closure (
+  ID BIGINT IDENTITY NOT NULL,
+  ancestor_id BIGINT NOT NULL,
+  descendant_id BIGINT NOT NULL,
+  depth INTEGER NOT NULL,
+  PRIMARY KEY (ID),
+  CONSTRAINT uk_iam_group_closure UNIQUE (ancestor_id, descendant_id),
+  CONSTRAINT fk_iam_group_closure_ancestor FOREIGN KEY (ancestor_id) REFERENCES iam_group (ID) ON DELETE CASCADE,
+  CONSTRAINT fk_iam_group_closure_descendant FOREIGN KEY (descendant_id) REFERENCES iam_group (ID) ON DELETE CASCADE
+);
+
+CREATE INDEX igc_desc_idx ON iam_group_closure(descendant_id, depth);
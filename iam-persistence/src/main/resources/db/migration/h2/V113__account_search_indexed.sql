@@ -0,0 +1,6 @@
+CREATE TABLE iam_account_search_indexed (
+  account_id BIGINT NOT NULL,
+  last_update_time TIMESTAMP NOT NULL,
+  PRIMARY KEY (account_id),
+  CONSTRAINT fk_iam_account_search_indexed_account FOREIGN KEY (account_id) REFERENCES iam_account (ID) ON DELETE CASCADE
+);
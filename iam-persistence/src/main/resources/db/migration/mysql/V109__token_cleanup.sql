@@ -0,0 +1,11 @@
+CREATE TABLE iam_task_lock (
+  name VARCHAR(64) NOT NULL PRIMARY KEY,
+  locked_until DATETIME NOT NULL,
+  locked_at DATETIME NOT NULL,
+  locked_by VARCHAR(255) NOT NULL
+);
+
+CREATE INDEX rt_exp_idx ON refresh_token(expiration);
+CREATE INDEX as_to_idx ON approved_site(timeout_date);
+CREATE INDEX at_asi_idx ON access_token(approved_site_id);
+CREATE INDEX dc_ahi_idx ON device_code(auth_holder_id);
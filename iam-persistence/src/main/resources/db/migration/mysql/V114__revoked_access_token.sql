@@ -0,0 +1,7 @@
+CREATE TABLE iam_revoked_access_token (
+  jti VARCHAR(128) NOT NULL,
+  expiration DATETIME NOT NULL,
+  PRIMARY KEY (jti)
+);
+
+CREATE INDEX irat_exp_idx ON iam_revoked_access_token(expiration);
@@ -0,0 +1,229 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.voms.aa.impl;
+
+import static java.util.stream.Collectors.toSet;
+
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import it.infn.mw.iam.persistence.model.IamAccount;
+import it.infn.mw.iam.persistence.model.IamAccountGroupMembership;
+import it.infn.mw.iam.persistence.model.IamAupSignature;
+import it.infn.mw.iam.persistence.model.IamGroup;
+import it.infn.mw.iam.persistence.model.IamX509Certificate;
+import it.infn.mw.iam.persistence.repository.IamAccountRepository;
+import it.infn.mw.iam.persistence.repository.IamX509CertificateRepository;
+import it.infn.mw.voms.aa.VOMSRequestContext;
+import it.infn.mw.voms.properties.VomsProperties.VOMSAccountCacheProperties;
+
+/**
+ * An {@link IamVOMSAccountResolver} that keeps in memory an index from certificate (subject,
+ * issuer) pairs to account ids, and a short-lived cache of the data needed to issue an AC to an
+ * account (status, AUP signature, groups with their labels and generic attributes).
+ * 
+ * The resolved accounts are detached copies of the persistent ones, so they can be safely shared
+ * by concurrent requests. As the VOMS AA does not see the changes done by the IAM login service,
+ * cached entries are only refreshed when they expire:
+ * <ul>
+ * <li>certificates that are not linked to any account are never cached, so a newly linked
+ * certificate is resolved at the next request;</li>
+ * <li>an index entry is dropped as soon as the cached account no longer owns the certificate;</li>
+ * <li>changes to membership, status and attributes are seen after at most the membership TTL.</li>
+ * </ul>
+ */
+public class CachingIamVomsAccountResolver implements IamVOMSAccountResolver {
+
+  public static final Logger LOG = LoggerFactory.getLogger(CachingIamVomsAccountResolver.class);
+
+  public static final String INDEX_CACHE_NAME = "voms.aa.certificate-index";
+  public static final String ACCOUNT_CACHE_NAME = "voms.aa.accounts";
+
+  private final IamX509CertificateRepository certificateRepo;
+  private final IamAccountRepository accountRepo;
+
+  private final Cache<List<String>, Long> certificateIndex;
+  private final Cache<Long, CachedAccount> accounts;
+
+  private static class CachedAccount {
+
+    final IamAccount account;
+    final Set<List<String>> certificates;
+
+    CachedAccount(IamAccount account, Set<List<String>> certificates) {
+      this.account = account;
+      this.certificates = certificates;
+    }
+  }
+
+  public CachingIamVomsAccountResolver(IamX509CertificateRepository certificateRepo,
+      IamAccountRepository accountRepo, VOMSAccountCacheProperties properties,
+      MeterRegistry meterRegistry) {
+    this.certificateRepo = certificateRepo;
+    this.accountRepo = accountRepo;
+
+    this.certificateIndex = CacheBuilder.newBuilder()
+      .maximumSize(properties.getMaxSize())
+      .expireAfterWrite(properties.getIndexTtlSecs(), TimeUnit.SECONDS)
+      .recordStats()
+      .build();
+
+    this.accounts = CacheBuilder.newBuilder()
+      .maximumSize(properties.getMaxSize())
+      .expireAfterWrite(properties.getMembershipTtlSecs(), TimeUnit.SECONDS)
+      .recordStats()
+      .build();
+
+    GuavaCacheMetrics.monitor(meterRegistry, certificateIndex, INDEX_CACHE_NAME);
+    GuavaCacheMetrics.monitor(meterRegistry, accounts, ACCOUNT_CACHE_NAME);
+  }
+
+  private static List<String> certificateKey(String subject, String issuer) {
+    return List.of(subject, issuer);
+  }
+
+  @Override
+  public Optional<IamAccount> resolveAccountFromRequest(VOMSRequestContext requestContext) {
+
+    String certificateSubject = requestContext.getRequest().getRequesterSubject();
+    String certificateIssuer = requestContext.getRequest().getRequesterIssuer();
+
+    if (certificateSubject == null || certificateIssuer == null) {
+      return Optional.empty();
+    }
+
+    List<String> key = certificateKey(certificateSubject, certificateIssuer);
+
+    Long accountId = certificateIndex.getIfPresent(key);
+
+    if (accountId != null) {
+      Optional<CachedAccount> cachedAccount = lookupAccount(accountId);
+
+      if (cachedAccount.isPresent() && cachedAccount.get().certificates.contains(key)) {
+        return Optional.of(cachedAccount.get().account);
+      }
+
+      LOG.debug("Certificate '{}' is no longer linked to account #{}", certificateSubject,
+          accountId);
+      certificateIndex.invalidate(key);
+    }
+
+    Optional<IamX509Certificate> cert = certificateRepo
+      .findBySubjectDnAndIssuerDnWithAccountCertificates(certificateSubject, certificateIssuer);
+
+    if (cert.isEmpty() || cert.get().getAccount() == null) {
+      return Optional.empty();
+    }
+
+    CachedAccount cachedAccount = cacheAccount(cert.get().getAccount());
+    certificateIndex.put(key, cachedAccount.account.getId());
+
+    return Optional.of(cachedAccount.account);
+  }
+
+  private Optional<CachedAccount> lookupAccount(Long accountId) {
+
+    CachedAccount cachedAccount = accounts.getIfPresent(accountId);
+
+    if (cachedAccount != null) {
+      return Optional.of(cachedAccount);
+    }
+
+    return accountRepo.findByIdWithCertificates(accountId).map(this::cacheAccount);
+  }
+
+  private CachedAccount cacheAccount(IamAccount account) {
+
+    Set<List<String>> certificates = account.getX509Certificates()
+      .stream()
+      .map(c -> certificateKey(c.getSubjectDn(), c.getIssuerDn()))
+      .collect(toSet());
+
+    CachedAccount cachedAccount = new CachedAccount(detachedCopy(account), certificates);
+    accounts.put(account.getId(), cachedAccount);
+
+    return cachedAccount;
+  }
+
+  /**
+   * Copies the account information used to issue an AC, so that it can be read after the
+   * persistence context that loaded the account has been closed.
+   */
+  protected static IamAccount detachedCopy(IamAccount account) {
+
+    IamAccount copy = new IamAccount();
+    copy.setId(account.getId());
+    copy.setUuid(account.getUuid());
+    copy.setUsername(account.getUsername());
+    copy.setActive(account.isActive());
+    copy.setServiceAccount(account.isServiceAccount());
+    copy.setAttributes(new HashSet<>(account.getAttributes()));
+
+    IamAupSignature signature = account.getAupSignature();
+
+    if (signature != null) {
+      IamAupSignature signatureCopy = new IamAupSignature();
+      signatureCopy.setId(signature.getId());
+      signatureCopy.setAccount(copy);
+      signatureCopy.setSignatureTime(copyOf(signature.getSignatureTime()));
+      copy.setAupSignature(signatureCopy);
+    }
+
+    Set<IamAccountGroupMembership> groups = new HashSet<>();
+
+    for (IamAccountGroupMembership m : account.getGroups()) {
+      IamGroup group = new IamGroup();
+      group.setId(m.getGroup().getId());
+      group.setUuid(m.getGroup().getUuid());
+      group.setName(m.getGroup().getName());
+      group.setLabels(new HashSet<>(m.getGroup().getLabels()));
+      groups.add(IamAccountGroupMembership.forAccountAndGroup(copy, group));
+    }
+
+    copy.setGroups(groups);
+
+    return copy;
+  }
+
+  private static Date copyOf(Date date) {
+    return date == null ? null : new Date(date.getTime());
+  }
+
+  public void invalidateAll() {
+    certificateIndex.invalidateAll();
+    accounts.invalidateAll();
+  }
+
+  public long getIndexSize() {
+    return certificateIndex.size();
+  }
+
+  public long getCachedAccountsCount() {
+    return accounts.size();
+  }
+}
@@ -15,18 +15,13 @@
  */
 package it.infn.mw.voms.aa.impl;
 
-import static java.util.Comparator.comparing;
-
 import java.util.Set;
 
 import org.italiangrid.voms.ac.impl.VOMSGenericAttributeImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import it.infn.mw.iam.persistence.model.IamAccount;
-import it.infn.mw.iam.persistence.model.IamAccountGroupMembership;
 import it.infn.mw.iam.persistence.model.IamAttribute;
-import it.infn.mw.iam.persistence.model.IamGroup;
 import it.infn.mw.iam.persistence.model.IamLabel;
 import it.infn.mw.voms.aa.VOMSErrorMessage;
 import it.infn.mw.voms.aa.VOMSRequestContext;
@@ -47,13 +42,6 @@ public class IamVOMSAttributeResolver implements AttributeResolver {
     this.fqanEncoding = fqanEncoding;
   }
 
-  protected boolean iamGroupIsVomsGroup(VOMSRequestContext context, IamGroup g) {
-    final String voName = context.getVOName();
-    final boolean nameMatches = g.getName().equals(voName) || g.getName().startsWith(voName + "/");
-
-    return nameMatches && !g.getLabels().contains(vomsRoleLabel) && !g.getLabels().contains(optionalGroupLabel);
-  }
-
   protected void noSuchUserError(VOMSRequestContext context) {
     VOMSErrorMessage m = VOMSErrorMessage.noSuchUser(context.getRequest().getHolderSubject(),
         context.getRequest().getHolderIssuer());
@@ -72,26 +60,9 @@ public class IamVOMSAttributeResolver implements AttributeResolver {
   }
 
 
-  protected boolean iamGroupIsVomsRole(IamGroup g) {
-    return g.getLabels().contains(vomsRoleLabel);
-  }
-
-  protected boolean groupMatchesFqan(IamGroup g, VOMSFqan fqan) {
-    final String name = fqan.asIamGroupName();
-    final boolean nameMatches = name.equals(g.getName());
-    if (fqan.isRoleFqan()) {
-      return nameMatches && g.getLabels().contains(vomsRoleLabel);
-    } else {
-      return nameMatches;
-    }
-  }
-
-  protected void issueRequestedFqan(VOMSRequestContext context, VOMSFqan fqan) {
-    if (context.getIamAccount()
-      .getGroups()
-      .stream()
-      .map(IamAccountGroupMembership::getGroup)
-      .anyMatch(g -> groupMatchesFqan(g, fqan))) {
+  protected void issueRequestedFqan(VOMSRequestContext context, VOMSMembershipIndex index,
+      VOMSFqan fqan) {
+    if (index.matches(fqan)) {
       LOG.debug("Issuing fqan: {}", fqan.getFqan());
       context.getResponse().getIssuedFQANs().add(fqanEncoding.encodeFQAN(fqan.getFqan()));
     } else {
@@ -100,49 +71,42 @@ public class IamVOMSAttributeResolver implements AttributeResolver {
   }
 
 
-  protected void issueCompulsoryGroupFqan(VOMSRequestContext context, IamGroup g) {
-    final String fqan = "/" + g.getName();
+  protected void issueCompulsoryGroupFqan(VOMSRequestContext context, String groupName) {
+    final String fqan = "/" + groupName;
     if (context.getResponse().getIssuedFQANs().add(fqanEncoding.encodeFQAN(fqan))) {
       LOG.debug("Issued compulsory fqan: {}", fqan);
     }
   }
 
-  protected boolean requestAccountIsMemberOfGroup(VOMSRequestContext context, String groupName) {
-    IamAccount account = context.getIamAccount();
-    return account.getGroups().stream().anyMatch(g -> g.getGroup().getName().equals(groupName));
+  protected VOMSMembershipIndex membershipIndex(VOMSRequestContext context) {
+    return VOMSMembershipIndex.build(context.getIamAccount(), context.getVOName(), vomsRoleLabel,
+        optionalGroupLabel);
   }
 
-  protected void resolveRequestedFQANs(VOMSRequestContext requestContext) {
+  protected void resolveRequestedFQANs(VOMSRequestContext requestContext,
+      VOMSMembershipIndex index) {
     requestContext.getRequest()
       .getRequestedFQANs()
-      .forEach(f -> issueRequestedFqan(requestContext, f));
+      .forEach(f -> issueRequestedFqan(requestContext, index, f));
   }
 
-  protected void resolveCompulsoryFQANs(VOMSRequestContext requestContext) {
+  protected void resolveCompulsoryFQANs(VOMSRequestContext requestContext,
+      VOMSMembershipIndex index) {
 
-    requestContext.getIamAccount()
-      .getGroups()
-      .stream()
-      .sorted(comparing(gm -> gm.getGroup().getName()))
-      .filter(g -> iamGroupIsVomsGroup(requestContext, g.getGroup()))
-      .forEach(g -> issueCompulsoryGroupFqan(requestContext, g.getGroup()));
+    index.getCompulsoryGroupNames().forEach(g -> issueCompulsoryGroupFqan(requestContext, g));
 
     if (requestContext.getResponse().getIssuedFQANs().isEmpty()) {
       noSuchUserError(requestContext);
     }
   }
 
-
-
   @Override
   public void resolveFQANs(VOMSRequestContext requestContext) {
 
-    requestContext.getRequest()
-      .getRequestedFQANs()
-      .forEach(f -> issueRequestedFqan(requestContext, f));
-
-    resolveCompulsoryFQANs(requestContext);
+    VOMSMembershipIndex index = membershipIndex(requestContext);
 
+    resolveRequestedFQANs(requestContext, index);
+    resolveCompulsoryFQANs(requestContext, index);
   }
 
   @Override
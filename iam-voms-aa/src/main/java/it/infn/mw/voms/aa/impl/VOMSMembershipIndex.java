@@ -0,0 +1,114 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.voms.aa.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import it.infn.mw.iam.persistence.model.IamAccount;
+import it.infn.mw.iam.persistence.model.IamAccountGroupMembership;
+import it.infn.mw.iam.persistence.model.IamGroup;
+import it.infn.mw.iam.persistence.model.IamLabel;
+import it.infn.mw.voms.api.VOMSFqan;
+
+/**
+ * The group memberships of an account, indexed by group name, with the VOMS role and optional
+ * group flags computed once, so that matching the requested FQANs and generating the compulsory
+ * ones does not require to scan all the memberships (and their labels) for each FQAN.
+ */
+public class VOMSMembershipIndex {
+
+  private static class GroupFlags {
+    final boolean role;
+    final boolean optional;
+
+    GroupFlags(boolean role, boolean optional) {
+      this.role = role;
+      this.optional = optional;
+    }
+  }
+
+  private final Map<String, GroupFlags> groups;
+  private final List<String> compulsoryGroupNames;
+
+  private VOMSMembershipIndex(Map<String, GroupFlags> groups, List<String> compulsoryGroupNames) {
+    this.groups = groups;
+    this.compulsoryGroupNames = compulsoryGroupNames;
+  }
+
+  /**
+   * Tells whether the account is member of the group named by the FQAN; for role FQANs the group
+   * must also be labeled as a VOMS role.
+   */
+  public boolean matches(VOMSFqan fqan) {
+    if (groups.isEmpty()) {
+      return false;
+    }
+
+    GroupFlags flags = groups.get(fqan.asIamGroupName());
+
+    if (flags == null) {
+      return false;
+    }
+
+    return !fqan.isRoleFqan() || flags.role;
+  }
+
+  public boolean isMemberOf(String groupName) {
+    return groups.containsKey(groupName);
+  }
+
+  /**
+   * Returns the names, sorted alphabetically, of the VO groups the account is member of that are
+   * neither VOMS roles nor optional groups.
+   */
+  public List<String> getCompulsoryGroupNames() {
+    return compulsoryGroupNames;
+  }
+
+  public static VOMSMembershipIndex build(IamAccount account, String voName, IamLabel roleLabel,
+      IamLabel optionalGroupLabel) {
+
+    final String voGroupPrefix = voName + "/";
+
+    Map<String, GroupFlags> groups = new HashMap<>(account.getGroups().size() * 2);
+    Set<String> compulsoryGroupNames = new TreeSet<>();
+
+    for (IamAccountGroupMembership m : account.getGroups()) {
+      IamGroup g = m.getGroup();
+      Set<IamLabel> labels = g.getLabels();
+
+      boolean role = labels.contains(roleLabel);
+      boolean optional = labels.contains(optionalGroupLabel);
+
+      groups.put(g.getName(), new GroupFlags(role, optional));
+
+      boolean voGroup = g.getName().equals(voName) || g.getName().startsWith(voGroupPrefix);
+
+      if (voGroup && !role && !optional) {
+        compulsoryGroupNames.add(g.getName());
+      }
+    }
+
+    return new VOMSMembershipIndex(groups,
+        Collections.unmodifiableList(new ArrayList<>(compulsoryGroupNames)));
+  }
+}
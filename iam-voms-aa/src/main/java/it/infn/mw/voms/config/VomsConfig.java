@@ -29,9 +29,11 @@ import org.springframework.security.web.firewall.StrictHttpFirewall;
 import com.google.common.base.Predicates;
 
 import eu.emi.security.authn.x509.impl.PEMCredential;
+import io.micrometer.core.instrument.MeterRegistry;
 import it.infn.mw.iam.authn.x509.IamX509AuthenticationProvider;
 import it.infn.mw.iam.authn.x509.IamX509AuthenticationUserDetailService;
 import it.infn.mw.iam.authn.x509.InactiveAccountAuthenticationHander;
+import it.infn.mw.iam.persistence.repository.IamAccountRepository;
 import it.infn.mw.iam.persistence.repository.IamX509CertificateRepository;
 import it.infn.mw.voms.aa.AttributeAuthority;
 import it.infn.mw.voms.aa.ac.ACGenerator;
@@ -39,6 +41,7 @@ import it.infn.mw.voms.aa.ac.ThreadLocalACGenerator;
 import it.infn.mw.voms.aa.ac.VOMSResponseBuilder;
 import it.infn.mw.voms.aa.ac.VOMSResponseBuilderImpl;
 import it.infn.mw.voms.aa.impl.AttributeResolver;
+import it.infn.mw.voms.aa.impl.CachingIamVomsAccountResolver;
 import it.infn.mw.voms.aa.impl.DefaultIamVomsAccountResolver;
 import it.infn.mw.voms.aa.impl.FQANEncoding;
 import it.infn.mw.voms.aa.impl.IamVOMSAccountResolver;
@@ -97,7 +100,14 @@ public class VomsConfig {
   }
 
   @Bean
-  IamVOMSAccountResolver iamAccountResolver(IamX509CertificateRepository certificateRepo) {
+  IamVOMSAccountResolver iamAccountResolver(IamX509CertificateRepository certificateRepo,
+      IamAccountRepository accountRepo, VomsProperties properties, MeterRegistry meterRegistry) {
+
+    if (properties.getAccountCache().isEnabled()) {
+      return new CachingIamVomsAccountResolver(certificateRepo, accountRepo,
+          properties.getAccountCache(), meterRegistry);
+    }
+
     return new DefaultIamVomsAccountResolver(certificateRepo);
   }
 
@@ -177,10 +177,59 @@ public class VomsProperties {
     }
   }
 
+  public static class VOMSAccountCacheProperties {
+
+    private boolean enabled = false;
+
+    @Positive
+    private long maxSize = 10000;
+
+    @Positive
+    private long indexTtlSecs = TimeUnit.MINUTES.toSeconds(5);
+
+    @Positive
+    private long membershipTtlSecs = 30;
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    public long getMaxSize() {
+      return maxSize;
+    }
+
+    public void setMaxSize(long maxSize) {
+      this.maxSize = maxSize;
+    }
+
+    public long getIndexTtlSecs() {
+      return indexTtlSecs;
+    }
+
+    public void setIndexTtlSecs(long indexTtlSecs) {
+      this.indexTtlSecs = indexTtlSecs;
+    }
+
+    public long getMembershipTtlSecs() {
+      return membershipTtlSecs;
+    }
+
+    public void setMembershipTtlSecs(long membershipTtlSecs) {
+      this.membershipTtlSecs = membershipTtlSecs;
+    }
+  }
+
   private TLSProperties tls;
   private VOMSTrustStoreProperties trust;
   private VOMSAAProperties aa;
 
+  @Valid
+  private VOMSAccountCacheProperties accountCache = new VOMSAccountCacheProperties();
+
   public TLSProperties getTls() {
     return tls;
   }
@@ -204,4 +253,12 @@ public class VomsProperties {
   public void setAa(VOMSAAProperties aa) {
     this.aa = aa;
   }
+
+  public VOMSAccountCacheProperties getAccountCache() {
+    return accountCache;
+  }
+
+  public void setAccountCache(VOMSAccountCacheProperties accountCache) {
+    this.accountCache = accountCache;
+  }
 }
@@ -0,0 +1,122 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.voms;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasSize;
+
+import java.util.UUID;
+
+import org.junit.Test;
+
+import it.infn.mw.iam.persistence.model.IamAccount;
+import it.infn.mw.iam.persistence.model.IamAccountGroupMembership;
+import it.infn.mw.iam.persistence.model.IamGroup;
+import it.infn.mw.iam.persistence.model.IamLabel;
+import it.infn.mw.voms.aa.impl.VOMSMembershipIndex;
+import it.infn.mw.voms.api.VOMSFqan;
+
+public class VOMSMembershipIndexTests {
+
+  static final IamLabel ROLE_LABEL = IamLabel.builder().name(TestSupport.VOMS_ROLE_LABEL).build();
+  static final IamLabel OPTIONAL_LABEL =
+      IamLabel.builder().name(TestSupport.OPTIONAL_GROUP_LABEL).build();
+
+  private IamAccount newAccount() {
+    IamAccount account = new IamAccount();
+    account.setUuid(UUID.randomUUID().toString());
+    account.setUsername("test");
+    return account;
+  }
+
+  private IamGroup addGroup(IamAccount account, String name, IamLabel... labels) {
+    IamGroup g = new IamGroup();
+    g.setUuid(UUID.randomUUID().toString());
+    g.setName(name);
+    for (IamLabel l : labels) {
+      g.getLabels().add(l);
+    }
+    account.getGroups().add(IamAccountGroupMembership.forAccountAndGroup(account, g));
+    return g;
+  }
+
+  private VOMSMembershipIndex index(IamAccount account) {
+    return VOMSMembershipIndex.build(account, "test", ROLE_LABEL, OPTIONAL_LABEL);
+  }
+
+  @Test
+  public void emptyMembershipMatchesNothing() {
+    VOMSMembershipIndex index = index(newAccount());
+
+    assertThat(index.matches(VOMSFqan.fromString("/test")), is(false));
+    assertThat(index.getCompulsoryGroupNames(), empty());
+  }
+
+  @Test
+  public void compulsoryGroupsAreSortedAndSkipRolesAndOptionalGroups() {
+    IamAccount account = newAccount();
+
+    addGroup(account, "test/b");
+    addGroup(account, "test");
+    addGroup(account, "test/a");
+    addGroup(account, "test/production", ROLE_LABEL);
+    addGroup(account, "test/optional", OPTIONAL_LABEL);
+    addGroup(account, "other");
+    addGroup(account, "testing");
+
+    assertThat(index(account).getCompulsoryGroupNames(), contains("test", "test/a", "test/b"));
+  }
+
+  @Test
+  public void roleFqansRequireTheRoleLabel() {
+    IamAccount account = newAccount();
+
+    addGroup(account, "test");
+    addGroup(account, "test/production", ROLE_LABEL);
+    addGroup(account, "test/admin");
+
+    VOMSMembershipIndex index = index(account);
+
+    assertThat(index.matches(VOMSFqan.fromString("/test/Role=production")), is(true));
+    assertThat(index.matches(VOMSFqan.fromString("/test/Role=admin")), is(false));
+    assertThat(index.matches(VOMSFqan.fromString("/test/admin")), is(true));
+    assertThat(index.matches(VOMSFqan.fromString("/test/missing")), is(false));
+    assertThat(index.isMemberOf("test"), is(true));
+  }
+
+  @Test
+  public void deepGroupTreeIsIndexed() {
+    IamAccount account = newAccount();
+
+    StringBuilder name = new StringBuilder("test");
+    addGroup(account, name.toString());
+
+    for (int i = 0; i < 500; i++) {
+      name.append("/g").append(i % 10);
+      addGroup(account, name.toString());
+      addGroup(account, name + "/Role", ROLE_LABEL);
+    }
+
+    VOMSMembershipIndex index = index(account);
+
+    assertThat(index.getCompulsoryGroupNames(), hasSize(501));
+    assertThat(index.matches(VOMSFqan.fromString("/" + name + "/Role=Role")), is(true));
+    assertThat(index.matches(VOMSFqan.fromString("/" + name)), is(true));
+  }
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare (INFN). 2016-2021
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.infn.mw.voms;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.hasItem;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.io.ByteArrayInputStream;
+
+import org.italiangrid.voms.VOMSAttribute;
+import org.italiangrid.voms.request.VOMSResponse;
+import org.italiangrid.voms.request.impl.RESTVOMSResponseParsingStrategy;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+import it.infn.mw.iam.persistence.model.IamAccount;
+import it.infn.mw.iam.persistence.model.IamGroup;
+import it.infn.mw.voms.aa.impl.CachingIamVomsAccountResolver;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@ActiveProfiles("h2")
+@AutoConfigureMockMvc
+@Transactional
+@TestPropertySource(properties = {"voms.account-cache.enabled=true"})
+public class VomsAcAccountCacheTests extends TestSupport {
+
+  RESTVOMSResponseParsingStrategy parser = new RESTVOMSResponseParsingStrategy();
+
+  @Autowired
+  CachingIamVomsAccountResolver accountResolver;
+
+  @After
+  public void cleanupCache() {
+    accountResolver.invalidateAll();
+  }
+
+  private VOMSResponse generateAc() throws Exception {
+    byte[] xmlResponse = mvc.perform(get("/generate-ac").headers(test0VOMSHeaders()))
+      .andReturn()
+      .getResponse()
+      .getContentAsByteArray();
+
+    return parser.parse(new ByteArrayInputStream(xmlResponse));
+  }
+
+  @Test
+  public void cachedAccountGetsAC() throws Exception {
+    IamAccount testAccount = setupTestUser();
+    IamGroup rootGroup = createVomsRootGroup();
+    addAccountToGroup(testAccount, rootGroup);
+
+    for (int i = 0; i < 2; i++) {
+      VOMSResponse response = generateAc();
+      assertThat(response.hasErrors(), is(false));
+      VOMSAttribute attrs = getAttributeCertificate(response);
+      assertThat(attrs.getFQANs(), hasItem("/test"));
+    }
+
+    assertThat(accountResolver.getIndexSize(), is(1L));
+    assertThat(accountResolver.getCachedAccountsCount(), is(1L));
+  }
+
+  @Test
+  public void unknownCertificateIsNotCached() throws Exception {
+
+    VOMSResponse response = generateAc();
+    assertThat(response.hasErrors(), is(true));
+    assertThat(response.errorMessages()[0].getMessage(), containsString("User unknown to this VO"));
+    assertThat(accountResolver.getIndexSize(), is(0L));
+
+    IamAccount testAccount = setupTestUser();
+    IamGroup rootGroup = createVomsRootGroup();
+    addAccountToGroup(testAccount, rootGroup);
+
+    mvc.perform(get("/generate-ac").headers(test0VOMSHeaders())).andExpect(status().isOk());
+    assertThat(accountResolver.getIndexSize(), is(1L));
+  }
+
+  @Test
+  public void membershipChangesAreSeenAfterInvalidation() throws Exception {
+    IamAccount testAccount = setupTestUser();
+    IamGroup rootGroup = createVomsRootGroup();
+    addAccountToGroup(testAccount, rootGroup);
+
+    VOMSResponse response = generateAc();
+    assertThat(getAttributeCertificate(response).getFQANs(), hasItem("/test"));
+
+    IamGroup childGroup = createChildGroup(rootGroup, "sub");
+    addAccountToGroup(testAccount, childGroup);
+
+    response = generateAc();
+    assertThat(getAttributeCertificate(response).getFQANs().contains("/test/sub"), is(false));
+
+    accountResolver.invalidateAll();
+
+    response = generateAc();
+    assertThat(getAttributeCertificate(response).getFQANs(), hasItem("/test/sub"));
+  }
+}